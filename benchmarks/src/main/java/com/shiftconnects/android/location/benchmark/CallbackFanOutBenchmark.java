@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.benchmark;
+
+import android.location.Location;
+
+import com.shiftconnects.android.location.BackgroundLocationService;
+import com.shiftconnects.android.location.dispatch.CallbackRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Delivering a location to every callback in a {@link CallbackRegistry}, the last step of the
+ * service's work on each fix. The registry is the library's own; the service is a stand-in that
+ * only declares the callback interface, so these numbers leave out everything the real service
+ * does before dispatching, such as the processing pipeline and request arbitration.
+ */
+@State(Scope.Thread)
+public class CallbackFanOutBenchmark {
+
+    private static final CallbackRegistry.Event<BackgroundLocationService.LocationCallbacks, Location> LOCATION_CHANGED =
+            new CallbackRegistry.Event<BackgroundLocationService.LocationCallbacks, Location>() {
+                @Override public void deliver(BackgroundLocationService.LocationCallbacks callback, Location location) {
+                    callback.onLocationChanged(location);
+                }
+            };
+
+    private static final Executor DIRECT = new Executor() {
+        @Override public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Param({"1", "8", "64"})
+    public int callbackCount;
+
+    @Param({"false", "true"})
+    public boolean useExecutor;
+
+    private CallbackRegistry<BackgroundLocationService.LocationCallbacks> mRegistry;
+    private Location mLocation;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        mRegistry = new CallbackRegistry<>();
+        for (int i = 0; i < callbackCount; i++) {
+            final BackgroundLocationService.LocationCallbacks callback = new BackgroundLocationService.LocationCallbacks() {
+                @Override public void onLocationChanged(Location location) {
+                    blackhole.consume(location);
+                }
+            };
+            if (useExecutor) {
+                mRegistry.add(callback, DIRECT);
+            } else {
+                mRegistry.add(callback);
+            }
+        }
+        mLocation = Fixtures.location(37.7749, -122.4194, 0);
+    }
+
+    @Benchmark
+    public void dispatch() {
+        mRegistry.dispatch(LOCATION_CHANGED, mLocation);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.benchmark;
+
+import android.location.Location;
+
+import com.google.android.gms.location.Geofence;
+import com.shiftconnects.android.location.geofence.LocalGeofence;
+
+import java.util.Random;
+
+/**
+ * Reproducible inputs shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private static final double CENTER_LATITUDE = 37.7749;
+    private static final double CENTER_LONGITUDE = -122.4194;
+
+    private Fixtures() {
+    }
+
+    static Location location(double latitude, double longitude, long time) {
+        final Location location = new Location("fused");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(time);
+        location.setElapsedRealtimeNanos(time * 1000000l);
+        location.setAccuracy(8f);
+        location.setSpeed(12f);
+        location.setBearing(45f);
+        return location;
+    }
+
+    /**
+     * @return fences of 50 to 500 meters scattered over roughly 50km around San Francisco
+     */
+    static LocalGeofence[] geofences(int count) {
+        final Random random = new Random(1);
+        final LocalGeofence[] fences = new LocalGeofence[count];
+        for (int i = 0; i < count; i++) {
+            fences[i] = new LocalGeofence("fence-" + i,
+                    CENTER_LATITUDE + (random.nextDouble() - 0.5) * 0.5,
+                    CENTER_LONGITUDE + (random.nextDouble() - 0.5) * 0.5,
+                    50 + random.nextFloat() * 450,
+                    Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT, 0);
+        }
+        return fences;
+    }
+
+    /**
+     * @return latitude, longitude pairs of a wandering drive at about 12m/s sampled every second
+     */
+    static double[] track(int count) {
+        final Random random = new Random(2);
+        final double[] track = new double[2 * count];
+        double latitude = CENTER_LATITUDE;
+        double longitude = CENTER_LONGITUDE;
+        double heading = 0;
+        for (int i = 0; i < count; i++) {
+            heading += random.nextGaussian() * 0.2;
+            latitude += Math.cos(heading) * 12 / 111195;
+            longitude += Math.sin(heading) * 12 / (111195 * Math.cos(Math.toRadians(latitude)));
+            track[2 * i] = latitude;
+            track[2 * i + 1] = longitude;
+        }
+        return track;
+    }
+}
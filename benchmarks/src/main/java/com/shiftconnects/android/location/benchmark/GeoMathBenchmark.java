@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.benchmark;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The heading and distance math used by mock playback, track simplification and geofencing.
+ * {@link SphericalUtil} is the real android-maps-utils class, taken from its aar; only
+ * {@link LatLng} is a stand-in, and it is a plain holder of two doubles like the real one.
+ */
+@State(Scope.Thread)
+public class GeoMathBenchmark {
+
+    private final LatLng mFrom = new LatLng(37.7749, -122.4194);
+    private final LatLng mTo = new LatLng(37.7793, -122.4101);
+
+    @Benchmark
+    public double sphericalHeading() {
+        return SphericalUtil.computeHeading(mFrom, mTo);
+    }
+
+    @Benchmark
+    public double sphericalDistance() {
+        return SphericalUtil.computeDistanceBetween(mFrom, mTo);
+    }
+
+    @Benchmark
+    public LatLng sphericalInterpolate() {
+        return SphericalUtil.interpolate(mFrom, mTo, 0.5);
+    }
+
+    @Benchmark
+    public double geoUtilsHeading() {
+        return GeoUtils.computeHeading(mFrom.latitude, mFrom.longitude, mTo.latitude, mTo.longitude);
+    }
+
+    @Benchmark
+    public double geoUtilsDistance() {
+        return GeoUtils.distanceBetween(mFrom.latitude, mFrom.longitude, mTo.latitude, mTo.longitude);
+    }
+}
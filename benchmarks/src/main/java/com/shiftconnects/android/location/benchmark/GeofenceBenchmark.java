@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.benchmark;
+
+import android.os.Handler;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.Geofence;
+import com.shiftconnects.android.location.geofence.GeofenceGrid;
+import com.shiftconnects.android.location.geofence.GeofenceRegistry;
+import com.shiftconnects.android.location.geofence.LocalGeofence;
+import com.shiftconnects.android.location.geofence.LocalGeofenceEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Local geofence evaluation and incremental registration against large fence sets.
+ */
+@State(Scope.Thread)
+public class GeofenceBenchmark {
+
+    @Param({"100", "10000", "50000"})
+    public int fenceCount;
+
+    private LocalGeofence[] mFences;
+    private GeofenceGrid mGrid;
+    private LocalGeofenceEngine mEngine;
+    private double[] mTrack;
+    private int mTrackIndex;
+    private long mTime;
+
+    private GeofenceRegistry mRegistry;
+    private Geofence[] mGeofences;
+    private int mReplaced;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        mFences = Fixtures.geofences(fenceCount);
+        mGrid = new GeofenceGrid();
+        mEngine = new LocalGeofenceEngine(new LocalGeofenceEngine.Listener() {
+            @Override public void onGeofenceEntered(String geofenceId) {
+                blackhole.consume(geofenceId);
+            }
+
+            @Override public void onGeofenceDwelled(String geofenceId) {
+                blackhole.consume(geofenceId);
+            }
+
+            @Override public void onGeofenceExited(String geofenceId) {
+                blackhole.consume(geofenceId);
+            }
+        });
+        for (LocalGeofence fence : mFences) {
+            mGrid.add(fence);
+            mEngine.addGeofence(fence);
+        }
+        mTrack = Fixtures.track(1024);
+
+        final GoogleApiClient client = new GoogleApiClient();
+        client.connect();
+        mRegistry = new GeofenceRegistry(new Handler(), new GeofenceRegistry.Backend() {
+            @Override public boolean isConnected() {
+                return client.isConnected();
+            }
+
+            @Override public void addGeofences(List<Geofence> geofences, ResultCallback<Status> callback) {
+                client.call(callback, Status.SUCCESS);
+            }
+
+            @Override public void removeGeofences(List<String> requestIds, ResultCallback<Status> callback) {
+                client.call(callback, Status.SUCCESS);
+            }
+
+            @Override public void removeAllGeofences(ResultCallback<Status> callback) {
+                client.call(callback, Status.SUCCESS);
+            }
+        });
+        mGeofences = new Geofence[Math.min(fenceCount, GeofenceRegistry.MAX_GEOFENCES_PER_CALL)];
+        for (int i = 0; i < mGeofences.length; i++) {
+            mGeofences[i] = mFences[i].toGeofence();
+            mRegistry.put(mGeofences[i]);
+        }
+        mRegistry.flush();
+    }
+
+    @Benchmark
+    public List<LocalGeofence> gridCandidates() {
+        final int i = nextTrackIndex();
+        return mGrid.candidates(mTrack[i], mTrack[i + 1]);
+    }
+
+    @Benchmark
+    public List<LocalGeofence> gridNearest() {
+        final int i = nextTrackIndex();
+        return mGrid.nearest(mTrack[i], mTrack[i + 1], 20);
+    }
+
+    @Benchmark
+    public void engineOnLocation() {
+        final int i = nextTrackIndex();
+        mEngine.onLocation(mTrack[i], mTrack[i + 1], mTime += 1000);
+    }
+
+    /**
+     * Replacing one registered fence out of the full set, which should cost one add call rather
+     * than a full re-registration.
+     */
+    @Benchmark
+    public void registryReplaceOne() {
+        final int i = mReplaced++ % mGeofences.length;
+        mRegistry.put(mFences[i].toGeofence());
+        mRegistry.flush();
+    }
+
+    private int nextTrackIndex() {
+        final int i = mTrackIndex;
+        mTrackIndex = (mTrackIndex + 2) % mTrack.length;
+        return i;
+    }
+}
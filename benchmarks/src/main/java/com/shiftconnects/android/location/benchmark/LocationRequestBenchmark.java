@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.benchmark;
+
+import com.google.android.gms.location.LocationRequest;
+import com.shiftconnects.android.location.util.LocationRequestUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Building location requests through {@link LocationRequestUtils}.
+ */
+public class LocationRequestBenchmark {
+
+    @Benchmark
+    public LocationRequest byMilesPerHour() {
+        return LocationRequestUtils.byMilesPerHour(35f, 5);
+    }
+
+    @Benchmark
+    public LocationRequest byDisplacement() {
+        return LocationRequestUtils.byDisplacement(10f, 5000l);
+    }
+
+    @Benchmark
+    public LocationRequest byPriority() {
+        return LocationRequestUtils.byPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, 25f, 60000l);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.benchmark;
+
+import android.location.Location;
+
+import com.shiftconnects.android.location.history.LocationHistory;
+import com.shiftconnects.android.location.processing.AccuracyGate;
+import com.shiftconnects.android.location.processing.KalmanFilter;
+import com.shiftconnects.android.location.processing.LocationPipeline;
+import com.shiftconnects.android.location.processing.OutlierRejector;
+import com.shiftconnects.android.location.track.TrackDecoder;
+import com.shiftconnects.android.location.track.TrackEncoder;
+import com.shiftconnects.android.location.track.TrackSimplifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The per-fix cost of the processing pipeline, history, simplifier and track codec, and the cost
+ * of querying and decoding what they store.
+ */
+@State(Scope.Thread)
+public class TrackBenchmark {
+
+    private static final int TRACK_SIZE = 4096;
+
+    private Location[] mLocations;
+    private int mIndex;
+    // the history ignores fixes that are not newer, so appends carry on past the end of the track
+    private long mAddTime;
+
+    private LocationPipeline mPipeline;
+    private Location mScratch;
+    private LocationHistory mHistory;
+    private LocationHistory.Cursor mCursor;
+    private TrackSimplifier mSimplifier;
+    private ByteBuffer mEncodeBuffer;
+    private TrackEncoder mEncoder;
+    private ByteBuffer mEncoded;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) throws IOException {
+        final double[] track = Fixtures.track(TRACK_SIZE);
+        mLocations = new Location[TRACK_SIZE];
+        for (int i = 0; i < TRACK_SIZE; i++) {
+            mLocations[i] = Fixtures.location(track[(2 * i) % track.length], track[(2 * i + 1) % track.length], i * 1000l);
+        }
+
+        mPipeline = new LocationPipeline(new AccuracyGate(50f), new OutlierRejector(60f), new KalmanFilter());
+        mScratch = new Location("fused");
+
+        mHistory = new LocationHistory(TRACK_SIZE);
+        for (Location location : mLocations) {
+            mHistory.add(location);
+        }
+        mCursor = mHistory.newCursor();
+        mAddTime = TRACK_SIZE * 1000l;
+
+        mSimplifier = new TrackSimplifier(5, new TrackSimplifier.Listener() {
+            @Override public void onVertex(Location location) {
+                blackhole.consume(location);
+            }
+        });
+
+        mEncodeBuffer = ByteBuffer.allocate(64 * TRACK_SIZE);
+        mEncoder = new TrackEncoder(mEncodeBuffer, TrackEncoder.ALL_CHANNELS);
+
+        final ByteBuffer encoded = ByteBuffer.allocate(64 * TRACK_SIZE);
+        final TrackEncoder encoder = new TrackEncoder(encoded, TrackEncoder.ALL_CHANNELS);
+        for (Location location : mLocations) {
+            encoder.write(location);
+        }
+        encoded.flip();
+        mEncoded = encoded.asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public boolean pipelineProcess() {
+        mScratch.set(nextLocation());
+        return mPipeline.process(mScratch);
+    }
+
+    @Benchmark
+    public boolean historyAdd() {
+        final Location location = nextLocation();
+        location.setTime(mAddTime += 1000);
+        return mHistory.add(location);
+    }
+
+    @Benchmark
+    public int historyQueryMinute() {
+        final long start = (mIndex++ % (TRACK_SIZE - 60)) * 1000l;
+        final LocationHistory.Cursor cursor = mHistory.query(start, start + 60000l, mCursor);
+        int count = 0;
+        while (cursor.moveToNext()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void simplifierAdd() {
+        mSimplifier.add(nextLocation());
+    }
+
+    @Benchmark
+    public void encoderWrite() throws IOException {
+        if (mEncodeBuffer.remaining() < 64) {
+            mEncodeBuffer.clear();
+            mEncoder = new TrackEncoder(mEncodeBuffer, TrackEncoder.ALL_CHANNELS);
+        }
+        mEncoder.write(nextLocation());
+    }
+
+    @Benchmark
+    public long decodeTrack() {
+        final TrackDecoder decoder = new TrackDecoder(mEncoded.duplicate());
+        long sum = 0;
+        while (decoder.next()) {
+            sum += decoder.getTime();
+        }
+        return sum;
+    }
+
+    private Location nextLocation() {
+        final Location location = mLocations[mIndex % TRACK_SIZE];
+        mIndex++;
+        return location;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.benchmark;
+
+import android.location.Location;
+
+import com.shiftconnects.android.location.history.LocationHistory;
+import com.shiftconnects.android.location.history.TrackIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Time and place queries over a full location history, and the cost of keeping the index up to
+ * date as fixes arrive.
+ */
+@State(Scope.Thread)
+public class TrackIndexBenchmark {
+
+    @Param({"3600", "86400", "259200"})
+    public int historySize;
+
+    private LocationHistory mHistory;
+    private TrackIndex mIndex;
+    private double[] mTrack;
+    private int mQuery;
+    private long mTime;
+    private final Location mOut = new Location("benchmark");
+
+    @Setup
+    public void setUp() {
+        mHistory = new LocationHistory(historySize);
+        mIndex = new TrackIndex(mHistory);
+        mTrack = Fixtures.track(historySize);
+        for (int i = 0; i < historySize; i++) {
+            mHistory.add(mTrack[2 * i], mTrack[2 * i + 1], 10f, 12f, Float.NaN, mTime += 1000, 0l);
+        }
+        mIndex.update();
+    }
+
+    @Benchmark
+    public Location locationAt() {
+        return mIndex.locationAt(mTime - (nextQuery() * 1000l + 500), mOut);
+    }
+
+    @Benchmark
+    public int nearest() {
+        final int i = nextQuery();
+        // a little off the track, as a visit to check would be
+        return mIndex.nearest(mTrack[2 * i] + 0.0003, mTrack[2 * i + 1] - 0.0003);
+    }
+
+    @Benchmark
+    public List<TrackIndex.Segment> segmentsWithin() {
+        final int i = nextQuery();
+        return mIndex.segmentsWithin(mTrack[2 * i] - 0.005, mTrack[2 * i + 1] - 0.005,
+                mTrack[2 * i] + 0.005, mTrack[2 * i + 1] + 0.005);
+    }
+
+    /**
+     * Adding a fix to a full history, which overwrites the oldest, and updating the index.
+     */
+    @Benchmark
+    public void addAndUpdate() {
+        final int i = nextQuery();
+        mHistory.add(mTrack[2 * i], mTrack[2 * i + 1], 10f, 12f, Float.NaN, mTime += 1000, 0l);
+        mIndex.update();
+    }
+
+    private int nextQuery() {
+        mQuery = (mQuery + 7919) % (historySize - 1);
+        return mQuery;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.location;
+
+import android.os.Bundle;
+
+/**
+ * JVM stand-in for the framework class, covering the parts the library uses.
+ */
+public class Location {
+
+    private String mProvider;
+    private long mTime;
+    private long mElapsedRealtimeNanos;
+    private double mLatitude;
+    private double mLongitude;
+    private boolean mHasAccuracy;
+    private float mAccuracy;
+    private boolean mHasSpeed;
+    private float mSpeed;
+    private boolean mHasBearing;
+    private float mBearing;
+    private Bundle mExtras;
+
+    public Location(String provider) {
+        mProvider = provider;
+    }
+
+    public Location(Location location) {
+        set(location);
+    }
+
+    public void set(Location location) {
+        mProvider = location.mProvider;
+        mTime = location.mTime;
+        mElapsedRealtimeNanos = location.mElapsedRealtimeNanos;
+        mLatitude = location.mLatitude;
+        mLongitude = location.mLongitude;
+        mHasAccuracy = location.mHasAccuracy;
+        mAccuracy = location.mAccuracy;
+        mHasSpeed = location.mHasSpeed;
+        mSpeed = location.mSpeed;
+        mHasBearing = location.mHasBearing;
+        mBearing = location.mBearing;
+        mExtras = location.mExtras;
+    }
+
+    public static void distanceBetween(double startLatitude, double startLongitude,
+            double endLatitude, double endLongitude, float[] results) {
+        // spherical rather than the framework's ellipsoidal formula, close enough for benchmarks
+        final double lat1 = Math.toRadians(startLatitude);
+        final double lat2 = Math.toRadians(endLatitude);
+        final double sinLat = Math.sin((lat2 - lat1) / 2);
+        final double sinLon = Math.sin(Math.toRadians(endLongitude - startLongitude) / 2);
+        final double h = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+        results[0] = (float) (2 * 6371009 * Math.asin(Math.min(1, Math.sqrt(h))));
+    }
+
+    public String getProvider() {
+        return mProvider;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public void setTime(long time) {
+        mTime = time;
+    }
+
+    public long getElapsedRealtimeNanos() {
+        return mElapsedRealtimeNanos;
+    }
+
+    public void setElapsedRealtimeNanos(long elapsedRealtimeNanos) {
+        mElapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public void setLatitude(double latitude) {
+        mLatitude = latitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public void setLongitude(double longitude) {
+        mLongitude = longitude;
+    }
+
+    public boolean hasAccuracy() {
+        return mHasAccuracy;
+    }
+
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    public void setAccuracy(float accuracy) {
+        mAccuracy = accuracy;
+        mHasAccuracy = true;
+    }
+
+    public void removeAccuracy() {
+        mAccuracy = 0f;
+        mHasAccuracy = false;
+    }
+
+    public boolean hasSpeed() {
+        return mHasSpeed;
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    public void setSpeed(float speed) {
+        mSpeed = speed;
+        mHasSpeed = true;
+    }
+
+    public void removeSpeed() {
+        mSpeed = 0f;
+        mHasSpeed = false;
+    }
+
+    public boolean hasBearing() {
+        return mHasBearing;
+    }
+
+    public float getBearing() {
+        return mBearing;
+    }
+
+    public void setBearing(float bearing) {
+        mBearing = bearing;
+        mHasBearing = true;
+    }
+
+    public void removeBearing() {
+        mBearing = 0f;
+        mHasBearing = false;
+    }
+
+    public Bundle getExtras() {
+        return mExtras;
+    }
+
+    public void setExtras(Bundle extras) {
+        mExtras = extras;
+    }
+}
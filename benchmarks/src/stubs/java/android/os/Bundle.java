@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the framework class, covering the parts the library uses.
+ */
+public final class Bundle {
+
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    public void putBoolean(String key, boolean value) {
+        mValues.put(key, value);
+    }
+
+    public boolean getBoolean(String key) {
+        final Object value = mValues.get(key);
+        return value instanceof Boolean && (Boolean) value;
+    }
+
+    public void putLong(String key, long value) {
+        mValues.put(key, value);
+    }
+
+    public long getLong(String key) {
+        final Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : 0l;
+    }
+}
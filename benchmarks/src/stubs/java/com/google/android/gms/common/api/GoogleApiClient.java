@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.gms.common.api;
+
+/**
+ * JVM stand-in for the Play Services class. Connects immediately and counts the calls made through
+ * it, so benchmarks can check how much work reaches Play Services.
+ */
+public class GoogleApiClient {
+
+    private boolean mConnected;
+    private int mCallCount;
+
+    public void connect() {
+        mConnected = true;
+    }
+
+    public void disconnect() {
+        mConnected = false;
+    }
+
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    /**
+     * Records a call into Play Services and answers it with success.
+     */
+    public <R extends Result> void call(ResultCallback<R> callback, R result) {
+        mCallCount++;
+        callback.onResult(result);
+    }
+
+    public int getCallCount() {
+        return mCallCount;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.gms.common.api;
+
+/**
+ * JVM stand-in for the Play Services class.
+ */
+public final class Status implements Result {
+
+    public static final Status SUCCESS = new Status(0);
+
+    private final int mStatusCode;
+
+    public Status(int statusCode) {
+        mStatusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    public boolean isSuccess() {
+        return mStatusCode <= 0;
+    }
+
+    @Override
+    public Status getStatus() {
+        return this;
+    }
+}
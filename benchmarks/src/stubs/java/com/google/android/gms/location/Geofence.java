@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.gms.location;
+
+/**
+ * JVM stand-in for the Play Services interface.
+ */
+public interface Geofence {
+
+    int GEOFENCE_TRANSITION_ENTER = 1;
+    int GEOFENCE_TRANSITION_EXIT = 2;
+    int GEOFENCE_TRANSITION_DWELL = 4;
+    long NEVER_EXPIRE = -1l;
+
+    String getRequestId();
+
+    final class Builder {
+
+        private String mRequestId;
+        private double mLatitude;
+        private double mLongitude;
+        private float mRadius;
+        private long mExpirationDuration;
+        private int mTransitionTypes;
+        private int mLoiteringDelay;
+
+        public Builder setRequestId(String requestId) {
+            mRequestId = requestId;
+            return this;
+        }
+
+        public Builder setCircularRegion(double latitude, double longitude, float radius) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mRadius = radius;
+            return this;
+        }
+
+        public Builder setExpirationDuration(long durationMillis) {
+            mExpirationDuration = durationMillis;
+            return this;
+        }
+
+        public Builder setTransitionTypes(int transitionTypes) {
+            mTransitionTypes = transitionTypes;
+            return this;
+        }
+
+        public Builder setLoiteringDelay(int loiteringDelayMs) {
+            mLoiteringDelay = loiteringDelayMs;
+            return this;
+        }
+
+        public Geofence build() {
+            final String requestId = mRequestId;
+            return new Geofence() {
+                @Override public String getRequestId() {
+                    return requestId;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location;
+
+import android.location.Location;
+
+/**
+ * JVM stand-in for the service, declaring only the callback interface that library classes
+ * implement. The real service needs the Android framework and is left out of the benchmarks.
+ */
+public class BackgroundLocationService {
+
+    public interface LocationCallbacks {
+        void onLocationChanged(Location location);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.cache;
+
+import android.location.Location;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class LastLocationCacheTest extends AndroidTestCase {
+
+    private File mFile;
+    private LastLocationCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "last-location-cache-test");
+        mFile.delete();
+        mCache = new LastLocationCache(mFile);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCache.delete();
+        super.tearDown();
+    }
+
+    public void testReadsNothingWithoutAFile() {
+        assertNull(mCache.read());
+    }
+
+    public void testRoundTrip() throws IOException {
+        final long time = System.currentTimeMillis() - 60000;
+        final Location location = location(37.7749, -122.4194, time);
+        location.setAccuracy(12.5f);
+        location.setSpeed(3f);
+        location.setBearing(270f);
+        mCache.write(location);
+        mCache.close();
+
+        final Location read = new LastLocationCache(mFile).read();
+        assertEquals(37.7749, read.getLatitude());
+        assertEquals(-122.4194, read.getLongitude());
+        assertEquals(12.5f, read.getAccuracy());
+        assertEquals(3f, read.getSpeed());
+        assertEquals(270f, read.getBearing());
+        assertEquals(time, read.getTime());
+        assertTrue(LastLocationCache.isCached(read));
+        assertTrue(read.getExtras().getLong(LastLocationCache.EXTRA_AGE_MILLIS) >= 60000);
+        assertFalse(LastLocationCache.isCached(location));
+    }
+
+    public void testMissingFieldsStayMissing() throws IOException {
+        mCache.write(location(1, 2, 1000l));
+
+        final Location read = mCache.read();
+        assertFalse(read.hasAccuracy());
+        assertFalse(read.hasSpeed());
+        assertFalse(read.hasBearing());
+    }
+
+    public void testKeepsKnownProviders() throws IOException {
+        final Location gps = new Location("gps");
+        gps.setTime(1000l);
+        mCache.write(gps);
+        assertEquals("gps", mCache.read().getProvider());
+
+        // the location helper uses a provider the cache has no slot for
+        mCache.write(location(1, 2, 2000l));
+        assertEquals(LastLocationCache.PROVIDER_UNKNOWN, mCache.read().getProvider());
+    }
+
+    public void testRejectsACorruptRecord() throws IOException {
+        mCache.write(location(37, -122, 1000l));
+        mCache.close();
+        // flip a bit in the latitude, leaving the CRC as it was
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(10);
+            final int b = file.read();
+            file.seek(10);
+            file.write(b ^ 1);
+        } finally {
+            file.close();
+        }
+
+        assertNull(mCache.read());
+    }
+
+    public void testRejectsATornWrite() throws IOException {
+        mCache.write(location(37, -122, 1000l));
+        mCache.close();
+        // a crash part way through rewriting the record with another location
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(8);
+            file.writeDouble(40);
+        } finally {
+            file.close();
+        }
+        assertNull(mCache.read());
+
+        final RandomAccessFile truncated = new RandomAccessFile(mFile, "rw");
+        try {
+            truncated.setLength(20);
+        } finally {
+            truncated.close();
+        }
+        assertNull(mCache.read());
+    }
+
+    public void testOfferAsksForOneFlushPerInterval() throws IOException {
+        mCache.setMinWriteInterval(60000);
+        assertTrue(mCache.offer(location(1, 1, 1000l)));
+        // a flush is already due, the latest location is what it writes
+        assertFalse(mCache.offer(location(2, 2, 2000l)));
+        assertFalse(mFile.exists());
+        mCache.flush();
+        assertEquals(2000l, mCache.read().getTime());
+
+        // inside the interval nothing is due, but flush still writes the latest
+        assertFalse(mCache.offer(location(3, 3, 3000l)));
+        assertEquals(2000l, mCache.read().getTime());
+        mCache.flush();
+        assertEquals(3000l, mCache.read().getTime());
+
+        mCache.setMinWriteInterval(0);
+        assertTrue(mCache.offer(location(4, 4, 4000l)));
+    }
+
+    public void testFlushWithoutAnOfferWritesNothing() throws IOException {
+        mCache.flush();
+        assertFalse(mFile.exists());
+    }
+
+    private static Location location(double latitude, double longitude, long time) {
+        final Location location = new Location("test");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(time);
+        return location;
+    }
+}
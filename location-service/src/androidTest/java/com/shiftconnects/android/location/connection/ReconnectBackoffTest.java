@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.connection;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class ReconnectBackoffTest extends TestCase {
+
+    private ReconnectBackoff mBackoff;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBackoff = new ReconnectBackoff(new Handler(Looper.getMainLooper()), new Runnable() {
+            @Override public void run() {
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBackoff.cancel();
+        super.tearDown();
+    }
+
+    public void testDelayDoublesUpToTheMaximum() {
+        final Random random = new Random(1);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            final long ceiling = attempt < 20 ? Math.min(60000l, 1000l << attempt) : 60000l;
+            for (int i = 0; i < 20; i++) {
+                final long delay = ReconnectBackoff.delay(attempt, 1000l, 60000l, random);
+                assertTrue("attempt " + attempt + " waited " + delay,
+                        delay >= ceiling / 2 && delay <= ceiling);
+            }
+        }
+    }
+
+    public void testDelayDoesNotOverflow() {
+        final Random random = new Random(1);
+        assertTrue(ReconnectBackoff.delay(Integer.MAX_VALUE, 1000l, Long.MAX_VALUE / 2, random) > 0);
+        assertTrue(ReconnectBackoff.delay(61, 3l, Long.MAX_VALUE, random) > 0);
+    }
+
+    public void testOnlyOneAttemptIsScheduledAtATime() {
+        mBackoff.setDelays(1000l, 60000l);
+        final long delay = mBackoff.schedule();
+        assertTrue(delay >= 500l && delay <= 1000l);
+        assertTrue(mBackoff.isScheduled());
+        assertEquals(-1l, mBackoff.schedule());
+        assertEquals(1, mBackoff.getAttempt());
+
+        mBackoff.cancel();
+        assertFalse(mBackoff.isScheduled());
+        final long next = mBackoff.schedule();
+        assertTrue(next >= 1000l && next <= 2000l);
+        assertEquals(2, mBackoff.getAttempt());
+    }
+
+    public void testResetStartsOverFromTheInitialDelay() {
+        mBackoff.setDelays(1000l, 60000l);
+        for (int i = 0; i < 5; i++) {
+            mBackoff.schedule();
+            mBackoff.cancel();
+        }
+        mBackoff.reset();
+        assertEquals(0, mBackoff.getAttempt());
+        assertFalse(mBackoff.isScheduled());
+        assertTrue(mBackoff.schedule() <= 1000l);
+    }
+
+    public void testRejectsInvalidDelays() {
+        try {
+            mBackoff.setDelays(0l, 1000l);
+            fail("Expected a zero initial delay to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            mBackoff.setDelays(2000l, 1000l);
+            fail("Expected a maximum below the initial delay to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.dispatch;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class CallbackRegistryTest extends TestCase {
+
+    private static final CallbackRegistry.Event<Recorder, String> RECORD =
+            new CallbackRegistry.Event<Recorder, String>() {
+                @Override public void deliver(Recorder callback, String arg) {
+                    callback.record(arg);
+                }
+            };
+
+    private static final long BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final CallbackRegistry<Recorder> mRegistry = new CallbackRegistry<>();
+    private final List<Object> mOverBudget = new ArrayList<>();
+    private final List<Boolean> mIsolated = new ArrayList<>();
+    private final CallbackRegistry.BudgetListener<Object> mBudgetListener =
+            new CallbackRegistry.BudgetListener<Object>() {
+                @Override public void onBudgetExceeded(Object callback, long durationNanos, boolean isolated) {
+                    mOverBudget.add(callback);
+                    mIsolated.add(isolated);
+                }
+            };
+
+    public void testAddsEachCallbackOnce() {
+        final Recorder recorder = new Recorder();
+        assertTrue(mRegistry.add(recorder));
+        assertFalse(mRegistry.add(recorder));
+        assertEquals(1, mRegistry.size());
+
+        mRegistry.dispatch(RECORD, "a");
+        assertEquals(1, recorder.events.size());
+
+        assertTrue(mRegistry.remove(recorder));
+        assertFalse(mRegistry.remove(recorder));
+        assertTrue(mRegistry.isEmpty());
+        mRegistry.dispatch(RECORD, "b");
+        assertEquals(1, recorder.events.size());
+    }
+
+    public void testChangesDuringDispatchApplyToTheNextOne() {
+        final Recorder second = new Recorder();
+        final Recorder added = new Recorder();
+        final Recorder first = new Recorder() {
+            @Override void record(String event) {
+                super.record(event);
+                mRegistry.remove(second);
+                mRegistry.add(added);
+            }
+        };
+        mRegistry.add(first);
+        mRegistry.add(second);
+
+        mRegistry.dispatch(RECORD, "a");
+        assertEquals(1, second.events.size());
+        assertEquals(0, added.events.size());
+
+        mRegistry.dispatch(RECORD, "b");
+        assertEquals(1, second.events.size());
+        assertEquals(1, added.events.size());
+    }
+
+    public void testDispatchToReachesOnlyThatCallback() {
+        final Recorder target = new Recorder();
+        final Recorder other = new Recorder();
+        mRegistry.add(target);
+        mRegistry.add(other);
+
+        mRegistry.dispatchTo(target, RECORD, "a");
+        mRegistry.dispatchTo(new Recorder(), RECORD, "b");
+        assertEquals(1, target.events.size());
+        assertEquals(0, other.events.size());
+    }
+
+    public void testDeliversOnTheRegisteredExecutor() {
+        final QueueExecutor executor = new QueueExecutor();
+        final Recorder recorder = new Recorder();
+        mRegistry.add(recorder, executor);
+
+        mRegistry.dispatch(RECORD, "a");
+        assertEquals(0, recorder.events.size());
+        executor.runAll();
+        assertEquals(1, recorder.events.size());
+    }
+
+    public void testIsolatesCallbacksOverBudget() {
+        final QueueExecutor isolation = new QueueExecutor();
+        mRegistry.setTimeBudget(BUDGET_NANOS, isolation, 4, CallbackRegistry.OverflowPolicy.DROP_OLDEST,
+                mBudgetListener);
+        final Recorder slow = new Recorder();
+        slow.sleepMillis = 100;
+        final Recorder fast = new Recorder();
+        mRegistry.add(slow);
+        mRegistry.add(fast);
+
+        mRegistry.dispatch(RECORD, "a");
+        assertEquals(1, slow.events.size());
+        assertEquals(1, mOverBudget.size());
+        assertSame(slow, mOverBudget.get(0));
+        assertTrue(mIsolated.get(0));
+
+        // from now on the slow callback is queued instead of holding up the dispatch
+        slow.sleepMillis = 0;
+        mRegistry.dispatch(RECORD, "b");
+        mRegistry.dispatch(RECORD, "c");
+        assertEquals(1, slow.events.size());
+        assertEquals(3, fast.events.size());
+        assertEquals(1, isolation.runnables.size());
+
+        isolation.runAll();
+        assertEquals(3, slow.events.size());
+        assertEquals("c", slow.events.get(2));
+        // only reported the first time
+        assertEquals(1, mOverBudget.size());
+    }
+
+    public void testIsolatedQueueDropsOldestEvents() {
+        final QueueExecutor isolation = new QueueExecutor();
+        mRegistry.setTimeBudget(BUDGET_NANOS, isolation, 2, CallbackRegistry.OverflowPolicy.DROP_OLDEST,
+                mBudgetListener);
+        final Recorder slow = isolate(isolation);
+
+        mRegistry.dispatch(RECORD, "b");
+        mRegistry.dispatch(RECORD, "c");
+        mRegistry.dispatch(RECORD, "d");
+        isolation.runAll();
+
+        assertEquals(3, slow.events.size());
+        assertEquals("c", slow.events.get(1));
+        assertEquals("d", slow.events.get(2));
+    }
+
+    public void testIsolatedQueueCoalescesToTheLatestEvent() {
+        final QueueExecutor isolation = new QueueExecutor();
+        mRegistry.setTimeBudget(BUDGET_NANOS, isolation, 4, CallbackRegistry.OverflowPolicy.COALESCE_LATEST,
+                mBudgetListener);
+        final Recorder slow = isolate(isolation);
+
+        mRegistry.dispatch(RECORD, "b");
+        mRegistry.dispatch(RECORD, "c");
+        mRegistry.dispatch(RECORD, "d");
+        isolation.runAll();
+
+        assertEquals(2, slow.events.size());
+        assertEquals("d", slow.events.get(1));
+    }
+
+    public void testOnlyReportsCallbacksWithTheirOwnExecutor() {
+        final QueueExecutor isolation = new QueueExecutor();
+        final QueueExecutor own = new QueueExecutor();
+        mRegistry.setTimeBudget(BUDGET_NANOS, isolation, 4, CallbackRegistry.OverflowPolicy.DROP_OLDEST,
+                mBudgetListener);
+        final Recorder slow = new Recorder();
+        slow.sleepMillis = 100;
+        mRegistry.add(slow, own);
+
+        mRegistry.dispatch(RECORD, "a");
+        own.runAll();
+        assertEquals(1, mOverBudget.size());
+        assertFalse(mIsolated.get(0));
+
+        slow.sleepMillis = 0;
+        mRegistry.dispatch(RECORD, "b");
+        assertEquals(1, own.runnables.size());
+        assertTrue(isolation.runnables.isEmpty());
+    }
+
+    public void testCheckDeliveriesIsolatesAHungCallback() throws InterruptedException {
+        final QueueExecutor isolation = new QueueExecutor();
+        mRegistry.setTimeBudget(BUDGET_NANOS, isolation, 4, CallbackRegistry.OverflowPolicy.DROP_OLDEST,
+                mBudgetListener);
+        final Hung hung = new Hung();
+        mRegistry.add(hung);
+        final Thread dispatcher = dispatchInBackground("a");
+        assertTrue(hung.entered.await(1, TimeUnit.SECONDS));
+
+        mRegistry.checkDeliveries();
+        assertTrue(mOverBudget.isEmpty());
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(BUDGET_NANOS) * 2);
+        mRegistry.checkDeliveries();
+        assertEquals(1, mOverBudget.size());
+        assertSame(hung, mOverBudget.get(0));
+        assertTrue(mIsolated.get(0));
+
+        // queued, but not run alongside the delivery that is still stuck
+        mRegistry.dispatch(RECORD, "b");
+        assertTrue(isolation.runnables.isEmpty());
+
+        hung.release.countDown();
+        dispatcher.join(1000);
+        assertEquals(1, isolation.runnables.size());
+        isolation.runAll();
+        assertEquals(2, hung.events.size());
+        assertEquals("b", hung.events.get(1));
+        assertEquals(1, mOverBudget.size());
+    }
+
+    public void testDispatchBypassesACallbackStuckOnAnotherThread() throws InterruptedException {
+        final QueueExecutor isolation = new QueueExecutor();
+        mRegistry.setTimeBudget(BUDGET_NANOS, isolation, 4, CallbackRegistry.OverflowPolicy.DROP_OLDEST,
+                mBudgetListener);
+        final Hung hung = new Hung();
+        final Recorder fast = new Recorder();
+        mRegistry.add(hung);
+        mRegistry.add(fast);
+        final Thread dispatcher = dispatchInBackground("a");
+        assertTrue(hung.entered.await(1, TimeUnit.SECONDS));
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(BUDGET_NANOS) * 2);
+
+        mRegistry.dispatch(RECORD, "b");
+        assertEquals(1, mOverBudget.size());
+        assertTrue(mIsolated.get(0));
+        assertTrue(fast.events.contains("b"));
+
+        hung.release.countDown();
+        dispatcher.join(1000);
+        isolation.runAll();
+        assertEquals("b", hung.events.get(1));
+    }
+
+    public void testRemovingTheBudgetRestoresInlineDelivery() {
+        final QueueExecutor isolation = new QueueExecutor();
+        mRegistry.setTimeBudget(BUDGET_NANOS, isolation, 4, CallbackRegistry.OverflowPolicy.DROP_OLDEST,
+                mBudgetListener);
+        final Recorder slow = isolate(isolation);
+
+        mRegistry.setTimeBudget(0, null, 0, null, null);
+        mRegistry.dispatch(RECORD, "b");
+        assertEquals(2, slow.events.size());
+        assertTrue(isolation.runnables.isEmpty());
+    }
+
+    private Thread dispatchInBackground(final String event) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                mRegistry.dispatch(RECORD, event);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Registers a callback and has it go over budget once, leaving it isolated.
+     */
+    private Recorder isolate(QueueExecutor isolation) {
+        final Recorder slow = new Recorder();
+        slow.sleepMillis = 100;
+        mRegistry.add(slow);
+        mRegistry.dispatch(RECORD, "a");
+        assertTrue(mIsolated.get(0));
+        slow.sleepMillis = 0;
+        assertTrue(isolation.runnables.isEmpty());
+        return slow;
+    }
+
+    static class Recorder {
+        final List<String> events = new ArrayList<>();
+        long sleepMillis;
+
+        void record(String event) {
+            events.add(event);
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks handling its first event until released.
+     */
+    static class Hung extends Recorder {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override synchronized void record(String event) {
+            super.record(event);
+            if (entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    static class QueueExecutor implements Executor {
+        final List<Runnable> runnables = new ArrayList<>();
+
+        @Override public void execute(Runnable runnable) {
+            runnables.add(runnable);
+        }
+
+        void runAll() {
+            while (!runnables.isEmpty()) {
+                runnables.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.dispatch;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocationBatcherTest extends TestCase {
+
+    // long enough that the deadline never fires during a test, flush() stands in for it
+    private static final long LATENCY_MILLIS = 60 * 60 * 1000l;
+
+    private final List<List<Location>> mBatches = Collections.synchronizedList(new ArrayList<List<Location>>());
+    private final AtomicInteger mDelivering = new AtomicInteger();
+    private volatile boolean mOverlapped;
+
+    private final LocationBatcher.Sink mSink = new LocationBatcher.Sink() {
+        @Override public void onBatch(List<Location> locations) {
+            if (mDelivering.incrementAndGet() > 1) {
+                mOverlapped = true;
+            }
+            mBatches.add(locations);
+            // widen the window for another delivery to overlap this one
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mDelivering.decrementAndGet();
+        }
+    };
+
+    private LocationBatcher mBatcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBatcher = new LocationBatcher(new Handler(Looper.getMainLooper()), mSink, 3, LATENCY_MILLIS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBatcher.clear();
+        super.tearDown();
+    }
+
+    public void testFlushesOnceTheBatchIsFull() {
+        mBatcher.add(location(1));
+        mBatcher.add(location(2));
+        assertTrue(mBatches.isEmpty());
+
+        mBatcher.add(location(3));
+        assertEquals(1, mBatches.size());
+        assertTimes(mBatches.get(0), 1, 2, 3);
+    }
+
+    public void testDeadlineFlushDeliversPartialBatch() {
+        mBatcher.add(location(1));
+        mBatcher.flush();
+        mBatcher.flush();
+
+        assertEquals(1, mBatches.size());
+        assertTimes(mBatches.get(0), 1);
+    }
+
+    public void testConfigureFlushesBufferedLocations() {
+        mBatcher.add(location(1));
+        mBatcher.configure(1, 0);
+        assertEquals(1, mBatches.size());
+
+        mBatcher.add(location(2));
+        assertEquals(2, mBatches.size());
+        assertEquals(1, mBatcher.getMaxBatchSize());
+    }
+
+    public void testClearDropsBufferedLocations() {
+        mBatcher.add(location(1));
+        mBatcher.clear();
+        mBatcher.flush();
+        assertTrue(mBatches.isEmpty());
+    }
+
+    public void testConcurrentFlushesDeliverInOrderOneAtATime() throws InterruptedException {
+        final int count = 500;
+        final Thread adder = new Thread(new Runnable() {
+            @Override public void run() {
+                for (int i = 0; i < count; i++) {
+                    mBatcher.add(location(i));
+                    // give the flusher a chance at partial batches
+                    Thread.yield();
+                }
+            }
+        });
+        final Thread flusher = new Thread(new Runnable() {
+            @Override public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    mBatcher.flush();
+                }
+            }
+        });
+        flusher.start();
+        adder.start();
+        adder.join();
+        flusher.interrupt();
+        flusher.join();
+        mBatcher.flush();
+
+        assertFalse(mOverlapped);
+        long expected = 0;
+        for (List<Location> batch : mBatches) {
+            for (Location location : batch) {
+                assertEquals(expected++, location.getTime());
+            }
+        }
+        assertEquals(count, expected);
+    }
+
+    private static void assertTimes(List<Location> batch, long... times) {
+        assertEquals(times.length, batch.size());
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], batch.get(i).getTime());
+        }
+    }
+
+    private static Location location(long time) {
+        final Location location = new Location("test");
+        location.setTime(time);
+        return location;
+    }
+}
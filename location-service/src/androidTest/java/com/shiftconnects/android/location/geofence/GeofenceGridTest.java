@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.geofence;
+
+import com.google.android.gms.location.Geofence;
+
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Random;
+
+public class GeofenceGridTest extends TestCase {
+
+    private static final int ENTER = Geofence.GEOFENCE_TRANSITION_ENTER;
+
+    public void testRejectsNonPositiveCellSize() {
+        try {
+            new GeofenceGrid(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testCandidatesIncludeFencesOverlappingTheCell() {
+        final GeofenceGrid grid = new GeofenceGrid();
+        grid.add(fence("a", 37.7749, -122.4194, 100));
+        grid.add(fence("b", 40.7128, -74.0060, 100));
+
+        assertEquals(2, grid.size());
+        assertIds(grid.candidates(37.7749, -122.4194), "a");
+        assertIds(grid.candidates(40.7128, -74.0060), "b");
+        assertTrue(grid.candidates(0, 0).isEmpty());
+    }
+
+    public void testAddReplacesAndRemoveUnlists() {
+        final GeofenceGrid grid = new GeofenceGrid();
+        grid.add(fence("a", 37.7749, -122.4194, 100));
+        grid.add(fence("a", 40.7128, -74.0060, 100));
+
+        assertEquals(1, grid.size());
+        assertTrue(grid.candidates(37.7749, -122.4194).isEmpty());
+        assertIds(grid.candidates(40.7128, -74.0060), "a");
+
+        assertNotNull(grid.remove("a"));
+        assertNull(grid.remove("a"));
+        assertTrue(grid.candidates(40.7128, -74.0060).isEmpty());
+    }
+
+    public void testFenceStraddlingTheAntimeridianIsListedOnBothSides() {
+        final GeofenceGrid grid = new GeofenceGrid();
+        // about 2km across, centered 550m west of the antimeridian at the equator
+        grid.add(fence("a", 0, 179.995, 1000));
+
+        assertIds(grid.candidates(0, 179.999), "a");
+        assertIds(grid.candidates(0, -179.999), "a");
+        assertIds(grid.candidates(0, -179.991), "a");
+        assertTrue(grid.candidates(0, -179.9).isEmpty());
+
+        grid.remove("a");
+        assertTrue(grid.candidates(0, -179.999).isEmpty());
+    }
+
+    public void testLongitudeOfExactly180SharesACellWithMinus180() {
+        final GeofenceGrid grid = new GeofenceGrid();
+        grid.add(fence("a", 0, -180, 10));
+        assertIds(grid.candidates(0, 180), "a");
+    }
+
+    public void testFenceNearAPoleIsListedAtEveryLongitude() {
+        final GeofenceGrid grid = new GeofenceGrid(1);
+        grid.add(fence("a", 90, 0, 50000));
+
+        assertIds(grid.candidates(89.9, 0), "a");
+        assertIds(grid.candidates(89.9, 179.5), "a");
+        assertIds(grid.candidates(89.9, -90), "a");
+    }
+
+    public void testNearestMatchesAFullSort() {
+        final GeofenceGrid grid = new GeofenceGrid();
+        final Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            grid.add(fence("f" + i, 37.7 + random.nextDouble() * 0.2, -122.5 + random.nextDouble() * 0.2, 50));
+        }
+
+        final List<LocalGeofence> nearest = grid.nearest(37.8, -122.4, 5);
+        assertEquals(5, nearest.size());
+        double previous = 0;
+        for (LocalGeofence fence : nearest) {
+            final double distance = distance(fence, 37.8, -122.4);
+            assertTrue(distance >= previous);
+            previous = distance;
+        }
+        // nothing left out is closer than the furthest returned
+        for (LocalGeofence fence : grid.getAll()) {
+            if (!nearest.contains(fence)) {
+                assertTrue(distance(fence, 37.8, -122.4) >= previous);
+            }
+        }
+        assertTrue(grid.nearest(37.8, -122.4, 0).isEmpty());
+        assertEquals(300, grid.nearest(37.8, -122.4, 1000).size());
+    }
+
+    public void testNearestAcrossTheAntimeridian() {
+        final GeofenceGrid grid = new GeofenceGrid();
+        grid.add(fence("east", 0, -179.995, 10));
+        grid.add(fence("far", 0, 179.9, 10));
+        grid.add(fence("farther", 0, 179.8, 10));
+
+        final List<LocalGeofence> nearest = grid.nearest(0, 179.995, 1);
+        assertEquals(1, nearest.size());
+        assertEquals("east", nearest.get(0).getRequestId());
+    }
+
+    private static LocalGeofence fence(String id, double latitude, double longitude, float radius) {
+        return new LocalGeofence(id, latitude, longitude, radius, ENTER, 0);
+    }
+
+    private static double distance(LocalGeofence fence, double latitude, double longitude) {
+        return GeoUtils.distanceBetween(latitude, longitude,
+                fence.getLatitude(), fence.getLongitude());
+    }
+
+    private static void assertIds(List<LocalGeofence> fences, String... ids) {
+        assertEquals(ids.length, fences.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], fences.get(i).getRequestId());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.geofence;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofenceStatusCodes;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class GeofenceRegistryTest extends TestCase {
+
+    private static final Status SUCCESS = new Status(0);
+    // any failure that is not one of the geofence specific codes is retried
+    private static final Status TRANSIENT = new Status(8);
+    private static final Status TOO_MANY = new Status(GeofenceStatusCodes.GEOFENCE_TOO_MANY_GEOFENCES);
+
+    private final List<List<Geofence>> mAdds = new ArrayList<>();
+    private final List<ResultCallback<Status>> mAddCallbacks = new ArrayList<>();
+    private final List<String> mResults = Collections.synchronizedList(new ArrayList<String>());
+    private CountDownLatch mResultLatch = new CountDownLatch(1);
+    private GeofenceRegistry mRegistry;
+
+    private final GeofenceRegistry.SetupCallback mCallback = new GeofenceRegistry.SetupCallback() {
+        @Override public void onSetupSuccessful() {
+            mResults.add("success");
+            mResultLatch.countDown();
+        }
+
+        @Override public void onSetupUnsuccessful(Status status) {
+            mResults.add("failure " + status.getStatusCode());
+            mResultLatch.countDown();
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRegistry = new GeofenceRegistry(new Handler(Looper.getMainLooper()), new GeofenceRegistry.Backend() {
+            @Override public boolean isConnected() {
+                return true;
+            }
+
+            @Override public void addGeofences(List<Geofence> geofences, ResultCallback<Status> callback) {
+                mAdds.add(geofences);
+                mAddCallbacks.add(callback);
+            }
+
+            @Override public void removeGeofences(List<String> requestIds, ResultCallback<Status> callback) {
+                callback.onResult(SUCCESS);
+            }
+
+            @Override public void removeAllGeofences(ResultCallback<Status> callback) {
+                callback.onResult(SUCCESS);
+            }
+        });
+        // flushed by hand, so that nothing is sent behind the test's back
+        mRegistry.setCoalesceMillis(60 * 60 * 1000l);
+        mRegistry.setRetryDelayMillis(60 * 60 * 1000l);
+    }
+
+    public void testReportsOnceForAllChunksOfOneCall() {
+        final List<Geofence> geofences = geofences("a", GeofenceRegistry.MAX_GEOFENCES_PER_CALL + 1);
+        mRegistry.putAll(geofences, mCallback);
+        mRegistry.flush();
+        assertEquals(2, mAdds.size());
+
+        mAddCallbacks.get(0).onResult(SUCCESS);
+        assertTrue(mResults.isEmpty());
+        mAddCallbacks.get(1).onResult(SUCCESS);
+        assertEquals(Arrays.asList("success"), mResults);
+    }
+
+    public void testReportsTheFailureOfAnyChunk() {
+        mRegistry.putAll(geofences("a", GeofenceRegistry.MAX_GEOFENCES_PER_CALL + 1), mCallback);
+        mRegistry.flush();
+
+        mAddCallbacks.get(0).onResult(TOO_MANY);
+        mAddCallbacks.get(1).onResult(SUCCESS);
+        assertEquals(Arrays.asList("failure " + GeofenceStatusCodes.GEOFENCE_TOO_MANY_GEOFENCES), mResults);
+    }
+
+    public void testReportsSuccessWhenNothingNeedsSending() throws InterruptedException {
+        final List<Geofence> geofences = geofences("a", 3);
+        mRegistry.putAll(geofences, mCallback);
+        mRegistry.flush();
+        mAddCallbacks.get(0).onResult(SUCCESS);
+        mResults.clear();
+        mResultLatch = new CountDownLatch(1);
+
+        mRegistry.putAll(geofences, mCallback);
+        assertTrue(mResultLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("success"), mResults);
+        assertFalse(mRegistry.hasPendingChanges());
+    }
+
+    public void testSeparateCallsAreReportedSeparately() {
+        mRegistry.putAll(geofences("a", 2), mCallback);
+        mRegistry.putAll(geofences("b", 2), mCallback);
+        mRegistry.flush();
+        assertEquals(1, mAdds.size());
+
+        mAddCallbacks.get(0).onResult(SUCCESS);
+        assertEquals(Arrays.asList("success", "success"), mResults);
+    }
+
+    public void testPlainPutsAreNotReported() {
+        mRegistry.put(new TestGeofence("a"));
+        mRegistry.flush();
+        mAddCallbacks.get(0).onResult(TOO_MANY);
+        assertTrue(mResults.isEmpty());
+    }
+
+    public void testWaitsForRetries() {
+        mRegistry.putAll(geofences("a", 2), mCallback);
+        mRegistry.flush();
+        mAddCallbacks.get(0).onResult(TRANSIENT);
+        assertTrue(mResults.isEmpty());
+        assertTrue(mRegistry.hasPendingChanges());
+
+        mRegistry.flush();
+        assertEquals(2, mAdds.size());
+        mAddCallbacks.get(1).onResult(SUCCESS);
+        assertEquals(Arrays.asList("success"), mResults);
+    }
+
+    public void testReportsTheLastFailureOnceRetriesRunOut() {
+        mRegistry.putAll(geofences("a", 1), mCallback);
+        mRegistry.flush();
+        for (int i = 0; i < GeofenceRegistry.MAX_RETRIES; i++) {
+            mAddCallbacks.get(i).onResult(TRANSIENT);
+            assertTrue(mResults.isEmpty());
+            mRegistry.flush();
+        }
+        mAddCallbacks.get(GeofenceRegistry.MAX_RETRIES).onResult(TRANSIENT);
+        assertEquals(Arrays.asList("failure 8"), mResults);
+    }
+
+    public void testWaitsOnAFenceReplacedBeforeItWasSent() {
+        mRegistry.putAll(geofences("a", 1), mCallback);
+        final Geofence replacement = new TestGeofence("a0");
+        mRegistry.put(replacement);
+        mRegistry.flush();
+        assertEquals(Arrays.asList(replacement), mAdds.get(0));
+
+        mAddCallbacks.get(0).onResult(SUCCESS);
+        assertEquals(Arrays.asList("success"), mResults);
+    }
+
+    public void testFenceRemovedBeforeItWasSentIsSettled() {
+        mRegistry.putAll(geofences("a", 2), mCallback);
+        mRegistry.remove("a0");
+        assertTrue(mResults.isEmpty());
+        mRegistry.clear();
+        assertEquals(Arrays.asList("success"), mResults);
+    }
+
+    private static List<Geofence> geofences(String prefix, int count) {
+        final List<Geofence> geofences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            geofences.add(new TestGeofence(prefix + i));
+        }
+        return geofences;
+    }
+
+    /**
+     * Not parcelable, so that geofences are only ever identical to themselves.
+     */
+    private static final class TestGeofence implements Geofence {
+
+        private final String mRequestId;
+
+        TestGeofence(String requestId) {
+            mRequestId = requestId;
+        }
+
+        @Override public String getRequestId() {
+            return mRequestId;
+        }
+
+        @Override public String toString() {
+            return mRequestId;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.geofence;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.location.Geofence;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GeofenceTransitionCoalescerTest extends TestCase {
+
+    private static final int ENTER = Geofence.GEOFENCE_TRANSITION_ENTER;
+    private static final int EXIT = Geofence.GEOFENCE_TRANSITION_EXIT;
+    private static final int DWELL = Geofence.GEOFENCE_TRANSITION_DWELL;
+
+    private final List<List<GeofenceTransition>> mBatches = new ArrayList<>();
+    private GeofenceTransitionCoalescer mCoalescer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCoalescer = new GeofenceTransitionCoalescer(new Handler(Looper.getMainLooper()),
+                new GeofenceTransitionCoalescer.Listener() {
+                    @Override public void onTransitions(List<GeofenceTransition> transitions) {
+                        mBatches.add(transitions);
+                    }
+                });
+    }
+
+    public void testDeliversStateChangesInOneBatch() {
+        mCoalescer.offer("a", ENTER, 1);
+        mCoalescer.offer("b", ENTER, 2);
+        mCoalescer.offer("a", DWELL, 3);
+        mCoalescer.flush();
+
+        assertEquals(1, mBatches.size());
+        assertTransitions(mBatches.get(0), "a", ENTER, "b", ENTER, "a", DWELL);
+        assertTrue(mCoalescer.isInside("a"));
+        assertTrue(mCoalescer.isInside("b"));
+    }
+
+    public void testDropsTransitionsThatDontChangeState() {
+        mCoalescer.offer("a", ENTER, 1);
+        mCoalescer.offer("a", ENTER, 2);
+        mCoalescer.offer("a", DWELL, 3);
+        mCoalescer.offer("a", DWELL, 4);
+        mCoalescer.offer("a", EXIT, 5);
+        mCoalescer.offer("a", EXIT, 6);
+        mCoalescer.flush();
+
+        assertTransitions(mBatches.get(0), "a", ENTER, "a", DWELL, "a", EXIT);
+        assertFalse(mCoalescer.isInside("a"));
+    }
+
+    public void testFlushWithNothingCollectedDeliversNothing() {
+        mCoalescer.flush();
+        mCoalescer.offer("a", ENTER, 1);
+        mCoalescer.flush();
+        mCoalescer.flush();
+
+        assertEquals(1, mBatches.size());
+    }
+
+    public void testPassesOnExitForFenceWithUnknownState() {
+        // as after a restart while inside the fence
+        mCoalescer.offer("a", EXIT, 1);
+        mCoalescer.flush();
+
+        assertTransitions(mBatches.get(0), "a", EXIT);
+    }
+
+    public void testForgottenFenceStartsOverUnknown() {
+        mCoalescer.offer("a", ENTER, 1);
+        mCoalescer.offer("a", EXIT, 2);
+        mCoalescer.forget("a");
+        assertFalse(mCoalescer.getRequestIds().contains("a"));
+        mCoalescer.offer("a", EXIT, 3);
+        mCoalescer.flush();
+
+        assertTransitions(mBatches.get(0), "a", ENTER, "a", EXIT, "a", EXIT);
+    }
+
+    public void testDebounceDropsFlipsWithinTheWindow() {
+        mCoalescer.setDebounceMillis(60000);
+        mCoalescer.offer("a", ENTER, 1);
+        mCoalescer.offer("a", EXIT, 2);
+        mCoalescer.offer("b", ENTER, 3);
+        mCoalescer.flush();
+        assertTrue(mBatches.isEmpty());
+
+        mCoalescer.drain();
+        assertEquals(1, mBatches.size());
+        assertTransitions(mBatches.get(0), "b", ENTER);
+        assertFalse(mCoalescer.isInside("a"));
+    }
+
+    public void testDebounceKeepsStateWhenExitIsUndone() {
+        mCoalescer.offer("a", ENTER, 1);
+        mCoalescer.flush();
+        mCoalescer.setDebounceMillis(60000);
+        mCoalescer.offer("a", EXIT, 2);
+        mCoalescer.offer("a", ENTER, 3);
+        mCoalescer.drain();
+
+        assertEquals(1, mBatches.size());
+        assertTrue(mCoalescer.isInside("a"));
+    }
+
+    public void testDwellConfirmsHeldEnterRightAway() {
+        mCoalescer.setDebounceMillis(60000);
+        mCoalescer.offer("a", ENTER, 1);
+        mCoalescer.offer("a", DWELL, 2);
+        mCoalescer.flush();
+
+        assertEquals(1, mBatches.size());
+        assertTransitions(mBatches.get(0), "a", ENTER, "a", DWELL);
+    }
+
+    /**
+     * @param expected request id and transition pairs
+     */
+    private static void assertTransitions(List<GeofenceTransition> transitions, Object... expected) {
+        assertEquals(expected.length / 2, transitions.size());
+        for (int i = 0; i < transitions.size(); i++) {
+            assertEquals(expected[2 * i], transitions.get(i).getRequestId());
+            assertEquals(((Integer) expected[2 * i + 1]).intValue(), transitions.get(i).getTransition());
+        }
+    }
+}
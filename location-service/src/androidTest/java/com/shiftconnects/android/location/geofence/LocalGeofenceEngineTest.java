@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.geofence;
+
+import com.google.android.gms.location.Geofence;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LocalGeofenceEngineTest extends TestCase {
+
+    private static final int ENTER = Geofence.GEOFENCE_TRANSITION_ENTER;
+    private static final int EXIT = Geofence.GEOFENCE_TRANSITION_EXIT;
+    private static final int DWELL = Geofence.GEOFENCE_TRANSITION_DWELL;
+    private static final int ALL = ENTER | EXIT | DWELL;
+
+    // a fence with a 100m radius, and points inside and well outside it
+    private static final double LATITUDE = 37.7749;
+    private static final double LONGITUDE = -122.4194;
+    private static final double OUTSIDE_LATITUDE = 37.7849;
+
+    private final List<String> mEvents = new ArrayList<>();
+    private LocalGeofenceEngine mEngine;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mEngine = new LocalGeofenceEngine(new LocalGeofenceEngine.Listener() {
+            @Override public void onGeofenceEntered(String geofenceId) {
+                mEvents.add("enter " + geofenceId);
+            }
+
+            @Override public void onGeofenceDwelled(String geofenceId) {
+                mEvents.add("dwell " + geofenceId);
+            }
+
+            @Override public void onGeofenceExited(String geofenceId) {
+                mEvents.add("exit " + geofenceId);
+            }
+        });
+    }
+
+    public void testEnterDwellExit() {
+        mEngine.addGeofence(fence("a", ALL, 1000));
+
+        mEngine.onLocation(LATITUDE, LONGITUDE, 0l);
+        mEngine.onLocation(LATITUDE, LONGITUDE, 500l);
+        assertTrue(mEngine.isInside("a"));
+        mEngine.onLocation(LATITUDE, LONGITUDE, 1000l);
+        mEngine.onLocation(LATITUDE, LONGITUDE, 2000l);
+        mEngine.onLocation(OUTSIDE_LATITUDE, LONGITUDE, 3000l);
+        mEngine.onLocation(OUTSIDE_LATITUDE, LONGITUDE, 4000l);
+
+        assertEvents("enter a", "dwell a", "exit a");
+        assertFalse(mEngine.isInside("a"));
+    }
+
+    public void testOnlyReportsTheFencesTransitionTypes() {
+        mEngine.addGeofence(fence("a", EXIT, 0));
+
+        mEngine.onLocation(LATITUDE, LONGITUDE, 0l);
+        assertTrue(mEngine.isInside("a"));
+        mEngine.onLocation(OUTSIDE_LATITUDE, LONGITUDE, 1000l);
+
+        assertEvents("exit a");
+    }
+
+    public void testAppliedTransitionsHonorTheTransitionTypes() {
+        mEngine.addGeofence(fence("enter", ENTER, 0));
+        mEngine.addGeofence(fence("exit", EXIT, 0));
+
+        for (String id : Arrays.asList("enter", "exit")) {
+            assertTrue(mEngine.applyTransition(id, ENTER, 0l));
+            assertTrue(mEngine.applyTransition(id, DWELL, 1000l));
+            assertTrue(mEngine.isInside(id));
+            assertTrue(mEngine.applyTransition(id, EXIT, 2000l));
+            assertFalse(mEngine.isInside(id));
+        }
+
+        assertEvents("enter enter", "exit exit");
+    }
+
+    public void testAppliedTransitionsOnlyReportStateChanges() {
+        mEngine.addGeofence(fence("a", ALL, 0));
+
+        mEngine.onLocation(LATITUDE, LONGITUDE, 0l);
+        mEngine.applyTransition("a", ENTER, 0l);
+        mEngine.applyTransition("a", DWELL, 0l);
+        mEngine.applyTransition("a", EXIT, 1000l);
+        mEngine.applyTransition("a", EXIT, 1000l);
+
+        // the location already reported the dwell, since the loitering delay is 0
+        assertEvents("enter a", "dwell a", "exit a");
+        assertFalse(mEngine.applyTransition("unknown", ENTER, 0l));
+    }
+
+    public void testSetGeofencesDropsRemovedFencesWithoutAnExit() {
+        mEngine.addGeofence(fence("a", ALL, 60000));
+        mEngine.addGeofence(fence("b", ALL, 60000));
+        mEngine.onLocation(LATITUDE, LONGITUDE, 0l);
+        mEvents.clear();
+
+        mEngine.setGeofences(Arrays.asList(fence("b", ALL, 60000)));
+        assertFalse(mEngine.contains("a"));
+        assertFalse(mEngine.isInside("a"));
+        assertTrue(mEngine.isInside("b"));
+
+        mEngine.onLocation(OUTSIDE_LATITUDE, LONGITUDE, 1000l);
+        assertEvents("exit b");
+    }
+
+    public void testRemoveGeofenceForgetsState() {
+        mEngine.addGeofence(fence("a", ALL, 60000));
+        mEngine.onLocation(LATITUDE, LONGITUDE, 0l);
+        mEngine.removeGeofence("a");
+        mEngine.onLocation(OUTSIDE_LATITUDE, LONGITUDE, 1000l);
+
+        assertEvents("enter a");
+    }
+
+    public void testFenceAcrossTheAntimeridian() {
+        mEngine.addGeofence(new LocalGeofence("a", 0, 179.999, 500, ALL, 60000));
+
+        mEngine.onLocation(0, -179.999, 0l);
+        assertTrue(mEngine.isInside("a"));
+        mEngine.onLocation(0, 179.999, 1000l);
+        mEngine.onLocation(0, -179.99, 2000l);
+
+        assertEvents("enter a", "exit a");
+    }
+
+    private static LocalGeofence fence(String id, int transitionTypes, int loiteringDelay) {
+        return new LocalGeofence(id, LATITUDE, LONGITUDE, 100, transitionTypes, loiteringDelay);
+    }
+
+    private void assertEvents(String... events) {
+        assertEquals(Arrays.asList(events), mEvents);
+    }
+}
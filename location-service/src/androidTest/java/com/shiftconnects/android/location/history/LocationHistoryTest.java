@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.history;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+public class LocationHistoryTest extends TestCase {
+
+    public void testRejectsNonPositiveCapacity() {
+        try {
+            new LocationHistory(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testPositionsRunFromOldestToNewest() {
+        final LocationHistory history = new LocationHistory(4);
+        assertTrue(history.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            history.add(i, -i, i, 2 * i, 3 * i, i * 1000l, i * 1000000l);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(4, history.capacity());
+        for (int i = 0; i < 3; i++) {
+            assertEquals((double) i, history.getLatitude(i));
+            assertEquals((double) -i, history.getLongitude(i));
+            assertEquals((float) i, history.getAccuracy(i));
+            assertEquals(2f * i, history.getSpeed(i));
+            assertEquals(3f * i, history.getBearing(i));
+            assertEquals(i * 1000l, history.getTime(i));
+            assertEquals(i * 1000000l, history.getElapsedRealtimeNanos(i));
+        }
+    }
+
+    public void testOverwritesTheOldestFixOnceFull() {
+        final LocationHistory history = new LocationHistory(3);
+        for (int i = 0; i < 7; i++) {
+            history.add(i, 0, 5f, Float.NaN, Float.NaN, i * 1000l, 0l);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(7l, history.getAddedCount());
+        assertEquals(4.0, history.getLatitude(0));
+        assertEquals(5.0, history.getLatitude(1));
+        assertEquals(6.0, history.getLatitude(2));
+    }
+
+    public void testIgnoresFixesThatAreNotNewer() {
+        final LocationHistory history = new LocationHistory(3);
+        assertTrue(history.add(0, 0, 5f, Float.NaN, Float.NaN, 2000l, 0l));
+        assertFalse(history.add(1, 0, 5f, Float.NaN, Float.NaN, 2000l, 0l));
+        assertFalse(history.add(2, 0, 5f, Float.NaN, Float.NaN, 1000l, 0l));
+        assertEquals(1, history.size());
+        assertEquals(1l, history.getAddedCount());
+
+        // also once the ring has wrapped, against the newest fix rather than the last slot
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(history.add(i, 0, 5f, Float.NaN, Float.NaN, 2000l + i * 1000l, 0l));
+        }
+        assertFalse(history.add(9, 0, 5f, Float.NaN, Float.NaN, 5500l, 0l));
+        assertEquals(4.0, history.getLatitude(2));
+
+        // a cleared history takes any fix
+        history.clear();
+        assertTrue(history.add(0, 0, 5f, Float.NaN, Float.NaN, 0l, 0l));
+    }
+
+    public void testPositionOutOfRangeThrows() {
+        final LocationHistory history = new LocationHistory(3);
+        history.add(0, 0, 5f, Float.NaN, Float.NaN, 0l, 0l);
+        try {
+            history.getTime(1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            history.getTime(-1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testClearKeepsTheAddedCount() {
+        final LocationHistory history = new LocationHistory(3);
+        history.add(0, 0, 5f, Float.NaN, Float.NaN, 0l, 0l);
+        history.add(1, 0, 5f, Float.NaN, Float.NaN, 1000l, 0l);
+        history.clear();
+
+        assertTrue(history.isEmpty());
+        assertEquals(2l, history.getAddedCount());
+
+        history.add(2, 0, 5f, Float.NaN, Float.NaN, 2000l, 0l);
+        assertEquals(1, history.size());
+        assertEquals(2.0, history.getLatitude(0));
+    }
+
+    public void testMissingValuesRoundTripThroughLocation() {
+        final LocationHistory history = new LocationHistory(2);
+        final Location without = new Location("test");
+        without.setLatitude(37);
+        without.setLongitude(-122);
+        without.setTime(1000l);
+        history.add(without);
+
+        final Location with = new Location("test");
+        with.setLatitude(38);
+        with.setLongitude(-121);
+        with.setAccuracy(12f);
+        with.setSpeed(3f);
+        with.setBearing(90f);
+        with.setTime(2000l);
+        history.add(with);
+
+        assertTrue(Float.isNaN(history.getAccuracy(0)));
+        assertTrue(Float.isNaN(history.getSpeed(0)));
+        assertTrue(Float.isNaN(history.getBearing(0)));
+
+        // reusing one location must clear values the previous fix had
+        final Location out = new Location("test");
+        history.getLocation(1, out);
+        assertEquals(38.0, out.getLatitude());
+        assertEquals(12f, out.getAccuracy());
+        assertEquals(3f, out.getSpeed());
+        assertEquals(90f, out.getBearing());
+        assertEquals(2000l, out.getTime());
+
+        history.getLocation(0, out);
+        assertEquals(37.0, out.getLatitude());
+        assertFalse(out.hasAccuracy());
+        assertFalse(out.hasSpeed());
+        assertFalse(out.hasBearing());
+        assertEquals(1000l, out.getTime());
+    }
+
+    public void testLowerBoundAcrossTheWrap() {
+        final LocationHistory history = new LocationHistory(5);
+        // times 3000..7000, with the oldest stored in the middle of the columns
+        for (int i = 0; i < 8; i++) {
+            history.add(i, 0, 5f, Float.NaN, Float.NaN, i * 1000l, 0l);
+        }
+
+        assertEquals(0, history.lowerBound(0l));
+        assertEquals(0, history.lowerBound(3000l));
+        assertEquals(1, history.lowerBound(3001l));
+        assertEquals(2, history.lowerBound(5000l));
+        assertEquals(4, history.lowerBound(7000l));
+        assertEquals(5, history.lowerBound(7001l));
+        assertEquals(0, new LocationHistory(5).lowerBound(0l));
+    }
+
+    public void testQueryIteratesTheHalfOpenRange() {
+        final LocationHistory history = new LocationHistory(5);
+        for (int i = 0; i < 8; i++) {
+            history.add(i, 0, 5f, Float.NaN, Float.NaN, i * 1000l, 0l);
+        }
+
+        final LocationHistory.Cursor cursor = history.query(4000l, 6000l, history.newCursor());
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToNext());
+        assertEquals(1, cursor.getPosition());
+        assertEquals(4000l, cursor.getTime());
+        assertEquals(4.0, cursor.getLatitude());
+        assertTrue(cursor.moveToNext());
+        assertEquals(5000l, cursor.getTime());
+        assertFalse(cursor.moveToNext());
+
+        // an inverted range is empty rather than negative
+        assertEquals(0, history.query(6000l, 4000l, cursor).getCount());
+        assertFalse(cursor.moveToNext());
+
+        history.queryAll(cursor);
+        assertEquals(5, cursor.getCount());
+        long previous = Long.MIN_VALUE;
+        while (cursor.moveToNext()) {
+            assertTrue(cursor.getTime() > previous);
+            previous = cursor.getTime();
+        }
+        assertEquals(7000l, previous);
+    }
+}
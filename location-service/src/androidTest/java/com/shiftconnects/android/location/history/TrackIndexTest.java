@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.history;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Random;
+
+public class TrackIndexTest extends TestCase {
+
+    public void testNearestMatchesAFullScan() {
+        // a wandering track that wraps the history several times, so old fixes leave the index
+        final LocationHistory history = new LocationHistory(500);
+        final TrackIndex index = new TrackIndex(history);
+        final Random random = new Random(7);
+        double latitude = 37.77;
+        double longitude = -122.42;
+        for (int i = 0; i < 2000; i++) {
+            latitude += (random.nextDouble() - 0.5) * 0.002;
+            longitude += (random.nextDouble() - 0.5) * 0.002;
+            history.add(latitude, longitude, 5f, Float.NaN, Float.NaN, i * 1000l, 0l);
+            if (i % 7 == 0) {
+                index.update();
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            final double queryLatitude = 37.77 + (random.nextDouble() - 0.5) * 0.2;
+            final double queryLongitude = -122.42 + (random.nextDouble() - 0.5) * 0.2;
+            assertEquals(scanNearest(history, queryLatitude, queryLongitude),
+                    index.nearest(queryLatitude, queryLongitude));
+        }
+    }
+
+    public void testNearestOfEmptyHistory() {
+        final LocationHistory history = new LocationHistory(10);
+        final TrackIndex index = new TrackIndex(history);
+        assertEquals(-1, index.nearest(37, -122));
+
+        history.add(37, -122, 5f, Float.NaN, Float.NaN, 0l, 0l);
+        assertEquals(0, index.nearest(10, 10));
+
+        history.clear();
+        assertEquals(-1, index.nearest(37, -122));
+    }
+
+    public void testLocationAtInterpolatesBetweenFixes() {
+        final LocationHistory history = new LocationHistory(10);
+        history.add(37.0, -122.0, 10f, 2f, Float.NaN, 1000l, 0l);
+        history.add(37.2, -122.4, 20f, 4f, Float.NaN, 3000l, 0l);
+        final TrackIndex index = new TrackIndex(history);
+
+        final Location location = index.locationAt(1500l, new Location("test"));
+        assertNotNull(location);
+        assertEquals(37.05, location.getLatitude(), 1e-9);
+        assertEquals(-122.1, location.getLongitude(), 1e-9);
+        assertEquals(1500l, location.getTime());
+        assertEquals(12.5f, location.getAccuracy(), 1e-4f);
+        assertEquals(2.5f, location.getSpeed(), 1e-4f);
+
+        assertEquals(37.2, index.locationAt(3000l, new Location("test")).getLatitude(), 1e-9);
+        assertNull(index.locationAt(999l, new Location("test")));
+        assertNull(index.locationAt(3001l, new Location("test")));
+    }
+
+    public void testSegmentsWithinSplitsRunsThatLeaveTheBox() {
+        final LocationHistory history = new LocationHistory(100);
+        final TrackIndex index = new TrackIndex(history);
+        // in, in, out, out, in, in, in
+        final double[] latitudes = { 37.001, 37.002, 37.5, 37.6, 37.003, 37.004, 37.005 };
+        for (int i = 0; i < latitudes.length; i++) {
+            history.add(latitudes[i], -122.005, 5f, Float.NaN, Float.NaN, i * 1000l, 0l);
+        }
+
+        final List<TrackIndex.Segment> segments = index.segmentsWithin(37.0, -122.01, 37.01, -122.0);
+        assertEquals(2, segments.size());
+        assertEquals(0, segments.get(0).getStart());
+        assertEquals(2, segments.get(0).getEnd());
+        assertEquals(4, segments.get(1).getStart());
+        assertEquals(7, segments.get(1).getEnd());
+        assertEquals(4000l, segments.get(1).getStartTime());
+        assertEquals(6000l, segments.get(1).getEndTime());
+
+        assertTrue(index.segmentsWithin(10, 10, 11, 11).isEmpty());
+    }
+
+    public void testSegmentsWithinBoxAcrossTheAntimeridian() {
+        final LocationHistory history = new LocationHistory(100);
+        final TrackIndex index = new TrackIndex(history);
+        history.add(0, 179.995, 5f, Float.NaN, Float.NaN, 0l, 0l);
+        history.add(0, -179.995, 5f, Float.NaN, Float.NaN, 1000l, 0l);
+        history.add(0, -170, 5f, Float.NaN, Float.NaN, 2000l, 0l);
+
+        final List<TrackIndex.Segment> segments = index.segmentsWithin(-1, 179.99, 1, -179.99);
+        assertEquals(1, segments.size());
+        assertEquals(0, segments.get(0).getStart());
+        assertEquals(2, segments.get(0).getEnd());
+    }
+
+    /**
+     * Ranks fixes the way {@link TrackIndex#nearest(double, double)} does, by a flat approximation.
+     */
+    private static int scanNearest(LocationHistory history, double latitude, double longitude) {
+        final double cos = Math.cos(Math.toRadians(latitude));
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < history.size(); i++) {
+            final double dy = history.getLatitude(i) - latitude;
+            final double dx = (history.getLongitude(i) - longitude) * cos;
+            final double distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.journal;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrackJournalTest extends AndroidTestCase {
+
+    // header, then records of 44 payload bytes and a 4 byte checksum
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 48;
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "track-journal-test");
+        TrackJournal.delete(mDirectory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TrackJournal.delete(mDirectory);
+        super.tearDown();
+    }
+
+    public void testRecoversRecordsAfterReopening() throws IOException {
+        TrackJournal journal = new TrackJournal(mDirectory, 16, 4);
+        journal.append(37.1, -122.1, 5f, 1.5f, 90f, 1000l, 11l);
+        journal.append(37.2, -122.2, Float.NaN, Float.NaN, Float.NaN, 2000l, 22l);
+        journal.close();
+
+        journal = new TrackJournal(mDirectory, 16, 4);
+        journal.append(37.3, -122.3, 7f, 0f, 180f, 3000l, 33l);
+        final Records records = read(journal);
+        journal.close();
+
+        assertEquals(3, records.size());
+        assertEquals(37.1, records.latitudes.get(0), 0);
+        assertEquals(-122.1, records.longitudes.get(0), 0);
+        assertEquals(5f, records.accuracies.get(0), 0f);
+        assertTrue(Float.isNaN(records.accuracies.get(1)));
+        assertEquals(1000l, (long) records.times.get(0));
+        assertEquals(2000l, (long) records.times.get(1));
+        assertEquals(3000l, (long) records.times.get(2));
+    }
+
+    public void testTornRecordIsOverwritten() throws IOException {
+        TrackJournal journal = new TrackJournal(mDirectory, 16, 4);
+        for (int i = 1; i <= 3; i++) {
+            journal.append(37, -122, 5f, 0f, 0f, i * 1000l, 0l);
+        }
+        journal.close();
+
+        // flip a byte of the last record, as if the process died while writing it
+        final RandomAccessFile file = new RandomAccessFile(segment(0), "rw");
+        try {
+            final long offset = HEADER_SIZE + 2 * RECORD_SIZE;
+            file.seek(offset);
+            final int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0xff);
+        } finally {
+            file.close();
+        }
+
+        journal = new TrackJournal(mDirectory, 16, 4);
+        assertEquals(2, read(journal).size());
+        journal.append(37, -122, 5f, 0f, 0f, 4000l, 0l);
+        final Records records = read(journal);
+        journal.close();
+
+        assertEquals(3, records.size());
+        assertEquals(4000l, (long) records.times.get(2));
+    }
+
+    public void testDeletesOldestSegments() throws IOException {
+        final TrackJournal journal = new TrackJournal(mDirectory, 2, 2);
+        for (int i = 1; i <= 7; i++) {
+            journal.append(37, -122, 5f, 0f, 0f, i, 0l);
+        }
+        final Records records = read(journal);
+        journal.close();
+
+        assertFalse(segment(0).exists());
+        assertFalse(segment(1).exists());
+        assertEquals(3, records.size());
+        assertEquals(5l, (long) records.times.get(0));
+        assertEquals(7l, (long) records.times.get(2));
+    }
+
+    public void testResetEmptiesTheJournal() throws IOException {
+        final TrackJournal journal = new TrackJournal(mDirectory, 2, 2);
+        for (int i = 1; i <= 3; i++) {
+            journal.append(37, -122, 5f, 0f, 0f, i, 0l);
+        }
+        journal.reset();
+        journal.append(37, -122, 5f, 0f, 0f, 10l, 0l);
+        final Records records = read(journal);
+        journal.close();
+
+        assertEquals(1, records.size());
+        assertEquals(10l, (long) records.times.get(0));
+    }
+
+    private File segment(long number) {
+        return new File(mDirectory, "segment-" + String.format("%010d", number) + ".jnl");
+    }
+
+    private static Records read(TrackJournal journal) throws IOException {
+        final Records records = new Records();
+        journal.read(records);
+        return records;
+    }
+
+    private static class Records implements TrackJournal.Visitor {
+        final List<Double> latitudes = new ArrayList<>();
+        final List<Double> longitudes = new ArrayList<>();
+        final List<Float> accuracies = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+
+        @Override
+        public void onRecord(double latitude, double longitude, float accuracy, float speed,
+                float bearing, long time, long elapsedRealtimeNanos) {
+            latitudes.add(latitude);
+            longitudes.add(longitude);
+            accuracies.add(accuracy);
+            times.add(time);
+        }
+
+        int size() {
+            return times.size();
+        }
+    }
+}
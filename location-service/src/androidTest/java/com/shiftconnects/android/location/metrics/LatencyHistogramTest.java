@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.metrics;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        assertEquals(0, histogram.getPercentileNanos(1));
+    }
+
+    public void testSmallValuesAreExact() {
+        for (long value = 0; value < 8; value++) {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            // a far larger second value keeps the max from capping the first one's bucket
+            histogram.record(1l << 40);
+            assertEquals(value, histogram.getPercentileNanos(0.5));
+        }
+    }
+
+    public void testPercentilesAreWithinAQuarterOfTheValue() {
+        final Random random = new Random(9);
+        for (int i = 0; i < 10000; i++) {
+            final long value = random.nextLong() >>> (1 + random.nextInt(62));
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+            final long reported = histogram.getPercentileNanos(0.5);
+            assertTrue(value + " reported as " + reported, reported >= value && reported - value <= value / 4);
+        }
+    }
+
+    public void testPercentilesOfAUniformRange() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getTotalNanos());
+        assertEquals(500, histogram.getMeanNanos());
+        assertEquals(1000, histogram.getMaxNanos());
+
+        assertBetween(500, 625, histogram.getPercentileNanos(0.5));
+        assertBetween(990, 1000, histogram.getPercentileNanos(0.99));
+        assertEquals(1000, histogram.getPercentileNanos(1));
+        // the lowest rank is the first value rather than nothing
+        assertEquals(1, histogram.getPercentileNanos(0));
+    }
+
+    public void testNegativeDurationsCountAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getTotalNanos());
+        assertEquals(0, histogram.getPercentileNanos(1));
+    }
+
+    public void testLargestValue() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getMaxNanos());
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(0.5));
+    }
+
+    public void testCopyIsIndependent() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        final LatencyHistogram copy = histogram.copy();
+        histogram.record(1000000);
+
+        assertEquals(1, copy.getCount());
+        assertEquals(100, copy.getMaxNanos());
+        assertEquals(100, copy.getPercentileNanos(1));
+        assertEquals(2, histogram.getCount());
+    }
+
+    public void testConcurrentRecording() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i * 4 + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(39999, histogram.getMaxNanos());
+        assertEquals(39999l * 40000 / 2, histogram.getTotalNanos());
+    }
+
+    public void testToStringFormatsUnits() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1500000);
+        histogram.record(2000000000l);
+        final String string = histogram.toString();
+        assertTrue(string, string.startsWith("n=2 "));
+        assertTrue(string, string.contains("max=2000ms"));
+    }
+
+    private static void assertBetween(long low, long high, long actual) {
+        assertTrue(actual + " not in [" + low + ", " + high + "]", actual >= low && actual <= high);
+    }
+}
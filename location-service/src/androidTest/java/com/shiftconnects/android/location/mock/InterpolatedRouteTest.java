@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.mock;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InterpolatedRouteTest extends TestCase {
+
+    private static final double LATITUDE = 37.7749;
+    private static final double LONGITUDE = -122.4194;
+    private static final double NORTH = 1 / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+    private static final double EAST = 1 / GeoUtils.metersPerDegreeLongitude(LATITUDE);
+
+    private static final LatLng START = new LatLng(LATITUDE, LONGITUDE);
+
+    public void testRejectsInvalidArguments() {
+        try {
+            new InterpolatedRoute(0, 5f, 10f, START);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new InterpolatedRoute(1000, 5f, 0f, START);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testMovesAtConstantSpeed() {
+        final InterpolatedRoute route = new InterpolatedRoute(1000, 5f, 10f,
+                START, new LatLng(LATITUDE + 100 * NORTH, LONGITUDE));
+        final List<MockFix> fixes = play(route);
+
+        assertEquals(11, fixes.size());
+        for (int i = 0; i < fixes.size(); i++) {
+            final MockFix fix = fixes.get(i);
+            assertEquals(i * 1000l, fix.offsetMillis);
+            assertEquals(i * 10, distanceFromStart(fix), 0.01);
+            assertEquals(5f, fix.accuracy);
+            assertEquals(10f, fix.speed);
+            assertEquals(0f, fix.bearing, 0.01f);
+        }
+    }
+
+    public void testStopsOnTheLastWaypointPartWayThroughAnInterval() {
+        final InterpolatedRoute route = new InterpolatedRoute(1000, 5f, 10f,
+                START, new LatLng(LATITUDE + 95 * NORTH, LONGITUDE));
+        final List<MockFix> fixes = play(route);
+
+        assertEquals(11, fixes.size());
+        final MockFix last = fixes.get(10);
+        assertEquals(9500l, last.offsetMillis);
+        assertEquals(95, distanceFromStart(last), 0.01);
+    }
+
+    public void testCarriesDistanceAroundCorners() {
+        final LatLng corner = new LatLng(LATITUDE + 15 * NORTH, LONGITUDE);
+        final InterpolatedRoute route = new InterpolatedRoute(1000, 5f, 10f,
+                START, corner, new LatLng(LATITUDE + 15 * NORTH, LONGITUDE + 15 * EAST));
+        final List<MockFix> fixes = play(route);
+
+        assertEquals(4, fixes.size());
+        // 20m along the route is 5m past the corner, heading east
+        final MockFix fix = fixes.get(2);
+        assertEquals(5, GeoUtils.distanceBetween(corner.latitude, corner.longitude,
+                fix.latitude, fix.longitude), 0.01);
+        assertEquals(90f, fix.bearing, 0.01f);
+        assertEquals(3000l, fixes.get(3).offsetMillis);
+    }
+
+    public void testSpeedProfileCanPause() {
+        final InterpolatedRoute route = new InterpolatedRoute(1000, 5f, new InterpolatedRoute.SpeedProfile() {
+            @Override public float getSpeed(long offsetMillis, double distance) {
+                // stop for two intervals at 10m
+                return offsetMillis >= 1000l && offsetMillis < 3000l ? 0f : 10f;
+            }
+        }, START, new LatLng(LATITUDE + 30 * NORTH, LONGITUDE));
+        final List<MockFix> fixes = play(route);
+
+        final double[] distances = { 0, 10, 10, 10, 20, 30 };
+        assertEquals(distances.length, fixes.size());
+        for (int i = 0; i < distances.length; i++) {
+            assertEquals(i * 1000l, fixes.get(i).offsetMillis);
+            assertEquals(distances[i], distanceFromStart(fixes.get(i)), 0.01);
+        }
+    }
+
+    public void testSingleAndNoWaypoints() {
+        final InterpolatedRoute single = new InterpolatedRoute(1000, 5f, 10f, START);
+        final List<MockFix> fixes = play(single);
+        assertEquals(1, fixes.size());
+        assertEquals(LATITUDE, fixes.get(0).latitude);
+        assertTrue(Float.isNaN(fixes.get(0).bearing));
+
+        assertFalse(new InterpolatedRoute(1000, 5f, 10f).next(new MockFix()));
+    }
+
+    public void testNoiseIsRepeatableAcrossRewinds() {
+        final InterpolatedRoute route = new InterpolatedRoute(1000, 5f, 10f,
+                START, new LatLng(LATITUDE + 100 * NORTH, LONGITUDE));
+        route.setNoise(10, 20f, 42);
+        final List<MockFix> first = play(route);
+        route.rewind();
+        final List<MockFix> second = play(route);
+
+        assertEquals(first.size(), second.size());
+        boolean moved = false;
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).latitude, second.get(i).latitude);
+            assertEquals(first.get(i).longitude, second.get(i).longitude);
+            assertEquals(first.get(i).accuracy, second.get(i).accuracy);
+            assertTrue(first.get(i).accuracy >= 1f);
+            moved |= Math.abs(distanceFromStart(first.get(i)) - i * 10) > 0.5;
+        }
+        assertTrue(moved);
+    }
+
+    private static List<MockFix> play(InterpolatedRoute route) {
+        final List<MockFix> fixes = new ArrayList<>();
+        MockFix fix = new MockFix();
+        while (route.next(fix)) {
+            fixes.add(fix);
+            fix = new MockFix();
+        }
+        return fixes;
+    }
+
+    private static double distanceFromStart(MockFix fix) {
+        return GeoUtils.distanceBetween(LATITUDE, LONGITUDE, fix.latitude, fix.longitude);
+    }
+}
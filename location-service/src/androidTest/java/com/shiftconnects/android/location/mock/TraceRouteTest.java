@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.mock;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+public class TraceRouteTest extends AndroidTestCase {
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "trace-route-test");
+        mDirectory.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+        super.tearDown();
+    }
+
+    public void testForFileChoosesByExtension() {
+        assertTrue(TraceRoute.forFile(new File("a.GPX")) instanceof GpxTraceRoute);
+        assertTrue(TraceRoute.forFile(new File("a.nmea")) instanceof NmeaTraceRoute);
+        assertTrue(TraceRoute.forFile(new File("a.nma")) instanceof NmeaTraceRoute);
+        assertTrue(TraceRoute.forFile(new File("a.csv")) instanceof CsvTraceRoute);
+        try {
+            TraceRoute.forFile(new File("a.kml"));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testGpx() throws IOException {
+        final TraceRoute route = TraceRoute.forFile(write("track.gpx",
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.0\"><trk><trkseg>\n"
+                + "<trkpt lat=\"37.7749\" lon=\"-122.4194\"><ele>12.5</ele>"
+                + "<time>2015-03-03T17:04:05Z</time><hdop>1.5</hdop></trkpt>\n"
+                + "<trkpt lat=\"37.7750\" lon=\"-122.4195\"><time>not a time</time></trkpt>\n"
+                + "<trkpt lat=\"37.7751\" lon=\"-122.4196\"><time>2015-03-03T17:04:07.250Z</time>"
+                + "<speed>3.5</speed><course>271</course></trkpt>\n"
+                + "</trkseg></trk></gpx>\n"));
+        final MockFix fix = new MockFix();
+
+        assertTrue(route.next(fix));
+        assertEquals(0l, fix.offsetMillis);
+        assertEquals(37.7749, fix.latitude);
+        assertEquals(-122.4194, fix.longitude);
+        assertEquals(12.5, fix.altitude);
+        assertEquals(1.5f * TraceRoute.UERE, fix.accuracy);
+        assertTrue(Float.isNaN(fix.speed));
+
+        // the point without a valid time is skipped
+        assertTrue(route.next(fix));
+        assertEquals(2250l, fix.offsetMillis);
+        assertEquals(37.7751, fix.latitude);
+        assertEquals(3.5f, fix.speed);
+        assertEquals(271f, fix.bearing);
+        assertTrue(Float.isNaN(fix.accuracy));
+        assertTrue(Double.isNaN(fix.altitude));
+
+        assertFalse(route.next(fix));
+        route.close();
+    }
+
+    public void testNmea() throws IOException {
+        final TraceRoute route = TraceRoute.forFile(write("log.nmea",
+                sentence("GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,") + "\n"
+                + sentence("GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W") + "\n"
+                // bad checksum
+                + "$GPRMC,123520,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*00\n"
+                // void fix
+                + sentence("GPRMC,123521,V,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W") + "\n"
+                + "not nmea at all\n"
+                + sentence("GNRMC,123522.5,A,3351.000,S,15112.000,W,000.0,,230394,,") + "\n"));
+        final MockFix fix = new MockFix();
+
+        assertTrue(route.next(fix));
+        assertEquals(0l, fix.offsetMillis);
+        assertEquals(48 + 7.038 / 60, fix.latitude, 1e-9);
+        assertEquals(11 + 31.0 / 60, fix.longitude, 1e-9);
+        assertEquals(22.4f * 0.514444f, fix.speed, 1e-4f);
+        assertEquals(84.4f, fix.bearing);
+        // taken from the GGA sentence with the same time
+        assertEquals(0.9f * TraceRoute.UERE, fix.accuracy, 1e-6f);
+        assertEquals(545.4, fix.altitude);
+
+        assertTrue(route.next(fix));
+        assertEquals(3500l, fix.offsetMillis);
+        assertEquals(-(33 + 51.0 / 60), fix.latitude, 1e-9);
+        assertEquals(-(151 + 12.0 / 60), fix.longitude, 1e-9);
+        assertEquals(0f, fix.speed);
+        assertTrue(Float.isNaN(fix.bearing));
+        assertTrue(Float.isNaN(fix.accuracy));
+
+        assertFalse(route.next(fix));
+        route.close();
+    }
+
+    public void testCsv() throws IOException {
+        final TraceRoute route = TraceRoute.forFile(write("trace.csv",
+                "Timestamp, Lat, Lng, Accuracy\n"
+                + "1425402245000,37.7749,-122.4194,8\n"
+                + "\n"
+                + "garbage,37.7750,-122.4195,8\n"
+                + "2015-03-03T17:04:10.500+01:00,37.7751,-122.4196,\n"));
+        final MockFix fix = new MockFix();
+
+        assertTrue(route.next(fix));
+        assertEquals(0l, fix.offsetMillis);
+        assertEquals(37.7749, fix.latitude);
+        assertEquals(8f, fix.accuracy);
+        assertTrue(Float.isNaN(fix.speed));
+        assertTrue(Double.isNaN(fix.altitude));
+
+        // an hour earlier in UTC than it reads, and so earlier than the first fix
+        assertTrue(route.next(fix));
+        assertEquals(0l, fix.offsetMillis);
+        assertEquals(37.7751, fix.latitude);
+        assertTrue(Float.isNaN(fix.accuracy));
+
+        assertFalse(route.next(fix));
+        route.close();
+    }
+
+    public void testCsvNeedsTimeAndPosition() throws IOException {
+        final TraceRoute route = TraceRoute.forFile(write("trace.csv", "time,latitude,speed\n1,2,3\n"));
+        try {
+            route.next(new MockFix());
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        route.close();
+    }
+
+    public void testOffsetsNeverGoBack() throws IOException {
+        final TraceRoute route = TraceRoute.forFile(write("trace.csv",
+                "time,lat,lon\n10000,1,1\n15000,2,2\n12000,3,3\n16000,4,4\n"));
+        final MockFix fix = new MockFix();
+        final long[] offsets = { 0l, 5000l, 5000l, 6000l };
+        for (long offset : offsets) {
+            assertTrue(route.next(fix));
+            assertEquals(offset, fix.offsetMillis);
+        }
+        route.close();
+    }
+
+    public void testRewindStartsOver() throws IOException {
+        final TraceRoute route = TraceRoute.forFile(write("trace.csv",
+                "time,lat,lon\n10000,1,1\n15000,2,2\n"));
+        final MockFix fix = new MockFix();
+        assertTrue(route.next(fix));
+        assertTrue(route.next(fix));
+        route.rewind();
+
+        assertTrue(route.next(fix));
+        assertEquals(0l, fix.offsetMillis);
+        assertEquals(1.0, fix.latitude);
+        route.close();
+    }
+
+    public void testParseIso8601() {
+        assertEquals(0l, TraceRoute.parseIso8601("1970-01-01T00:00:00Z"));
+        assertEquals(1425402245250l, TraceRoute.parseIso8601("2015-03-03T17:04:05.25Z"));
+        assertEquals(1425402245000l, TraceRoute.parseIso8601("2015-03-03T17:04:05"));
+        assertEquals(1425402245000l, TraceRoute.parseIso8601("2015-03-03T09:04:05-08:00"));
+        assertEquals(1425402245000l, TraceRoute.parseIso8601("2015-03-03T22:34:05+0530"));
+        assertEquals(TraceRoute.END_OF_TRACE, TraceRoute.parseIso8601("yesterday"));
+        assertEquals(TraceRoute.END_OF_TRACE, TraceRoute.parseIso8601(null));
+    }
+
+    private File write(String name, String contents) throws IOException {
+        final File file = new File(mDirectory, name);
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * @return the sentence with its leading {@code $} and checksum
+     */
+    private static String sentence(String body) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return String.format("$%s*%02X", body, checksum);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.processing;
+
+import junit.framework.TestCase;
+
+public class AccuracyGateTest extends TestCase {
+
+    public void testAcceptsAccuraciesUpToTheLimit() {
+        final AccuracyGate gate = new AccuracyGate(50f);
+        assertTrue(gate.process(fix(0, 0, 10f, 0l)));
+        assertTrue(gate.process(fix(0, 0, 50f, 0l)));
+        assertFalse(gate.process(fix(0, 0, 50.5f, 0l)));
+    }
+
+    public void testMissingAccuracy() {
+        final LocationFix fix = fix(0, 0, 0f, 0l);
+        fix.hasAccuracy = false;
+        assertFalse(new AccuracyGate(50f).process(fix));
+        assertTrue(new AccuracyGate(50f, false).process(fix));
+    }
+
+    private static LocationFix fix(double latitude, double longitude, float accuracy, long time) {
+        final LocationFix fix = new LocationFix();
+        fix.latitude = latitude;
+        fix.longitude = longitude;
+        fix.hasAccuracy = true;
+        fix.accuracy = accuracy;
+        fix.time = time;
+        return fix;
+    }
+}
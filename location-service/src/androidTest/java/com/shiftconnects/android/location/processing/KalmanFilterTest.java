@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.processing;
+
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class KalmanFilterTest extends TestCase {
+
+    private static final double LATITUDE = 37.7749;
+    private static final double LONGITUDE = -122.4194;
+
+    public void testFirstFixPassesThroughUnchanged() {
+        final KalmanFilter filter = new KalmanFilter();
+        final LocationFix fix = fix(LATITUDE, LONGITUDE, 10f, 0l);
+        assertTrue(filter.process(fix));
+        assertEquals(LATITUDE, fix.latitude);
+        assertEquals(LONGITUDE, fix.longitude);
+        assertEquals(10f, fix.accuracy);
+    }
+
+    public void testSmoothsNoiseAroundAStationaryPoint() {
+        final KalmanFilter filter = new KalmanFilter();
+        final Random random = new Random(11);
+        double rawError = 0;
+        double filteredError = 0;
+        for (int i = 0; i < 200; i++) {
+            final double latitude = LATITUDE + random.nextGaussian() * 20 / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+            final double longitude = LONGITUDE + random.nextGaussian() * 20 / GeoUtils.metersPerDegreeLongitude(LATITUDE);
+            final LocationFix fix = fix(latitude, longitude, 20f, i * 1000l);
+            assertTrue(filter.process(fix));
+            if (i >= 20) {
+                rawError += GeoUtils.distanceBetween(LATITUDE, LONGITUDE, latitude, longitude);
+                filteredError += GeoUtils.distanceBetween(LATITUDE, LONGITUDE, fix.latitude, fix.longitude);
+            }
+        }
+        assertTrue("filtered " + filteredError + ", raw " + rawError, filteredError < rawError / 2);
+    }
+
+    public void testReportedAccuracyImprovesOnTheMeasurements() {
+        final KalmanFilter filter = new KalmanFilter();
+        LocationFix fix = null;
+        for (int i = 0; i < 10; i++) {
+            fix = fix(LATITUDE, LONGITUDE, 20f, i * 1000l);
+            filter.process(fix);
+        }
+        assertTrue(fix.accuracy < 20f);
+    }
+
+    public void testFollowsSteadyMovement() {
+        final KalmanFilter filter = new KalmanFilter();
+        // 10m/s due north
+        final double step = 10 / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+        LocationFix fix = null;
+        for (int i = 0; i < 60; i++) {
+            fix = fix(LATITUDE + i * step, LONGITUDE, 5f, i * 1000l);
+            filter.process(fix);
+        }
+        assertEquals(0, GeoUtils.distanceBetween(LATITUDE + 59 * step, LONGITUDE, fix.latitude, fix.longitude), 2);
+    }
+
+    public void testStartsOverAfterAGap() {
+        final KalmanFilter filter = new KalmanFilter(1f, 10000l);
+        for (int i = 0; i < 5; i++) {
+            filter.process(fix(LATITUDE, LONGITUDE, 20f, i * 1000l));
+        }
+        final LocationFix fix = fix(LATITUDE + 0.01, LONGITUDE, 20f, 4000l + 10001l);
+        filter.process(fix);
+        assertEquals(LATITUDE + 0.01, fix.latitude);
+        assertEquals(20f, fix.accuracy);
+    }
+
+    public void testStartsOverOnAnOutOfOrderFix() {
+        final KalmanFilter filter = new KalmanFilter();
+        for (int i = 0; i < 5; i++) {
+            filter.process(fix(LATITUDE, LONGITUDE, 20f, 10000l + i * 1000l));
+        }
+        final LocationFix fix = fix(LATITUDE + 0.01, LONGITUDE, 20f, 0l);
+        filter.process(fix);
+        assertEquals(LATITUDE + 0.01, fix.latitude);
+    }
+
+    public void testResetStartsOver() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.process(fix(LATITUDE, LONGITUDE, 20f, 0l));
+        filter.reset();
+        final LocationFix fix = fix(LATITUDE + 0.01, LONGITUDE, 20f, 1000l);
+        filter.process(fix);
+        assertEquals(LATITUDE + 0.01, fix.latitude);
+    }
+
+    public void testKeepsTrackingAfterMovingItsOrigin() {
+        final KalmanFilter filter = new KalmanFilter();
+        // 30m/s for 15 minutes is 27km, well past the distance the filter moves its origin at
+        final double step = 30 / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+        LocationFix fix = null;
+        for (int i = 0; i < 900; i++) {
+            fix = fix(LATITUDE + i * step, LONGITUDE, 5f, i * 1000l);
+            filter.process(fix);
+        }
+        assertEquals(0, GeoUtils.distanceBetween(LATITUDE + 899 * step, LONGITUDE, fix.latitude, fix.longitude), 2);
+    }
+
+    private static LocationFix fix(double latitude, double longitude, float accuracy, long time) {
+        final LocationFix fix = new LocationFix();
+        fix.latitude = latitude;
+        fix.longitude = longitude;
+        fix.hasAccuracy = true;
+        fix.accuracy = accuracy;
+        fix.time = time;
+        return fix;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.processing;
+
+import android.location.Location;
+import android.os.SystemClock;
+
+import com.shiftconnects.android.location.cache.LastLocationCache;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class KinematicsTrackerTest extends TestCase {
+
+    // roughly 11 meters of latitude
+    private static final double STEP = 0.0001;
+
+    public void testFirstFixHasNoMotion() {
+        final Kinematics kinematics = new KinematicsTracker().update(fix(37, -122, 1000l));
+        assertEquals(0l, kinematics.getTimeDelta());
+        assertEquals(0.0, kinematics.getDistance());
+        assertEquals(0.0, kinematics.getOdometer());
+        assertFalse(kinematics.hasHeading());
+    }
+
+    public void testOdometerAddsUpAndResets() {
+        final KinematicsTracker tracker = new KinematicsTracker();
+        tracker.update(fix(37, -122, 0l));
+        final Kinematics first = tracker.update(fix(37 + STEP, -122, 1000l));
+        final Kinematics second = tracker.update(fix(37 + 2 * STEP, -122, 2000l));
+
+        assertEquals(1000l, first.getTimeDelta());
+        assertEquals(11.1, first.getDistance(), 0.1);
+        assertEquals(first.getDistance() + second.getDistance(), second.getOdometer(), 1e-9);
+
+        tracker.reset();
+        assertNull(tracker.getLast());
+        assertEquals(0.0, tracker.update(fix(37, -122, 3000l)).getOdometer());
+    }
+
+    public void testHeadingWaitsForEnoughMovement() {
+        final KinematicsTracker tracker = new KinematicsTracker();
+        tracker.update(fix(37, -122, 0l));
+        // about 2 meters, within the jitter of a standing device
+        assertFalse(tracker.update(fix(37 + STEP / 5, -122, 1000l)).hasHeading());
+
+        final Kinematics north = tracker.update(fix(37 + STEP, -122, 2000l));
+        assertTrue(north.hasHeading());
+        assertEquals(0f, north.getHeading(), 1f);
+
+        // a short step west doesn't turn it, a long one does
+        assertEquals(0f, tracker.update(fix(37 + STEP, -122 - STEP / 5, 3000l)).getHeading(), 1f);
+        final float west = tracker.update(fix(37 + STEP, -122 - 2 * STEP, 4000l)).getHeading();
+        assertTrue(String.valueOf(west), west > 260 && west < 280);
+    }
+
+    public void testSmoothsSpeed() {
+        final KinematicsTracker tracker = new KinematicsTracker(5000l);
+        tracker.update(fix(37, -122, 0l));
+        final Location moving = fix(37 + STEP, -122, 1000l);
+        moving.setSpeed(10f);
+        final Kinematics kinematics = tracker.update(moving);
+
+        final double alpha = 1 - Math.exp(-1000.0 / 5000);
+        assertEquals(10 * alpha, kinematics.getSpeed(), 0.01);
+        assertEquals(10 * alpha, kinematics.getAcceleration(), 0.01);
+    }
+
+    public void testUnsmoothedSpeedComesFromDistance() {
+        final KinematicsTracker tracker = new KinematicsTracker(0l);
+        tracker.update(fix(37, -122, 0l));
+        final Kinematics kinematics = tracker.update(fix(37 + STEP, -122, 2000l));
+        assertEquals(kinematics.getDistance() / 2, kinematics.getSpeed(), 0.01);
+    }
+
+    public void testOutOfOrderFixesChangeNothing() {
+        final KinematicsTracker tracker = new KinematicsTracker();
+        tracker.update(fix(37, -122, 5000l));
+        final Kinematics moved = tracker.update(fix(37 + STEP, -122, 6000l));
+
+        final Kinematics late = tracker.update(fix(37 + 10 * STEP, -122, 4000l));
+        assertEquals(0l, late.getTimeDelta());
+        assertEquals(0.0, late.getDistance());
+        assertEquals(moved.getOdometer(), late.getOdometer());
+
+        // measured from the last fix in order
+        final Kinematics next = tracker.update(fix(37 + 2 * STEP, -122, 7000l));
+        assertEquals(1000l, next.getTimeDelta());
+        assertEquals(moved.getDistance(), next.getDistance(), 0.1);
+    }
+
+    public void testCachedFixIsNotABaseline() {
+        final KinematicsTracker tracker = new KinematicsTracker();
+        final Kinematics cached = tracker.update(LastLocationCache.copyWithAge(fix(10, 10, 0l)));
+        assertEquals(0.0, cached.getDistance());
+
+        tracker.update(fix(37, -122, 1000l));
+        final Kinematics live = tracker.update(fix(37 + STEP, -122, 2000l));
+        assertEquals(11.1, live.getOdometer(), 0.1);
+    }
+
+    public void testOldFixIsNotABaseline() {
+        final KinematicsTracker tracker = new KinematicsTracker();
+        final Location old = fix(10, 10, 0l);
+        old.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos()
+                - TimeUnit.MILLISECONDS.toNanos(KinematicsTracker.MAX_FIX_AGE + 1000));
+        tracker.update(old);
+
+        final Location live = fix(37, -122, 1000l);
+        live.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        assertEquals(0.0, tracker.update(live).getDistance());
+        assertEquals(0.0, tracker.getLast().getOdometer());
+    }
+
+    private static Location fix(double latitude, double longitude, long time) {
+        final Location location = new Location("test");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(time);
+        return location;
+    }
+}
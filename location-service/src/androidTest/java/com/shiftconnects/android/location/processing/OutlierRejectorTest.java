@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.processing;
+
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import junit.framework.TestCase;
+
+public class OutlierRejectorTest extends TestCase {
+
+    private static final double LATITUDE = 37.7749;
+    private static final double LONGITUDE = -122.4194;
+    private static final double METERS = 1 / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+
+    public void testAcceptsPlausibleMovement() {
+        final OutlierRejector rejector = new OutlierRejector(50f);
+        assertTrue(rejector.process(fix(LATITUDE, LONGITUDE, 0f, 0l)));
+        assertTrue(rejector.process(fix(LATITUDE + 49 * METERS, LONGITUDE, 0f, 1000l)));
+    }
+
+    public void testRejectsImplausibleJumps() {
+        final OutlierRejector rejector = new OutlierRejector(50f);
+        assertTrue(rejector.process(fix(LATITUDE, LONGITUDE, 0f, 0l)));
+        assertFalse(rejector.process(fix(LATITUDE + 500 * METERS, LONGITUDE, 0f, 1000l)));
+        // still judged against the last accepted fix
+        assertTrue(rejector.process(fix(LATITUDE + 90 * METERS, LONGITUDE, 0f, 2000l)));
+    }
+
+    public void testAllowsForTheAccuracyOfBothFixes() {
+        final OutlierRejector rejector = new OutlierRejector(10f);
+        assertTrue(rejector.process(fix(LATITUDE, LONGITUDE, 50f, 0l)));
+        // 100m in a second, but within the two 50m accuracy radii plus 10m of movement
+        assertTrue(rejector.process(fix(LATITUDE + 100 * METERS, LONGITUDE, 50f, 1000l)));
+    }
+
+    public void testRejectsFixesThatAreNotNewer() {
+        final OutlierRejector rejector = new OutlierRejector(50f);
+        assertTrue(rejector.process(fix(LATITUDE, LONGITUDE, 0f, 1000l)));
+        assertFalse(rejector.process(fix(LATITUDE, LONGITUDE, 0f, 1000l)));
+        assertFalse(rejector.process(fix(LATITUDE, LONGITUDE, 0f, 0l)));
+    }
+
+    public void testAcceptsAfterTooManyRejectionsInARow() {
+        final OutlierRejector rejector = new OutlierRejector(50f, 3);
+        assertTrue(rejector.process(fix(LATITUDE, LONGITUDE, 0f, 0l)));
+        for (int i = 1; i <= 3; i++) {
+            assertFalse(rejector.process(fix(LATITUDE + 1, LONGITUDE, 0f, i * 1000l)));
+        }
+        assertTrue(rejector.process(fix(LATITUDE + 1, LONGITUDE, 0f, 4000l)));
+        // and the jump is the new reference point
+        assertTrue(rejector.process(fix(LATITUDE + 1, LONGITUDE, 0f, 5000l)));
+    }
+
+    public void testResetForgetsThePreviousFix() {
+        final OutlierRejector rejector = new OutlierRejector(50f);
+        assertTrue(rejector.process(fix(LATITUDE, LONGITUDE, 0f, 1000l)));
+        rejector.reset();
+        assertTrue(rejector.process(fix(LATITUDE + 1, LONGITUDE, 0f, 0l)));
+    }
+
+    private static LocationFix fix(double latitude, double longitude, float accuracy, long time) {
+        final LocationFix fix = new LocationFix();
+        fix.latitude = latitude;
+        fix.longitude = longitude;
+        fix.hasAccuracy = true;
+        fix.accuracy = accuracy;
+        fix.time = time;
+        return fix;
+    }
+}
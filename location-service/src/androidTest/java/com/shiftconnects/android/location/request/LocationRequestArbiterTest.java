@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.request;
+
+import android.location.Location;
+
+import com.google.android.gms.location.LocationRequest;
+import com.shiftconnects.android.location.BackgroundLocationService;
+import com.shiftconnects.android.location.dispatch.CallbackRegistry;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LocationRequestArbiterTest extends TestCase {
+
+    private final List<LocationRequest> mRequested = new ArrayList<>();
+    private int mRemoved;
+    private LocationRequestArbiter mArbiter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mArbiter = new LocationRequestArbiter(new LocationRequestArbiter.Backend() {
+            @Override public void requestLocationUpdates(LocationRequest request) {
+                mRequested.add(request);
+            }
+
+            @Override public void removeLocationUpdates() {
+                mRemoved++;
+            }
+        });
+    }
+
+    public void testMergesTheMostDemandingOfEachSetting() {
+        mArbiter.register(request(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, 10000, 5000, 50), null, null);
+        mArbiter.register(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 60000, 60000, 100), null, null);
+        mArbiter.register(request(LocationRequest.PRIORITY_LOW_POWER, 30000, 1000, 10), null, null);
+
+        final LocationRequest merged = mArbiter.getMergedRequest();
+        assertEquals(LocationRequest.PRIORITY_HIGH_ACCURACY, merged.getPriority());
+        assertEquals(10000, merged.getInterval());
+        assertEquals(1000, merged.getFastestInterval());
+        assertEquals(10f, merged.getSmallestDisplacement(), 0f);
+        assertEquals(3, mArbiter.getClientCount());
+    }
+
+    public void testFastestIntervalNeverExceedsInterval() {
+        mArbiter.register(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 5000, 20000, 0), null, null);
+
+        assertEquals(5000, mArbiter.getMergedRequest().getFastestInterval());
+    }
+
+    public void testOnlyReissuesWhenTheMergedRequestChanges() {
+        final LocationRequestArbiter.Handle handle = mArbiter.register(
+                request(LocationRequest.PRIORITY_HIGH_ACCURACY, 10000, 5000, 0), null, null);
+        mArbiter.register(request(LocationRequest.PRIORITY_LOW_POWER, 60000, 60000, 0), null, null);
+        assertEquals(1, mRequested.size());
+
+        handle.update(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 1000, 1000, 0));
+        assertEquals(2, mRequested.size());
+        assertEquals(1000, mRequested.get(1).getInterval());
+
+        mArbiter.reapply();
+        assertEquals(3, mRequested.size());
+    }
+
+    public void testReleasingEveryClientRemovesUpdates() {
+        final LocationRequestArbiter.Handle first = mArbiter.register(
+                request(LocationRequest.PRIORITY_HIGH_ACCURACY, 1000, 1000, 0), null, null);
+        final LocationRequestArbiter.Handle second = mArbiter.register(
+                request(LocationRequest.PRIORITY_LOW_POWER, 60000, 60000, 0), null, null);
+
+        first.release();
+        assertEquals(LocationRequest.PRIORITY_LOW_POWER, mArbiter.getMergedRequest().getPriority());
+        assertEquals(0, mRemoved);
+
+        second.release();
+        second.release();
+        assertNull(mArbiter.getMergedRequest());
+        assertEquals(1, mRemoved);
+        assertTrue(first.isReleased());
+        try {
+            first.update(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 1000, 1000, 0));
+            fail("Expected a released handle to reject updates");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testThinsLocationsToEachClientsInterval() {
+        final Recorder fast = new Recorder();
+        final Recorder slow = new Recorder();
+        mArbiter.register(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 1000, 1000, 0), fast, null);
+        mArbiter.register(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 10000, 10000, 0), slow, null);
+
+        for (int second = 0; second <= 20; second++) {
+            mArbiter.onLocationChanged(location(37, -122, second * 1000l));
+        }
+
+        assertEquals(21, fast.times.size());
+        // a fix up to a tenth of the interval early is taken rather than waiting for the next one
+        assertEquals(3, slow.times.size());
+        assertEquals(0l, (long) slow.times.get(0));
+        assertEquals(9000l, (long) slow.times.get(1));
+        assertEquals(18000l, (long) slow.times.get(2));
+    }
+
+    public void testAcceptsFixesSlightlyEarly() {
+        final Recorder recorder = new Recorder();
+        mArbiter.register(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 10000, 10000, 0), recorder, null);
+
+        mArbiter.onLocationChanged(location(37, -122, 0l));
+        mArbiter.onLocationChanged(location(37, -122, 9500l));
+        mArbiter.onLocationChanged(location(37, -122, 12000l));
+
+        assertEquals(2, recorder.times.size());
+        assertEquals(9500l, (long) recorder.times.get(1));
+    }
+
+    public void testThinsLocationsToEachClientsDisplacement() {
+        final Recorder recorder = new Recorder();
+        mArbiter.register(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 0, 0, 100), recorder, null);
+
+        mArbiter.onLocationChanged(location(37, -122, 0l));
+        // roughly 11 meters north
+        mArbiter.onLocationChanged(location(37.0001, -122, 1000l));
+        // roughly 111 meters north of the first
+        mArbiter.onLocationChanged(location(37.001, -122, 2000l));
+
+        assertEquals(2, recorder.times.size());
+        assertEquals(2000l, (long) recorder.times.get(1));
+    }
+
+    public void testDeliversThroughTheCallbackRegistry() {
+        final Recorder recorder = new Recorder();
+        final List<Object> observed = new ArrayList<>();
+        mArbiter.getCallbackRegistry().setObserver(new CallbackRegistry.Observer<Object>() {
+            @Override public void onDelivered(Object callback, long durationNanos) {
+                observed.add(callback);
+            }
+        });
+        final LocationRequestArbiter.Handle handle = mArbiter.register(
+                request(LocationRequest.PRIORITY_HIGH_ACCURACY, 0, 0, 0), recorder, null);
+
+        handle.deliver(location(37, -122, 0l));
+        assertEquals(1, recorder.times.size());
+        assertEquals(1, observed.size());
+        assertSame(recorder, observed.get(0));
+
+        handle.release();
+        assertTrue(mArbiter.getCallbackRegistry().isEmpty());
+        handle.deliver(location(37, -122, 1000l));
+        mArbiter.onLocationChanged(location(37, -122, 2000l));
+        assertEquals(1, recorder.times.size());
+    }
+
+    public void testSharedCallbacksStayRegisteredUntilTheLastHandleIsReleased() {
+        final Recorder recorder = new Recorder();
+        final LocationRequestArbiter.Handle first = mArbiter.register(
+                request(LocationRequest.PRIORITY_HIGH_ACCURACY, 0, 0, 0), recorder, null);
+        final LocationRequestArbiter.Handle second = mArbiter.register(
+                request(LocationRequest.PRIORITY_LOW_POWER, 0, 0, 0), recorder, null);
+
+        first.release();
+        second.deliver(location(37, -122, 0l));
+        assertEquals(1, recorder.times.size());
+
+        second.release();
+        assertTrue(mArbiter.getCallbackRegistry().isEmpty());
+    }
+
+    public void testCallbacksUnderTwoHandlesGetEachFixOnce() {
+        final Recorder recorder = new Recorder();
+        mArbiter.register(request(LocationRequest.PRIORITY_HIGH_ACCURACY, 1000, 1000, 0), recorder, null);
+        mArbiter.register(request(LocationRequest.PRIORITY_LOW_POWER, 10000, 10000, 0), recorder, null);
+
+        for (int second = 0; second <= 10; second++) {
+            mArbiter.onLocationChanged(location(37, -122, second * 1000l));
+        }
+
+        // due under both handles at 0 and 9 seconds, but delivered once each time
+        assertEquals(11, recorder.times.size());
+        for (int second = 0; second <= 10; second++) {
+            assertEquals(second * 1000l, (long) recorder.times.get(second));
+        }
+    }
+
+    private static LocationRequest request(int priority, long interval, long fastestInterval,
+            float smallestDisplacement) {
+        return LocationRequest.create()
+                .setPriority(priority)
+                .setInterval(interval)
+                .setFastestInterval(fastestInterval)
+                .setSmallestDisplacement(smallestDisplacement);
+    }
+
+    private static Location location(double latitude, double longitude, long time) {
+        final Location location = new Location("test");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(time);
+        return location;
+    }
+
+    private static class Recorder implements BackgroundLocationService.LocationCallbacks {
+        final List<Long> times = new ArrayList<>();
+
+        @Override public void onLocationChanged(Location location) {
+            times.add(location.getTime());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.source;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameworkLocationSourceTest extends TestCase {
+
+    private final List<Location> mDelivered = new ArrayList<>();
+    private final FrameworkLocationSource.Adapter mAdapter = new FrameworkLocationSource.Adapter(
+            new LocationSource.Listener() {
+                @Override public void onLocationChanged(Location location) {
+                    mDelivered.add(location);
+                }
+            });
+
+    public void testPassesEveryFixWithoutGpsAndNetworkTogether() {
+        mAdapter.setGpsFreshMillis(0);
+        mAdapter.onLocationChanged(fix(LocationManager.GPS_PROVIDER, 2000l, 5f));
+        mAdapter.onLocationChanged(fix(LocationManager.NETWORK_PROVIDER, 1000l, 500f));
+
+        assertEquals(2, mDelivered.size());
+    }
+
+    public void testDropsNetworkFixesOlderThanGps() {
+        mAdapter.setGpsFreshMillis(10000);
+        mAdapter.onLocationChanged(fix(LocationManager.GPS_PROVIDER, 2000l, 50f));
+        mAdapter.onLocationChanged(fix(LocationManager.NETWORK_PROVIDER, 1000l, 5f));
+        mAdapter.onLocationChanged(fix(LocationManager.NETWORK_PROVIDER, 2000l, 5f));
+
+        assertEquals(1, mDelivered.size());
+    }
+
+    public void testDropsNetworkFixesLessAccurateThanGps() {
+        mAdapter.setGpsFreshMillis(10000);
+        mAdapter.onLocationChanged(fix(LocationManager.GPS_PROVIDER, 1000l, 5f));
+        mAdapter.onLocationChanged(fix(LocationManager.NETWORK_PROVIDER, 2000l, 30f));
+        final Location unknownAccuracy = new Location(LocationManager.NETWORK_PROVIDER);
+        unknownAccuracy.setTime(2000l);
+        mAdapter.onLocationChanged(unknownAccuracy);
+        assertEquals(1, mDelivered.size());
+
+        // newer and at least as accurate
+        mAdapter.onLocationChanged(fix(LocationManager.NETWORK_PROVIDER, 3000l, 4f));
+        assertEquals(2, mDelivered.size());
+    }
+
+    public void testPassesNetworkFixesOnceGpsGoesQuiet() throws InterruptedException {
+        mAdapter.setGpsFreshMillis(20);
+        mAdapter.onLocationChanged(fix(LocationManager.GPS_PROVIDER, 1000l, 5f));
+        Thread.sleep(50);
+        mAdapter.onLocationChanged(fix(LocationManager.NETWORK_PROVIDER, 500l, 100f));
+
+        assertEquals(2, mDelivered.size());
+    }
+
+    public void testNeverHoldsBackGpsOrOtherProviders() {
+        mAdapter.setGpsFreshMillis(10000);
+        mAdapter.onLocationChanged(fix(LocationManager.GPS_PROVIDER, 2000l, 5f));
+        mAdapter.onLocationChanged(fix(LocationManager.GPS_PROVIDER, 1000l, 50f));
+        mAdapter.onLocationChanged(fix(LocationManager.PASSIVE_PROVIDER, 1000l, 50f));
+
+        assertEquals(3, mDelivered.size());
+    }
+
+    private static Location fix(String provider, long time, float accuracy) {
+        final Location location = new Location(provider);
+        location.setTime(time);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+}
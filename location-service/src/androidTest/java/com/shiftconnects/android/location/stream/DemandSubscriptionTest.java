@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.stream;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DemandSubscriptionTest extends TestCase {
+
+    private final Recorder mSubscriber = new Recorder();
+    private final AtomicInteger mCancels = new AtomicInteger();
+    private final Runnable mOnCancel = new Runnable() {
+        @Override public void run() {
+            mCancels.incrementAndGet();
+        }
+    };
+
+    public void testDeliversOnlyWhatWasRequested() {
+        final DemandSubscription<Integer> subscription = subscribe(8);
+        subscription.offer(1);
+        subscription.offer(2);
+        subscription.offer(3);
+        assertTrue(mSubscriber.items.isEmpty());
+
+        subscription.request(2);
+        assertEquals(2, mSubscriber.items.size());
+        assertEquals(1, (int) mSubscriber.items.get(0));
+
+        // the rest of the demand is used up by the next item offered
+        subscription.request(2);
+        assertEquals(3, mSubscriber.items.size());
+        subscription.offer(4);
+        subscription.offer(5);
+        assertEquals(4, mSubscriber.items.size());
+        assertEquals(4, (int) mSubscriber.items.get(3));
+    }
+
+    public void testUnboundedDemand() {
+        final DemandSubscription<Integer> subscription = subscribe(1);
+        subscription.request(Long.MAX_VALUE);
+        subscription.request(Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            subscription.offer(i);
+        }
+        assertEquals(100, mSubscriber.items.size());
+    }
+
+    public void testFullQueueDropsTheOldest() {
+        final DemandSubscription<Integer> subscription = subscribe(2);
+        subscription.offer(1);
+        subscription.offer(2);
+        subscription.offer(3);
+        subscription.request(10);
+
+        assertEquals(2, mSubscriber.items.size());
+        assertEquals(2, (int) mSubscriber.items.get(0));
+        assertEquals(3, (int) mSubscriber.items.get(1));
+    }
+
+    public void testCapacityOfOneKeepsOnlyTheLatest() {
+        // what LocationStream.latest() subscribes with
+        final DemandSubscription<Integer> subscription = subscribe(1);
+        subscription.offer(1);
+        subscription.offer(2);
+        subscription.offer(3);
+        subscription.request(1);
+        subscription.request(1);
+
+        assertEquals(1, mSubscriber.items.size());
+        assertEquals(3, (int) mSubscriber.items.get(0));
+        subscription.offer(4);
+        assertEquals(4, (int) mSubscriber.items.get(1));
+    }
+
+    public void testRequestingFromOnNextDoesNotRecurse() {
+        final DemandSubscription<Integer> subscription = subscribe(8);
+        final int[] depth = new int[1];
+        final int[] maxDepth = new int[1];
+        mSubscriber.onNext = new Runnable() {
+            @Override public void run() {
+                depth[0]++;
+                maxDepth[0] = Math.max(maxDepth[0], depth[0]);
+                mSubscriber.subscription.request(1);
+                depth[0]--;
+            }
+        };
+        subscription.offer(1);
+        subscription.offer(2);
+        subscription.offer(3);
+        subscription.request(1);
+
+        assertEquals(3, mSubscriber.items.size());
+        assertEquals(1, maxDepth[0]);
+    }
+
+    public void testNonPositiveRequestCancelsWithAnError() {
+        final DemandSubscription<Integer> subscription = subscribe(8);
+        subscription.offer(1);
+        subscription.request(0);
+
+        assertTrue(subscription.isCancelled());
+        assertEquals(1, mCancels.get());
+        assertTrue(mSubscriber.error instanceof IllegalArgumentException);
+
+        subscription.request(5);
+        subscription.offer(2);
+        assertTrue(mSubscriber.items.isEmpty());
+
+        final DemandSubscription<Integer> negative = subscribe(8);
+        negative.request(-1);
+        assertTrue(negative.isCancelled());
+    }
+
+    public void testCancelRunsTheActionOnce() throws InterruptedException {
+        final DemandSubscription<Integer> subscription = subscribe(8);
+        subscription.offer(1);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    subscription.cancel();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        subscription.cancel();
+
+        assertEquals(1, mCancels.get());
+        subscription.request(1);
+        assertTrue(mSubscriber.items.isEmpty());
+    }
+
+    private DemandSubscription<Integer> subscribe(int capacity) {
+        final DemandSubscription<Integer> subscription = new DemandSubscription<>(mSubscriber, capacity, mOnCancel);
+        mSubscriber.onSubscribe(subscription);
+        return subscription;
+    }
+
+    static class Recorder implements Subscriber<Integer> {
+        final List<Integer> items = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+        Runnable onNext;
+
+        @Override public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override public void onNext(Integer item) {
+            items.add(item);
+            if (onNext != null) {
+                onNext.run();
+            }
+        }
+
+        @Override public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override public void onComplete() {
+        }
+    }
+}
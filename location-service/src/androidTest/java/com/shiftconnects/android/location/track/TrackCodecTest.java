@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.track;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class TrackCodecTest extends TestCase {
+
+    private static final double COORDINATE_TOLERANCE = 1e-7;
+
+    public void testRoundTripsEveryChannel() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        final TrackEncoder encoder = new TrackEncoder(buffer, TrackEncoder.ALL_CHANNELS);
+        encoder.write(37.7749295, -122.4194155, 1000000l, 4.5f, 12.34f, 271.3f);
+        // moving back south west, and back in time, gives negative deltas
+        encoder.write(37.7701, -122.4301, 999000l, Float.NaN, 0f, Float.NaN);
+        encoder.write(-33.8688197, 151.2092955, 1060000l, 1500f, Float.NaN, 0f);
+        assertEquals(3, encoder.getCount());
+
+        buffer.flip();
+        final TrackDecoder decoder = new TrackDecoder(buffer);
+        assertEquals(TrackEncoder.ALL_CHANNELS, decoder.getChannels());
+
+        assertTrue(decoder.next());
+        assertEquals(37.7749295, decoder.getLatitude(), COORDINATE_TOLERANCE);
+        assertEquals(-122.4194155, decoder.getLongitude(), COORDINATE_TOLERANCE);
+        assertEquals(1000000l, decoder.getTime());
+        assertEquals(4.5f, decoder.getAccuracy(), 0.05f);
+        assertEquals(12.34f, decoder.getSpeed(), 0.005f);
+        assertEquals(271.3f, decoder.getBearing(), 0.05f);
+
+        assertTrue(decoder.next());
+        assertEquals(37.7701, decoder.getLatitude(), COORDINATE_TOLERANCE);
+        assertEquals(-122.4301, decoder.getLongitude(), COORDINATE_TOLERANCE);
+        assertEquals(999000l, decoder.getTime());
+        assertTrue(Float.isNaN(decoder.getAccuracy()));
+        assertEquals(0f, decoder.getSpeed(), 0f);
+        assertTrue(Float.isNaN(decoder.getBearing()));
+
+        assertTrue(decoder.next());
+        assertEquals(-33.8688197, decoder.getLatitude(), COORDINATE_TOLERANCE);
+        assertEquals(151.2092955, decoder.getLongitude(), COORDINATE_TOLERANCE);
+        assertEquals(1060000l, decoder.getTime());
+        assertEquals(1500f, decoder.getAccuracy(), 0.05f);
+        assertTrue(Float.isNaN(decoder.getSpeed()));
+        assertEquals(0f, decoder.getBearing(), 0f);
+
+        assertFalse(decoder.next());
+    }
+
+    public void testChannelsNotEncodedDecodeAsMissing() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        final TrackEncoder encoder = new TrackEncoder(buffer, TrackEncoder.CHANNEL_SPEED);
+        encoder.write(37, -122, 1000l, 4.5f, 3f, 90f);
+
+        buffer.flip();
+        final TrackDecoder decoder = new TrackDecoder(buffer);
+        assertTrue(decoder.next());
+        assertTrue(Float.isNaN(decoder.getAccuracy()));
+        assertEquals(3f, decoder.getSpeed(), 0.005f);
+        assertTrue(Float.isNaN(decoder.getBearing()));
+    }
+
+    public void testStreamAndBufferEncodingsMatch() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final TrackEncoder streamEncoder = new TrackEncoder(output, TrackEncoder.ALL_CHANNELS);
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        final TrackEncoder bufferEncoder = new TrackEncoder(buffer, TrackEncoder.ALL_CHANNELS);
+        for (int i = 0; i < 10; i++) {
+            final Location location = location(37 + i * 0.001, -122 - i * 0.001, 1000l * i);
+            streamEncoder.write(location);
+            bufferEncoder.write(location);
+        }
+        streamEncoder.flush();
+
+        buffer.flip();
+        final byte[] encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+        assertTrue(Arrays.equals(output.toByteArray(), encoded));
+    }
+
+    public void testDecodesIntoLocation() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        new TrackEncoder(buffer, TrackEncoder.ALL_CHANNELS).write(location(37.5, -122.5, 5000l));
+
+        buffer.flip();
+        final TrackDecoder decoder = new TrackDecoder(buffer);
+        assertTrue(decoder.next());
+        final Location location = decoder.getLocation(new Location("test"));
+        assertEquals(37.5, location.getLatitude(), COORDINATE_TOLERANCE);
+        assertEquals(-122.5, location.getLongitude(), COORDINATE_TOLERANCE);
+        assertEquals(5000l, location.getTime());
+        assertTrue(location.hasAccuracy());
+        assertFalse(location.hasSpeed());
+        assertFalse(location.hasBearing());
+    }
+
+    public void testFullBufferStopsTheEncoder() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        final TrackEncoder encoder = new TrackEncoder(buffer, TrackEncoder.ALL_CHANNELS);
+        for (int i = 0; i < 100; i++) {
+            encoder.onLocationChanged(location(37 + i * 0.01, -122 - i * 0.01, 60000l * i));
+        }
+        try {
+            encoder.checkError();
+            fail("Expected the buffer to overflow");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+
+        // everything written before the buffer filled up is still readable
+        buffer.flip();
+        final TrackDecoder decoder = new TrackDecoder(buffer);
+        int count = 0;
+        while (decoder.next()) {
+            count++;
+        }
+        assertTrue(count > 0);
+        assertEquals(encoder.getCount(), count);
+    }
+
+    public void testRejectsOtherData() {
+        try {
+            new TrackDecoder(ByteBuffer.wrap(new byte[] { 'N', 'O', 'P', 'E', 1, 0 }));
+            fail("Expected a bad header to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static Location location(double latitude, double longitude, long time) {
+        final Location location = new Location("test");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(time);
+        location.setAccuracy(10f);
+        return location;
+    }
+}
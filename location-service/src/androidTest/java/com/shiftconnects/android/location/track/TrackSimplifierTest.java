@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shiftconnects.android.location.track;
+
+import android.location.Location;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TrackSimplifierTest extends TestCase {
+
+    private static final double LATITUDE = 37.7749;
+    private static final double LONGITUDE = -122.4194;
+    // ten meters north or east
+    private static final double NORTH = 10 / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+    private static final double EAST = 10 / GeoUtils.metersPerDegreeLongitude(LATITUDE);
+
+    private final List<Location> mVertices = new ArrayList<>();
+    private final TrackSimplifier.Listener mListener = new TrackSimplifier.Listener() {
+        @Override public void onVertex(Location location) {
+            mVertices.add(location);
+        }
+    };
+
+    public void testRejectsEmptyWindow() {
+        try {
+            new TrackSimplifier(5, 0, mListener);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testStraightLineKeepsOnlyItsEnds() {
+        final TrackSimplifier simplifier = new TrackSimplifier(5, mListener);
+        final List<Location> track = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            track.add(location(LATITUDE + i * NORTH, LONGITUDE, i));
+            simplifier.add(track.get(i));
+        }
+        assertEquals(1, mVertices.size());
+        assertSame(track.get(0), mVertices.get(0));
+
+        simplifier.flush();
+        assertEquals(2, mVertices.size());
+        assertSame(track.get(19), mVertices.get(1));
+
+        // nothing left to flush
+        simplifier.flush();
+        assertEquals(2, mVertices.size());
+    }
+
+    public void testCornerBecomesAVertex() {
+        final TrackSimplifier simplifier = new TrackSimplifier(5, mListener);
+        final List<Location> track = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            track.add(location(LATITUDE + i * NORTH, LONGITUDE, i));
+        }
+        for (int i = 1; i < 10; i++) {
+            track.add(location(LATITUDE + 9 * NORTH, LONGITUDE + i * EAST, 9 + i));
+        }
+        for (Location location : track) {
+            simplifier.onLocationChanged(location);
+        }
+        simplifier.flush();
+
+        assertEquals(3, mVertices.size());
+        assertSame(track.get(0), mVertices.get(0));
+        assertSame(track.get(9), mVertices.get(1));
+        assertSame(track.get(track.size() - 1), mVertices.get(2));
+    }
+
+    public void testFullWindowEmitsItsNewestFix() {
+        final TrackSimplifier simplifier = new TrackSimplifier(5, 4, mListener);
+        for (int i = 0; i < 10; i++) {
+            simplifier.add(location(LATITUDE + i * NORTH, LONGITUDE, i));
+        }
+        // the first fix, then the fourth after it each time the window fills
+        assertEquals(3, mVertices.size());
+        assertEquals(0l, mVertices.get(0).getTime());
+        assertEquals(4000l, mVertices.get(1).getTime());
+        assertEquals(8000l, mVertices.get(2).getTime());
+    }
+
+    public void testEveryDroppedFixStaysWithinTheTolerance() {
+        final double tolerance = 8;
+        final TrackSimplifier simplifier = new TrackSimplifier(tolerance, 16, mListener);
+        final Random random = new Random(5);
+        final List<Location> track = new ArrayList<>();
+        double latitude = LATITUDE;
+        double longitude = LONGITUDE;
+        double heading = 0;
+        for (int i = 0; i < 500; i++) {
+            heading += random.nextGaussian() * 0.3;
+            latitude += Math.cos(heading) * NORTH;
+            longitude += Math.sin(heading) * EAST;
+            track.add(location(latitude, longitude, i));
+            simplifier.add(track.get(i));
+        }
+        simplifier.flush();
+
+        assertTrue(mVertices.size() < track.size() / 2);
+        assertSame(track.get(0), mVertices.get(0));
+        assertSame(track.get(track.size() - 1), mVertices.get(mVertices.size() - 1));
+        // each fix lies within the tolerance of the segment between the vertices around it
+        int vertex = 0;
+        for (Location location : track) {
+            if (location == mVertices.get(vertex)) {
+                if (vertex < mVertices.size() - 1) {
+                    vertex++;
+                }
+                continue;
+            }
+            final double distance = TrackSimplifier.distanceToSegment(point(location),
+                    point(mVertices.get(vertex - 1)), point(mVertices.get(vertex)));
+            assertTrue("fix " + location.getTime() + " is " + distance + "m off", distance <= tolerance);
+        }
+    }
+
+    public void testResetStartsANewTrack() {
+        final TrackSimplifier simplifier = new TrackSimplifier(5, mListener);
+        simplifier.add(location(LATITUDE, LONGITUDE, 0));
+        simplifier.add(location(LATITUDE + NORTH, LONGITUDE, 1));
+        simplifier.reset();
+        simplifier.flush();
+        assertEquals(1, mVertices.size());
+
+        simplifier.add(location(LATITUDE + 2 * NORTH, LONGITUDE, 2));
+        assertEquals(2, mVertices.size());
+        assertEquals(2000l, mVertices.get(1).getTime());
+    }
+
+    public void testDistanceToSegment() {
+        final LatLng a = new LatLng(LATITUDE, LONGITUDE);
+        final LatLng b = new LatLng(LATITUDE + 10 * NORTH, LONGITUDE);
+        // 30m east of the middle of a 100m segment
+        assertEquals(30, TrackSimplifier.distanceToSegment(
+                new LatLng(LATITUDE + 5 * NORTH, LONGITUDE + 3 * EAST), a, b), 0.1);
+        // beyond either end the distance is to that end
+        assertEquals(20, TrackSimplifier.distanceToSegment(new LatLng(LATITUDE - 2 * NORTH, LONGITUDE), a, b), 0.1);
+        assertEquals(20, TrackSimplifier.distanceToSegment(new LatLng(LATITUDE + 12 * NORTH, LONGITUDE), a, b), 0.1);
+        // a degenerate segment is a point
+        assertEquals(30, TrackSimplifier.distanceToSegment(new LatLng(LATITUDE, LONGITUDE + 3 * EAST), a, a), 0.1);
+    }
+
+    private static Location location(double latitude, double longitude, int second) {
+        final Location location = new Location("test");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(second * 1000l);
+        return location;
+    }
+
+    private static LatLng point(Location location) {
+        return new LatLng(location.getLatitude(), location.getLongitude());
+    }
+}
@@ -22,7 +22,10 @@ import android.content.Intent;
 import android.location.Location;
 import android.os.Binder;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -35,9 +38,44 @@ import com.google.android.gms.location.GeofencingEvent;
 import com.google.android.gms.location.LocationListener;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationServices;
+import com.shiftconnects.android.location.cache.LastLocationCache;
+import com.shiftconnects.android.location.connection.ReconnectBackoff;
+import com.shiftconnects.android.location.dispatch.CallbackRegistry;
+import com.shiftconnects.android.location.dispatch.LocationBatcher;
+import com.shiftconnects.android.location.geofence.GeofenceRegistry;
+import com.shiftconnects.android.location.geofence.GeofenceTransition;
+import com.shiftconnects.android.location.geofence.GeofenceTransitionCoalescer;
+import com.shiftconnects.android.location.geofence.LocalGeofence;
+import com.shiftconnects.android.location.geofence.LocalGeofenceEngine;
+import com.shiftconnects.android.location.history.LocationHistory;
+import com.shiftconnects.android.location.history.TrackIndex;
+import com.shiftconnects.android.location.journal.TrackJournal;
+import com.shiftconnects.android.location.metrics.LocationMetrics;
+import com.shiftconnects.android.location.metrics.MetricsSnapshot;
+import com.shiftconnects.android.location.processing.Kinematics;
+import com.shiftconnects.android.location.processing.KinematicsTracker;
+import com.shiftconnects.android.location.processing.LocationPipeline;
+import com.shiftconnects.android.location.processing.LocationStage;
+import com.shiftconnects.android.location.request.LocationRequestArbiter;
+import com.shiftconnects.android.location.source.FrameworkLocationSource;
+import com.shiftconnects.android.location.source.FusedLocationSource;
+import com.shiftconnects.android.location.source.LocationSource;
+import com.shiftconnects.android.location.source.PassiveLocationSource;
+import com.shiftconnects.android.location.stream.LocationStream;
+import com.shiftconnects.android.location.util.GeoUtils;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Sets up a location service with callbacks for interested parties.
@@ -64,12 +102,31 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
         void onLocationChanged(Location location);
     }
 
+    /**
+     * Receives locations in batches, see {@link #setLocationBatching(int, long)}.
+     */
+    public static interface BatchedLocationCallbacks {
+        void onLocationsBatch(List<Location> locations);
+    }
+
+    /**
+     * Receives each location along with the motion derived from it, see {@link Kinematics}.
+     */
+    public static interface KinematicsCallbacks {
+        void onLocationChanged(Location location, Kinematics kinematics);
+    }
+
     public static interface ConnectionCallbacks {
         void onConnectionSuspended(int flag);
         void onLocationServicesConnectionSuccessful();
         void onLocationServicesConnectionFailed(ConnectionResult connectionResult);
     }
 
+    /**
+     * Unless registered with an executor, every event is posted to the main thread, one at a time.
+     * Transitions that were already queued when the service is destroyed are still reported just
+     * after it.
+     */
     public static interface GeofenceCallbacks {
         void onGeofenceEntered(String geofenceId);
         void onGeofenceDwelled(String geofenceId);
@@ -79,27 +136,261 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
         void onGeofencesSetupUnsuccessful(Status status);
     }
 
+    /**
+     * Receives every geofence transition from one event together, see
+     * {@link #setGeofenceDebounceWindow(long)}. Notified on the same thread as
+     * {@link GeofenceCallbacks}.
+     */
+    public static interface BatchedGeofenceCallbacks {
+        void onGeofenceTransitions(List<GeofenceTransition> transitions);
+    }
+
     private static final String TAG = BackgroundLocationService.class.getSimpleName();
     
     private static final boolean DEBUG = false;
 
+    private static final String TRACK_JOURNAL_DIRECTORY = "location-journal";
+    private static final String LAST_LOCATION_CACHE_FILE = "last-location";
+
+    // Play Services allows 100 geofences per app
+    private static final int MAX_REGISTERED_GEOFENCES = 100;
+    private static final double MIN_GEOFENCE_ROTATION_DISTANCE = 100;
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1;
+    private static final long DEFAULT_MAX_BATCH_LATENCY = 0l;
+
+    // intents arriving within this long of each other are handled in one pass
+    private static final long COMMAND_COALESCE_MILLIS = 100l;
+    private static final int NO_START_ID = -1;
+
     private GoogleApiClient mGoogleApiClient;
 
-    private List<LocationCallbacks> mLocationCallbacks;
-    private List<ConnectionCallbacks> mConnectionCallbacks;
-    private List<GeofenceCallbacks> mGeofenceCallbacks;
+    private final CallbackRegistry<LocationCallbacks> mLocationCallbacks = new CallbackRegistry<>();
+    private final CallbackRegistry<BatchedLocationCallbacks> mBatchedLocationCallbacks = new CallbackRegistry<>();
+    private final CallbackRegistry<KinematicsCallbacks> mKinematicsCallbacks = new CallbackRegistry<>();
+    private final CallbackRegistry<ConnectionCallbacks> mConnectionCallbacks = new CallbackRegistry<>();
+    private final CallbackRegistry<GeofenceCallbacks> mGeofenceCallbacks = new CallbackRegistry<>();
+    private final CallbackRegistry<BatchedGeofenceCallbacks> mBatchedGeofenceCallbacks = new CallbackRegistry<>();
+
+    private final LocationPipeline mLocationPipeline = new LocationPipeline();
+    private final KinematicsTracker mKinematicsTracker = new KinematicsTracker();
 
-    private Location mLastLocation;
-    private ConnectionResult mFailedConnectionResult;
+    private final LocationRequestArbiter.Backend mRequestBackend = new LocationRequestArbiter.Backend() {
+        @Override public void requestLocationUpdates(LocationRequest request) {
+            // while unavailable the arbiter keeps the request and reapplies it once available
+            final LocationSource source = mLocationSource;
+            if (source != null && source.isAvailable()) {
+                if( DEBUG ) {
+                    Log.d(TAG, "Requesting updates for [" + request + "]");
+                }
+                mLocationRequestRefused = !source.requestLocationUpdates(request, mLocationSourceListener);
+                if (mLocationRequestRefused) {
+                    Log.w(TAG, "Location source refused the request, is the location permission granted?");
+                }
+            }
+        }
+
+        @Override public void removeLocationUpdates() {
+            // not only while available, a source that went away may still hold the listener
+            mLocationRequestRefused = false;
+            final LocationSource source = mLocationSource;
+            if (source != null) {
+                if( DEBUG ) {
+                    Log.d(TAG, "Removing location updates.");
+                }
+                source.removeLocationUpdates(mLocationSourceListener);
+            }
+        }
+    };
+    private final LocationRequestArbiter mRequestArbiter = new LocationRequestArbiter(mRequestBackend);
+
+    private final LocationSource.Listener mLocationSourceListener = new LocationSource.Listener() {
+        @Override public void onLocationChanged(Location location) {
+            BackgroundLocationService.this.onLocationChanged(location);
+        }
+    };
+    private volatile LocationSource mLocationSource;
+    // until onLocationSourceAvailable() tries again
+    private volatile boolean mLocationRequestRefused;
+    private LocationRequestArbiter.Handle mDefaultRequestHandle;
+
+    private Handler mHandler;
+    private Handler mCommandHandler;
+    private final List<Intent> mPendingCommands = new ArrayList<>();
+    private int mLastStartId = NO_START_ID;
+    private boolean mCommandsScheduled;
+    private boolean mStartedExplicitly;
+    // where geofence callbacks registered without an executor are notified
+    private final Executor mMainThreadExecutor = new Executor() {
+        @Override public void execute(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+    };
+
+    private final Runnable mFlushGeofenceTransitions = new Runnable() {
+        @Override public void run() {
+            mGeofenceTransitionCoalescer.flush();
+        }
+    };
+    private final Runnable mProcessCommands = new Runnable() {
+        @Override public void run() {
+            final int startId = processCommands();
+            if (startId != NO_START_ID) {
+                // only stops the service if no newer intent has arrived, and never while bound
+                stopSelfResult(startId);
+            }
+        }
+    };
+    private ReconnectBackoff mReconnectBackoff;
+    private LocationBatcher mLocationBatcher;
+    private GeofenceRegistry mGeofenceRegistry;
+    // reports each setupGeofences() or setGeofences() call once, but not the local fences rotated in
+    private final GeofenceRegistry.SetupCallback mGeofenceSetupCallback = new GeofenceRegistry.SetupCallback() {
+        @Override public void onSetupSuccessful() {
+            if( DEBUG ) {
+                Log.d(TAG, "Successfully setup geofences.");
+            }
+            mGeofenceCallbacks.dispatch(GEOFENCES_SETUP_SUCCESSFUL, null);
+        }
+
+        @Override public void onSetupUnsuccessful(Status status) {
+            mGeofenceCallbacks.dispatch(GEOFENCES_SETUP_UNSUCCESSFUL, status);
+        }
+    };
+    private GeofenceTransitionCoalescer mGeofenceTransitionCoalescer;
+    // the history is only reachable through its index so that the two are always replaced together
+    private volatile TrackIndex mTrackIndex;
+    private volatile TrackJournal mTrackJournal;
+    private LastLocationCache mLastLocationCache;
+    // the cache is read and written on the command thread, never on the one delivering locations
+    private final Runnable mReadLastLocation = new Runnable() {
+        @Override public void run() {
+            final Location cachedLocation = mLastLocationCache.read();
+            if (cachedLocation != null) {
+                mHandler.post(new Runnable() {
+                    @Override public void run() {
+                        restoreLastLocation(cachedLocation);
+                    }
+                });
+            }
+        }
+    };
+    private final Runnable mWriteLastLocation = new Runnable() {
+        @Override public void run() {
+            try {
+                mLastLocationCache.flush();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to cache last location.", e);
+            }
+        }
+    };
+    private volatile LocationMetrics mMetrics;
+    private ExecutorService mIsolationExecutor;
+    private ScheduledExecutorService mBudgetWatchdog;
+    private final Runnable mCheckDeliveries = new Runnable() {
+        @Override public void run() {
+            mLocationCallbacks.checkDeliveries();
+            mBatchedLocationCallbacks.checkDeliveries();
+            mKinematicsCallbacks.checkDeliveries();
+            mGeofenceCallbacks.checkDeliveries();
+            mBatchedGeofenceCallbacks.checkDeliveries();
+            mRequestArbiter.getCallbackRegistry().checkDeliveries();
+        }
+    };
+    private long mMetricsDumpInterval;
+
+    private final Runnable mDumpMetrics = new Runnable() {
+        @Override public void run() {
+            final LocationMetrics metrics = mMetrics;
+            if (metrics != null && mMetricsDumpInterval > 0) {
+                Log.i(TAG, metrics.snapshot().toString());
+                mHandler.postDelayed(this, mMetricsDumpInterval);
+            }
+        }
+    };
+
+    private final LocalGeofenceEngine mLocalGeofenceEngine = new LocalGeofenceEngine(new LocalGeofenceEngine.Listener() {
+        @Override public void onGeofenceEntered(String geofenceId) {
+            mGeofenceTransitionCoalescer.offer(geofenceId, Geofence.GEOFENCE_TRANSITION_ENTER, System.currentTimeMillis());
+        }
+
+        @Override public void onGeofenceDwelled(String geofenceId) {
+            mGeofenceTransitionCoalescer.offer(geofenceId, Geofence.GEOFENCE_TRANSITION_DWELL, System.currentTimeMillis());
+        }
+
+        @Override public void onGeofenceExited(String geofenceId) {
+            mGeofenceTransitionCoalescer.offer(geofenceId, Geofence.GEOFENCE_TRANSITION_EXIT, System.currentTimeMillis());
+        }
+    });
+    private final Set<String> mRegisteredLocalGeofenceIds = new HashSet<>();
+    private int mRegisteredLocalGeofenceLimit;
+    private boolean mRotateRegisteredLocalGeofences;
+    private double mRotationLatitude;
+    private double mRotationLongitude;
+    private double mRotationDistance;
+
+    private volatile Location mLastLocation;
+    private volatile ConnectionResult mFailedConnectionResult;
 
     @Override public void onCreate() {
         if( DEBUG ) {
             Log.d(TAG, "Service created.");
         }
         super.onCreate();
-        mLocationCallbacks = new ArrayList<>();
-        mGeofenceCallbacks = new ArrayList<>();
-        mConnectionCallbacks = new ArrayList<>();
+        mHandler = new Handler();
+        final HandlerThread commandThread = new HandlerThread("LocationCommands", android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        commandThread.start();
+        mCommandHandler = new Handler(commandThread.getLooper());
+        mReconnectBackoff = new ReconnectBackoff(mHandler, new Runnable() {
+            @Override public void run() {
+                if (mGoogleApiClient != null && !mGoogleApiClient.isConnected()
+                        && !mGoogleApiClient.isConnecting()) {
+                    if( DEBUG ) {
+                        Log.d(TAG, "Reconnecting, attempt " + mReconnectBackoff.getAttempt() + "...");
+                    }
+                    mGoogleApiClient.connect();
+                }
+            }
+        });
+        mLocationBatcher = new LocationBatcher(mHandler, new LocationBatcher.Sink() {
+            @Override public void onBatch(List<Location> locations) {
+                mBatchedLocationCallbacks.dispatch(LOCATIONS_BATCH, locations);
+            }
+        }, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_LATENCY);
+        mGeofenceRegistry = new GeofenceRegistry(mHandler, new GeofenceRegistry.Backend() {
+            @Override public boolean isConnected() {
+                return isLocationServicesConnected();
+            }
+
+            @Override public void addGeofences(List<Geofence> geofences, ResultCallback<Status> callback) {
+                if( DEBUG ) {
+                    Log.d(TAG, "Adding geofences [" + geofences + "]");
+                }
+                LocationServices.GeofencingApi.addGeofences(getGoogleApiClient(), geofences,
+                        getGeofencePendingIntent()).setResultCallback(callback);
+            }
+
+            @Override public void removeGeofences(List<String> requestIds, ResultCallback<Status> callback) {
+                if( DEBUG ) {
+                    Log.d(TAG, "Removing geofences " + requestIds);
+                }
+                LocationServices.GeofencingApi.removeGeofences(getGoogleApiClient(), requestIds)
+                        .setResultCallback(callback);
+            }
+
+            @Override public void removeAllGeofences(ResultCallback<Status> callback) {
+                LocationServices.GeofencingApi.removeGeofences(getGoogleApiClient(),
+                        getGeofencePendingIntent()).setResultCallback(callback);
+            }
+        });
+        mGeofenceTransitionCoalescer = new GeofenceTransitionCoalescer(mCommandHandler, new GeofenceTransitionCoalescer.Listener() {
+            @Override public void onTransitions(List<GeofenceTransition> transitions) {
+                notifyCallbacksOnGeofenceTransitions(transitions);
+            }
+        });
+        recoverTrackJournal();
+        mLastLocationCache = new LastLocationCache(new File(getFilesDir(), LAST_LOCATION_CACHE_FILE));
+        mCommandHandler.post(mReadLastLocation);
         if (mGoogleApiClient == null) {
             mGoogleApiClient = new GoogleApiClient.Builder(this)
                     .addApi(LocationServices.API)
@@ -107,15 +398,59 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
                     .addOnConnectionFailedListener(this)
                     .build();
         }
+        if (mLocationSource == null) {
+            mLocationSource = new FusedLocationSource(mGoogleApiClient);
+        }
         mGoogleApiClient.connect();
     }
 
+    /**
+     * Queues the intent to be handled on the command thread. Geofence intents that arrive close
+     * together are handled in one pass, and their transitions delivered as one batch. A service
+     * started only by geofence intents stops itself once they have all been handled.
+     */
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        handleCommand(intent);
+        synchronized (mPendingCommands) {
+            mLastStartId = startId;
+            if (intent == null || !TextUtils.equals(ACTION_GEOFENCE_TRANSITION, intent.getAction())) {
+                mStartedExplicitly = true;
+            } else {
+                mPendingCommands.add(intent);
+                if (!mCommandsScheduled) {
+                    mCommandsScheduled = true;
+                    mCommandHandler.postDelayed(mProcessCommands, COMMAND_COALESCE_MILLIS);
+                }
+            }
+        }
         return START_NOT_STICKY;
     }
 
+    /**
+     * Handles every queued intent. Runs on the command thread.
+     *
+     * @return the start id to stop the service with, or {@link #NO_START_ID} if it should keep
+     * running
+     */
+    private int processCommands() {
+        final List<Intent> commands;
+        final int lastStartId;
+        synchronized (mPendingCommands) {
+            commands = new ArrayList<>(mPendingCommands);
+            mPendingCommands.clear();
+            mCommandsScheduled = false;
+            lastStartId = mStartedExplicitly ? NO_START_ID : mLastStartId;
+        }
+        if( DEBUG ) {
+            Log.d(TAG, "Handling " + commands.size() + " queued intents.");
+        }
+        for (Intent intent : commands) {
+            handleCommand(intent);
+        }
+        mGeofenceTransitionCoalescer.flush();
+        return lastStartId;
+    }
+
     private void handleCommand(Intent intent) {
         if (intent != null) {
             final String action = intent.getAction();
@@ -128,11 +463,7 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
                     if( DEBUG ) {
                         Log.w(TAG, "Received a geofence event with an error!");
                     }
-                    if( null != mGeofenceCallbacks ){
-                        for( GeofenceCallbacks cb : mGeofenceCallbacks ) {
-                            cb.onGeofenceError(event);
-                        }
-                    }
+                    mGeofenceCallbacks.dispatch(GEOFENCE_ERROR, event);
                 } else {
                     switch (event.getGeofenceTransition()) {
                         case Geofence.GEOFENCE_TRANSITION_ENTER:
@@ -140,7 +471,7 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
                                 Log.d(TAG, "Received a geofence ENTER event");
                             }
                             for (Geofence geofence : event.getTriggeringGeofences()) {
-                                notifyCallbacksOnGeofenceEntered(geofence.getRequestId());
+                                onPlayServicesGeofenceTransition(geofence.getRequestId(), Geofence.GEOFENCE_TRANSITION_ENTER);
                             }
                             break;
                         case Geofence.GEOFENCE_TRANSITION_DWELL:
@@ -148,7 +479,7 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
                                 Log.d(TAG, "Received a geofence DWELL event");
                             }
                             for (Geofence geofence : event.getTriggeringGeofences()) {
-                                notifyCallbacksOnGeofenceDwelled(geofence.getRequestId());
+                                onPlayServicesGeofenceTransition(geofence.getRequestId(), Geofence.GEOFENCE_TRANSITION_DWELL);
                             }
                             break;
                         case Geofence.GEOFENCE_TRANSITION_EXIT:
@@ -156,7 +487,7 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
                                 Log.d(TAG, "Received a geofence EXIT event");
                             }
                             for (Geofence geofence : event.getTriggeringGeofences()) {
-                                notifyCallbacksOnGeofenceExited(geofence.getRequestId());
+                                onPlayServicesGeofenceTransition(geofence.getRequestId(), Geofence.GEOFENCE_TRANSITION_EXIT);
                             }
                             break;
                     }
@@ -169,126 +500,668 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
         if( DEBUG ) {
             Log.d(TAG, "Service destroyed.");
         }
+        mReconnectBackoff.cancel();
+        drainCommands();
+        // the framework sources would otherwise keep the listener, and the GPS, going
+        mRequestBackend.removeLocationUpdates();
         super.onDestroy();
+        mHandler.removeCallbacks(mDumpMetrics);
+        mLocationBatcher.flush();
+        final TrackJournal journal = mTrackJournal;
+        if (journal != null) {
+            journal.close();
+        }
         if (mGoogleApiClient != null) {
             mGoogleApiClient.disconnect();
         }
+        final LocationMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onDisconnected();
+        }
+        synchronized (this) {
+            if (mIsolationExecutor != null) {
+                mIsolationExecutor.shutdown();
+                mIsolationExecutor = null;
+            }
+            if (mBudgetWatchdog != null) {
+                mBudgetWatchdog.shutdownNow();
+                mBudgetWatchdog = null;
+            }
+        }
+    }
+
+    /**
+     * Has the command thread handle whatever geofence intents are still queued, report held
+     * transitions and write the last location, then quit, without waiting for it. While the service
+     * is running, it is only stopped through {@link #stopSelfResult(int)} once the queue is empty.
+     */
+    private void drainCommands() {
+        mCommandHandler.removeCallbacks(mProcessCommands);
+        mCommandHandler.removeCallbacks(mFlushGeofenceTransitions);
+        mCommandHandler.post(new Runnable() {
+            @Override public void run() {
+                try {
+                    processCommands();
+                    mGeofenceTransitionCoalescer.drain();
+                    try {
+                        mLastLocationCache.flush();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Unable to cache last location.", e);
+                    }
+                    mLastLocationCache.close();
+                } finally {
+                    // the last message, anything posted after it is dropped
+                    Looper.myLooper().quit();
+                }
+            }
+        });
     }
 
     // region callbacks
 
     public boolean addLocationCallbacks(LocationCallbacks callbacks) {
-        if (mLastLocation != null) {
-            callbacks.onLocationChanged(mLastLocation);
+        return addLocationCallbacks(callbacks, null);
+    }
+
+    /**
+     * Registers location callbacks that will be notified on the given executor instead of on the
+     * thread Play Services delivers updates on. Pass a null executor to be notified inline.
+     */
+    public boolean addLocationCallbacks(LocationCallbacks callbacks, Executor executor) {
+        if (!mLocationCallbacks.add(callbacks, executor)) {
+            return false;
         }
-        return mLocationCallbacks.add(callbacks);
+        final Location lastLocation = getLastLocation();
+        if (lastLocation != null) {
+            mLocationCallbacks.dispatchTo(callbacks, LOCATION_CHANGED, lastLocation);
+        }
+        return true;
     }
 
     public boolean removeLocationCallbacks(LocationCallbacks callbacks) {
+        forgetMetrics(callbacks);
         return mLocationCallbacks.remove(callbacks);
     }
 
+    public boolean addBatchedLocationCallbacks(BatchedLocationCallbacks callbacks) {
+        return addBatchedLocationCallbacks(callbacks, null);
+    }
+
+    /**
+     * Registers batched location callbacks that will be notified on the given executor. Pass a
+     * null executor to be notified inline.
+     */
+    public boolean addBatchedLocationCallbacks(BatchedLocationCallbacks callbacks, Executor executor) {
+        return mBatchedLocationCallbacks.add(callbacks, executor);
+    }
+
+    public boolean removeBatchedLocationCallbacks(BatchedLocationCallbacks callbacks) {
+        forgetMetrics(callbacks);
+        final boolean removed = mBatchedLocationCallbacks.remove(callbacks);
+        if (mBatchedLocationCallbacks.isEmpty()) {
+            mLocationBatcher.clear();
+        }
+        return removed;
+    }
+
+    public boolean addKinematicsCallbacks(KinematicsCallbacks callbacks) {
+        return addKinematicsCallbacks(callbacks, null);
+    }
+
+    /**
+     * Registers kinematics callbacks that will be notified on the given executor. Pass a null
+     * executor to be notified inline.
+     */
+    public boolean addKinematicsCallbacks(KinematicsCallbacks callbacks, Executor executor) {
+        return mKinematicsCallbacks.add(callbacks, executor);
+    }
+
+    public boolean removeKinematicsCallbacks(KinematicsCallbacks callbacks) {
+        forgetMetrics(callbacks);
+        return mKinematicsCallbacks.remove(callbacks);
+    }
+
     public boolean addGeofenceCallbacks(GeofenceCallbacks callbacks) {
-        return mGeofenceCallbacks.add(callbacks);
+        return addGeofenceCallbacks(callbacks, null);
+    }
+
+    /**
+     * Registers geofence callbacks that will be notified on the given executor. Pass a null executor
+     * to be notified on the main thread.
+     */
+    public boolean addGeofenceCallbacks(GeofenceCallbacks callbacks, Executor executor) {
+        return mGeofenceCallbacks.add(callbacks, executor != null ? executor : mMainThreadExecutor);
     }
 
     public boolean removeGeofenceCallbacks(GeofenceCallbacks callbacks) {
+        forgetMetrics(callbacks);
         return mGeofenceCallbacks.remove(callbacks);
     }
 
+    public boolean addBatchedGeofenceCallbacks(BatchedGeofenceCallbacks callbacks) {
+        return addBatchedGeofenceCallbacks(callbacks, null);
+    }
+
+    /**
+     * Registers batched geofence callbacks that will be notified on the given executor. Pass a null
+     * executor to be notified on the main thread.
+     */
+    public boolean addBatchedGeofenceCallbacks(BatchedGeofenceCallbacks callbacks, Executor executor) {
+        return mBatchedGeofenceCallbacks.add(callbacks, executor != null ? executor : mMainThreadExecutor);
+    }
+
+    public boolean removeBatchedGeofenceCallbacks(BatchedGeofenceCallbacks callbacks) {
+        forgetMetrics(callbacks);
+        return mBatchedGeofenceCallbacks.remove(callbacks);
+    }
+
     public boolean addConnectionCallbacks(ConnectionCallbacks callbacks) {
-        if (mFailedConnectionResult != null) {
-            callbacks.onLocationServicesConnectionFailed(mFailedConnectionResult);
+        return addConnectionCallbacks(callbacks, null);
+    }
+
+    /**
+     * Registers connection callbacks that will be notified on the given executor. Pass a null
+     * executor to be notified inline.
+     */
+    public boolean addConnectionCallbacks(ConnectionCallbacks callbacks, Executor executor) {
+        if (!mConnectionCallbacks.add(callbacks, executor)) {
+            return false;
+        }
+        final ConnectionResult failedConnectionResult = mFailedConnectionResult;
+        if (failedConnectionResult != null) {
+            mConnectionCallbacks.dispatchTo(callbacks, CONNECTION_FAILED, failedConnectionResult);
         } else if (isLocationServicesConnected()) {
-            callbacks.onLocationServicesConnectionSuccessful();
+            mConnectionCallbacks.dispatchTo(callbacks, CONNECTION_SUCCESSFUL, null);
         }
-        return mConnectionCallbacks.add(callbacks);
+        return true;
     }
 
     public boolean removeConnectionCallbacks(ConnectionCallbacks callbacks) {
         return mConnectionCallbacks.remove(callbacks);
     }
 
-    private void notifyCallbacksOnGeofenceEntered(String geofenceId) {
-        for (GeofenceCallbacks callbacks : mGeofenceCallbacks) {
-            callbacks.onGeofenceEntered(geofenceId);
+    private void notifyCallbacksOnGeofenceTransitions(List<GeofenceTransition> transitions) {
+        for (GeofenceTransition transition : transitions) {
+            switch (transition.getTransition()) {
+                case Geofence.GEOFENCE_TRANSITION_ENTER:
+                    notifyCallbacksOnGeofenceEntered(transition.getRequestId());
+                    break;
+                case Geofence.GEOFENCE_TRANSITION_DWELL:
+                    notifyCallbacksOnGeofenceDwelled(transition.getRequestId());
+                    break;
+                case Geofence.GEOFENCE_TRANSITION_EXIT:
+                    notifyCallbacksOnGeofenceExited(transition.getRequestId());
+                    break;
+            }
         }
+        mBatchedGeofenceCallbacks.dispatch(GEOFENCE_TRANSITIONS, transitions);
+    }
+
+    private void notifyCallbacksOnGeofenceEntered(String geofenceId) {
+        mGeofenceCallbacks.dispatch(GEOFENCE_ENTERED, geofenceId);
     }
 
     private void notifyCallbacksOnGeofenceDwelled(String geofenceId) {
-        for (GeofenceCallbacks callbacks : mGeofenceCallbacks) {
-            callbacks.onGeofenceDwelled(geofenceId);
-        }
+        mGeofenceCallbacks.dispatch(GEOFENCE_DWELLED, geofenceId);
     }
 
     private void notifyCallbacksOnGeofenceExited(String geofenceId) {
-        for (GeofenceCallbacks callbacks : mGeofenceCallbacks) {
-            callbacks.onGeofenceExited(geofenceId);
-        }
+        mGeofenceCallbacks.dispatch(GEOFENCE_EXITED, geofenceId);
     }
 
-    private void notifyCallbacksOnLocationChanged() {
-        for (LocationCallbacks callbacks : mLocationCallbacks) {
-            callbacks.onLocationChanged(mLastLocation);
+    private void notifyCallbacksOnLocationChanged(Location location) {
+        mLocationCallbacks.dispatch(LOCATION_CHANGED, location);
+    }
+
+    private void notifyCallbacksOnLocationsBatched(Location location) {
+        if (!mBatchedLocationCallbacks.isEmpty()) {
+            mLocationBatcher.add(location);
         }
     }
 
     private void notifyCallbacksOnConnectionFailed(ConnectionResult connectionResult) {
-        for (ConnectionCallbacks callbacks : mConnectionCallbacks) {
-            callbacks.onLocationServicesConnectionFailed(connectionResult);
-        }
+        mConnectionCallbacks.dispatch(CONNECTION_FAILED, connectionResult);
     }
 
     private void notifyCallbacksOnConnectionSuccessful() {
-        for (ConnectionCallbacks callbacks : mConnectionCallbacks) {
-            callbacks.onLocationServicesConnectionSuccessful();
-        }
+        mConnectionCallbacks.dispatch(CONNECTION_SUCCESSFUL, null);
+    }
+
+    private void notifyCallbacksOnConnectionSuspended(int cause) {
+        mConnectionCallbacks.dispatch(CONNECTION_SUSPENDED, cause);
     }
 
     // endregion
 
-    public void setupGeofences(List<Geofence> geofences) {
-        if (isLocationServicesConnected()) {
+    /**
+     * @return every location this service delivers, as a stream that subscribers pull from at
+     * their own pace. Subscribing is equivalent to adding {@link LocationCallbacks}, so the most
+     * recent location is delivered first.
+     */
+    public LocationStream getLocationStream() {
+        return new LocationStream(this, mHandler);
+    }
+
+    /**
+     * Controls how locations are grouped for {@link BatchedLocationCallbacks}. A batch is delivered
+     * once it holds {@code maxBatchSize} locations or {@code maxLatencyMillis} after its first
+     * location arrived, whichever happens first. Any locations already buffered are delivered
+     * before the new limits take effect. By default every location is delivered in its own batch.
+     *
+     * Per-location {@link LocationCallbacks} are unaffected by this setting.
+     */
+    public void setLocationBatching(int maxBatchSize, long maxLatencyMillis) {
+        mLocationBatcher.configure(maxBatchSize, maxLatencyMillis);
+    }
+
+    /**
+     * Immediately delivers any locations waiting in the current batch.
+     */
+    public void flushLocationBatch() {
+        mLocationBatcher.flush();
+    }
+
+    /**
+     * Sets the processing stages every location passes through before it is recorded or delivered
+     * to any listener, for example an {@link com.shiftconnects.android.location.processing.AccuracyGate},
+     * an {@link com.shiftconnects.android.location.processing.OutlierRejector} and a
+     * {@link com.shiftconnects.android.location.processing.KalmanFilter}. A location dropped by a
+     * stage is not delivered at all. Pass no stages to deliver raw locations.
+     */
+    public void setLocationStages(LocationStage... stages) {
+        mLocationPipeline.setStages(stages);
+    }
+
+    public LocationPipeline getLocationPipeline() {
+        return mLocationPipeline;
+    }
+
+    /**
+     * Starts retaining up to {@code capacity} of the most recent locations in a
+     * {@link LocationHistory}, replacing any history kept so far.
+     */
+    public LocationHistory enableLocationHistory(int capacity) {
+        final TrackIndex trackIndex = new TrackIndex(new LocationHistory(capacity));
+        mTrackIndex = trackIndex;
+        return trackIndex.getHistory();
+    }
+
+    public void disableLocationHistory() {
+        mTrackIndex = null;
+    }
+
+    /**
+     * @return the history of recent locations, or null if {@link #enableLocationHistory(int)} has
+     * not been called
+     */
+    public LocationHistory getLocationHistory() {
+        final TrackIndex trackIndex = mTrackIndex;
+        return trackIndex != null ? trackIndex.getHistory() : null;
+    }
+
+    /**
+     * @return an index for time and place queries over the location history, kept up to date as
+     * locations arrive, or null if {@link #enableLocationHistory(int)} has not been called
+     */
+    public TrackIndex getTrackIndex() {
+        return mTrackIndex;
+    }
+
+    /**
+     * Starts appending every location to a crash-safe {@link TrackJournal} in the app's files
+     * directory. The journal stays enabled across service restarts until
+     * {@link #disableTrackJournal()} is called: if one exists when the service is created it is
+     * reopened and appending resumes after the last intact record.
+     */
+    public TrackJournal enableTrackJournal() throws IOException {
+        TrackJournal journal = mTrackJournal;
+        if (journal == null) {
+            journal = new TrackJournal(getTrackJournalDirectory());
+            mTrackJournal = journal;
+        }
+        return journal;
+    }
+
+    /**
+     * Stops journaling and deletes the journal.
+     */
+    public void disableTrackJournal() {
+        final TrackJournal journal = mTrackJournal;
+        mTrackJournal = null;
+        if (journal != null) {
+            journal.close();
+        }
+        TrackJournal.delete(getTrackJournalDirectory());
+    }
+
+    /**
+     * @return the journal locations are being appended to, or null if journaling is not enabled
+     */
+    public TrackJournal getTrackJournal() {
+        return mTrackJournal;
+    }
+
+    private File getTrackJournalDirectory() {
+        return new File(getFilesDir(), TRACK_JOURNAL_DIRECTORY);
+    }
+
+    private void recoverTrackJournal() {
+        final File directory = getTrackJournalDirectory();
+        if (TrackJournal.exists(directory)) {
             if( DEBUG ) {
-                Log.d(TAG, "Setting up geofences [" + geofences + "]...");
-            }
-            LocationServices.GeofencingApi.addGeofences(
-                    getGoogleApiClient(),
-                    geofences,
-                    getGeofencePendingIntent()
-            ).setResultCallback(new ResultCallback<Status>() {
-                @Override
-                public void onResult(Status status) {
-                    if (status.isSuccess()) {
-                        if( DEBUG ) {
-                            Log.d(TAG, "Successfully setup geofences.");
-                        }
-                        if( null != mGeofenceCallbacks ){
-                            for( GeofenceCallbacks cb : mGeofenceCallbacks ) {
-                                cb.onGeofencesSetupSuccessful();
-                            }
-                        }
-                    } else {
-                        if( null != mGeofenceCallbacks ){
-                            for( GeofenceCallbacks cb : mGeofenceCallbacks ) {
-                                cb.onGeofencesSetupUnsuccessful(status);
-                            }
-                        }
-                    }
+                Log.d(TAG, "Recovering track journal in [" + directory + "]");
+            }
+            try {
+                mTrackJournal = new TrackJournal(directory);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to recover track journal.", e);
+            }
+        }
+    }
+
+    /**
+     * Sets how long each listener may take to handle a single location or geofence event. A
+     * listener notified inline that goes over the budget is reported to {@code listener} and from
+     * then on notified on a background thread through its own queue of at most
+     * {@code queueCapacity} events, so it can no longer delay other listeners or later fixes.
+     * Location listeners use {@code locationPolicy} when their queue is full; batched location and
+     * geofence listeners always drop the oldest event, as every event matters to them. A listener
+     * that does not return at all is caught by a watchdog thread within about two budgets. Pass a
+     * budget of 0 to stop checking and notify isolated listeners inline again.
+     */
+    public void setListenerTimeBudget(long budgetMillis, CallbackRegistry.OverflowPolicy locationPolicy,
+            int queueCapacity, CallbackRegistry.BudgetListener<Object> listener) {
+        final long budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        final Executor executor = budgetNanos > 0 ? getIsolationExecutor() : null;
+        mLocationCallbacks.setTimeBudget(budgetNanos, executor, queueCapacity, locationPolicy, listener);
+        mBatchedLocationCallbacks.setTimeBudget(budgetNanos, executor, queueCapacity,
+                CallbackRegistry.OverflowPolicy.DROP_OLDEST, listener);
+        mKinematicsCallbacks.setTimeBudget(budgetNanos, executor, queueCapacity, locationPolicy, listener);
+        mGeofenceCallbacks.setTimeBudget(budgetNanos, executor, queueCapacity,
+                CallbackRegistry.OverflowPolicy.DROP_OLDEST, listener);
+        mBatchedGeofenceCallbacks.setTimeBudget(budgetNanos, executor, queueCapacity,
+                CallbackRegistry.OverflowPolicy.DROP_OLDEST, listener);
+        mRequestArbiter.getCallbackRegistry().setTimeBudget(budgetNanos, executor, queueCapacity,
+                locationPolicy, listener);
+        scheduleBudgetWatchdog(budgetMillis);
+    }
+
+    private synchronized void scheduleBudgetWatchdog(long budgetMillis) {
+        if (mBudgetWatchdog != null) {
+            mBudgetWatchdog.shutdownNow();
+            mBudgetWatchdog = null;
+        }
+        if (budgetMillis > 0) {
+            mBudgetWatchdog = Executors.newSingleThreadScheduledExecutor();
+            mBudgetWatchdog.scheduleWithFixedDelay(mCheckDeliveries, budgetMillis, budgetMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized Executor getIsolationExecutor() {
+        if (mIsolationExecutor == null) {
+            mIsolationExecutor = Executors.newCachedThreadPool();
+        }
+        return mIsolationExecutor;
+    }
+
+    // region metrics
+
+    /**
+     * Starts measuring fix age and rate, the time spent in each location, batched location and
+     * geofence listener, and connection behaviour, replacing any metrics gathered so far. Listener
+     * timing costs two clock reads per delivery while enabled.
+     */
+    public LocationMetrics enableMetrics() {
+        final LocationMetrics metrics = new LocationMetrics(isLocationServicesConnected());
+        mMetrics = metrics;
+        mLocationCallbacks.setObserver(metrics);
+        mBatchedLocationCallbacks.setObserver(metrics);
+        mKinematicsCallbacks.setObserver(metrics);
+        mGeofenceCallbacks.setObserver(metrics);
+        mBatchedGeofenceCallbacks.setObserver(metrics);
+        mRequestArbiter.getCallbackRegistry().setObserver(metrics);
+        return metrics;
+    }
+
+    public void disableMetrics() {
+        mMetrics = null;
+        mLocationCallbacks.setObserver(null);
+        mBatchedLocationCallbacks.setObserver(null);
+        mKinematicsCallbacks.setObserver(null);
+        mGeofenceCallbacks.setObserver(null);
+        mBatchedGeofenceCallbacks.setObserver(null);
+        mRequestArbiter.getCallbackRegistry().setObserver(null);
+        setMetricsDumpInterval(0);
+    }
+
+    /**
+     * @return the metrics as they are now, or null if {@link #enableMetrics()} has not been called
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        final LocationMetrics metrics = mMetrics;
+        return metrics != null ? metrics.snapshot() : null;
+    }
+
+    /**
+     * Logs a metrics snapshot every {@code intervalMillis} while metrics are enabled. Pass 0 to
+     * stop.
+     */
+    public void setMetricsDumpInterval(long intervalMillis) {
+        mMetricsDumpInterval = intervalMillis;
+        mHandler.removeCallbacks(mDumpMetrics);
+        if (intervalMillis > 0) {
+            mHandler.postDelayed(mDumpMetrics, intervalMillis);
+        }
+    }
+
+    private void forgetMetrics(Object callbacks) {
+        final LocationMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.forget(callbacks);
+        }
+    }
+
+    // endregion
+
+    // region local geofences
+
+    /**
+     * Replaces the set of {@link LocalGeofence}s evaluated by the library against every location.
+     * There is no limit on the number of local geofences; transitions are reported through the
+     * same {@link GeofenceCallbacks} as Play Services geofences.
+     *
+     * @see #setRegisteredLocalGeofenceLimit(int)
+     */
+    public void setLocalGeofences(Collection<LocalGeofence> geofences) {
+        synchronized (mLocalGeofenceEngine) {
+            mLocalGeofenceEngine.setGeofences(geofences);
+            mRotateRegisteredLocalGeofences = true;
+            for (String id : mGeofenceTransitionCoalescer.getRequestIds()) {
+                if (!mLocalGeofenceEngine.contains(id) && !mGeofenceRegistry.contains(id)) {
+                    mGeofenceTransitionCoalescer.forget(id);
                 }
-            });
+            }
         }
+        rotateRegisteredLocalGeofences();
     }
 
-    public void removeGeofences() {
-        if (isLocationServicesConnected()) {
-            if( DEBUG ) {
-                Log.d(TAG, "Removing all geofences...");
+    public void addLocalGeofence(LocalGeofence geofence) {
+        synchronized (mLocalGeofenceEngine) {
+            mLocalGeofenceEngine.addGeofence(geofence);
+            mRotateRegisteredLocalGeofences = true;
+        }
+        rotateRegisteredLocalGeofences();
+    }
+
+    public void removeLocalGeofence(String requestId) {
+        synchronized (mLocalGeofenceEngine) {
+            mLocalGeofenceEngine.removeGeofence(requestId);
+            mRotateRegisteredLocalGeofences = true;
+        }
+        mGeofenceTransitionCoalescer.forget(requestId);
+        rotateRegisteredLocalGeofences();
+    }
+
+    /**
+     * Keeps the {@code limit} local geofences nearest to the device registered with Play Services,
+     * so that transitions are still reported while no locations are being requested. The
+     * registered set is rotated as the device moves. Defaults to 0, and is capped at the 100
+     * geofences Play Services allows.
+     */
+    public void setRegisteredLocalGeofenceLimit(int limit) {
+        synchronized (mLocalGeofenceEngine) {
+            mRegisteredLocalGeofenceLimit = Math.max(0, Math.min(limit, MAX_REGISTERED_GEOFENCES));
+            mRotateRegisteredLocalGeofences = true;
+        }
+        rotateRegisteredLocalGeofences();
+    }
+
+    private void onPlayServicesGeofenceTransition(String geofenceId, int transition) {
+        final long time = System.currentTimeMillis();
+        final boolean local;
+        synchronized (mLocalGeofenceEngine) {
+            local = mLocalGeofenceEngine.applyTransition(geofenceId, transition, time);
+        }
+        if (!local) {
+            mGeofenceTransitionCoalescer.offer(geofenceId, transition, time);
+        }
+    }
+
+    /**
+     * Holds each geofence enter and exit for the given window before reporting it, and drops it
+     * along with the opposite transition if that arrives within the window, so that a device near
+     * a fence boundary doesn't report every flip. Defaults to 0, which reports transitions right
+     * away. Either way a transition that doesn't change a fence's state is never reported.
+     */
+    public void setGeofenceDebounceWindow(long windowMillis) {
+        mGeofenceTransitionCoalescer.setDebounceMillis(windowMillis);
+    }
+
+    private void evaluateLocalGeofences(Location location) {
+        synchronized (mLocalGeofenceEngine) {
+            if (mLocalGeofenceEngine.getGrid().size() == 0) {
+                return;
+            }
+            mLocalGeofenceEngine.onLocation(location.getLatitude(), location.getLongitude(), location.getTime());
+            if (!mRotateRegisteredLocalGeofences && mRegisteredLocalGeofenceLimit > 0
+                    && GeoUtils.distanceBetween(mRotationLatitude, mRotationLongitude,
+                    location.getLatitude(), location.getLongitude()) > mRotationDistance) {
+                mRotateRegisteredLocalGeofences = true;
+            }
+        }
+        // reported on the command thread, like the transitions from Play Services
+        mCommandHandler.post(mFlushGeofenceTransitions);
+        rotateRegisteredLocalGeofences();
+    }
+
+    /**
+     * Registers the local geofences nearest to the last location with Play Services, replacing
+     * the ones registered before, if a rotation is pending.
+     */
+    private void rotateRegisteredLocalGeofences() {
+        final Location location = mLastLocation;
+        if (location == null) {
+            return;
+        }
+        synchronized (mLocalGeofenceEngine) {
+            if (!mRotateRegisteredLocalGeofences) {
+                return;
+            }
+            mRotateRegisteredLocalGeofences = false;
+            mRotationLatitude = location.getLatitude();
+            mRotationLongitude = location.getLongitude();
+            mRotationDistance = MIN_GEOFENCE_ROTATION_DISTANCE;
+
+            final List<LocalGeofence> nearest = mLocalGeofenceEngine.getGrid().nearest(
+                    location.getLatitude(), location.getLongitude(), mRegisteredLocalGeofenceLimit);
+            final Set<String> nearestIds = new HashSet<>();
+            for (LocalGeofence fence : nearest) {
+                nearestIds.add(fence.getRequestId());
+                if (!mRegisteredLocalGeofenceIds.contains(fence.getRequestId())) {
+                    mGeofenceRegistry.put(fence.toGeofence());
+                }
+            }
+            for (String id : mRegisteredLocalGeofenceIds) {
+                if (!nearestIds.contains(id)) {
+                    mGeofenceRegistry.remove(id);
+                }
+            }
+            mRegisteredLocalGeofenceIds.clear();
+            mRegisteredLocalGeofenceIds.addAll(nearestIds);
+
+            if (!nearest.isEmpty()) {
+                // rotate again once the device is halfway to the furthest registered fence
+                final LocalGeofence furthest = nearest.get(nearest.size() - 1);
+                mRotationDistance = Math.max(MIN_GEOFENCE_ROTATION_DISTANCE, GeoUtils.distanceBetween(
+                        location.getLatitude(), location.getLongitude(),
+                        furthest.getLatitude(), furthest.getLongitude()) / 2);
+            }
+        }
+    }
+
+    // endregion
+
+    /**
+     * Adds the given geofences, replacing any registered with the same request ids.
+     * {@link GeofenceCallbacks#onGeofencesSetupSuccessful()} or
+     * {@link GeofenceCallbacks#onGeofencesSetupUnsuccessful(Status)} is called once for the call,
+     * even if every geofence was already registered and nothing needed to be sent.
+     */
+    public void setupGeofences(List<Geofence> geofences) {
+        if( DEBUG ) {
+            Log.d(TAG, "Setting up geofences [" + geofences + "]...");
+        }
+        mGeofenceRegistry.putAll(geofences, mGeofenceSetupCallback);
+    }
+
+    /**
+     * Makes the given geofences the complete set registered with Play Services. Only the
+     * difference from what is already registered is sent: geofences identical to the registered
+     * ones are left untouched, new or changed ones are added and missing ones are removed. Local
+     * geofences registered through {@link #setRegisteredLocalGeofenceLimit(int)} are kept. The
+     * outcome is reported once, as for {@link #setupGeofences(List)}.
+     */
+    public void setGeofences(Collection<Geofence> geofences) {
+        if( DEBUG ) {
+            Log.d(TAG, "Setting geofences [" + geofences + "]...");
+        }
+        final Set<String> ids = new HashSet<>();
+        for (Geofence geofence : geofences) {
+            ids.add(geofence.getRequestId());
+        }
+        mGeofenceRegistry.putAll(geofences, mGeofenceSetupCallback);
+        final Set<String> keep;
+        synchronized (mLocalGeofenceEngine) {
+            keep = new HashSet<>(mRegisteredLocalGeofenceIds);
+        }
+        for (String id : mGeofenceRegistry.getRequestIds()) {
+            if (!ids.contains(id) && !keep.contains(id)) {
+                mGeofenceRegistry.remove(id);
+                mGeofenceTransitionCoalescer.forget(id);
             }
+        }
+    }
+
+    public void removeGeofences(Collection<String> requestIds) {
+        if( DEBUG ) {
+            Log.d(TAG, "Removing geofences " + requestIds);
+        }
+        for (String id : requestIds) {
+            mGeofenceRegistry.remove(id);
+            mGeofenceTransitionCoalescer.forget(id);
+        }
+    }
 
-            // remove from geofencing api
-            LocationServices.GeofencingApi.removeGeofences(getGoogleApiClient(), getGeofencePendingIntent());
+    public void removeGeofences() {
+        if( DEBUG ) {
+            Log.d(TAG, "Removing all geofences...");
+        }
+        synchronized (mLocalGeofenceEngine) {
+            mRegisteredLocalGeofenceIds.clear();
         }
+        mGeofenceRegistry.clear();
+        mGeofenceTransitionCoalescer.clear();
     }
 
     @Override
@@ -297,32 +1170,119 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
             Log.d(TAG, "Connected.");
         }
         mFailedConnectionResult = null;
+        mReconnectBackoff.reset();
+        final LocationMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onConnected();
+        }
         notifyCallbacksOnConnectionSuccessful();
+        rotateRegisteredLocalGeofences();
+        mGeofenceRegistry.flush();
+        onLocationSourceAvailable();
+    }
+
+    /**
+     * Replaces the source locations are requested from, moving the current request over to it.
+     * Defaults to a {@link FusedLocationSource}. Geofences are still registered with Play Services
+     * whichever source is used.
+     *
+     * @see PassiveLocationSource
+     * @see FrameworkLocationSource
+     */
+    public void setLocationSource(LocationSource source) {
+        synchronized (mRequestArbiter) {
+            final LocationSource previous = mLocationSource;
+            if (previous == source) {
+                return;
+            }
+            if (previous != null) {
+                previous.removeLocationUpdates(mLocationSourceListener);
+            }
+            mLocationSource = source;
+            mRequestArbiter.reapply();
+        }
+    }
+
+    public LocationSource getLocationSource() {
+        return mLocationSource;
+    }
+
+    /**
+     * Requests updates from the location source again. Called once connected to Play Services;
+     * call it when a custom source becomes available.
+     */
+    public void onLocationSourceAvailable() {
+        mRequestArbiter.reapply();
     }
 
+    /**
+     * Sets the service's own location request, replacing the one set by the previous call. Other
+     * clients' requests made through {@link #requestUpdates(LocationRequest, LocationCallbacks)}
+     * are merged with it rather than replaced.
+     */
     public void requestUpdates(LocationRequest locationRequest) {
-        if (isLocationServicesConnected()) {
-            if( DEBUG ) {
-                Log.d(TAG, "Requesting updates for [" + locationRequest + "]");
+        final boolean registered;
+        synchronized (mRequestArbiter) {
+            registered = mDefaultRequestHandle == null;
+            if (registered) {
+                mDefaultRequestHandle = mRequestArbiter.register(locationRequest, null, null);
+            } else {
+                mDefaultRequestHandle.update(locationRequest);
             }
-            LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, locationRequest, this);
-            Location location = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
-            if (location != null) {
+        }
+        if (!registered) {
+            // only changing the rate, and the last fix has already been delivered
+            return;
+        }
+        final LocationSource source = mLocationSource;
+        if (source != null && source.isAvailable()) {
+            final Location location = source.getLastLocation();
+            final Location lastLocation = mLastLocation;
+            if (location != null && (lastLocation == null || location.getTime() > lastLocation.getTime())) {
                 onLocationChanged(location);
             }
         }
     }
 
+    /**
+     * Registers a client with its own request. Play Services is asked for a single merged request
+     * covering every client, and {@code callbacks} only receives locations as often, and as far
+     * apart, as {@code locationRequest} asks for. The last known location is delivered right away.
+     * Release the returned handle to withdraw the request.
+     */
+    public LocationRequestArbiter.Handle requestUpdates(LocationRequest locationRequest, LocationCallbacks callbacks) {
+        return requestUpdates(locationRequest, callbacks, null);
+    }
+
+    public LocationRequestArbiter.Handle requestUpdates(LocationRequest locationRequest, LocationCallbacks callbacks,
+            Executor executor) {
+        final LocationRequestArbiter.Handle handle = mRequestArbiter.register(locationRequest, callbacks, executor);
+        final Location lastLocation = getLastLocation();
+        if (lastLocation != null) {
+            handle.deliver(lastLocation);
+        }
+        return handle;
+    }
+
+    /**
+     * Withdraws the request made through {@link #requestUpdates(LocationRequest)}. Updates continue
+     * for as long as any other client's request is active.
+     */
     public void removeLocationUpdates() {
-        if (isLocationServicesConnected()) {
-            if( DEBUG ) {
-                Log.d(TAG, "Removing location updates.");
+        synchronized (mRequestArbiter) {
+            if (mDefaultRequestHandle != null) {
+                mDefaultRequestHandle.release();
+                mDefaultRequestHandle = null;
             }
-            LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, this);
         }
     }
 
+    public LocationRequestArbiter getRequestArbiter() {
+        return mRequestArbiter;
+    }
+
     public void onConnectionResolved() {
+        mReconnectBackoff.reset();
         if (mGoogleApiClient != null && !mGoogleApiClient.isConnecting()) {
             mGoogleApiClient.connect();
         }
@@ -333,13 +1293,39 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
         if( DEBUG ) {
             Log.d(TAG, "onLocationChanged [" + location + "]");
         }
+        if (!mLocationPipeline.process(location)) {
+            if( DEBUG ) {
+                Log.d(TAG, "Location dropped by the pipeline.");
+            }
+            return;
+        }
         mLastLocation = location;
-        notifyCallbacksOnLocationChanged();
-        if( null != mLocationCallbacks ){
-            for( LocationCallbacks cb : mLocationCallbacks ) {
-                cb.onLocationChanged(location);
+        final Kinematics kinematics = mKinematicsTracker.update(location);
+        if (mLastLocationCache.offer(location)) {
+            mCommandHandler.post(mWriteLastLocation);
+        }
+        final TrackIndex trackIndex = mTrackIndex;
+        // the history ignores fixes that are not newer, which leaves the index with nothing to do
+        if (trackIndex != null && trackIndex.getHistory().add(location)) {
+            trackIndex.update();
+        }
+        final TrackJournal journal = mTrackJournal;
+        if (journal != null) {
+            try {
+                journal.append(location);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to journal location.", e);
             }
         }
+        final LocationMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onFix(location);
+        }
+        notifyCallbacksOnLocationChanged(location);
+        mKinematicsCallbacks.dispatch(KINEMATICS_CHANGED, kinematics);
+        mRequestArbiter.onLocationChanged(location);
+        notifyCallbacksOnLocationsBatched(location);
+        evaluateLocalGeofences(location);
     }
 
     @Override
@@ -347,11 +1333,13 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
         if( DEBUG ) {
             Log.w(TAG, "Connection to Google Play Services suspended!");
         }
-        if( null != mConnectionCallbacks ){
-            for( ConnectionCallbacks cb : mConnectionCallbacks ) {
-                cb.onConnectionSuspended(i);
-            }
+        final LocationMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onSuspended();
         }
+        notifyCallbacksOnConnectionSuspended(i);
+        // the client reconnects by itself after a suspension, this only covers it giving up
+        scheduleReconnect();
     }
 
     @Override
@@ -361,13 +1349,43 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
             Log.w(TAG, "Connection to Google Play Services failed!");
         }
         notifyCallbacksOnConnectionFailed(connectionResult);
-        if( null != mConnectionCallbacks ){
-            for( ConnectionCallbacks cb : mConnectionCallbacks ) {
-                cb.onLocationServicesConnectionFailed(connectionResult);
+        // a failure with a resolution needs the user, see onConnectionResolved(), and retrying
+        // is pointless on a device without Play Services
+        if (!connectionResult.hasResolution()
+                && connectionResult.getErrorCode() != ConnectionResult.SERVICE_MISSING
+                && connectionResult.getErrorCode() != ConnectionResult.SERVICE_INVALID) {
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        final long delay = mReconnectBackoff.schedule();
+        if( DEBUG ) {
+            if (delay >= 0) {
+                Log.d(TAG, "Reconnecting in " + delay + "ms.");
             }
         }
     }
 
+    /**
+     * Sets the bounds of the jittered exponential backoff used to reconnect after the connection
+     * to Play Services is suspended or fails without a resolution.
+     */
+    public void setReconnectDelays(long initialDelayMillis, long maxDelayMillis) {
+        mReconnectBackoff.setDelays(initialDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * @return true if location requests or geofence changes have been made that are waiting for
+     * the connection to Play Services, or for the location source to become available or accept
+     * the request. They are sent, collapsed to the latest state, once it is.
+     */
+    public boolean hasPendingOperations() {
+        return mGeofenceRegistry.hasPendingChanges()
+                || ((!isLocationSourceAvailable() || mLocationRequestRefused)
+                        && mRequestArbiter.getMergedRequest() != null);
+    }
+
     private PendingIntent getGeofencePendingIntent() {
         return PendingIntent.getService(
                 this,
@@ -377,10 +1395,59 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
         );
     }
 
+    /**
+     * @return the most recent location, or null if there is none. Until the first location
+     * arrives after the service is created this may be the location cached by a previous
+     * instance, marked with {@link LastLocationCache#EXTRA_CACHED} and its age in
+     * {@link LastLocationCache#EXTRA_AGE_MILLIS}.
+     */
+    public Location getLastLocation() {
+        final Location lastLocation = mLastLocation;
+        if (lastLocation != null && LastLocationCache.isCached(lastLocation)) {
+            return LastLocationCache.copyWithAge(lastLocation);
+        }
+        return lastLocation;
+    }
+
+    /**
+     * Seeds the last location with the one read from the cache, unless a live location has arrived
+     * in the meantime, and gives it to the location callbacks registered while it was being read.
+     * Runs on the main thread, which location updates are delivered on.
+     */
+    private void restoreLastLocation(Location cachedLocation) {
+        if (mLastLocation != null) {
+            return;
+        }
+        if( DEBUG ) {
+            Log.d(TAG, "Restored cached location [" + cachedLocation + "]");
+        }
+        mLastLocation = cachedLocation;
+        mLocationCallbacks.dispatch(LOCATION_CHANGED, LastLocationCache.copyWithAge(cachedLocation));
+    }
+
+    /**
+     * @return the motion derived from the most recent location, or null if there is none
+     */
+    public Kinematics getKinematics() {
+        return mKinematicsTracker.getLast();
+    }
+
+    /**
+     * Zeroes the odometer and forgets the previous location, so that the next one starts afresh.
+     */
+    public void resetKinematics() {
+        mKinematicsTracker.reset();
+    }
+
     public GoogleApiClient getGoogleApiClient() {
         return mGoogleApiClient;
     }
 
+    private boolean isLocationSourceAvailable() {
+        final LocationSource source = mLocationSource;
+        return source != null && source.isAvailable();
+    }
+
     public boolean isLocationServicesConnected() {
         return mGoogleApiClient != null && mGoogleApiClient.isConnected();
     }
@@ -389,6 +1456,101 @@ public class BackgroundLocationService extends Service implements GoogleApiClien
         return mBinder;
     }
 
+    // region events
+
+    private static final CallbackRegistry.Event<LocationCallbacks, Location> LOCATION_CHANGED =
+            new CallbackRegistry.Event<LocationCallbacks, Location>() {
+                @Override public void deliver(LocationCallbacks callback, Location location) {
+                    callback.onLocationChanged(location);
+                }
+            };
+
+    private static final CallbackRegistry.Event<BatchedLocationCallbacks, List<Location>> LOCATIONS_BATCH =
+            new CallbackRegistry.Event<BatchedLocationCallbacks, List<Location>>() {
+                @Override public void deliver(BatchedLocationCallbacks callback, List<Location> locations) {
+                    callback.onLocationsBatch(locations);
+                }
+            };
+
+    private static final CallbackRegistry.Event<KinematicsCallbacks, Kinematics> KINEMATICS_CHANGED =
+            new CallbackRegistry.Event<KinematicsCallbacks, Kinematics>() {
+                @Override public void deliver(KinematicsCallbacks callback, Kinematics kinematics) {
+                    callback.onLocationChanged(kinematics.getLocation(), kinematics);
+                }
+            };
+
+    private static final CallbackRegistry.Event<ConnectionCallbacks, Void> CONNECTION_SUCCESSFUL =
+            new CallbackRegistry.Event<ConnectionCallbacks, Void>() {
+                @Override public void deliver(ConnectionCallbacks callback, Void arg) {
+                    callback.onLocationServicesConnectionSuccessful();
+                }
+            };
+
+    private static final CallbackRegistry.Event<ConnectionCallbacks, ConnectionResult> CONNECTION_FAILED =
+            new CallbackRegistry.Event<ConnectionCallbacks, ConnectionResult>() {
+                @Override public void deliver(ConnectionCallbacks callback, ConnectionResult result) {
+                    callback.onLocationServicesConnectionFailed(result);
+                }
+            };
+
+    private static final CallbackRegistry.Event<ConnectionCallbacks, Integer> CONNECTION_SUSPENDED =
+            new CallbackRegistry.Event<ConnectionCallbacks, Integer>() {
+                @Override public void deliver(ConnectionCallbacks callback, Integer cause) {
+                    callback.onConnectionSuspended(cause);
+                }
+            };
+
+    private static final CallbackRegistry.Event<GeofenceCallbacks, String> GEOFENCE_ENTERED =
+            new CallbackRegistry.Event<GeofenceCallbacks, String>() {
+                @Override public void deliver(GeofenceCallbacks callback, String geofenceId) {
+                    callback.onGeofenceEntered(geofenceId);
+                }
+            };
+
+    private static final CallbackRegistry.Event<GeofenceCallbacks, String> GEOFENCE_DWELLED =
+            new CallbackRegistry.Event<GeofenceCallbacks, String>() {
+                @Override public void deliver(GeofenceCallbacks callback, String geofenceId) {
+                    callback.onGeofenceDwelled(geofenceId);
+                }
+            };
+
+    private static final CallbackRegistry.Event<GeofenceCallbacks, String> GEOFENCE_EXITED =
+            new CallbackRegistry.Event<GeofenceCallbacks, String>() {
+                @Override public void deliver(GeofenceCallbacks callback, String geofenceId) {
+                    callback.onGeofenceExited(geofenceId);
+                }
+            };
+
+    private static final CallbackRegistry.Event<BatchedGeofenceCallbacks, List<GeofenceTransition>> GEOFENCE_TRANSITIONS =
+            new CallbackRegistry.Event<BatchedGeofenceCallbacks, List<GeofenceTransition>>() {
+                @Override public void deliver(BatchedGeofenceCallbacks callback, List<GeofenceTransition> transitions) {
+                    callback.onGeofenceTransitions(transitions);
+                }
+            };
+
+    private static final CallbackRegistry.Event<GeofenceCallbacks, GeofencingEvent> GEOFENCE_ERROR =
+            new CallbackRegistry.Event<GeofenceCallbacks, GeofencingEvent>() {
+                @Override public void deliver(GeofenceCallbacks callback, GeofencingEvent event) {
+                    callback.onGeofenceError(event);
+                }
+            };
+
+    private static final CallbackRegistry.Event<GeofenceCallbacks, Void> GEOFENCES_SETUP_SUCCESSFUL =
+            new CallbackRegistry.Event<GeofenceCallbacks, Void>() {
+                @Override public void deliver(GeofenceCallbacks callback, Void arg) {
+                    callback.onGeofencesSetupSuccessful();
+                }
+            };
+
+    private static final CallbackRegistry.Event<GeofenceCallbacks, Status> GEOFENCES_SETUP_UNSUCCESSFUL =
+            new CallbackRegistry.Event<GeofenceCallbacks, Status>() {
+                @Override public void deliver(GeofenceCallbacks callback, Status status) {
+                    callback.onGeofencesSetupUnsuccessful(status);
+                }
+            };
+
+    // endregion
+
     public class LocalBinder extends Binder {
         public BackgroundLocationService getBackgroundLocationService() {
             return BackgroundLocationService.this;
@@ -1,24 +1,26 @@
 package com.shiftconnects.android.location;
 
-import android.annotation.TargetApi;
 import android.app.Service;
 import android.content.Intent;
 import android.location.Location;
 import android.os.Binder;
 import android.os.Build;
-import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
-import android.os.Message;
-import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.maps.android.SphericalUtil;
+import com.shiftconnects.android.location.mock.InterpolatedRoute;
+import com.shiftconnects.android.location.mock.LatLngRoute;
+import com.shiftconnects.android.location.mock.MockFix;
+import com.shiftconnects.android.location.mock.MockPlayer;
+import com.shiftconnects.android.location.mock.MockRoute;
+import com.shiftconnects.android.location.mock.TraceRoute;
+
+import java.io.File;
 
 /**
  * Created by mattruno on 3/3/15.
@@ -32,22 +34,18 @@ public class MockBackgroundLocationService extends BackgroundLocationService imp
     private final IBinder mBinder = new LocalBinder();
 
     private HandlerThread mWorkThread;
-    private Looper mUpdateLooper;
-    private UpdateHandler mUpdateHandler;
+    private MockPlayer mPlayer;
 
     private long mSendInterval = DEFAULT_SEND_INTERVAL;
     private float mAccuracy;
-    private boolean mTestStarted;
 
     @Override public void onCreate() {
          super.onCreate();
          Log.d(TAG, "Service created.");
          mWorkThread = new HandlerThread("UpdateThread", android.os.Process.THREAD_PRIORITY_BACKGROUND);
          mWorkThread.start();
-         mUpdateLooper = mWorkThread.getLooper();
-         mUpdateHandler = new UpdateHandler(mUpdateLooper);
-         mTestStarted = false;
-        
+         mPlayer = new MockPlayer(mWorkThread.getLooper(), new MockSink());
+
         addConnectionCallbacks(this);
     }
 
@@ -57,6 +55,8 @@ public class MockBackgroundLocationService extends BackgroundLocationService imp
     }
 
     @Override public void onDestroy() {
+         // closes every route on the work thread before it quits, rather than dropping the cancel
+         mPlayer.quit();
          super.onDestroy();
          if (getGoogleApiClient() != null && getGoogleApiClient().isConnected()) {
              LocationServices.FusedLocationApi.setMockMode(getGoogleApiClient(), false);
@@ -69,27 +69,107 @@ public class MockBackgroundLocationService extends BackgroundLocationService imp
          return mBinder;
     }
 
+    /**
+     * Queues the given locations to be played back one every {@code sendInterval} milliseconds,
+     * after any routes already queued.
+     */
     public void mockLocations(long sendInterval, float accuracy, LatLng... locations) {
          mSendInterval = sendInterval;
          mAccuracy = accuracy;
-         Message msg = mUpdateHandler.obtainMessage();
-         msg.obj = locations;
-         mUpdateHandler.sendMessage(msg);
+         mPlayer.play(new LatLngRoute(sendInterval, accuracy, locations));
+    }
+
+    /**
+     * Queues a route to be played back after any routes already queued.
+     */
+    public void mockRoute(MockRoute route) {
+         mPlayer.play(route);
     }
 
+    /**
+     * Sets the accuracy used by subsequent calls to {@link #mockLocations(LatLng...)}.
+     */
     public void setAccuracy(float accuracy) {
          mAccuracy = accuracy;
     }
 
+    /**
+     * Sets the interval used by subsequent calls to {@link #mockLocations(LatLng...)}.
+     */
     public void setSendInterval(long sendInterval) {
          mSendInterval = sendInterval;
     }
 
+    public void mockLocations(LatLng... locations) {
+         mockLocations(mSendInterval, mAccuracy, locations);
+    }
+
+    /**
+     * Moves between the given waypoints at a constant speed, sending a location every send
+     * interval rather than jumping from waypoint to waypoint.
+     *
+     * @param speed meters per second
+     */
+    public void mockLocationsAtSpeed(float speed, LatLng... waypoints) {
+         mockRoute(new InterpolatedRoute(mSendInterval, mAccuracy, speed, waypoints));
+    }
+
+    /**
+     * Replays a recorded GPX, NMEA or CSV trace, streaming it from the file as it plays.
+     *
+     * @see TraceRoute#forFile(File)
+     */
+    public void mockTrace(File file) {
+         mockRoute(TraceRoute.forFile(file));
+    }
+
+    /**
+     * @param speed time multiplier for playback, for example 100 to play routes one hundred times
+     *              faster than recorded, or {@link MockPlayer#SPEED_UNLIMITED}
+     */
+    public void setPlaybackSpeed(float speed) {
+         mPlayer.setSpeed(speed);
+    }
+
+    public void pausePlayback() {
+         mPlayer.pause();
+    }
+
+    public void resumePlayback() {
+         mPlayer.resume();
+    }
+
+    /**
+     * Moves playback of the current route to the given number of milliseconds from its start.
+     */
+    public void seekPlayback(long offsetMillis) {
+         mPlayer.seek(offsetMillis);
+    }
+
+    /**
+     * Skips the rest of the current route and starts the next queued one.
+     */
+    public void skipRoute() {
+         mPlayer.skip();
+    }
+
+    /**
+     * Stops playback and drops every queued route.
+     */
+    public void cancelPlayback() {
+         mPlayer.cancel();
+    }
+
+    public boolean isPlaying() {
+         return mPlayer.isPlaying();
+    }
+
     @Override
     public void onLocationServicesConnectionSuccessful() {
-        mUpdateLooper = mWorkThread.getLooper();
-        mUpdateHandler = new UpdateHandler(mUpdateLooper);
         LocationServices.FusedLocationApi.setMockMode(getGoogleApiClient(), true);
+        // picks up where playback stalled if the connection was lost mid route, but leaves a
+        // playback paused through pausePlayback() alone
+        mPlayer.retry();
     }
 
     @Override
@@ -97,51 +177,45 @@ public class MockBackgroundLocationService extends BackgroundLocationService imp
 
     }
 
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
-    public class UpdateHandler extends Handler {
+    /**
+     * Hands each played fix to the fused location provider. Runs on the work thread.
+     */
+    private class MockSink implements MockPlayer.Sink {
 
-         public UpdateHandler(Looper looper) {
-             super(looper);
-         }
+         private final Location mMockLocation = new Location("fused");
 
-         @Override public void handleMessage(Message msg) {
-             if (!mTestStarted) {
-                 mTestStarted = true;
-                 long elapsedTimeNanos;
-                 long currentTime;
-                 LatLng[] mockLocations = (LatLng[]) msg.obj;
-                 if (mockLocations != null && mockLocations.length > 0) {
-                     Location mockLocation = new Location("fused");
-                     LatLng lastLocation = null;
-                     for (LatLng latLng : mockLocations) {
-                         if (getGoogleApiClient() == null || !getGoogleApiClient().isConnected()) {
-                             break;
-                         }
-                         currentTime = System.currentTimeMillis();
-                         if (Build.VERSION.SDK_INT >= 17) {
-                             elapsedTimeNanos = SystemClock.elapsedRealtimeNanos();
-                             mockLocation.setElapsedRealtimeNanos(elapsedTimeNanos);
-                         }
-                         mockLocation.setTime(currentTime);
-                         mockLocation.setAccuracy(mAccuracy);
-                         mockLocation.setLatitude(latLng.latitude);
-                         mockLocation.setLongitude(latLng.longitude);
-                         if (lastLocation != null) {
-                             mockLocation.setBearing((float) SphericalUtil.computeHeading(lastLocation, latLng));
-                         }
-                         lastLocation = latLng;
-                         LocationServices.FusedLocationApi.setMockLocation(getGoogleApiClient(), mockLocation);
-
-                         // wait the specified interval
-                         try {
-                             Thread.sleep(mSendInterval);
-                         } catch (InterruptedException e) {
-                             break;
-                         }
-                     }
-                 }
-                 mTestStarted = false;
+         @Override public boolean onFix(MockFix fix, long time, long elapsedRealtimeNanos) {
+             if (getGoogleApiClient() == null || !getGoogleApiClient().isConnected()) {
+                 return false;
+             }
+             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                 mMockLocation.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+             }
+             mMockLocation.setTime(time);
+             mMockLocation.setLatitude(fix.latitude);
+             mMockLocation.setLongitude(fix.longitude);
+             if (Float.isNaN(fix.accuracy)) {
+                 mMockLocation.removeAccuracy();
+             } else {
+                 mMockLocation.setAccuracy(fix.accuracy);
+             }
+             if (Float.isNaN(fix.speed)) {
+                 mMockLocation.removeSpeed();
+             } else {
+                 mMockLocation.setSpeed(fix.speed);
+             }
+             if (Float.isNaN(fix.bearing)) {
+                 mMockLocation.removeBearing();
+             } else {
+                 mMockLocation.setBearing(fix.bearing);
+             }
+             if (Double.isNaN(fix.altitude)) {
+                 mMockLocation.removeAltitude();
+             } else {
+                 mMockLocation.setAltitude(fix.altitude);
              }
+             LocationServices.FusedLocationApi.setMockLocation(getGoogleApiClient(), mMockLocation);
+             return true;
          }
     }
 
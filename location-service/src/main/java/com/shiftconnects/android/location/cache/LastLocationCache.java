@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.cache;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the most recent location in a small fixed-layout file so that a newly created service has
+ * something to give its listeners before Play Services connects.
+ *
+ * The file is a single 52 byte record, rewritten in place and protected by a CRC, so a write torn
+ * by a crash is ignored rather than misread. Locations passed to {@link #offer(Location)} are
+ * written by {@link #flush()}, which the caller runs off the thread delivering locations, at most
+ * once per {@link #setMinWriteInterval(long) interval}.
+ *
+ * Locations read back are marked with {@link #EXTRA_CACHED} and {@link #EXTRA_AGE_MILLIS}, and keep
+ * their provider if it is one of the framework's or the fused one, {@link #PROVIDER_UNKNOWN}
+ * otherwise.
+ */
+public class LastLocationCache implements Closeable {
+
+    public static final String EXTRA_CACHED = "com.shiftconnects.android.location.extra.CACHED";
+    public static final String EXTRA_AGE_MILLIS = "com.shiftconnects.android.location.extra.AGE_MILLIS";
+
+    public static final long DEFAULT_MIN_WRITE_INTERVAL = 30 * 1000l;
+
+    public static final String PROVIDER_UNKNOWN = "cached";
+
+    // stored by index, anything else as PROVIDER_UNKNOWN
+    private static final String[] PROVIDERS = { "gps", "network", "passive", "fused" };
+
+    private static final int MAGIC = 0x4c4c4f43; // "LLOC"
+    private static final int VERSION = 2;
+    private static final int PAYLOAD_SIZE = 48;
+    private static final int RECORD_SIZE = PAYLOAD_SIZE + 4;
+
+    private final File mFile;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 mCrc = new CRC32();
+
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private long mMinWriteInterval = DEFAULT_MIN_WRITE_INTERVAL;
+    private long mLastWriteTime = Long.MIN_VALUE;
+    private Location mPending;
+    private boolean mFlushRequested;
+
+    public LastLocationCache(File file) {
+        mFile = file;
+    }
+
+    public synchronized void setMinWriteInterval(long minWriteIntervalMillis) {
+        mMinWriteInterval = minWriteIntervalMillis;
+    }
+
+    /**
+     * @return the cached location marked as cached with its current age, or null if there is
+     * none or it can't be read
+     */
+    public synchronized Location read() {
+        if (!mFile.exists() || mFile.length() < RECORD_SIZE) {
+            return null;
+        }
+        try {
+            final FileChannel channel = channel();
+            mBuffer.clear();
+            while (mBuffer.hasRemaining()) {
+                if (channel.read(mBuffer, mBuffer.position()) < 0) {
+                    return null;
+                }
+            }
+            mBuffer.flip();
+            mCrc.reset();
+            mCrc.update(mBuffer.array(), 0, PAYLOAD_SIZE);
+            if (mBuffer.getInt(PAYLOAD_SIZE) != (int) mCrc.getValue()
+                    || mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+                return null;
+            }
+            final int providerIndex = mBuffer.getInt(44);
+            final Location location = new Location(providerIndex >= 0 && providerIndex < PROVIDERS.length
+                    ? PROVIDERS[providerIndex] : PROVIDER_UNKNOWN);
+            location.setLatitude(mBuffer.getDouble(8));
+            location.setLongitude(mBuffer.getDouble(16));
+            final float accuracy = mBuffer.getFloat(24);
+            if (!Float.isNaN(accuracy)) {
+                location.setAccuracy(accuracy);
+            }
+            final float speed = mBuffer.getFloat(28);
+            if (!Float.isNaN(speed)) {
+                location.setSpeed(speed);
+            }
+            final float bearing = mBuffer.getFloat(32);
+            if (!Float.isNaN(bearing)) {
+                location.setBearing(bearing);
+            }
+            location.setTime(mBuffer.getLong(36));
+            return copyWithAge(location);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the location now.
+     */
+    public synchronized void write(Location location) throws IOException {
+        mPending = null;
+        mFlushRequested = false;
+        mLastWriteTime = SystemClock.elapsedRealtime();
+        mBuffer.clear();
+        mBuffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putDouble(location.getLatitude())
+                .putDouble(location.getLongitude())
+                .putFloat(location.hasAccuracy() ? location.getAccuracy() : Float.NaN)
+                .putFloat(location.hasSpeed() ? location.getSpeed() : Float.NaN)
+                .putFloat(location.hasBearing() ? location.getBearing() : Float.NaN)
+                .putLong(location.getTime())
+                .putInt(indexOfProvider(location.getProvider()));
+        mCrc.reset();
+        mCrc.update(mBuffer.array(), 0, PAYLOAD_SIZE);
+        mBuffer.putInt((int) mCrc.getValue());
+        mBuffer.flip();
+        final FileChannel channel = channel();
+        while (mBuffer.hasRemaining()) {
+            channel.write(mBuffer, mBuffer.position());
+        }
+    }
+
+    /**
+     * Keeps the location for the next {@link #flush()} without touching the file.
+     *
+     * @return true if the last write was long enough ago that the caller should now schedule a
+     * flush. Returns false again until that flush has happened.
+     */
+    public synchronized boolean offer(Location location) {
+        mPending = location;
+        if (mFlushRequested) {
+            return false;
+        }
+        if (mLastWriteTime == Long.MIN_VALUE
+                || SystemClock.elapsedRealtime() - mLastWriteTime >= mMinWriteInterval) {
+            mFlushRequested = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the latest location passed to {@link #offer(Location)}, if it hasn't been yet.
+     */
+    public synchronized void flush() throws IOException {
+        if (mPending != null) {
+            write(mPending);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mRandomAccessFile != null) {
+            try {
+                mRandomAccessFile.close();
+            } catch (IOException e) {
+                // nothing left to do with it
+            }
+            mRandomAccessFile = null;
+            mChannel = null;
+        }
+    }
+
+    public synchronized void delete() {
+        close();
+        mPending = null;
+        mFlushRequested = false;
+        mLastWriteTime = Long.MIN_VALUE;
+        mFile.delete();
+    }
+
+    public static boolean isCached(Location location) {
+        final Bundle extras = location.getExtras();
+        return extras != null && extras.getBoolean(EXTRA_CACHED);
+    }
+
+    /**
+     * @return a copy of a location marked as cached, with its age as of now
+     */
+    public static Location copyWithAge(Location location) {
+        final Location copy = new Location(location);
+        final long ageMillis = Math.max(0, System.currentTimeMillis() - location.getTime());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            copy.setElapsedRealtimeNanos(Math.max(0,
+                    SystemClock.elapsedRealtimeNanos() - TimeUnit.MILLISECONDS.toNanos(ageMillis)));
+        }
+        final Bundle extras = new Bundle();
+        extras.putBoolean(EXTRA_CACHED, true);
+        extras.putLong(EXTRA_AGE_MILLIS, ageMillis);
+        copy.setExtras(extras);
+        return copy;
+    }
+
+    private static int indexOfProvider(String provider) {
+        for (int i = 0; i < PROVIDERS.length; i++) {
+            if (PROVIDERS[i].equals(provider)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (mChannel == null) {
+            final File parent = mFile.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create " + parent);
+            }
+            mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+            mChannel = mRandomAccessFile.getChannel();
+        }
+        return mChannel;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.connection;
+
+import android.os.Handler;
+import android.text.format.DateUtils;
+
+import java.util.Random;
+
+/**
+ * Schedules reconnect attempts on a {@link Handler} with jittered exponential backoff. The delay
+ * before attempt {@code n} is picked uniformly between half and all of
+ * {@code min(maxDelay, initialDelay * 2^n)}, so that many clients dropped by the same Play Services
+ * restart don't all reconnect at once.
+ *
+ * Call {@link #reset()} once connected so that the next disconnect starts from the initial delay.
+ */
+public class ReconnectBackoff {
+
+    public static final long DEFAULT_INITIAL_DELAY = DateUtils.SECOND_IN_MILLIS;
+    public static final long DEFAULT_MAX_DELAY = 5 * DateUtils.MINUTE_IN_MILLIS;
+
+    private final Handler mHandler;
+    private final Runnable mReconnect;
+    private final Random mRandom = new Random();
+
+    private long mInitialDelay = DEFAULT_INITIAL_DELAY;
+    private long mMaxDelay = DEFAULT_MAX_DELAY;
+    private int mAttempt;
+    private boolean mScheduled;
+
+    private final Runnable mAttemptRunnable = new Runnable() {
+        @Override public void run() {
+            synchronized (ReconnectBackoff.this) {
+                mScheduled = false;
+            }
+            mReconnect.run();
+        }
+    };
+
+    /**
+     * @param reconnect run on the handler's thread for every attempt
+     */
+    public ReconnectBackoff(Handler handler, Runnable reconnect) {
+        mHandler = handler;
+        mReconnect = reconnect;
+    }
+
+    public synchronized void setDelays(long initialDelay, long maxDelay) {
+        if (initialDelay <= 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Invalid delays: " + initialDelay + ", " + maxDelay);
+        }
+        mInitialDelay = initialDelay;
+        mMaxDelay = maxDelay;
+    }
+
+    /**
+     * Schedules the next attempt, unless one is already scheduled.
+     *
+     * @return the delay before the attempt in milliseconds, or -1 if one was already scheduled
+     */
+    public synchronized long schedule() {
+        if (mScheduled) {
+            return -1;
+        }
+        final long delay = delay(mAttempt, mInitialDelay, mMaxDelay, mRandom);
+        if (mAttempt < Integer.MAX_VALUE) {
+            mAttempt++;
+        }
+        mScheduled = true;
+        mHandler.postDelayed(mAttemptRunnable, delay);
+        return delay;
+    }
+
+    /**
+     * Cancels any scheduled attempt and starts the next one from the initial delay again.
+     */
+    public synchronized void reset() {
+        cancel();
+        mAttempt = 0;
+    }
+
+    public synchronized void cancel() {
+        mHandler.removeCallbacks(mAttemptRunnable);
+        mScheduled = false;
+    }
+
+    public synchronized int getAttempt() {
+        return mAttempt;
+    }
+
+    public synchronized boolean isScheduled() {
+        return mScheduled;
+    }
+
+    static long delay(int attempt, long initialDelay, long maxDelay, Random random) {
+        // compared before shifting so that a long run of attempts can't overflow
+        final long ceiling = attempt >= 62 || initialDelay > (maxDelay >> attempt)
+                ? maxDelay : initialDelay << attempt;
+        final long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+}
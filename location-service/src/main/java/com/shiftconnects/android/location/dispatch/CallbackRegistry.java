@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A copy-on-write registry of callbacks.
+ *
+ * Registration and removal take a lock and publish a new snapshot array, while dispatching only
+ * reads the current snapshot, so callbacks may be added or removed from any thread (including from
+ * inside a callback) without disturbing a dispatch that is already in progress. Each callback is
+ * notified exactly once per event, either inline on the dispatching thread or on the
+ * {@link Executor} it was registered with.
+ *
+ * A time budget can be set with {@link #setTimeBudget}. An inline callback that takes longer than
+ * the budget is reported and moved onto its own bounded queue, drained on a separate executor, so
+ * that it no longer holds up the dispatching thread or the callbacks after it. A callback that
+ * never returns is only noticed while it is still running if {@link #checkDeliveries()} is called
+ * from another thread, or if another thread dispatches to it.
+ */
+public class CallbackRegistry<T> {
+
+    /**
+     * Delivers a single event with an argument to a callback. Implementations are expected to be
+     * stateless singletons so that dispatching does not allocate.
+     */
+    public interface Event<T, A> {
+        void deliver(T callback, A arg);
+    }
+
+    /**
+     * Told how long each delivery took, measured on the thread the callback ran on.
+     */
+    public interface Observer<T> {
+        void onDelivered(T callback, long durationNanos);
+    }
+
+    /**
+     * What an isolated callback's queue does when events arrive faster than the callback handles
+     * them.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Keeps every event up to the queue's capacity, then drops the oldest.
+         */
+        DROP_OLDEST,
+        /**
+         * Keeps only the latest pending event of each kind, for callbacks that only care about the
+         * current state, such as the current location.
+         */
+        COALESCE_LATEST
+    }
+
+    public interface BudgetListener<T> {
+        /**
+         * Called the first time a callback takes longer than the time budget.
+         *
+         * @param isolated true if the callback has been moved onto its own queue, false if it was
+         *                 already registered with an executor and is left there
+         */
+        void onBudgetExceeded(T callback, long durationNanos, boolean isolated);
+    }
+
+    private static final Registration[] EMPTY = new Registration[0];
+
+    private final Object mLock = new Object();
+
+    private volatile Registration[] mSnapshot = EMPTY;
+    private volatile Observer<? super T> mObserver;
+    private volatile Budget mBudget;
+
+    /**
+     * Sets an observer to time every delivery, or null to stop timing. Deliveries are only timed
+     * while an observer is set.
+     */
+    public void setObserver(Observer<? super T> observer) {
+        mObserver = observer;
+    }
+
+    /**
+     * Sets how long an inline callback may take to handle one event. Callbacks over budget are
+     * reported to the listener and then receive events through a queue of at most
+     * {@code queueCapacity} pending events, drained on {@code isolationExecutor}. Callbacks that
+     * were registered with an executor are only reported. A budget of 0 or less stops checking and
+     * returns isolated callbacks to inline delivery, though events already queued for them are
+     * still delivered on the isolation executor.
+     */
+    public void setTimeBudget(long budgetNanos, Executor isolationExecutor, int queueCapacity,
+            OverflowPolicy policy, BudgetListener<? super T> listener) {
+        if (budgetNanos <= 0) {
+            synchronized (mLock) {
+                mBudget = null;
+                restoreIsolated();
+            }
+            return;
+        }
+        if (isolationExecutor == null || policy == null) {
+            throw new IllegalArgumentException("isolationExecutor and policy are required");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        mBudget = new Budget(budgetNanos, isolationExecutor, queueCapacity, policy, listener);
+    }
+
+    /**
+     * Registers a callback to be notified inline on the dispatching thread.
+     *
+     * @return true if the callback was added, false if it was already registered
+     */
+    public boolean add(T callback) {
+        return add(callback, null);
+    }
+
+    /**
+     * Registers a callback to be notified on the given executor. A null executor delivers inline.
+     *
+     * @return true if the callback was added, false if it was already registered
+     */
+    public boolean add(T callback, Executor executor) {
+        if (callback == null) {
+            throw new IllegalArgumentException("callback == null");
+        }
+        synchronized (mLock) {
+            final Registration[] current = mSnapshot;
+            if (indexOf(current, callback) >= 0) {
+                return false;
+            }
+            final Registration[] next = new Registration[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = new Registration(callback, executor);
+            mSnapshot = next;
+            return true;
+        }
+    }
+
+    /**
+     * @return true if the callback was registered and has been removed
+     */
+    public boolean remove(T callback) {
+        synchronized (mLock) {
+            final Registration[] current = mSnapshot;
+            final int index = indexOf(current, callback);
+            if (index < 0) {
+                return false;
+            }
+            if (current.length == 1) {
+                mSnapshot = EMPTY;
+                return true;
+            }
+            final Registration[] next = new Registration[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            mSnapshot = next;
+            return true;
+        }
+    }
+
+    /**
+     * Reports and isolates every callback whose delivery has been running for longer than the
+     * budget, so that later dispatches queue for it instead of waiting behind it. Meant to be
+     * called periodically from a thread other than the dispatching one, which is held up by the
+     * callback for as long as it runs.
+     */
+    public void checkDeliveries() {
+        final Budget budget = mBudget;
+        if (budget == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        for (Registration registration : mSnapshot) {
+            checkInFlight(registration, budget, now);
+        }
+    }
+
+    public void clear() {
+        synchronized (mLock) {
+            mSnapshot = EMPTY;
+        }
+    }
+
+    public boolean isEmpty() {
+        return mSnapshot.length == 0;
+    }
+
+    public int size() {
+        return mSnapshot.length;
+    }
+
+    /**
+     * Delivers the event to every callback in the current snapshot.
+     */
+    public <A> void dispatch(Event<T, A> event, A arg) {
+        final Registration[] snapshot = mSnapshot;
+        for (Registration registration : snapshot) {
+            deliver(registration, event, arg);
+        }
+    }
+
+    /**
+     * Delivers the event to a single callback, honoring the executor it was registered with. Does
+     * nothing if the callback is not registered.
+     */
+    public <A> void dispatchTo(T callback, Event<T, A> event, A arg) {
+        final Registration[] snapshot = mSnapshot;
+        final int index = indexOf(snapshot, callback);
+        if (index >= 0) {
+            deliver(snapshot[index], event, arg);
+        }
+    }
+
+    private <A> void deliver(Registration registration, final Event<T, A> event, final A arg) {
+        final Budget budget = mBudget;
+        if (budget != null && registration.queue == null && registration.executor == null) {
+            // another thread may still be stuck delivering an earlier event
+            final Registration replacement = checkInFlight(registration, budget, System.nanoTime());
+            if (replacement != null) {
+                registration = replacement;
+            }
+        }
+        deliverTo(registration, event, arg);
+    }
+
+    private <A> void deliverTo(final Registration registration, final Event<T, A> event, final A arg) {
+        if (registration.queue != null) {
+            registration.queue.enqueue(event, arg);
+        } else if (registration.executor == null) {
+            invoke(registration, event, arg);
+        } else {
+            registration.executor.execute(new Runnable() {
+                @Override public void run() {
+                    invoke(registration, event, arg);
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <A> void invoke(Registration registration, Event<T, A> event, A arg) {
+        final T callback = (T) registration.callback;
+        final Observer<? super T> observer = mObserver;
+        final Budget budget = mBudget;
+        if (observer == null && budget == null) {
+            event.deliver(callback, arg);
+            return;
+        }
+        final long start = System.nanoTime();
+        // only the first of several concurrent deliveries is watched, which is enough to spot a hang
+        final boolean watched = budget != null && registration.inFlightSince.compareAndSet(0, start);
+        try {
+            event.deliver(callback, arg);
+        } finally {
+            final long duration = System.nanoTime() - start;
+            if (watched) {
+                registration.inFlightSince.set(0);
+                final Registration successor = registration.successor;
+                if (successor != null) {
+                    successor.queue.release();
+                }
+            }
+            if (observer != null) {
+                observer.onDelivered(callback, duration);
+            }
+            if (budget != null && duration > budget.nanos && !registration.overBudget) {
+                onBudgetExceeded(registration, budget, duration, 0);
+            }
+        }
+    }
+
+    /**
+     * Isolates the callback if its delivery in progress has run past the budget.
+     *
+     * @return the registration to deliver to from now on, or null if it is unchanged
+     */
+    private Registration checkInFlight(Registration registration, Budget budget, long now) {
+        final long since = registration.inFlightSince.get();
+        if (since == 0 || now - since <= budget.nanos || registration.overBudget) {
+            return null;
+        }
+        return onBudgetExceeded(registration, budget, now - since, since);
+    }
+
+    /**
+     * @param inFlightSince when the delivery still running started, or 0 if it has returned
+     * @return the isolated replacement, or null if the callback was not isolated
+     */
+    @SuppressWarnings("unchecked")
+    private Registration onBudgetExceeded(Registration registration, Budget budget, long duration,
+            long inFlightSince) {
+        Registration replacement = null;
+        synchronized (mLock) {
+            if (registration.overBudget) {
+                return null;
+            }
+            registration.overBudget = true;
+            if (registration.executor == null && registration.queue == null) {
+                final Registration[] current = mSnapshot;
+                final int index = indexOf(current, registration.callback);
+                if (index >= 0 && current[index] == registration) {
+                    replacement = new Registration(registration.callback, null);
+                    replacement.queue = new IsolatedQueue(replacement, budget);
+                    replacement.overBudget = true;
+                    if (inFlightSince != 0) {
+                        // the queue must not run the callback alongside the delivery it is stuck in
+                        replacement.queue.hold();
+                        registration.successor = replacement;
+                        if (registration.inFlightSince.get() != inFlightSince) {
+                            replacement.queue.release();
+                        }
+                    }
+                    final Registration[] next = current.clone();
+                    next[index] = replacement;
+                    mSnapshot = next;
+                }
+            }
+        }
+        if (budget.listener != null) {
+            ((BudgetListener<Object>) budget.listener).onBudgetExceeded(registration.callback, duration,
+                    replacement != null);
+        }
+        return replacement;
+    }
+
+    /**
+     * Puts isolated callbacks back to inline delivery. Must hold {@link #mLock}.
+     */
+    private void restoreIsolated() {
+        final Registration[] current = mSnapshot;
+        Registration[] next = null;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].queue != null) {
+                if (next == null) {
+                    next = current.clone();
+                }
+                next[i] = new Registration(current[i].callback, null);
+            }
+        }
+        if (next != null) {
+            mSnapshot = next;
+        }
+    }
+
+    private static int indexOf(Registration[] registrations, Object callback) {
+        for (int i = 0; i < registrations.length; i++) {
+            if (registrations[i].callback == callback) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Budget {
+        final long nanos;
+        final Executor executor;
+        final int capacity;
+        final OverflowPolicy policy;
+        final BudgetListener<?> listener;
+
+        Budget(long nanos, Executor executor, int capacity, OverflowPolicy policy, BudgetListener<?> listener) {
+            this.nanos = nanos;
+            this.executor = executor;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Events waiting for an isolated callback, drained one at a time so the callback never runs
+     * concurrently with itself.
+     */
+    private final class IsolatedQueue implements Runnable {
+        private final Registration mRegistration;
+        private final Executor mExecutor;
+        private final int mCapacity;
+        private final OverflowPolicy mPolicy;
+        private final ArrayDeque<Pending> mPending = new ArrayDeque<>();
+        private boolean mScheduled;
+        private boolean mHeld;
+
+        IsolatedQueue(Registration registration, Budget budget) {
+            mRegistration = registration;
+            mExecutor = budget.executor;
+            mCapacity = budget.capacity;
+            mPolicy = budget.policy;
+        }
+
+        synchronized void enqueue(Event<?, ?> event, Object arg) {
+            if (mPolicy == OverflowPolicy.COALESCE_LATEST) {
+                final Iterator<Pending> iterator = mPending.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().event == event) {
+                        iterator.remove();
+                    }
+                }
+            }
+            if (mPending.size() >= mCapacity) {
+                mPending.pollFirst();
+            }
+            mPending.addLast(new Pending(event, arg));
+            schedule();
+        }
+
+        /**
+         * Keeps events queued, without draining them, until {@link #release()}.
+         */
+        synchronized void hold() {
+            mHeld = true;
+        }
+
+        synchronized void release() {
+            if (mHeld) {
+                mHeld = false;
+                if (!mPending.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void schedule() {
+            if (!mScheduled && !mHeld) {
+                mScheduled = true;
+                try {
+                    mExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    mScheduled = false;
+                    mPending.clear();
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run() {
+            while (true) {
+                final Pending next;
+                synchronized (this) {
+                    next = mPending.pollFirst();
+                    if (next == null) {
+                        mScheduled = false;
+                        return;
+                    }
+                }
+                boolean delivered = false;
+                try {
+                    invoke(mRegistration, (Event<T, Object>) next.event, next.arg);
+                    delivered = true;
+                } finally {
+                    if (!delivered) {
+                        // let the next event schedule a new drain
+                        synchronized (this) {
+                            mScheduled = false;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Pending {
+        final Event<?, ?> event;
+        final Object arg;
+
+        Pending(Event<?, ?> event, Object arg) {
+            this.event = event;
+            this.arg = arg;
+        }
+    }
+
+    private static final class Registration {
+        final Object callback;
+        final Executor executor;
+        CallbackRegistry<?>.IsolatedQueue queue;
+        volatile boolean overBudget;
+        // when the delivery being watched started, or 0 if none is running
+        final AtomicLong inFlightSince = new AtomicLong();
+        // the isolated registration that took over while a delivery was stuck
+        volatile Registration successor;
+
+        Registration(Object callback, Executor executor) {
+            this.callback = callback;
+            this.executor = executor;
+        }
+    }
+}
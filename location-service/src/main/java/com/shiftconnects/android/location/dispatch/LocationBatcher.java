@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.dispatch;
+
+import android.location.Location;
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects locations into a preallocated buffer and hands them to a {@link Sink} in batches.
+ *
+ * A batch is flushed as soon as it holds {@code maxBatchSize} locations, or once
+ * {@code maxLatencyMillis} have passed since the first location of the batch arrived, whichever
+ * comes first. The latency deadline is scheduled on the supplied {@link Handler}.
+ *
+ * Batches are delivered one at a time and in the order they were collected, whichever thread
+ * flushes them, so the sink never runs concurrently with itself.
+ */
+public class LocationBatcher {
+
+    public interface Sink {
+        void onBatch(List<Location> locations);
+    }
+
+    private final Handler mHandler;
+    private final Sink mSink;
+    // held from draining a batch until it has been delivered, taken before the buffer's lock
+    private final Object mDeliveryLock = new Object();
+
+    private final Runnable mDeadline = new Runnable() {
+        @Override public void run() {
+            flush();
+        }
+    };
+
+    private Location[] mBuffer;
+    private int mCount;
+    private long mMaxLatencyMillis;
+
+    public LocationBatcher(Handler handler, Sink sink, int maxBatchSize, long maxLatencyMillis) {
+        mHandler = handler;
+        mSink = sink;
+        configure(maxBatchSize, maxLatencyMillis);
+    }
+
+    /**
+     * Changes the batch limits. Any locations already buffered are flushed first.
+     */
+    public void configure(int maxBatchSize, long maxLatencyMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        if (maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("maxLatencyMillis must not be negative");
+        }
+        synchronized (mDeliveryLock) {
+            final List<Location> batch;
+            synchronized (this) {
+                // drain and swap under the same lock so that no add lands in between
+                batch = mBuffer != null && mCount > 0 ? drainLocked() : null;
+                mBuffer = new Location[maxBatchSize];
+                mMaxLatencyMillis = maxLatencyMillis;
+            }
+            if (batch != null) {
+                mSink.onBatch(batch);
+            }
+        }
+    }
+
+    public synchronized int getMaxBatchSize() {
+        return mBuffer.length;
+    }
+
+    public synchronized long getMaxLatencyMillis() {
+        return mMaxLatencyMillis;
+    }
+
+    public void add(Location location) {
+        synchronized (mDeliveryLock) {
+            final List<Location> batch;
+            synchronized (this) {
+                mBuffer[mCount++] = location;
+                if (mCount < mBuffer.length) {
+                    if (mCount == 1) {
+                        mHandler.postDelayed(mDeadline, mMaxLatencyMillis);
+                    }
+                    return;
+                }
+                batch = drainLocked();
+            }
+            mSink.onBatch(batch);
+        }
+    }
+
+    /**
+     * Delivers whatever is currently buffered, if anything.
+     */
+    public void flush() {
+        synchronized (mDeliveryLock) {
+            final List<Location> batch;
+            synchronized (this) {
+                if (mCount == 0) {
+                    return;
+                }
+                batch = drainLocked();
+            }
+            mSink.onBatch(batch);
+        }
+    }
+
+    /**
+     * Drops anything currently buffered without delivering it.
+     */
+    public synchronized void clear() {
+        mHandler.removeCallbacks(mDeadline);
+        for (int i = 0; i < mCount; i++) {
+            mBuffer[i] = null;
+        }
+        mCount = 0;
+    }
+
+    private List<Location> drainLocked() {
+        mHandler.removeCallbacks(mDeadline);
+        final List<Location> batch = new ArrayList<>(mCount);
+        for (int i = 0; i < mCount; i++) {
+            batch.add(mBuffer[i]);
+            mBuffer[i] = null;
+        }
+        mCount = 0;
+        return Collections.unmodifiableList(batch);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.geofence;
+
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A uniform latitude/longitude grid over a set of {@link LocalGeofence}s. Each fence is listed in
+ * every cell its bounding box overlaps, so the fences that may contain a point are exactly the
+ * fences listed in that point's cell.
+ *
+ * Longitude cells wrap at the antimeridian, so a fence near longitude 180 is also listed in the
+ * cells just east of -180, and a fence whose box covers a pole is listed in every longitude cell.
+ *
+ * Not thread-safe.
+ */
+public class GeofenceGrid {
+
+    /**
+     * Roughly 1.1km of latitude, a good fit for fences with radii of tens to hundreds of meters.
+     */
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+
+    // past this many rings a nearest neighbour search falls back to scanning every fence
+    private static final int MAX_NEAREST_RINGS = 32;
+
+    private final double mCellSize;
+    // number of longitude cells around the globe, the last of which may be narrower than the rest
+    private final int mLonCells;
+    private final Map<Long, List<LocalGeofence>> mCells = new HashMap<>();
+    private final Map<String, LocalGeofence> mFences = new HashMap<>();
+
+    public GeofenceGrid() {
+        this(DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    public GeofenceGrid(double cellSizeDegrees) {
+        if (cellSizeDegrees <= 0) {
+            throw new IllegalArgumentException("cellSizeDegrees must be positive");
+        }
+        mCellSize = cellSizeDegrees;
+        mLonCells = (int) Math.ceil(360 / cellSizeDegrees);
+    }
+
+    public int size() {
+        return mFences.size();
+    }
+
+    public LocalGeofence get(String requestId) {
+        return mFences.get(requestId);
+    }
+
+    public Collection<LocalGeofence> getAll() {
+        return Collections.unmodifiableCollection(mFences.values());
+    }
+
+    /**
+     * Adds a fence, replacing any fence with the same request id.
+     */
+    public void add(LocalGeofence fence) {
+        remove(fence.getRequestId());
+        mFences.put(fence.getRequestId(), fence);
+        final int[] bounds = cellBounds(fence);
+        for (int latCell = bounds[0]; latCell <= bounds[2]; latCell++) {
+            for (int i = 0; i < bounds[3]; i++) {
+                final Long key = key(latCell, wrapLonCell(bounds[1] + i));
+                List<LocalGeofence> cell = mCells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<>(4);
+                    mCells.put(key, cell);
+                }
+                cell.add(fence);
+            }
+        }
+    }
+
+    public LocalGeofence remove(String requestId) {
+        final LocalGeofence fence = mFences.remove(requestId);
+        if (fence == null) {
+            return null;
+        }
+        final int[] bounds = cellBounds(fence);
+        for (int latCell = bounds[0]; latCell <= bounds[2]; latCell++) {
+            for (int i = 0; i < bounds[3]; i++) {
+                final Long key = key(latCell, wrapLonCell(bounds[1] + i));
+                final List<LocalGeofence> cell = mCells.get(key);
+                if (cell != null) {
+                    cell.remove(fence);
+                    if (cell.isEmpty()) {
+                        mCells.remove(key);
+                    }
+                }
+            }
+        }
+        return fence;
+    }
+
+    public void clear() {
+        mCells.clear();
+        mFences.clear();
+    }
+
+    /**
+     * @return every fence whose bounding box overlaps the cell containing the point. The returned
+     * list is owned by the grid and must not be modified.
+     */
+    public List<LocalGeofence> candidates(double latitude, double longitude) {
+        final List<LocalGeofence> cell = mCells.get(key(latCell(latitude), lonCell(longitude)));
+        return cell != null ? cell : Collections.<LocalGeofence>emptyList();
+    }
+
+    /**
+     * @return up to {@code count} fences ordered by the distance from the point to their centers
+     */
+    public List<LocalGeofence> nearest(double latitude, double longitude, int count) {
+        if (count <= 0 || mFences.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (count >= mFences.size()) {
+            return sortByDistance(mFences.values(), latitude, longitude, count);
+        }
+
+        // search rings of cells around the point until the closest unsearched cell is farther
+        // away than the furthest of the fences found so far
+        final int centerLat = latCell(latitude);
+        final int centerLon = lonCell(longitude);
+        final double ringMeters = mCellSize * Math.min(GeoUtils.METERS_PER_DEGREE_LATITUDE,
+                GeoUtils.metersPerDegreeLongitude(latitude));
+        final Set<LocalGeofence> found = new HashSet<>();
+        for (int ring = 0; ring <= MAX_NEAREST_RINGS; ring++) {
+            for (int latCell = centerLat - ring; latCell <= centerLat + ring; latCell++) {
+                final boolean edge = latCell == centerLat - ring || latCell == centerLat + ring;
+                final int step = edge ? 1 : 2 * ring;
+                for (int lonCell = centerLon - ring; lonCell <= centerLon + ring; lonCell += Math.max(1, step)) {
+                    final List<LocalGeofence> cell = mCells.get(key(latCell, wrapLonCell(lonCell)));
+                    if (cell != null) {
+                        found.addAll(cell);
+                    }
+                }
+            }
+            if (found.size() >= count) {
+                final List<LocalGeofence> nearest = sortByDistance(found, latitude, longitude, count);
+                final LocalGeofence furthest = nearest.get(nearest.size() - 1);
+                final double furthestDistance = GeoUtils.distanceBetween(latitude, longitude,
+                        furthest.getLatitude(), furthest.getLongitude());
+                if (furthestDistance <= ring * ringMeters) {
+                    return nearest;
+                }
+            }
+        }
+        return sortByDistance(mFences.values(), latitude, longitude, count);
+    }
+
+    private static List<LocalGeofence> sortByDistance(Collection<LocalGeofence> fences,
+            double latitude, double longitude, int count) {
+        final LocalGeofence[] sorted = fences.toArray(new LocalGeofence[fences.size()]);
+        final double[] distances = new double[sorted.length];
+        final Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            distances[i] = GeoUtils.distanceBetween(latitude, longitude,
+                    sorted[i].getLatitude(), sorted[i].getLongitude());
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override public int compare(Integer a, Integer b) {
+                return Double.compare(distances[a], distances[b]);
+            }
+        });
+        final List<LocalGeofence> nearest = new ArrayList<>(Math.min(count, sorted.length));
+        for (int i = 0; i < sorted.length && i < count; i++) {
+            nearest.add(sorted[order[i]]);
+        }
+        return nearest;
+    }
+
+    /**
+     * @return the first and last latitude cells, the westernmost longitude cell and the number of
+     * longitude cells, counted eastwards and possibly across the antimeridian
+     */
+    private int[] cellBounds(LocalGeofence fence) {
+        final double latRadius = fence.getRadius() / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+        final double lonRadius = fence.getRadius() / GeoUtils.metersPerDegreeLongitude(fence.getLatitude());
+        final int west = lonCell(fence.getLongitude() - lonRadius);
+        final int east = lonCell(fence.getLongitude() + lonRadius);
+        final int lonCount;
+        if (!(2 * lonRadius < 360 - mCellSize)) {
+            // a fence close enough to a pole spans every longitude
+            lonCount = mLonCells;
+        } else if (east >= west) {
+            lonCount = east - west + 1;
+        } else {
+            lonCount = mLonCells - west + east + 1;
+        }
+        return new int[] {
+                latCell(fence.getLatitude() - latRadius),
+                west,
+                latCell(fence.getLatitude() + latRadius),
+                lonCount
+        };
+    }
+
+    private int latCell(double latitude) {
+        return (int) Math.floor(latitude / mCellSize);
+    }
+
+    private int lonCell(double longitude) {
+        final double normalized = ((longitude + 180) % 360 + 360) % 360;
+        return wrapLonCell((int) Math.floor(normalized / mCellSize));
+    }
+
+    private int wrapLonCell(int lonCell) {
+        final int wrapped = lonCell % mLonCells;
+        return wrapped < 0 ? wrapped + mLonCells : wrapped;
+    }
+
+    private static Long key(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.geofence;
+
+import android.os.Handler;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofenceStatusCodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of which geofences are registered with Play Services, keyed by
+ * {@link Geofence#getRequestId()}, and only sends the difference when the desired set changes.
+ *
+ * Changes are collected for a short coalescing window and then sent as at most one remove call
+ * and one add call per {@link #MAX_GEOFENCES_PER_CALL} fences. A fence that is replaced is simply
+ * added again, which Play Services treats as an update, so it is never briefly missing. Changes
+ * made while disconnected are kept and sent by the next {@link #flush()} once connected.
+ *
+ * Calls that fail with a transient status are retried up to {@link #MAX_RETRIES} times with
+ * exponential backoff. Adds rejected because of the geofence limit, or because location is off,
+ * are not retried; they stay desired and are sent again the next time they are put.
+ *
+ * Fences put through {@link #putAll(Collection, SetupCallback)} report the outcome of that one
+ * call once every fence in it has settled: once it was added, failed for good, or became
+ * unnecessary because it was removed or was already registered.
+ */
+public class GeofenceRegistry {
+
+    public interface Backend {
+        boolean isConnected();
+        void addGeofences(List<Geofence> geofences, ResultCallback<Status> callback);
+        void removeGeofences(List<String> requestIds, ResultCallback<Status> callback);
+        void removeAllGeofences(ResultCallback<Status> callback);
+    }
+
+    /**
+     * Notified once per {@link #putAll(Collection, SetupCallback)} call, on the thread results are
+     * delivered on, or through the handler if there was nothing to send.
+     */
+    public interface SetupCallback {
+        void onSetupSuccessful();
+        void onSetupUnsuccessful(Status status);
+    }
+
+    public static final long DEFAULT_COALESCE_MILLIS = 100l;
+
+    // Play Services allows 100 geofences per app, and so never more than that in one call
+    public static final int MAX_GEOFENCES_PER_CALL = 100;
+
+    public static final int MAX_RETRIES = 3;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000l;
+
+    private final Handler mHandler;
+    private final Backend mBackend;
+
+    private final Map<String, Geofence> mDesired = new LinkedHashMap<>();
+    private final Map<String, Geofence> mRegistered = new HashMap<>();
+    private final Map<String, Geofence> mPendingAdds = new LinkedHashMap<>();
+    private final Set<String> mPendingRemoves = new LinkedHashSet<>();
+    private boolean mRemoveAllPending;
+    private final Map<String, Integer> mFailures = new HashMap<>();
+    private int mRemoveAllFailures;
+    private final List<Setup> mSetups = new ArrayList<>();
+
+    private long mCoalesceMillis = DEFAULT_COALESCE_MILLIS;
+    private long mRetryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override public void run() {
+            flush();
+        }
+    };
+
+    public GeofenceRegistry(Handler handler, Backend backend) {
+        mHandler = handler;
+        mBackend = backend;
+    }
+
+    public synchronized void setCoalesceMillis(long coalesceMillis) {
+        mCoalesceMillis = coalesceMillis;
+    }
+
+    /**
+     * Sets the delay before the first retry of a failed call; each further retry waits twice as long.
+     */
+    public synchronized void setRetryDelayMillis(long retryDelayMillis) {
+        mRetryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Adds a geofence, or replaces the one with the same request id. Nothing is sent if an
+     * identical geofence is already registered under that id.
+     */
+    public void put(Geofence geofence) {
+        final List<Setup> settled = new ArrayList<>();
+        synchronized (this) {
+            putLocked(geofence, settled);
+        }
+        notifySettled(settled);
+    }
+
+    /**
+     * Puts every geofence like {@link #put(Geofence)}, and reports the outcome of this call to
+     * {@code callback} once all of them have settled. If every geofence is already registered,
+     * success is reported through the handler without sending anything.
+     */
+    public void putAll(Collection<Geofence> geofences, SetupCallback callback) {
+        final Setup setup = new Setup(callback);
+        final List<Setup> settled = new ArrayList<>();
+        synchronized (this) {
+            for (Geofence geofence : geofences) {
+                putLocked(geofence, settled);
+                final String id = geofence.getRequestId();
+                if (mPendingAdds.get(id) == geofence) {
+                    setup.outstanding.put(id, geofence);
+                }
+            }
+            if (!setup.outstanding.isEmpty()) {
+                mSetups.add(setup);
+            }
+        }
+        notifySettled(settled);
+        if (setup.outstanding.isEmpty()) {
+            mHandler.post(new Runnable() {
+                @Override public void run() {
+                    setup.notifyCallback();
+                }
+            });
+        }
+    }
+
+    private void putLocked(Geofence geofence, List<Setup> settled) {
+        final String id = geofence.getRequestId();
+        mDesired.put(id, geofence);
+        mPendingRemoves.remove(id);
+        mFailures.remove(id);
+        if (isSameGeofence(mRegistered.get(id), geofence)) {
+            supersede(mPendingAdds.remove(id), null, settled);
+            return;
+        }
+        supersede(mPendingAdds.put(id, geofence), geofence, settled);
+        scheduleFlush();
+    }
+
+    public void remove(String requestId) {
+        final List<Setup> settled = new ArrayList<>();
+        synchronized (this) {
+            mDesired.remove(requestId);
+            supersede(mPendingAdds.remove(requestId), null, settled);
+            mFailures.remove(requestId);
+            if (mRegistered.containsKey(requestId)) {
+                mPendingRemoves.add(requestId);
+            }
+            scheduleFlush();
+        }
+        notifySettled(settled);
+    }
+
+    /**
+     * Removes every geofence, including any registered by someone else through the service's
+     * pending intent.
+     */
+    public void clear() {
+        final List<Setup> settled = new ArrayList<>();
+        synchronized (this) {
+            for (Geofence geofence : mPendingAdds.values()) {
+                settle(geofence, null, settled);
+            }
+            mDesired.clear();
+            mPendingAdds.clear();
+            mPendingRemoves.clear();
+            mFailures.clear();
+            mRemoveAllPending = true;
+            mRemoveAllFailures = 0;
+            scheduleFlush();
+        }
+        notifySettled(settled);
+    }
+
+    public synchronized boolean contains(String requestId) {
+        return mDesired.containsKey(requestId);
+    }
+
+    /**
+     * @return a copy of the request ids of every desired geofence
+     */
+    public synchronized Set<String> getRequestIds() {
+        return new LinkedHashSet<>(mDesired.keySet());
+    }
+
+    public synchronized int size() {
+        return mDesired.size();
+    }
+
+    public synchronized boolean hasPendingChanges() {
+        return mRemoveAllPending || !mPendingAdds.isEmpty() || !mPendingRemoves.isEmpty();
+    }
+
+    /**
+     * Sends any pending changes now, if connected.
+     */
+    public synchronized void flush() {
+        mHandler.removeCallbacks(mFlush);
+        mFlushScheduled = false;
+        if (!mBackend.isConnected()) {
+            return;
+        }
+
+        if (mRemoveAllPending) {
+            mRemoveAllPending = false;
+            mRegistered.clear();
+            mBackend.removeAllGeofences(new ResultCallback<Status>() {
+                @Override public void onResult(Status status) {
+                    onRemoveAllResult(status);
+                }
+            });
+        }
+
+        if (!mPendingRemoves.isEmpty()) {
+            final List<String> removes = new ArrayList<>(mPendingRemoves);
+            mPendingRemoves.clear();
+            for (int start = 0; start < removes.size(); start += MAX_GEOFENCES_PER_CALL) {
+                final List<String> chunk = new ArrayList<>(removes.subList(start,
+                        Math.min(removes.size(), start + MAX_GEOFENCES_PER_CALL)));
+                for (String id : chunk) {
+                    mRegistered.remove(id);
+                }
+                mBackend.removeGeofences(chunk, new ResultCallback<Status>() {
+                    @Override public void onResult(Status status) {
+                        onRemoveResult(chunk, status);
+                    }
+                });
+            }
+        }
+
+        if (!mPendingAdds.isEmpty()) {
+            final List<Geofence> adds = new ArrayList<>(mPendingAdds.values());
+            mPendingAdds.clear();
+            for (int start = 0; start < adds.size(); start += MAX_GEOFENCES_PER_CALL) {
+                final List<Geofence> chunk = new ArrayList<>(adds.subList(start,
+                        Math.min(adds.size(), start + MAX_GEOFENCES_PER_CALL)));
+                for (Geofence geofence : chunk) {
+                    mRegistered.put(geofence.getRequestId(), geofence);
+                }
+                mBackend.addGeofences(chunk, new ResultCallback<Status>() {
+                    @Override public void onResult(Status status) {
+                        onAddResult(chunk, status);
+                    }
+                });
+            }
+        }
+    }
+
+    private void onAddResult(List<Geofence> geofences, Status status) {
+        final List<Setup> settled = new ArrayList<>();
+        synchronized (this) {
+            final boolean retry = isTransient(status);
+            final Status failure = status.isSuccess() ? null : status;
+            int attempt = 0;
+            for (Geofence geofence : geofences) {
+                final String id = geofence.getRequestId();
+                if (mRegistered.get(id) != geofence) {
+                    // replaced or removed since, and that change is sent on its own
+                    settle(geofence, failure, settled);
+                    continue;
+                }
+                if (status.isSuccess()) {
+                    mFailures.remove(id);
+                    settle(geofence, null, settled);
+                    continue;
+                }
+                // not registered after all, so that a later put sends it again
+                mRegistered.remove(id);
+                if (retry && mDesired.get(id) == geofence) {
+                    final int failures = failed(id);
+                    if (failures <= MAX_RETRIES) {
+                        mPendingAdds.put(id, geofence);
+                        attempt = Math.max(attempt, failures);
+                        // settled by the result of the retry
+                        continue;
+                    }
+                }
+                settle(geofence, failure, settled);
+            }
+            if (attempt > 0) {
+                scheduleRetry(attempt);
+            }
+        }
+        notifySettled(settled);
+    }
+
+    private synchronized void onRemoveResult(List<String> requestIds, Status status) {
+        if (status.isSuccess()) {
+            for (String id : requestIds) {
+                mFailures.remove(id);
+            }
+            return;
+        }
+        if (!isTransient(status)) {
+            return;
+        }
+        int attempt = 0;
+        for (String id : requestIds) {
+            if (mDesired.containsKey(id) || mRegistered.containsKey(id)) {
+                // put back since, which replaces it anyway
+                continue;
+            }
+            final int failures = failed(id);
+            if (failures <= MAX_RETRIES) {
+                mPendingRemoves.add(id);
+                attempt = Math.max(attempt, failures);
+            }
+        }
+        if (attempt > 0) {
+            scheduleRetry(attempt);
+        }
+    }
+
+    private synchronized void onRemoveAllResult(Status status) {
+        if (status.isSuccess()) {
+            mRemoveAllFailures = 0;
+            return;
+        }
+        if (!isTransient(status) || ++mRemoveAllFailures > MAX_RETRIES) {
+            return;
+        }
+        // the retry removes everything again, including whatever was added since
+        mRemoveAllPending = true;
+        mPendingRemoves.clear();
+        mPendingAdds.clear();
+        mPendingAdds.putAll(mDesired);
+        scheduleRetry(mRemoveAllFailures);
+    }
+
+    /**
+     * Moves setups waiting on a pending add that is being replaced over to its replacement, or
+     * settles them if it is being dropped.
+     */
+    private void supersede(Geofence pending, Geofence replacement, List<Setup> settled) {
+        if (pending == null || pending == replacement) {
+            return;
+        }
+        if (replacement == null) {
+            settle(pending, null, settled);
+            return;
+        }
+        for (Setup setup : mSetups) {
+            if (setup.outstanding.get(pending.getRequestId()) == pending) {
+                setup.outstanding.put(pending.getRequestId(), replacement);
+            }
+        }
+    }
+
+    /**
+     * Marks the geofence settled in every setup waiting on it, collecting the setups that have
+     * nothing left outstanding into {@code settled}.
+     */
+    private void settle(Geofence geofence, Status failure, List<Setup> settled) {
+        final String id = geofence.getRequestId();
+        final Iterator<Setup> iterator = mSetups.iterator();
+        while (iterator.hasNext()) {
+            final Setup setup = iterator.next();
+            if (setup.outstanding.get(id) != geofence) {
+                continue;
+            }
+            setup.outstanding.remove(id);
+            if (failure != null && setup.failure == null) {
+                setup.failure = failure;
+            }
+            if (setup.outstanding.isEmpty()) {
+                iterator.remove();
+                settled.add(setup);
+            }
+        }
+    }
+
+    private static void notifySettled(List<Setup> settled) {
+        for (int i = 0, size = settled.size(); i < size; i++) {
+            settled.get(i).notifyCallback();
+        }
+    }
+
+    private int failed(String requestId) {
+        final Integer failures = mFailures.get(requestId);
+        final int count = failures != null ? failures + 1 : 1;
+        mFailures.put(requestId, count);
+        return count;
+    }
+
+    private void scheduleFlush() {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlush, mCoalesceMillis);
+        }
+    }
+
+    private void scheduleRetry(int attempt) {
+        mHandler.removeCallbacks(mFlush);
+        mFlushScheduled = true;
+        mHandler.postDelayed(mFlush, mRetryDelayMillis << (attempt - 1));
+    }
+
+    /**
+     * @return false for failures that the same call would run into again
+     */
+    static boolean isTransient(Status status) {
+        switch (status.getStatusCode()) {
+            case GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE:
+            case GeofenceStatusCodes.GEOFENCE_TOO_MANY_GEOFENCES:
+            case GeofenceStatusCodes.GEOFENCE_TOO_MANY_PENDING_INTENTS:
+                return false;
+            default:
+                return !status.isSuccess();
+        }
+    }
+
+    /**
+     * {@link Geofence} has no getters for its parameters, but the ones built by
+     * {@link Geofence.Builder} are parcelable, so they are compared by their parcelled form.
+     */
+    static boolean isSameGeofence(Geofence registered, Geofence geofence) {
+        if (registered == geofence) {
+            return true;
+        }
+        if (!(registered instanceof Parcelable) || !(geofence instanceof Parcelable)
+                || registered.getClass() != geofence.getClass()) {
+            return false;
+        }
+        return Arrays.equals(marshall((Parcelable) registered), marshall((Parcelable) geofence));
+    }
+
+    private static final class Setup {
+        final SetupCallback callback;
+        // the geofences this setup still waits on, by request id
+        final Map<String, Geofence> outstanding = new HashMap<>();
+        // the first failure of any of them
+        Status failure;
+
+        Setup(SetupCallback callback) {
+            this.callback = callback;
+        }
+
+        void notifyCallback() {
+            if (failure == null) {
+                callback.onSetupSuccessful();
+            } else {
+                callback.onSetupUnsuccessful(failure);
+            }
+        }
+    }
+
+    private static byte[] marshall(Parcelable parcelable) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcelable.writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.geofence;
+
+import com.google.android.gms.location.Geofence;
+
+/**
+ * A single enter, dwell or exit of a geofence, as delivered by
+ * {@link GeofenceTransitionCoalescer}.
+ */
+public final class GeofenceTransition {
+
+    private final String mRequestId;
+    private final int mTransition;
+    private final long mTime;
+
+    /**
+     * @param transition one of {@link Geofence#GEOFENCE_TRANSITION_ENTER},
+     *                   {@link Geofence#GEOFENCE_TRANSITION_DWELL} or
+     *                   {@link Geofence#GEOFENCE_TRANSITION_EXIT}
+     * @param time when the transition happened, in milliseconds since the epoch
+     */
+    public GeofenceTransition(String requestId, int transition, long time) {
+        mRequestId = requestId;
+        mTransition = transition;
+        mTime = time;
+    }
+
+    public String getRequestId() {
+        return mRequestId;
+    }
+
+    public int getTransition() {
+        return mTransition;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    @Override public String toString() {
+        final String transition;
+        switch (mTransition) {
+            case Geofence.GEOFENCE_TRANSITION_ENTER:
+                transition = "ENTER";
+                break;
+            case Geofence.GEOFENCE_TRANSITION_DWELL:
+                transition = "DWELL";
+                break;
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                transition = "EXIT";
+                break;
+            default:
+                transition = String.valueOf(mTransition);
+        }
+        return "GeofenceTransition{" + mRequestId + " " + transition + " at " + mTime + "}";
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.geofence;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.google.android.gms.location.Geofence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns the raw geofence transitions reported by Play Services and the {@link LocalGeofenceEngine}
+ * into real state changes, delivered in batches.
+ *
+ * Each fence is either outside, inside or dwelling, and a transition that doesn't change that
+ * state, such as a second enter, is dropped. With a debounce window set, an enter or exit is held
+ * for the window before it is reported, and if the opposite transition arrives in the meantime
+ * both are dropped, so a device sitting on a fence boundary doesn't report a storm of flips. A
+ * dwell confirms a held enter, or cancels a held exit, right away.
+ *
+ * A fence whose state isn't known yet, for example because the process was restarted while the
+ * device was inside it, takes the first transition reported for it as is. Known states are kept
+ * until the fence is {@link #forget(String) forgotten}.
+ *
+ * Transitions are collected by {@link #offer(String, int, long)} and delivered together by the
+ * next {@link #flush()}; held transitions that survive their window are delivered together when
+ * it ends.
+ */
+public class GeofenceTransitionCoalescer {
+
+    public interface Listener {
+        void onTransitions(List<GeofenceTransition> transitions);
+    }
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 0l;
+
+    private static final int UNKNOWN = -1;
+    private static final int OUTSIDE = 0;
+    private static final int INSIDE = 1;
+    private static final int DWELLING = 2;
+
+    private final Handler mHandler;
+    private final Listener mListener;
+
+    private final Map<String, FenceState> mStates = new HashMap<>();
+    private List<GeofenceTransition> mReady = new ArrayList<>();
+
+    private long mDebounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private long mScheduledDeadline = Long.MAX_VALUE;
+
+    private final Runnable mReleaseHeld = new Runnable() {
+        @Override public void run() {
+            synchronized (GeofenceTransitionCoalescer.this) {
+                mScheduledDeadline = Long.MAX_VALUE;
+                releaseHeld(SystemClock.elapsedRealtime());
+            }
+            flush();
+        }
+    };
+
+    public GeofenceTransitionCoalescer(Handler handler, Listener listener) {
+        mHandler = handler;
+        mListener = listener;
+    }
+
+    /**
+     * @param debounceMillis how long an enter or exit is held to see whether it is undone, or 0 to
+     *                       report transitions as soon as they are flushed
+     */
+    public synchronized void setDebounceMillis(long debounceMillis) {
+        mDebounceMillis = Math.max(0, debounceMillis);
+    }
+
+    public synchronized long getDebounceMillis() {
+        return mDebounceMillis;
+    }
+
+    /**
+     * Applies a transition, collecting it for the next {@link #flush()} if it changes the fence's
+     * state.
+     *
+     * @param time when the transition happened, in milliseconds since the epoch
+     */
+    public synchronized void offer(String requestId, int transition, long time) {
+        FenceState state = mStates.get(requestId);
+        if (state == null) {
+            state = new FenceState();
+        }
+        switch (transition) {
+            case Geofence.GEOFENCE_TRANSITION_ENTER:
+                if (state.held != null) {
+                    if (state.held.getTransition() == Geofence.GEOFENCE_TRANSITION_EXIT) {
+                        // left and came back within the window
+                        state.held = null;
+                    }
+                } else if (state.reported == OUTSIDE || state.reported == UNKNOWN) {
+                    change(requestId, state, new GeofenceTransition(requestId, transition, time));
+                }
+                break;
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                if (state.held != null) {
+                    if (state.held.getTransition() == Geofence.GEOFENCE_TRANSITION_ENTER) {
+                        // came in and left again within the window
+                        state.held = null;
+                    }
+                } else if (state.reported != OUTSIDE) {
+                    change(requestId, state, new GeofenceTransition(requestId, transition, time));
+                }
+                break;
+            case Geofence.GEOFENCE_TRANSITION_DWELL:
+                if (state.held != null) {
+                    if (state.held.getTransition() == Geofence.GEOFENCE_TRANSITION_ENTER) {
+                        report(state, state.held);
+                    }
+                    state.held = null;
+                }
+                if (state.reported != DWELLING) {
+                    report(state, new GeofenceTransition(requestId, transition, time));
+                }
+                break;
+        }
+        mStates.put(requestId, state);
+    }
+
+    /**
+     * Delivers every transition collected since the last flush as one batch.
+     */
+    public void flush() {
+        final List<GeofenceTransition> ready;
+        synchronized (this) {
+            if (mReady.isEmpty()) {
+                return;
+            }
+            ready = Collections.unmodifiableList(mReady);
+            mReady = new ArrayList<>();
+        }
+        mListener.onTransitions(ready);
+    }
+
+    /**
+     * Reports every held transition without waiting for its window to end, then flushes.
+     */
+    public void drain() {
+        synchronized (this) {
+            mHandler.removeCallbacks(mReleaseHeld);
+            mScheduledDeadline = Long.MAX_VALUE;
+            releaseHeld(Long.MAX_VALUE);
+        }
+        flush();
+    }
+
+    /**
+     * Forgets the state of a fence, for example once it is removed, without reporting anything.
+     */
+    public synchronized void forget(String requestId) {
+        mStates.remove(requestId);
+    }
+
+    public synchronized void clear() {
+        mStates.clear();
+    }
+
+    /**
+     * @return true if the fence was last reported as entered or dwelled in
+     */
+    public synchronized boolean isInside(String requestId) {
+        final FenceState state = mStates.get(requestId);
+        return state != null && (state.reported == INSIDE || state.reported == DWELLING);
+    }
+
+    /**
+     * @return a copy of the request ids of every fence whose state is known
+     */
+    public synchronized Set<String> getRequestIds() {
+        return new LinkedHashSet<>(mStates.keySet());
+    }
+
+    private void change(String requestId, FenceState state, GeofenceTransition transition) {
+        if (mDebounceMillis == 0) {
+            report(state, transition);
+            return;
+        }
+        state.held = transition;
+        state.deadline = SystemClock.elapsedRealtime() + mDebounceMillis;
+        if (state.deadline < mScheduledDeadline) {
+            mHandler.removeCallbacks(mReleaseHeld);
+            mScheduledDeadline = state.deadline;
+            mHandler.postDelayed(mReleaseHeld, mDebounceMillis);
+        }
+    }
+
+    private void report(FenceState state, GeofenceTransition transition) {
+        switch (transition.getTransition()) {
+            case Geofence.GEOFENCE_TRANSITION_ENTER:
+                state.reported = INSIDE;
+                break;
+            case Geofence.GEOFENCE_TRANSITION_DWELL:
+                state.reported = DWELLING;
+                break;
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                state.reported = OUTSIDE;
+                break;
+        }
+        mReady.add(transition);
+    }
+
+    private void releaseHeld(long now) {
+        long next = Long.MAX_VALUE;
+        for (FenceState state : mStates.values()) {
+            if (state.held == null) {
+                continue;
+            }
+            if (state.deadline <= now) {
+                report(state, state.held);
+                state.held = null;
+            } else {
+                next = Math.min(next, state.deadline);
+            }
+        }
+        if (next != Long.MAX_VALUE && now != Long.MAX_VALUE) {
+            mScheduledDeadline = next;
+            mHandler.postDelayed(mReleaseHeld, next - now);
+        }
+    }
+
+    private static final class FenceState {
+        int reported = UNKNOWN;
+        GeofenceTransition held;
+        long deadline;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.geofence;
+
+import com.google.android.gms.location.Geofence;
+
+/**
+ * A circular geofence evaluated inside the library rather than by Play Services. Unlike
+ * {@link Geofence} it exposes its region, which is what allows it to be spatially indexed.
+ */
+public final class LocalGeofence {
+
+    private final String mRequestId;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final float mRadius;
+    private final int mTransitionTypes;
+    private final int mLoiteringDelay;
+
+    /**
+     * @param radius radius of the fence in meters
+     * @param transitionTypes a mask of the {@code Geofence.GEOFENCE_TRANSITION_*} constants
+     * @param loiteringDelay milliseconds the device must stay inside before a dwell is reported
+     */
+    public LocalGeofence(String requestId, double latitude, double longitude, float radius,
+            int transitionTypes, int loiteringDelay) {
+        if (requestId == null) {
+            throw new IllegalArgumentException("requestId == null");
+        }
+        if (radius <= 0f) {
+            throw new IllegalArgumentException("radius must be positive");
+        }
+        mRequestId = requestId;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadius = radius;
+        mTransitionTypes = transitionTypes;
+        mLoiteringDelay = loiteringDelay;
+    }
+
+    public String getRequestId() {
+        return mRequestId;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public float getRadius() {
+        return mRadius;
+    }
+
+    public int getTransitionTypes() {
+        return mTransitionTypes;
+    }
+
+    public int getLoiteringDelay() {
+        return mLoiteringDelay;
+    }
+
+    public boolean hasTransition(int transition) {
+        return (mTransitionTypes & transition) != 0;
+    }
+
+    /**
+     * @return an equivalent Play Services geofence that never expires
+     */
+    public Geofence toGeofence() {
+        final Geofence.Builder builder = new Geofence.Builder()
+                .setRequestId(mRequestId)
+                .setCircularRegion(mLatitude, mLongitude, mRadius)
+                .setExpirationDuration(Geofence.NEVER_EXPIRE)
+                .setTransitionTypes(mTransitionTypes);
+        if (hasTransition(Geofence.GEOFENCE_TRANSITION_DWELL)) {
+            builder.setLoiteringDelay(mLoiteringDelay);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return "LocalGeofence[" + mRequestId + " " + mLatitude + "," + mLongitude + " r=" + mRadius + "]";
+    }
+}
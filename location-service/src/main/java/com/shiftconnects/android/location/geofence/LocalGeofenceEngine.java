@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.geofence;
+
+import com.google.android.gms.location.Geofence;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates enter, exit and dwell transitions for any number of {@link LocalGeofence}s against
+ * incoming locations. Fences are held in a {@link GeofenceGrid}, so each location only measures its
+ * distance to the handful of fences near it, and state is only kept for fences the device is
+ * currently inside.
+ *
+ * Transitions are reported for a fence only if its transition types include them. Not thread-safe;
+ * the service drives it from the thread locations are delivered on.
+ */
+public class LocalGeofenceEngine {
+
+    public interface Listener {
+        void onGeofenceEntered(String geofenceId);
+        void onGeofenceDwelled(String geofenceId);
+        void onGeofenceExited(String geofenceId);
+    }
+
+    private final GeofenceGrid mGrid;
+    private final Listener mListener;
+
+    private final Map<String, InsideState> mInside = new HashMap<>();
+    private long mGeneration;
+
+    public LocalGeofenceEngine(Listener listener) {
+        this(new GeofenceGrid(), listener);
+    }
+
+    public LocalGeofenceEngine(GeofenceGrid grid, Listener listener) {
+        mGrid = grid;
+        mListener = listener;
+    }
+
+    public GeofenceGrid getGrid() {
+        return mGrid;
+    }
+
+    /**
+     * Replaces every fence. Fences the device was inside that are no longer present are dropped
+     * without reporting an exit.
+     */
+    public void setGeofences(Collection<LocalGeofence> fences) {
+        mGrid.clear();
+        for (LocalGeofence fence : fences) {
+            mGrid.add(fence);
+        }
+        final Iterator<Map.Entry<String, InsideState>> iterator = mInside.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, InsideState> entry = iterator.next();
+            final LocalGeofence fence = mGrid.get(entry.getKey());
+            if (fence == null) {
+                iterator.remove();
+            } else {
+                entry.getValue().fence = fence;
+            }
+        }
+    }
+
+    public void addGeofence(LocalGeofence fence) {
+        mGrid.add(fence);
+        final InsideState state = mInside.get(fence.getRequestId());
+        if (state != null) {
+            state.fence = fence;
+        }
+    }
+
+    public void removeGeofence(String requestId) {
+        mGrid.remove(requestId);
+        mInside.remove(requestId);
+    }
+
+    public boolean contains(String requestId) {
+        return mGrid.get(requestId) != null;
+    }
+
+    public boolean isInside(String requestId) {
+        return mInside.containsKey(requestId);
+    }
+
+    /**
+     * Evaluates every fence near the given location and reports any transitions.
+     *
+     * @param time time of the location in milliseconds, used for dwell detection
+     */
+    public void onLocation(double latitude, double longitude, long time) {
+        final long generation = ++mGeneration;
+
+        final List<LocalGeofence> candidates = mGrid.candidates(latitude, longitude);
+        for (int i = 0, size = candidates.size(); i < size; i++) {
+            final LocalGeofence fence = candidates.get(i);
+            final double distance = GeoUtils.distanceBetween(latitude, longitude,
+                    fence.getLatitude(), fence.getLongitude());
+            if (distance > fence.getRadius()) {
+                continue;
+            }
+            InsideState state = mInside.get(fence.getRequestId());
+            if (state == null) {
+                state = new InsideState(fence, time);
+                mInside.put(fence.getRequestId(), state);
+                if (fence.hasTransition(Geofence.GEOFENCE_TRANSITION_ENTER)) {
+                    mListener.onGeofenceEntered(fence.getRequestId());
+                }
+            }
+            state.generation = generation;
+            checkDwell(state, time);
+        }
+
+        final Iterator<InsideState> iterator = mInside.values().iterator();
+        while (iterator.hasNext()) {
+            final InsideState state = iterator.next();
+            if (state.generation != generation) {
+                iterator.remove();
+                if (state.fence.hasTransition(Geofence.GEOFENCE_TRANSITION_EXIT)) {
+                    mListener.onGeofenceExited(state.fence.getRequestId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a transition reported from elsewhere, such as Play Services, for a fence this engine
+     * knows about. The transition is only reported to the listener if it changes the engine's
+     * state and is one of the fence's transition types, so a fence watched both locally and by Play
+     * Services is reported once. State changes are tracked either way, so that an exit-only fence
+     * still reports the exit following an unreported enter.
+     *
+     * @return false if the fence is not known to this engine
+     */
+    public boolean applyTransition(String requestId, int transition, long time) {
+        final LocalGeofence fence = mGrid.get(requestId);
+        if (fence == null) {
+            return false;
+        }
+        InsideState state = mInside.get(requestId);
+        switch (transition) {
+            case Geofence.GEOFENCE_TRANSITION_ENTER:
+                if (state == null) {
+                    mInside.put(requestId, new InsideState(fence, time));
+                    if (fence.hasTransition(Geofence.GEOFENCE_TRANSITION_ENTER)) {
+                        mListener.onGeofenceEntered(requestId);
+                    }
+                }
+                break;
+            case Geofence.GEOFENCE_TRANSITION_DWELL:
+                if (state == null) {
+                    state = new InsideState(fence, time);
+                    mInside.put(requestId, state);
+                }
+                if (!state.dwelled) {
+                    state.dwelled = true;
+                    if (fence.hasTransition(Geofence.GEOFENCE_TRANSITION_DWELL)) {
+                        mListener.onGeofenceDwelled(requestId);
+                    }
+                }
+                break;
+            case Geofence.GEOFENCE_TRANSITION_EXIT:
+                if (mInside.remove(requestId) != null && fence.hasTransition(Geofence.GEOFENCE_TRANSITION_EXIT)) {
+                    mListener.onGeofenceExited(requestId);
+                }
+                break;
+        }
+        return true;
+    }
+
+    private void checkDwell(InsideState state, long time) {
+        if (!state.dwelled && time - state.enteredAt >= state.fence.getLoiteringDelay()) {
+            state.dwelled = true;
+            if (state.fence.hasTransition(Geofence.GEOFENCE_TRANSITION_DWELL)) {
+                mListener.onGeofenceDwelled(state.fence.getRequestId());
+            }
+        }
+    }
+
+    private static final class InsideState {
+        LocalGeofence fence;
+        final long enteredAt;
+        long generation;
+        boolean dwelled;
+
+        InsideState(LocalGeofence fence, long enteredAt) {
+            this.fence = fence;
+            this.enteredAt = enteredAt;
+        }
+    }
+}
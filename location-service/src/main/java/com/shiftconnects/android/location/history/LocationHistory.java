@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.history;
+
+import android.location.Location;
+import android.os.Build;
+
+/**
+ * A fixed-capacity ring of location fixes stored as columns of primitives rather than as
+ * {@link Location} objects. Once full, each new fix overwrites the oldest one.
+ *
+ * Fixes are kept in time order, so that time range queries can binary search on
+ * {@link Location#getTime()}: a fix that is not newer than the newest one already held, such as a
+ * replayed last known location, is ignored. Accuracy, speed and bearing are stored as
+ * {@link Float#NaN} when the fix does not have them.
+ *
+ * All methods synchronize on the history itself. A {@link Cursor} reads the columns directly, so
+ * when fixes are appended on another thread while iterating, hold the history's lock for the
+ * duration of the iteration.
+ */
+public class LocationHistory {
+
+    private final int mCapacity;
+
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final float[] mAccuracies;
+    private final float[] mSpeeds;
+    private final float[] mBearings;
+    private final long[] mTimes;
+    private final long[] mElapsedRealtimeNanos;
+
+    // index the next fix is written to, and the number of valid fixes
+    private int mHead;
+    private int mSize;
+    // number of fixes ever added, which is never reset so that it can number fixes uniquely
+    private long mAddedCount;
+
+    public LocationHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        mCapacity = capacity;
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mAccuracies = new float[capacity];
+        mSpeeds = new float[capacity];
+        mBearings = new float[capacity];
+        mTimes = new long[capacity];
+        mElapsedRealtimeNanos = new long[capacity];
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public synchronized void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /**
+     * @return false if the fix was ignored for not being newer than the newest one
+     */
+    public boolean add(Location location) {
+        return add(location.getLatitude(),
+                location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasBearing() ? location.getBearing() : Float.NaN,
+                location.getTime(),
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? location.getElapsedRealtimeNanos() : 0l);
+    }
+
+    /**
+     * @return false if the fix was ignored for not being newer than the newest one
+     */
+    public synchronized boolean add(double latitude, double longitude, float accuracy, float speed,
+            float bearing, long time, long elapsedRealtimeNanos) {
+        if (mSize > 0 && time <= mTimes[(mHead + mCapacity - 1) % mCapacity]) {
+            return false;
+        }
+        final int i = mHead;
+        mLatitudes[i] = latitude;
+        mLongitudes[i] = longitude;
+        mAccuracies[i] = accuracy;
+        mSpeeds[i] = speed;
+        mBearings[i] = bearing;
+        mTimes[i] = time;
+        mElapsedRealtimeNanos[i] = elapsedRealtimeNanos;
+        mHead = (i + 1) % mCapacity;
+        if (mSize < mCapacity) {
+            mSize++;
+        }
+        mAddedCount++;
+        return true;
+    }
+
+    /**
+     * @return the number of fixes ever added, including those since overwritten or cleared. The
+     * fix at position {@code p} is the {@code getAddedCount() - size() + p}th fix added.
+     */
+    public synchronized long getAddedCount() {
+        return mAddedCount;
+    }
+
+    // region positional access, position 0 is the oldest fix
+
+    public synchronized double getLatitude(int position) {
+        return mLatitudes[toIndex(position)];
+    }
+
+    public synchronized double getLongitude(int position) {
+        return mLongitudes[toIndex(position)];
+    }
+
+    public synchronized float getAccuracy(int position) {
+        return mAccuracies[toIndex(position)];
+    }
+
+    public synchronized float getSpeed(int position) {
+        return mSpeeds[toIndex(position)];
+    }
+
+    public synchronized float getBearing(int position) {
+        return mBearings[toIndex(position)];
+    }
+
+    public synchronized long getTime(int position) {
+        return mTimes[toIndex(position)];
+    }
+
+    public synchronized long getElapsedRealtimeNanos(int position) {
+        return mElapsedRealtimeNanos[toIndex(position)];
+    }
+
+    /**
+     * Copies the fix at the given position into {@code out}, for callers that need a
+     * {@link Location}. The provider of {@code out} is left untouched.
+     */
+    public synchronized Location getLocation(int position, Location out) {
+        final int i = toIndex(position);
+        out.setLatitude(mLatitudes[i]);
+        out.setLongitude(mLongitudes[i]);
+        if (Float.isNaN(mAccuracies[i])) {
+            out.removeAccuracy();
+        } else {
+            out.setAccuracy(mAccuracies[i]);
+        }
+        if (Float.isNaN(mSpeeds[i])) {
+            out.removeSpeed();
+        } else {
+            out.setSpeed(mSpeeds[i]);
+        }
+        if (Float.isNaN(mBearings[i])) {
+            out.removeBearing();
+        } else {
+            out.setBearing(mBearings[i]);
+        }
+        out.setTime(mTimes[i]);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            out.setElapsedRealtimeNanos(mElapsedRealtimeNanos[i]);
+        }
+        return out;
+    }
+
+    // endregion
+
+    // region queries
+
+    /**
+     * @return the position of the first fix with a time at or after {@code time}, or {@link #size()}
+     * if there is none
+     */
+    public synchronized int lowerBound(long time) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mTimes[toIndex(mid)] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Positions {@code cursor} before the first fix in the history.
+     */
+    public synchronized Cursor queryAll(Cursor cursor) {
+        cursor.reset(0, mSize);
+        return cursor;
+    }
+
+    /**
+     * Positions {@code cursor} before the first fix with a time in {@code [startTime, endTime)}.
+     */
+    public synchronized Cursor query(long startTime, long endTime, Cursor cursor) {
+        final int start = lowerBound(startTime);
+        final int end = Math.max(start, lowerBound(endTime));
+        cursor.reset(start, end);
+        return cursor;
+    }
+
+    /**
+     * @return a new cursor over this history. Cursors are reusable across queries so that
+     * iterating does not allocate.
+     */
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    // endregion
+
+    private int toIndex(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + mSize);
+        }
+        final int index = mHead - mSize + position;
+        return index < 0 ? index + mCapacity : index;
+    }
+
+    /**
+     * Iterates over a range of fixes. Call {@link #moveToNext()} before reading the first fix.
+     */
+    public final class Cursor {
+
+        private int mStart;
+        private int mPosition;
+        private int mEnd;
+        private int mIndex;
+
+        private Cursor() {
+        }
+
+        void reset(int start, int end) {
+            mStart = start;
+            mPosition = start - 1;
+            mEnd = end;
+            mIndex = -1;
+        }
+
+        /**
+         * @return the number of fixes in the range this cursor was positioned over
+         */
+        public int getCount() {
+            return mEnd - mStart;
+        }
+
+        public boolean moveToNext() {
+            if (mPosition + 1 >= mEnd) {
+                mIndex = -1;
+                return false;
+            }
+            mPosition++;
+            mIndex = toIndex(mPosition);
+            return true;
+        }
+
+        /**
+         * @return the position of the current fix in the history
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+
+        public double getLatitude() {
+            return mLatitudes[mIndex];
+        }
+
+        public double getLongitude() {
+            return mLongitudes[mIndex];
+        }
+
+        public float getAccuracy() {
+            return mAccuracies[mIndex];
+        }
+
+        public float getSpeed() {
+            return mSpeeds[mIndex];
+        }
+
+        public float getBearing() {
+            return mBearings[mIndex];
+        }
+
+        public long getTime() {
+            return mTimes[mIndex];
+        }
+
+        public long getElapsedRealtimeNanos() {
+            return mElapsedRealtimeNanos[mIndex];
+        }
+    }
+}
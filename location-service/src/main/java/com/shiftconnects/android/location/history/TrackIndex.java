@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.history;
+
+import android.location.Location;
+import android.os.Build;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers time and place queries over a {@link LocationHistory} without scanning it: where the
+ * device was at a given time, the recorded fix nearest a point, and the runs of fixes inside a
+ * bounding box.
+ *
+ * Time queries binary search the history. Place queries use a uniform latitude/longitude grid of
+ * the fixes, which {@link #update()} brings up to date by indexing only the fixes added and
+ * dropping only the fixes overwritten since it last ran. Queries update the index first, so
+ * calling {@link #update()} as fixes arrive just spreads the work out.
+ *
+ * All methods synchronize on the history. Positions returned refer to the history as it was at
+ * the time of the query and shift as older fixes are overwritten, so hold the history's lock while
+ * using them if fixes are being added on another thread.
+ */
+public class TrackIndex {
+
+    /**
+     * Roughly 1.1km of latitude.
+     */
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+
+    // past this many rings a nearest fix search falls back to scanning every fix
+    private static final int MAX_NEAREST_RINGS = 32;
+
+    private final LocationHistory mHistory;
+    private final double mCellSize;
+
+    private final Map<Long, Cell> mCells = new HashMap<>();
+    // cell key of each indexed fix, by fix number modulo the history's capacity
+    private final long[] mCellKeys;
+    // fix numbers in [mIndexedFrom, mIndexedTo) are in the grid
+    private long mIndexedFrom;
+    private long mIndexedTo;
+
+    // cells that have held fixes since the grid was last empty
+    private int mMinLatCell = Integer.MAX_VALUE;
+    private int mMaxLatCell = Integer.MIN_VALUE;
+    private int mMinLonCell = Integer.MAX_VALUE;
+    private int mMaxLonCell = Integer.MIN_VALUE;
+
+    public TrackIndex(LocationHistory history) {
+        this(history, DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    public TrackIndex(LocationHistory history, double cellSizeDegrees) {
+        if (cellSizeDegrees <= 0) {
+            throw new IllegalArgumentException("cellSizeDegrees must be positive");
+        }
+        mHistory = history;
+        mCellSize = cellSizeDegrees;
+        mCellKeys = new long[history.capacity()];
+    }
+
+    public LocationHistory getHistory() {
+        return mHistory;
+    }
+
+    /**
+     * Indexes fixes added to the history, and forgets fixes overwritten, since the last update.
+     */
+    public void update() {
+        synchronized (mHistory) {
+            final long added = mHistory.getAddedCount();
+            final long first = added - mHistory.size();
+
+            for (long number = mIndexedFrom, end = Math.min(first, mIndexedTo); number < end; number++) {
+                final Long key = mCellKeys[slot(number)];
+                final Cell cell = mCells.get(key);
+                cell.removeFirst();
+                if (cell.isEmpty()) {
+                    mCells.remove(key);
+                }
+            }
+            if (mCells.isEmpty()) {
+                mMinLatCell = mMinLonCell = Integer.MAX_VALUE;
+                mMaxLatCell = mMaxLonCell = Integer.MIN_VALUE;
+            }
+            mIndexedFrom = Math.max(mIndexedFrom, first);
+            mIndexedTo = Math.max(mIndexedTo, first);
+
+            for (long number = mIndexedTo; number < added; number++) {
+                final int position = (int) (number - first);
+                final int latCell = latCell(mHistory.getLatitude(position));
+                final int lonCell = lonCell(mHistory.getLongitude(position));
+                final long key = key(latCell, lonCell);
+                mCellKeys[slot(number)] = key;
+                Cell cell = mCells.get(key);
+                if (cell == null) {
+                    cell = new Cell();
+                    mCells.put(key, cell);
+                }
+                cell.add(number);
+                mMinLatCell = Math.min(mMinLatCell, latCell);
+                mMaxLatCell = Math.max(mMaxLatCell, latCell);
+                mMinLonCell = Math.min(mMinLonCell, lonCell);
+                mMaxLonCell = Math.max(mMaxLonCell, lonCell);
+            }
+            mIndexedTo = added;
+        }
+    }
+
+    /**
+     * Works out where the device was at the given time by interpolating between the fixes either
+     * side of it. Accuracy, speed and elapsed realtime are interpolated when both fixes have them,
+     * and the bearing is that from the earlier fix to the later one.
+     *
+     * @return {@code out}, or null if the time is before the first fix or after the last
+     */
+    public Location locationAt(long time, Location out) {
+        synchronized (mHistory) {
+            final int size = mHistory.size();
+            final int after = mHistory.lowerBound(time);
+            if (after < size && mHistory.getTime(after) == time) {
+                return mHistory.getLocation(after, out);
+            }
+            if (after == 0 || after == size) {
+                return null;
+            }
+            final int before = after - 1;
+            final long startTime = mHistory.getTime(before);
+            final double fraction = (double) (time - startTime) / (mHistory.getTime(after) - startTime);
+
+            final double startLatitude = mHistory.getLatitude(before);
+            final double startLongitude = mHistory.getLongitude(before);
+            final double endLatitude = mHistory.getLatitude(after);
+            double endLongitude = mHistory.getLongitude(after);
+            // interpolate the short way across the antimeridian
+            if (endLongitude - startLongitude > 180) {
+                endLongitude -= 360;
+            } else if (endLongitude - startLongitude < -180) {
+                endLongitude += 360;
+            }
+            double longitude = startLongitude + fraction * (endLongitude - startLongitude);
+            if (longitude >= 180) {
+                longitude -= 360;
+            } else if (longitude < -180) {
+                longitude += 360;
+            }
+            out.setLatitude(startLatitude + fraction * (endLatitude - startLatitude));
+            out.setLongitude(longitude);
+            out.setTime(time);
+
+            final float accuracy = interpolate(mHistory.getAccuracy(before), mHistory.getAccuracy(after), fraction);
+            if (Float.isNaN(accuracy)) {
+                out.removeAccuracy();
+            } else {
+                out.setAccuracy(accuracy);
+            }
+            final float speed = interpolate(mHistory.getSpeed(before), mHistory.getSpeed(after), fraction);
+            if (Float.isNaN(speed)) {
+                out.removeSpeed();
+            } else {
+                out.setSpeed(speed);
+            }
+            if (startLatitude == endLatitude && startLongitude == endLongitude) {
+                out.removeBearing();
+            } else {
+                final double heading = GeoUtils.computeHeading(startLatitude, startLongitude,
+                        endLatitude, mHistory.getLongitude(after));
+                out.setBearing((float) (heading < 0 ? heading + 360 : heading));
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                final long startNanos = mHistory.getElapsedRealtimeNanos(before);
+                final long endNanos = mHistory.getElapsedRealtimeNanos(after);
+                out.setElapsedRealtimeNanos(startNanos != 0l && endNanos != 0l
+                        ? startNanos + (long) (fraction * (endNanos - startNanos)) : 0l);
+            }
+            return out;
+        }
+    }
+
+    public int nearest(LatLng point) {
+        return nearest(point.latitude, point.longitude);
+    }
+
+    /**
+     * @return the position of the recorded fix nearest the point, or -1 if the history is empty
+     */
+    public int nearest(double latitude, double longitude) {
+        synchronized (mHistory) {
+            update();
+            if (mCells.isEmpty()) {
+                return -1;
+            }
+            final long first = mHistory.getAddedCount() - mHistory.size();
+
+            // search rings of cells around the point until the closest unsearched cell is farther
+            // away than the nearest fix found so far, or every cell holding fixes has been searched
+            final int centerLat = latCell(latitude);
+            final int centerLon = lonCell(longitude);
+            final double ringMeters = mCellSize * Math.min(GeoUtils.METERS_PER_DEGREE_LATITUDE,
+                    GeoUtils.metersPerDegreeLongitude(latitude));
+            // within a few dozen cells a flat approximation ranks fixes the same as great circle
+            // distance, at a fraction of the cost
+            final double metersPerDegreeLongitude = GeoUtils.METERS_PER_DEGREE_LATITUDE
+                    * Math.cos(Math.toRadians(latitude));
+            long nearest = -1;
+            double nearestDistanceSquared = Double.MAX_VALUE;
+            for (int ring = 0; ring <= MAX_NEAREST_RINGS; ring++) {
+                for (int latCell = centerLat - ring; latCell <= centerLat + ring; latCell++) {
+                    final boolean edge = latCell == centerLat - ring || latCell == centerLat + ring;
+                    final int step = edge ? 1 : 2 * ring;
+                    for (int lonCell = centerLon - ring; lonCell <= centerLon + ring; lonCell += Math.max(1, step)) {
+                        final Cell cell = mCells.get(key(latCell, lonCell));
+                        if (cell == null) {
+                            continue;
+                        }
+                        for (int i = cell.start; i < cell.end; i++) {
+                            final int position = (int) (cell.numbers[i] - first);
+                            final double dy = (mHistory.getLatitude(position) - latitude)
+                                    * GeoUtils.METERS_PER_DEGREE_LATITUDE;
+                            double dLon = mHistory.getLongitude(position) - longitude;
+                            if (dLon > 180) {
+                                dLon -= 360;
+                            } else if (dLon < -180) {
+                                dLon += 360;
+                            }
+                            final double dx = dLon * metersPerDegreeLongitude;
+                            final double distanceSquared = dx * dx + dy * dy;
+                            if (distanceSquared < nearestDistanceSquared) {
+                                nearestDistanceSquared = distanceSquared;
+                                nearest = cell.numbers[i];
+                            }
+                        }
+                    }
+                }
+                if (nearest >= 0 && nearestDistanceSquared <= (ring * ringMeters) * (ring * ringMeters)) {
+                    break;
+                }
+                if (centerLat - ring <= mMinLatCell && centerLat + ring >= mMaxLatCell
+                        && centerLon - ring <= mMinLonCell && centerLon + ring >= mMaxLonCell) {
+                    break;
+                }
+                if (ring == MAX_NEAREST_RINGS) {
+                    return nearestByScan(latitude, longitude);
+                }
+            }
+            return (int) (nearest - first);
+        }
+    }
+
+    public List<Segment> segmentsWithin(LatLngBounds bounds) {
+        return segmentsWithin(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude);
+    }
+
+    /**
+     * Finds the runs of consecutive fixes inside a bounding box. A box whose west edge is east of
+     * its east edge crosses the antimeridian.
+     *
+     * @return the runs in time order
+     */
+    public List<Segment> segmentsWithin(double south, double west, double north, double east) {
+        synchronized (mHistory) {
+            update();
+            if (mCells.isEmpty()) {
+                return Collections.emptyList();
+            }
+            final long first = mHistory.getAddedCount() - mHistory.size();
+
+            int[] positions = new int[16];
+            int count = 0;
+            final int minLat = Math.max(latCell(south), mMinLatCell);
+            final int maxLat = Math.min(latCell(north), mMaxLatCell);
+            final int minLon = Math.max(lonCell(west), mMinLonCell);
+            final int maxLon = Math.min(lonCell(east), mMaxLonCell);
+            final boolean wraps = west > east;
+            if (wraps || (long) (maxLat - minLat + 1) * (maxLon - minLon + 1) > mCells.size()) {
+                // visiting every cell holding fixes is cheaper than every cell in the box
+                for (Cell cell : mCells.values()) {
+                    for (int i = cell.start; i < cell.end; i++) {
+                        final int position = (int) (cell.numbers[i] - first);
+                        if (contains(position, south, west, north, east)) {
+                            if (count == positions.length) {
+                                positions = Arrays.copyOf(positions, count * 2);
+                            }
+                            positions[count++] = position;
+                        }
+                    }
+                }
+            } else {
+                for (int latCell = minLat; latCell <= maxLat; latCell++) {
+                    for (int lonCell = minLon; lonCell <= maxLon; lonCell++) {
+                        final Cell cell = mCells.get(key(latCell, lonCell));
+                        if (cell == null) {
+                            continue;
+                        }
+                        for (int i = cell.start; i < cell.end; i++) {
+                            final int position = (int) (cell.numbers[i] - first);
+                            if (contains(position, south, west, north, east)) {
+                                if (count == positions.length) {
+                                    positions = Arrays.copyOf(positions, count * 2);
+                                }
+                                positions[count++] = position;
+                            }
+                        }
+                    }
+                }
+            }
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+
+            Arrays.sort(positions, 0, count);
+            final List<Segment> segments = new ArrayList<>();
+            int start = positions[0];
+            for (int i = 1; i <= count; i++) {
+                if (i == count || positions[i] != positions[i - 1] + 1) {
+                    final int end = positions[i - 1] + 1;
+                    segments.add(new Segment(start, end, mHistory.getTime(start), mHistory.getTime(end - 1)));
+                    if (i < count) {
+                        start = positions[i];
+                    }
+                }
+            }
+            return segments;
+        }
+    }
+
+    private int nearestByScan(double latitude, double longitude) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int position = 0, size = mHistory.size(); position < size; position++) {
+            final double distance = GeoUtils.distanceBetween(latitude, longitude,
+                    mHistory.getLatitude(position), mHistory.getLongitude(position));
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = position;
+            }
+        }
+        return nearest;
+    }
+
+    private boolean contains(int position, double south, double west, double north, double east) {
+        final double latitude = mHistory.getLatitude(position);
+        if (latitude < south || latitude > north) {
+            return false;
+        }
+        final double longitude = mHistory.getLongitude(position);
+        return west <= east
+                ? longitude >= west && longitude <= east
+                : longitude >= west || longitude <= east;
+    }
+
+    private static float interpolate(float start, float end, double fraction) {
+        return (float) (start + fraction * (end - start));
+    }
+
+    private int slot(long number) {
+        return (int) (number % mCellKeys.length);
+    }
+
+    private int latCell(double latitude) {
+        return (int) Math.floor(latitude / mCellSize);
+    }
+
+    private int lonCell(double longitude) {
+        return (int) Math.floor(longitude / mCellSize);
+    }
+
+    private static long key(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+    }
+
+    /**
+     * A run of consecutive fixes, from {@link #getStart()} inclusive to {@link #getEnd()}
+     * exclusive.
+     */
+    public static final class Segment {
+
+        private final int mStart;
+        private final int mEnd;
+        private final long mStartTime;
+        private final long mEndTime;
+
+        Segment(int start, int end, long startTime, long endTime) {
+            mStart = start;
+            mEnd = end;
+            mStartTime = startTime;
+            mEndTime = endTime;
+        }
+
+        public int getStart() {
+            return mStart;
+        }
+
+        public int getEnd() {
+            return mEnd;
+        }
+
+        /**
+         * @return the time of the first fix in the run
+         */
+        public long getStartTime() {
+            return mStartTime;
+        }
+
+        /**
+         * @return the time of the last fix in the run
+         */
+        public long getEndTime() {
+            return mEndTime;
+        }
+
+        @Override public String toString() {
+            return "Segment{[" + mStart + ", " + mEnd + "), " + mStartTime + " to " + mEndTime + "}";
+        }
+    }
+
+    /**
+     * The numbers of the fixes in one grid cell, oldest first, so that overwritten fixes are
+     * always removed from the front.
+     */
+    private static final class Cell {
+        long[] numbers = new long[4];
+        int start;
+        int end;
+
+        void add(long number) {
+            if (end == numbers.length) {
+                // only compact when that frees at least half, so adds stay amortized constant
+                if (start >= numbers.length / 2) {
+                    System.arraycopy(numbers, start, numbers, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else {
+                    numbers = Arrays.copyOf(numbers, numbers.length * 2);
+                }
+            }
+            numbers[end++] = number;
+        }
+
+        void removeFirst() {
+            start++;
+        }
+
+        boolean isEmpty() {
+            return start == end;
+        }
+    }
+}
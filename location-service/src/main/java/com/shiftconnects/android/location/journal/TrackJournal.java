@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.journal;
+
+import android.location.Location;
+import android.os.Build;
+
+import com.shiftconnects.android.location.history.LocationHistory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of location fixes written through memory-mapped segment files.
+ *
+ * Each fix is written as a fixed size record followed by a CRC32 of its contents. Writes go to the
+ * mapped pages and are flushed to disk by the kernel, so a fix survives the process being killed
+ * as soon as {@link #append(Location)} returns, without any explicit I/O on the caller's thread.
+ * Call {@link #sync()} to also survive a device power loss.
+ *
+ * When a segment is full a new one is started, and once more than {@code maxSegments} exist the
+ * oldest is deleted. Opening a journal scans the newest segment for the first record that is empty
+ * or fails its checksum and resumes appending there, so a record torn by a crash is overwritten.
+ */
+public class TrackJournal implements Closeable {
+
+    /**
+     * Receives the records of a journal in the order they were appended.
+     */
+    public interface Visitor {
+        void onRecord(double latitude, double longitude, float accuracy, float speed, float bearing,
+                long time, long elapsedRealtimeNanos);
+    }
+
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 4096;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final int MAGIC = 0x4c4f434a; // "LOCJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    // lat, lon, accuracy, speed, bearing, time, elapsed realtime nanos
+    private static final int PAYLOAD_SIZE = 8 + 8 + 4 + 4 + 4 + 8 + 8;
+    private static final int RECORD_SIZE = PAYLOAD_SIZE + 4;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".jnl";
+
+    private final File mDirectory;
+    private final int mRecordsPerSegment;
+    private final int mMaxSegments;
+
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mScratch = new byte[PAYLOAD_SIZE];
+    private final ByteBuffer mPayload = ByteBuffer.wrap(mScratch).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long mSegmentNumber;
+    private MappedByteBuffer mSegment;
+    private int mRecordCount;
+
+    public TrackJournal(File directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public TrackJournal(File directory, int recordsPerSegment, int maxSegments) throws IOException {
+        if (recordsPerSegment < 1) {
+            throw new IllegalArgumentException("recordsPerSegment must be at least 1");
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be at least 1");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+        mDirectory = directory;
+        mRecordsPerSegment = recordsPerSegment;
+        mMaxSegments = maxSegments;
+
+        final long[] segments = listSegments(directory);
+        if (segments.length == 0) {
+            openSegment(0);
+        } else {
+            openSegment(segments[segments.length - 1]);
+            mRecordCount = countValidRecords(mSegment, mRecordsPerSegment);
+        }
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public void append(Location location) throws IOException {
+        append(location.getLatitude(),
+                location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasBearing() ? location.getBearing() : Float.NaN,
+                location.getTime(),
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? location.getElapsedRealtimeNanos() : 0l);
+    }
+
+    public synchronized void append(double latitude, double longitude, float accuracy, float speed,
+            float bearing, long time, long elapsedRealtimeNanos) throws IOException {
+        if (mSegment == null) {
+            throw new IOException("Journal is closed");
+        }
+        if (mRecordCount == mRecordsPerSegment) {
+            openSegment(mSegmentNumber + 1);
+            deleteExpiredSegments();
+        }
+
+        mPayload.clear();
+        mPayload.putDouble(latitude)
+                .putDouble(longitude)
+                .putFloat(accuracy)
+                .putFloat(speed)
+                .putFloat(bearing)
+                .putLong(time)
+                .putLong(elapsedRealtimeNanos);
+        mCrc.reset();
+        mCrc.update(mScratch, 0, PAYLOAD_SIZE);
+
+        mSegment.position(HEADER_SIZE + mRecordCount * RECORD_SIZE);
+        mSegment.put(mScratch, 0, PAYLOAD_SIZE);
+        mSegment.putInt((int) mCrc.getValue());
+        mRecordCount++;
+    }
+
+    /**
+     * Forces the current segment to storage.
+     */
+    public synchronized void sync() {
+        if (mSegment != null) {
+            mSegment.force();
+        }
+    }
+
+    /**
+     * Visits every intact record in the journal, oldest first. Reading stops at the first record
+     * of each segment that fails its checksum.
+     */
+    public synchronized void read(Visitor visitor) throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32 crc = new CRC32();
+        for (long number : listSegments(mDirectory)) {
+            final MappedByteBuffer segment = number == mSegmentNumber && mSegment != null
+                    ? mSegment : mapSegment(segmentFile(mDirectory, number), FileChannel.MapMode.READ_ONLY);
+            if (segment == null) {
+                continue;
+            }
+            final int records = (segment.capacity() - HEADER_SIZE) / RECORD_SIZE;
+            for (int i = 0; i < records; i++) {
+                if (!readRecord(segment, i, payload, crc)) {
+                    break;
+                }
+                visitor.onRecord(payload.getDouble(), payload.getDouble(), payload.getFloat(),
+                        payload.getFloat(), payload.getFloat(), payload.getLong(), payload.getLong());
+            }
+        }
+    }
+
+    /**
+     * Appends every intact record in the journal to the given history.
+     */
+    public void replay(final LocationHistory history) throws IOException {
+        read(new Visitor() {
+            @Override
+            public void onRecord(double latitude, double longitude, float accuracy, float speed,
+                    float bearing, long time, long elapsedRealtimeNanos) {
+                history.add(latitude, longitude, accuracy, speed, bearing, time, elapsedRealtimeNanos);
+            }
+        });
+    }
+
+    /**
+     * Deletes every segment and starts over with an empty journal.
+     */
+    public synchronized void reset() throws IOException {
+        mSegment = null;
+        deleteSegments(mDirectory);
+        openSegment(0);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mSegment != null) {
+            mSegment.force();
+            mSegment = null;
+        }
+    }
+
+    /**
+     * Deletes every segment in the given directory, along with the directory itself.
+     */
+    public static void delete(File directory) {
+        deleteSegments(directory);
+        directory.delete();
+    }
+
+    /**
+     * @return true if the directory holds at least one journal segment
+     */
+    public static boolean exists(File directory) {
+        return listSegments(directory).length > 0;
+    }
+
+    private void openSegment(long number) throws IOException {
+        final File file = segmentFile(mDirectory, number);
+        final boolean created = !file.exists();
+        final MappedByteBuffer segment = mapSegment(file, FileChannel.MapMode.READ_WRITE);
+        if (segment == null) {
+            throw new IOException("Unable to map journal segment " + file);
+        }
+        if (created || segment.getInt(0) != MAGIC) {
+            segment.putInt(0, MAGIC);
+            segment.putInt(4, VERSION);
+        }
+        mSegment = segment;
+        mSegmentNumber = number;
+        mRecordCount = 0;
+    }
+
+    private MappedByteBuffer mapSegment(File file, FileChannel.MapMode mode) throws IOException {
+        final long size = HEADER_SIZE + (long) mRecordsPerSegment * RECORD_SIZE;
+        final RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+        try {
+            final long length = mode == FileChannel.MapMode.READ_ONLY ? raf.length() : size;
+            if (length < HEADER_SIZE) {
+                return null;
+            }
+            if (raf.length() != length) {
+                raf.setLength(length);
+            }
+            final MappedByteBuffer buffer = raf.getChannel().map(mode, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (mode == FileChannel.MapMode.READ_ONLY && buffer.getInt(0) != MAGIC) {
+                return null;
+            }
+            return buffer;
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    private void deleteExpiredSegments() {
+        final long[] segments = listSegments(mDirectory);
+        for (int i = 0; i < segments.length - mMaxSegments; i++) {
+            segmentFile(mDirectory, segments[i]).delete();
+        }
+    }
+
+    private static int countValidRecords(MappedByteBuffer segment, int recordsPerSegment) {
+        final ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32 crc = new CRC32();
+        int count = 0;
+        while (count < recordsPerSegment && readRecord(segment, count, payload, crc)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Copies the payload of the given record into {@code payload} and flips it for reading.
+     *
+     * @return false if the record fails its checksum
+     */
+    private static boolean readRecord(ByteBuffer segment, int index, ByteBuffer payload, CRC32 crc) {
+        final int offset = HEADER_SIZE + index * RECORD_SIZE;
+        payload.clear();
+        for (int i = 0; i < PAYLOAD_SIZE; i++) {
+            payload.put(segment.get(offset + i));
+        }
+        crc.reset();
+        crc.update(payload.array(), 0, PAYLOAD_SIZE);
+        payload.flip();
+        return segment.getInt(offset + PAYLOAD_SIZE) == (int) crc.getValue();
+    }
+
+    private static File segmentFile(File directory, long number) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%010d", number) + SEGMENT_SUFFIX);
+    }
+
+    private static void deleteSegments(File directory) {
+        for (long number : listSegments(directory)) {
+            segmentFile(directory, number).delete();
+        }
+    }
+
+    private static long[] listSegments(File directory) {
+        final String[] names = directory.list(new FilenameFilter() {
+            @Override public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (names == null) {
+            return new long[0];
+        }
+        final long[] numbers = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            try {
+                numbers[count] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                // not one of ours
+            }
+        }
+        final long[] segments = Arrays.copyOf(numbers, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+}
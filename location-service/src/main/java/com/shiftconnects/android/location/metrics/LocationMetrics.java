@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.metrics;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.shiftconnects.android.location.dispatch.CallbackRegistry;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime measurements of a location service: how old fixes are when they are delivered, how
+ * often they arrive, how long each listener takes to handle them, and how the connection to Play
+ * Services has behaved. Use {@link #snapshot()} to read them.
+ *
+ * As a {@link CallbackRegistry.Observer} it records the time spent in each listener of the
+ * registries it observes.
+ */
+public class LocationMetrics implements CallbackRegistry.Observer<Object> {
+
+    private static final int RATE_WINDOW_SECONDS = 60;
+
+    private final long mStartedAt = SystemClock.elapsedRealtime();
+
+    private final LatencyHistogram mFixAge = new LatencyHistogram();
+    private final ConcurrentHashMap<Object, LatencyHistogram> mListenerTimes = new ConcurrentHashMap<>();
+
+    // fixes per second over the last minute, indexed by second modulo the window
+    private final int[] mRateCounts = new int[RATE_WINDOW_SECONDS];
+    private final long[] mRateSeconds = new long[RATE_WINDOW_SECONDS];
+    private long mFixCount;
+    private long mLastFixAgeNanos = -1;
+
+    private int mConnectCount;
+    private int mSuspendCount;
+    private long mConnectedSince = -1;
+    private long mConnectedMillis;
+
+    public LocationMetrics(boolean connected) {
+        if (connected) {
+            mConnectedSince = mStartedAt;
+        }
+    }
+
+    /**
+     * Records a fix as it is delivered to listeners.
+     */
+    public void onFix(Location location) {
+        final long ageNanos;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && location.getElapsedRealtimeNanos() > 0) {
+            ageNanos = SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos();
+        } else {
+            ageNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - location.getTime());
+        }
+        mFixAge.record(ageNanos);
+
+        final long second = SystemClock.elapsedRealtime() / 1000;
+        final int index = (int) (second % RATE_WINDOW_SECONDS);
+        synchronized (this) {
+            if (mRateSeconds[index] != second) {
+                mRateSeconds[index] = second;
+                mRateCounts[index] = 0;
+            }
+            mRateCounts[index]++;
+            mFixCount++;
+            mLastFixAgeNanos = ageNanos;
+        }
+    }
+
+    public synchronized void onConnected() {
+        mConnectCount++;
+        if (mConnectedSince < 0) {
+            mConnectedSince = SystemClock.elapsedRealtime();
+        }
+    }
+
+    public synchronized void onSuspended() {
+        mSuspendCount++;
+        onDisconnected();
+    }
+
+    public synchronized void onDisconnected() {
+        if (mConnectedSince >= 0) {
+            mConnectedMillis += SystemClock.elapsedRealtime() - mConnectedSince;
+            mConnectedSince = -1;
+        }
+    }
+
+    @Override
+    public void onDelivered(Object callback, long durationNanos) {
+        LatencyHistogram histogram = mListenerTimes.get(callback);
+        if (histogram == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+            histogram = mListenerTimes.putIfAbsent(callback, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(durationNanos);
+    }
+
+    /**
+     * Drops the timings of a listener that has been unregistered.
+     */
+    public void forget(Object callback) {
+        mListenerTimes.remove(callback);
+    }
+
+    public MetricsSnapshot snapshot() {
+        final long now = SystemClock.elapsedRealtime();
+        final Map<String, LatencyHistogram> listenerTimes = new TreeMap<>();
+        for (Map.Entry<Object, LatencyHistogram> entry : mListenerTimes.entrySet()) {
+            final Object callback = entry.getKey();
+            listenerTimes.put(callback.getClass().getName() + "@"
+                    + Integer.toHexString(System.identityHashCode(callback)), entry.getValue().copy());
+        }
+        synchronized (this) {
+            int fixesPerMinute = 0;
+            final long second = now / 1000;
+            for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+                if (second - mRateSeconds[i] < RATE_WINDOW_SECONDS) {
+                    fixesPerMinute += mRateCounts[i];
+                }
+            }
+            final boolean connected = mConnectedSince >= 0;
+            return new MetricsSnapshot(now - mStartedAt,
+                    mConnectedMillis + (connected ? now - mConnectedSince : 0), connected,
+                    mConnectCount, mSuspendCount, mFixCount, fixesPerMinute,
+                    mLastFixAgeNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(mLastFixAgeNanos),
+                    mFixAge.copy(), listenerTimes);
+        }
+    }
+}
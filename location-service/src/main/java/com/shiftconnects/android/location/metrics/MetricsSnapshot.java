@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable copy of {@link LocationMetrics} taken at one moment.
+ */
+public final class MetricsSnapshot {
+
+    private final long mUptimeMillis;
+    private final long mConnectedMillis;
+    private final boolean mConnected;
+    private final int mConnectCount;
+    private final int mSuspendCount;
+    private final long mFixCount;
+    private final int mFixesPerMinute;
+    private final long mLastFixAgeMillis;
+    private final LatencyHistogram mFixAge;
+    private final Map<String, LatencyHistogram> mListenerTimes;
+
+    MetricsSnapshot(long uptimeMillis, long connectedMillis, boolean connected, int connectCount,
+            int suspendCount, long fixCount, int fixesPerMinute, long lastFixAgeMillis,
+            LatencyHistogram fixAge, Map<String, LatencyHistogram> listenerTimes) {
+        mUptimeMillis = uptimeMillis;
+        mConnectedMillis = connectedMillis;
+        mConnected = connected;
+        mConnectCount = connectCount;
+        mSuspendCount = suspendCount;
+        mFixCount = fixCount;
+        mFixesPerMinute = fixesPerMinute;
+        mLastFixAgeMillis = lastFixAgeMillis;
+        mFixAge = fixAge;
+        mListenerTimes = Collections.unmodifiableMap(listenerTimes);
+    }
+
+    /**
+     * @return milliseconds since metrics were enabled
+     */
+    public long getUptimeMillis() {
+        return mUptimeMillis;
+    }
+
+    /**
+     * @return total milliseconds connected to Play Services since metrics were enabled
+     */
+    public long getConnectedMillis() {
+        return mConnectedMillis;
+    }
+
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    public int getConnectCount() {
+        return mConnectCount;
+    }
+
+    public int getSuspendCount() {
+        return mSuspendCount;
+    }
+
+    public long getFixCount() {
+        return mFixCount;
+    }
+
+    /**
+     * @return fixes delivered in the last minute
+     */
+    public int getFixesPerMinute() {
+        return mFixesPerMinute;
+    }
+
+    /**
+     * @return how old the most recent fix was when it was delivered, or -1 if there has been none
+     */
+    public long getLastFixAgeMillis() {
+        return mLastFixAgeMillis;
+    }
+
+    /**
+     * @return the age of fixes when they were delivered to listeners
+     */
+    public LatencyHistogram getFixAge() {
+        return mFixAge;
+    }
+
+    /**
+     * @return the time spent in each listener, keyed by its class name and identity hash
+     */
+    public Map<String, LatencyHistogram> getListenerTimes() {
+        return mListenerTimes;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("MetricsSnapshot[")
+                .append("uptime=").append(mUptimeMillis).append("ms")
+                .append(" connected=").append(mConnected)
+                .append(" connectedTime=").append(mConnectedMillis).append("ms")
+                .append(" connects=").append(mConnectCount)
+                .append(" suspends=").append(mSuspendCount)
+                .append(" fixes=").append(mFixCount)
+                .append(" fixesPerMinute=").append(mFixesPerMinute)
+                .append(" lastFixAge=").append(mLastFixAgeMillis).append("ms")
+                .append("]\n  fixAge: ").append(mFixAge);
+        for (Map.Entry<String, LatencyHistogram> entry : mListenerTimes.entrySet()) {
+            builder.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return builder.toString();
+    }
+}
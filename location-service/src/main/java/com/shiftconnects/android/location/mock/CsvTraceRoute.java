@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Streams a comma separated trace. The first line must name the columns; {@code latitude} (or
+ * {@code lat}), {@code longitude} (or {@code lon}, {@code lng}) and {@code time} (or
+ * {@code timestamp}) are required, and {@code accuracy}, {@code speed}, {@code bearing} and
+ * {@code altitude} are used when present. Times may be milliseconds since the epoch or ISO 8601.
+ */
+public class CsvTraceRoute extends TraceRoute {
+
+    private int mTime;
+    private int mLatitude;
+    private int mLongitude;
+    private int mAccuracy;
+    private int mSpeed;
+    private int mBearing;
+    private int mAltitude;
+
+    public CsvTraceRoute(File file) {
+        super(file);
+    }
+
+    @Override
+    protected void onOpen(BufferedReader reader) throws IOException {
+        final String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("Empty trace " + getFile());
+        }
+        final String[] columns = header.split(",");
+        mTime = find(columns, "time", "timestamp");
+        mLatitude = find(columns, "latitude", "lat");
+        mLongitude = find(columns, "longitude", "lon", "lng");
+        mAccuracy = find(columns, "accuracy");
+        mSpeed = find(columns, "speed");
+        mBearing = find(columns, "bearing");
+        mAltitude = find(columns, "altitude", "alt");
+        if (mTime < 0 || mLatitude < 0 || mLongitude < 0) {
+            throw new IOException("Trace " + getFile() + " needs time, latitude and longitude columns");
+        }
+    }
+
+    @Override
+    protected long readFix(BufferedReader reader, MockFix fix) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String[] values = line.split(",", -1);
+            final long time = parseTime(get(values, mTime));
+            final double latitude = parseDouble(get(values, mLatitude), Double.NaN);
+            final double longitude = parseDouble(get(values, mLongitude), Double.NaN);
+            if (time == END_OF_TRACE || Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                // blank or malformed line
+                continue;
+            }
+            fix.latitude = latitude;
+            fix.longitude = longitude;
+            fix.accuracy = (float) parseDouble(get(values, mAccuracy), Double.NaN);
+            fix.speed = (float) parseDouble(get(values, mSpeed), Double.NaN);
+            fix.bearing = (float) parseDouble(get(values, mBearing), Double.NaN);
+            fix.altitude = parseDouble(get(values, mAltitude), Double.NaN);
+            return time;
+        }
+        return END_OF_TRACE;
+    }
+
+    private static long parseTime(String value) {
+        if (value == null || value.length() == 0) {
+            return END_OF_TRACE;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return parseIso8601(value);
+        }
+    }
+
+    private static String get(String[] values, int column) {
+        return column >= 0 && column < values.length ? values[column] : null;
+    }
+
+    private static int find(String[] columns, String... names) {
+        for (int i = 0; i < columns.length; i++) {
+            final String column = columns[i].trim().toLowerCase(Locale.US);
+            for (String name : names) {
+                if (column.equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Streams the track points of a GPX file with a pull parser, so only the current point is ever
+ * held in memory. Each {@code trkpt} (or {@code rtept}) with a {@code time} is played, along with
+ * its {@code ele} as altitude and, when present, GPX 1.0 {@code speed} and {@code course}. An
+ * accuracy estimate is derived from {@code hdop} when the point has one.
+ */
+public class GpxTraceRoute extends TraceRoute {
+
+    private XmlPullParser mParser;
+
+    public GpxTraceRoute(File file) {
+        super(file);
+    }
+
+    @Override
+    protected void onOpen(BufferedReader reader) throws IOException {
+        mParser = Xml.newPullParser();
+        try {
+            mParser.setInput(reader);
+        } catch (XmlPullParserException e) {
+            throw new IOException("Unable to read " + getFile(), e);
+        }
+    }
+
+    @Override
+    protected long readFix(BufferedReader reader, MockFix fix) throws IOException {
+        try {
+            return readPoint(fix);
+        } catch (XmlPullParserException e) {
+            throw new IOException("Malformed GPX in " + getFile(), e);
+        }
+    }
+
+    private long readPoint(MockFix fix) throws XmlPullParserException, IOException {
+        final XmlPullParser parser = mParser;
+        boolean inPoint = false;
+        long time = END_OF_TRACE;
+        String element = null;
+        for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+            if (event == XmlPullParser.START_TAG) {
+                final String name = parser.getName();
+                if ("trkpt".equals(name) || "rtept".equals(name)) {
+                    inPoint = true;
+                    time = END_OF_TRACE;
+                    fix.clear();
+                    fix.latitude = parseDouble(parser.getAttributeValue(null, "lat"), Double.NaN);
+                    fix.longitude = parseDouble(parser.getAttributeValue(null, "lon"), Double.NaN);
+                }
+                element = name;
+            } else if (event == XmlPullParser.TEXT && inPoint && element != null) {
+                final String text = parser.getText();
+                switch (element) {
+                    case "time":
+                        time = parseIso8601(text);
+                        break;
+                    case "ele":
+                        fix.altitude = parseDouble(text, Double.NaN);
+                        break;
+                    case "speed":
+                        fix.speed = (float) parseDouble(text, Double.NaN);
+                        break;
+                    case "course":
+                        fix.bearing = (float) parseDouble(text, Double.NaN);
+                        break;
+                    case "hdop":
+                        fix.accuracy = (float) parseDouble(text, Double.NaN) * UERE;
+                        break;
+                }
+            } else if (event == XmlPullParser.END_TAG) {
+                final String name = parser.getName();
+                element = null;
+                if (inPoint && ("trkpt".equals(name) || "rtept".equals(name))) {
+                    inPoint = false;
+                    if (time != END_OF_TRACE && !Double.isNaN(fix.latitude) && !Double.isNaN(fix.longitude)) {
+                        return time;
+                    }
+                }
+            }
+        }
+        return END_OF_TRACE;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import java.util.Random;
+
+/**
+ * Moves along a list of waypoints at a given speed, producing a fix every interval. Fixes are
+ * computed one at a time as they are played, so a long route at a short interval costs no more
+ * memory than a short one.
+ *
+ * Optional noise can be added to each fix's position and accuracy. Noise comes from a seeded
+ * generator which is reset on {@link #rewind()}, so every playback of a route is identical.
+ */
+public class InterpolatedRoute implements MockRoute {
+
+    public interface SpeedProfile {
+        /**
+         * @param offsetMillis time since the start of the route
+         * @param distance meters travelled since the start of the route
+         * @return speed in meters per second for the next interval, zero or less to stay put
+         */
+        float getSpeed(long offsetMillis, double distance);
+    }
+
+    private final LatLng[] mWaypoints;
+    private final long mInterval;
+    private final float mAccuracy;
+    private final SpeedProfile mSpeedProfile;
+
+    private double mPositionNoise;
+    private float mAccuracyNoise;
+    private long mSeed;
+    private Random mRandom;
+
+    // position along the route
+    private int mSegment;
+    private double mSegmentLength;
+    private double mSegmentDistance;
+    private double mDistance;
+    private long mOffset;
+    private boolean mStarted;
+    private boolean mFinished;
+
+    public InterpolatedRoute(long interval, float accuracy, final float speed, LatLng... waypoints) {
+        this(interval, accuracy, new SpeedProfile() {
+            @Override public float getSpeed(long offsetMillis, double distance) {
+                return speed;
+            }
+        }, waypoints);
+        if (speed <= 0) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+    }
+
+    public InterpolatedRoute(long interval, float accuracy, SpeedProfile speedProfile, LatLng... waypoints) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        mWaypoints = waypoints;
+        mInterval = interval;
+        mAccuracy = accuracy;
+        mSpeedProfile = speedProfile;
+        rewind();
+    }
+
+    /**
+     * Adds normally distributed noise to every fix.
+     *
+     * @param positionNoise standard deviation of the position error in meters
+     * @param accuracyNoise standard deviation of the reported accuracy in meters
+     */
+    public void setNoise(double positionNoise, float accuracyNoise, long seed) {
+        mPositionNoise = positionNoise;
+        mAccuracyNoise = accuracyNoise;
+        mSeed = seed;
+        mRandom = new Random(seed);
+    }
+
+    @Override
+    public boolean next(MockFix fix) {
+        if (mFinished || mWaypoints == null || mWaypoints.length == 0) {
+            return false;
+        }
+
+        final float speed = Math.max(0f, mSpeedProfile.getSpeed(mOffset, mDistance));
+        if (!mStarted) {
+            mStarted = true;
+            startSegment(0);
+        } else {
+            final double step = speed * mInterval / 1000d;
+            final double remaining = advance(step);
+            if (remaining > 0 && speed > 0) {
+                // the end was reached part way through the interval
+                mOffset += Math.round((step - remaining) * 1000d / speed);
+            } else {
+                mOffset += mInterval;
+            }
+        }
+
+        final LatLng from = mWaypoints[mSegment];
+        final LatLng to = mWaypoints[Math.min(mSegment + 1, mWaypoints.length - 1)];
+        final LatLng position = mSegmentLength > 0
+                ? SphericalUtil.interpolate(from, to, mSegmentDistance / mSegmentLength)
+                : from;
+
+        fix.clear();
+        fix.offsetMillis = mOffset;
+        fix.latitude = position.latitude;
+        fix.longitude = position.longitude;
+        fix.accuracy = mAccuracy;
+        fix.speed = speed;
+        if (mSegmentLength > 0) {
+            fix.bearing = (float) SphericalUtil.computeHeading(from, to);
+        }
+        if (mRandom != null) {
+            addNoise(fix);
+        }
+        return true;
+    }
+
+    @Override
+    public void rewind() {
+        mSegment = 0;
+        mSegmentLength = 0;
+        mSegmentDistance = 0;
+        mDistance = 0;
+        mOffset = 0;
+        mStarted = false;
+        mFinished = false;
+        if (mRandom != null) {
+            mRandom = new Random(mSeed);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Moves the given number of meters along the route.
+     *
+     * @return the meters left over if the end of the route was reached
+     */
+    private double advance(double meters) {
+        mDistance += meters;
+        double left = meters;
+        while (mSegmentDistance + left >= mSegmentLength) {
+            left -= mSegmentLength - mSegmentDistance;
+            if (mSegment + 1 >= mWaypoints.length - 1) {
+                // stop on the last waypoint
+                mSegmentDistance = mSegmentLength;
+                mFinished = true;
+                mDistance -= left;
+                return left;
+            }
+            startSegment(mSegment + 1);
+        }
+        mSegmentDistance += left;
+        return 0;
+    }
+
+    private void startSegment(int segment) {
+        mSegment = segment;
+        mSegmentDistance = 0;
+        mSegmentLength = segment + 1 < mWaypoints.length
+                ? SphericalUtil.computeDistanceBetween(mWaypoints[segment], mWaypoints[segment + 1])
+                : 0;
+        if (segment + 1 >= mWaypoints.length) {
+            // a single waypoint is a route that is already finished
+            mFinished = true;
+        }
+    }
+
+    private void addNoise(MockFix fix) {
+        if (mPositionNoise > 0) {
+            final double north = mRandom.nextGaussian() * mPositionNoise;
+            final double east = mRandom.nextGaussian() * mPositionNoise;
+            fix.latitude += north / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+            fix.longitude += east / GeoUtils.metersPerDegreeLongitude(fix.latitude);
+        }
+        if (mAccuracyNoise > 0) {
+            fix.accuracy = Math.max(1f, fix.accuracy + (float) mRandom.nextGaussian() * mAccuracyNoise);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+/**
+ * Plays a fixed list of points at a constant interval and accuracy, with each fix's bearing
+ * pointing from the previous point.
+ */
+public class LatLngRoute implements MockRoute {
+
+    private final LatLng[] mPoints;
+    private final long mInterval;
+    private final float mAccuracy;
+
+    private int mIndex;
+
+    public LatLngRoute(long interval, float accuracy, LatLng... points) {
+        mPoints = points;
+        mInterval = interval;
+        mAccuracy = accuracy;
+    }
+
+    @Override
+    public boolean next(MockFix fix) {
+        if (mPoints == null || mIndex >= mPoints.length) {
+            return false;
+        }
+        final LatLng point = mPoints[mIndex];
+        fix.clear();
+        fix.offsetMillis = mIndex * mInterval;
+        fix.latitude = point.latitude;
+        fix.longitude = point.longitude;
+        fix.accuracy = mAccuracy;
+        if (mIndex > 0) {
+            fix.bearing = (float) SphericalUtil.computeHeading(mPoints[mIndex - 1], point);
+        }
+        mIndex++;
+        return true;
+    }
+
+    @Override
+    public void rewind() {
+        mIndex = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
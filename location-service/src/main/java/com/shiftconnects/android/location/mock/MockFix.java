@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+/**
+ * A single point of a {@link MockRoute}. Routes fill in a reused instance, so it must not be held
+ * on to between calls.
+ */
+public final class MockFix {
+
+    /**
+     * Milliseconds since the start of the route at which this fix should be played.
+     */
+    public long offsetMillis;
+
+    public double latitude;
+    public double longitude;
+
+    // NaN when the fix does not have the value
+    public float accuracy = Float.NaN;
+    public float speed = Float.NaN;
+    public float bearing = Float.NaN;
+    public double altitude = Double.NaN;
+
+    public void clear() {
+        offsetMillis = 0;
+        latitude = 0;
+        longitude = 0;
+        accuracy = Float.NaN;
+        speed = Float.NaN;
+        bearing = Float.NaN;
+        altitude = Double.NaN;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * Plays {@link MockRoute}s on a {@link Looper} by scheduling one message per fix with
+ * {@link Handler#sendMessageAtTime(Message, long)}, so the looper's thread is never blocked
+ * between fixes and control requests are handled immediately.
+ *
+ * Routes are queued and played one after another. Playback can be paused, resumed, seeked within
+ * the current route, cancelled and sped up or slowed down with a time multiplier; a multiplier of
+ * {@link #SPEED_UNLIMITED} plays fixes as fast as the sink accepts them. All methods may be called
+ * from any thread.
+ *
+ * Playback stalls when the sink refuses a fix. A stall is kept apart from a {@link #pause()}, so
+ * that {@link #retry()} picks up after a stall without undoing a pause.
+ *
+ * Fixes are stamped from a virtual clock that runs at route time: the first fix of a route is
+ * stamped with the current time and each following fix with that plus its offset, so code
+ * measuring speed from timestamps sees realistic values at any multiplier.
+ */
+public class MockPlayer {
+
+    public interface Sink {
+
+        /**
+         * @return false if the fix could not be delivered, which stalls playback until
+         * {@link #retry()} or {@link #resume()} is called; the same fix is then delivered again
+         */
+        boolean onFix(MockFix fix, long time, long elapsedRealtimeNanos);
+    }
+
+    public static final float SPEED_UNLIMITED = Float.POSITIVE_INFINITY;
+
+    private static final String TAG = MockPlayer.class.getSimpleName();
+
+    private static final int MSG_ENQUEUE = 1;
+    private static final int MSG_STEP = 2;
+    private static final int MSG_PAUSE = 3;
+    private static final int MSG_RESUME = 4;
+    private static final int MSG_SEEK = 5;
+    private static final int MSG_CANCEL = 6;
+    private static final int MSG_SKIP = 7;
+    private static final int MSG_SPEED = 8;
+    private static final int MSG_RETRY = 9;
+    private static final int MSG_QUIT = 10;
+
+    private final Handler mHandler;
+    private final Sink mSink;
+
+    // everything below is only touched on the looper's thread
+    private final LinkedList<MockRoute> mQueue = new LinkedList<>();
+    private final MockFix mFix = new MockFix();
+    private MockRoute mCurrent;
+    // paused by pause(), and stalled by the sink refusing a fix
+    private boolean mPaused;
+    private boolean mStalled;
+    private float mSpeed = 1f;
+
+    // uptime at which the fix at mBaseOffset is due
+    private long mBaseUptime;
+    private long mBaseOffset;
+
+    // virtual clock time of offset zero
+    private long mStartTime;
+    private long mStartElapsedRealtimeNanos;
+
+    private volatile boolean mPlaying;
+
+    public MockPlayer(Looper looper, Sink sink) {
+        mSink = sink;
+        mHandler = new Handler(looper, new Handler.Callback() {
+            @Override public boolean handleMessage(Message msg) {
+                MockPlayer.this.handleMessage(msg);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Queues a route to be played once every route queued before it has finished.
+     */
+    public void play(MockRoute route) {
+        mHandler.obtainMessage(MSG_ENQUEUE, route).sendToTarget();
+    }
+
+    public void pause() {
+        mHandler.sendEmptyMessage(MSG_PAUSE);
+    }
+
+    /**
+     * Resumes playback, whether it was paused or stalled.
+     */
+    public void resume() {
+        mHandler.sendEmptyMessage(MSG_RESUME);
+    }
+
+    /**
+     * Resumes playback if it stalled because the sink refused a fix, for example once the sink
+     * can deliver again. Playback paused with {@link #pause()} stays paused.
+     */
+    public void retry() {
+        mHandler.sendEmptyMessage(MSG_RETRY);
+    }
+
+    /**
+     * Moves playback of the current route to the first fix at or after the given offset.
+     */
+    public void seek(long offsetMillis) {
+        mHandler.obtainMessage(MSG_SEEK, offsetMillis).sendToTarget();
+    }
+
+    /**
+     * Stops the current route and starts the next queued one.
+     */
+    public void skip() {
+        mHandler.sendEmptyMessage(MSG_SKIP);
+    }
+
+    /**
+     * Stops playback and drops every queued route.
+     */
+    public void cancel() {
+        mHandler.sendEmptyMessage(MSG_CANCEL);
+    }
+
+    /**
+     * Cancels playback like {@link #cancel()}, closing every route, and then quits the looper.
+     * Messages already sent, such as queued routes, are handled first, so no route is left open.
+     */
+    public void quit() {
+        mHandler.sendEmptyMessage(MSG_QUIT);
+    }
+
+    /**
+     * @param speed time multiplier, for example 10 to play ten times faster than recorded, or
+     *              {@link #SPEED_UNLIMITED}
+     */
+    public void setSpeed(float speed) {
+        if (!(speed > 0f)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        mHandler.obtainMessage(MSG_SPEED, speed).sendToTarget();
+    }
+
+    /**
+     * @return true while a route is being played, including while paused
+     */
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    private void handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_ENQUEUE:
+                mQueue.add((MockRoute) msg.obj);
+                if (mCurrent == null) {
+                    startNextRoute();
+                }
+                break;
+            case MSG_STEP:
+                step();
+                break;
+            case MSG_PAUSE:
+                mHandler.removeMessages(MSG_STEP);
+                mPaused = true;
+                break;
+            case MSG_RESUME:
+                if (mPaused || mStalled) {
+                    mPaused = false;
+                    mStalled = false;
+                    if (mCurrent != null) {
+                        rebase(mFix.offsetMillis);
+                        schedule();
+                    }
+                }
+                break;
+            case MSG_RETRY:
+                if (mStalled) {
+                    mStalled = false;
+                    if (!mPaused && mCurrent != null) {
+                        rebase(mFix.offsetMillis);
+                        schedule();
+                    }
+                }
+                break;
+            case MSG_SEEK:
+                seekTo((Long) msg.obj);
+                break;
+            case MSG_SKIP:
+                mHandler.removeMessages(MSG_STEP);
+                startNextRoute();
+                break;
+            case MSG_CANCEL:
+                cancelAll();
+                break;
+            case MSG_QUIT:
+                cancelAll();
+                Looper.myLooper().quit();
+                break;
+            case MSG_SPEED:
+                changeSpeed((Float) msg.obj);
+                break;
+        }
+    }
+
+    private void step() {
+        if (isHeld() || mCurrent == null) {
+            return;
+        }
+        if (!mSink.onFix(mFix, mStartTime + mFix.offsetMillis,
+                mStartElapsedRealtimeNanos + mFix.offsetMillis * 1000000l)) {
+            mStalled = true;
+            return;
+        }
+        if (advance()) {
+            schedule();
+        } else {
+            startNextRoute();
+        }
+    }
+
+    private void startNextRoute() {
+        finishRoute();
+        while (!mQueue.isEmpty()) {
+            mCurrent = mQueue.poll();
+            mPlaying = true;
+            if (advance()) {
+                rebase(mFix.offsetMillis);
+                if (!isHeld()) {
+                    schedule();
+                }
+                return;
+            }
+            finishRoute();
+        }
+    }
+
+    private void cancelAll() {
+        mHandler.removeMessages(MSG_STEP);
+        for (MockRoute route : mQueue) {
+            close(route);
+        }
+        mQueue.clear();
+        finishRoute();
+    }
+
+    private boolean isHeld() {
+        return mPaused || mStalled;
+    }
+
+    private void finishRoute() {
+        if (mCurrent != null) {
+            close(mCurrent);
+            mCurrent = null;
+        }
+        mPlaying = false;
+    }
+
+    /**
+     * Pulls the next fix of the current route into mFix.
+     */
+    private boolean advance() {
+        try {
+            return mCurrent.next(mFix);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read mock route, skipping it.", e);
+            return false;
+        }
+    }
+
+    private void seekTo(long offsetMillis) {
+        if (mCurrent == null) {
+            return;
+        }
+        mHandler.removeMessages(MSG_STEP);
+        boolean found;
+        try {
+            mCurrent.rewind();
+            do {
+                found = mCurrent.next(mFix);
+            } while (found && mFix.offsetMillis < offsetMillis);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to seek mock route, skipping it.", e);
+            found = false;
+        }
+        if (!found) {
+            startNextRoute();
+            return;
+        }
+        rebase(mFix.offsetMillis);
+        if (!isHeld()) {
+            schedule();
+        }
+    }
+
+    private void changeSpeed(float speed) {
+        if (mCurrent != null && !isHeld()) {
+            // keep the route time reached so far, so the next fix is neither early nor late
+            final long now = SystemClock.uptimeMillis();
+            final long reached = Float.isInfinite(mSpeed)
+                    ? mFix.offsetMillis
+                    : mBaseOffset + (long) ((now - mBaseUptime) * mSpeed);
+            mBaseUptime = now;
+            mBaseOffset = Math.min(reached, mFix.offsetMillis);
+            mSpeed = speed;
+            mHandler.removeMessages(MSG_STEP);
+            schedule();
+        } else {
+            mSpeed = speed;
+        }
+    }
+
+    /**
+     * Makes the fix at the given offset due now, and stamps it with the current time.
+     */
+    private void rebase(long offsetMillis) {
+        mBaseUptime = SystemClock.uptimeMillis();
+        mBaseOffset = offsetMillis;
+        mStartTime = System.currentTimeMillis() - offsetMillis;
+        // elapsedRealtimeNanos() is API 17, and the fix only carries it from there on anyway
+        final long elapsedRealtimeNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                ? SystemClock.elapsedRealtimeNanos() : SystemClock.elapsedRealtime() * 1000000l;
+        mStartElapsedRealtimeNanos = elapsedRealtimeNanos - offsetMillis * 1000000l;
+    }
+
+    private void schedule() {
+        if (Float.isInfinite(mSpeed)) {
+            mHandler.sendEmptyMessage(MSG_STEP);
+        } else {
+            final long due = mBaseUptime + (long) ((mFix.offsetMillis - mBaseOffset) / mSpeed);
+            mHandler.sendEmptyMessageAtTime(MSG_STEP, due);
+        }
+    }
+
+    private static void close(MockRoute route) {
+        try {
+            route.close();
+        } catch (IOException e) {
+            // nothing more we can do with it
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A lazily produced sequence of {@link MockFix}es played back by a {@link MockPlayer}. Points are
+ * pulled one at a time as they are due, so a route never needs to be held in memory as a whole.
+ */
+public interface MockRoute extends Closeable {
+
+    /**
+     * Fills in the next fix of the route. Offsets must not decrease.
+     *
+     * @return false once the route is exhausted
+     */
+    boolean next(MockFix fix) throws IOException;
+
+    /**
+     * Starts the route over from its first fix.
+     */
+    void rewind() throws IOException;
+}
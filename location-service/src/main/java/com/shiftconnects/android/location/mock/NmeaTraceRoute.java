@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Streams an NMEA 0183 log. A fix is played for each valid {@code RMC} sentence, which carries the
+ * position, speed, course and date. Altitude and an accuracy estimate are taken from a preceding
+ * {@code GGA} sentence with the same time, when there is one. Sentences with a bad checksum are
+ * skipped.
+ */
+public class NmeaTraceRoute extends TraceRoute {
+
+    private static final float KNOTS_TO_METERS_PER_SECOND = 0.514444f;
+
+    private String mGgaTime;
+    private double mGgaAltitude = Double.NaN;
+    private float mGgaAccuracy = Float.NaN;
+
+    public NmeaTraceRoute(File file) {
+        super(file);
+    }
+
+    @Override
+    protected void onOpen(BufferedReader reader) {
+        mGgaTime = null;
+    }
+
+    @Override
+    protected long readFix(BufferedReader reader, MockFix fix) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String sentence = validate(line.trim());
+            if (sentence == null || sentence.length() < 5) {
+                continue;
+            }
+            // skip the talker id, so GPRMC, GNRMC and friends are all read
+            final String type = sentence.substring(2, 5);
+            final String[] fields = sentence.split(",", -1);
+            if ("GGA".equals(type) && fields.length > 9) {
+                mGgaTime = fields[1];
+                mGgaAccuracy = (float) (parseDouble(fields[8], Double.NaN) * UERE);
+                mGgaAltitude = parseDouble(fields[9], Double.NaN);
+            } else if ("RMC".equals(type) && fields.length > 9 && "A".equals(fields[2])) {
+                final long time = parseTime(fields[1], fields[9]);
+                final double latitude = parseCoordinate(fields[3], fields[4]);
+                final double longitude = parseCoordinate(fields[5], fields[6]);
+                if (time == END_OF_TRACE || Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                    continue;
+                }
+                fix.latitude = latitude;
+                fix.longitude = longitude;
+                fix.speed = (float) parseDouble(fields[7], Double.NaN) * KNOTS_TO_METERS_PER_SECOND;
+                fix.bearing = (float) parseDouble(fields[8], Double.NaN);
+                if (fields[1].equals(mGgaTime)) {
+                    fix.accuracy = mGgaAccuracy;
+                    fix.altitude = mGgaAltitude;
+                }
+                return time;
+            }
+        }
+        return END_OF_TRACE;
+    }
+
+    /**
+     * @return the sentence without its leading {@code $} and trailing checksum, or null if the
+     * checksum does not match
+     */
+    private static String validate(String line) {
+        if (line.length() == 0 || line.charAt(0) != '$') {
+            return null;
+        }
+        final int star = line.lastIndexOf('*');
+        final int end = star >= 0 ? star : line.length();
+        if (star >= 0) {
+            int checksum = 0;
+            for (int i = 1; i < end; i++) {
+                checksum ^= line.charAt(i);
+            }
+            try {
+                if (Integer.parseInt(line.substring(star + 1).trim(), 16) != checksum) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return line.substring(1, end);
+    }
+
+    /**
+     * Parses {@code ddmm.mmmm} or {@code dddmm.mmmm} with a hemisphere into decimal degrees.
+     */
+    private static double parseCoordinate(String value, String hemisphere) {
+        final double raw = parseDouble(value, Double.NaN);
+        if (Double.isNaN(raw)) {
+            return Double.NaN;
+        }
+        final double degrees = Math.floor(raw / 100);
+        final double decimal = degrees + (raw - degrees * 100) / 60;
+        return "S".equals(hemisphere) || "W".equals(hemisphere) ? -decimal : decimal;
+    }
+
+    /**
+     * Parses {@code hhmmss.sss} and {@code ddmmyy} into milliseconds since the epoch.
+     */
+    private static long parseTime(String time, String date) {
+        try {
+            final int hour = Integer.parseInt(time.substring(0, 2));
+            final int minute = Integer.parseInt(time.substring(2, 4));
+            final double seconds = Double.parseDouble(time.substring(4));
+            final int day = Integer.parseInt(date.substring(0, 2));
+            final int month = Integer.parseInt(date.substring(2, 4));
+            final int twoDigitYear = Integer.parseInt(date.substring(4, 6));
+            final int year = (twoDigitYear < 80 ? 2000 : 1900) + twoDigitYear;
+            final int wholeSeconds = (int) seconds;
+            return toEpochMillis(year, month, day, hour, minute, wholeSeconds,
+                    (int) Math.round((seconds - wholeSeconds) * 1000));
+        } catch (RuntimeException e) {
+            return END_OF_TRACE;
+        }
+    }
+}
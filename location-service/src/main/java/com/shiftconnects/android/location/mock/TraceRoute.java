@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.mock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Locale;
+
+/**
+ * A {@link MockRoute} that streams a recorded trace from a file, reading only as far ahead as the
+ * fix being played. Memory use does not depend on the size of the recording.
+ *
+ * Each fix is played at its recorded time relative to the first fix of the trace, and keeps its
+ * recorded accuracy, speed, bearing and altitude when the format has them.
+ */
+public abstract class TraceRoute implements MockRoute {
+
+    protected static final long END_OF_TRACE = Long.MIN_VALUE;
+
+    /**
+     * Typical user equivalent range error in meters, which turns a recorded HDOP into an accuracy.
+     */
+    protected static final float UERE = 5f;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File mFile;
+
+    private BufferedReader mReader;
+    private long mFirstTime;
+    private long mLastOffset;
+
+    protected TraceRoute(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return a route for the file, chosen by its extension: {@code .gpx}, {@code .nmea} or
+     * {@code .csv}
+     * @throws IllegalArgumentException for any other extension
+     */
+    public static TraceRoute forFile(File file) {
+        final String name = file.getName().toLowerCase(Locale.US);
+        if (name.endsWith(".gpx")) {
+            return new GpxTraceRoute(file);
+        } else if (name.endsWith(".nmea") || name.endsWith(".nma")) {
+            return new NmeaTraceRoute(file);
+        } else if (name.endsWith(".csv")) {
+            return new CsvTraceRoute(file);
+        }
+        throw new IllegalArgumentException("Unknown trace format: " + file);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    @Override
+    public final boolean next(MockFix fix) throws IOException {
+        if (mReader == null) {
+            mReader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"), BUFFER_SIZE);
+            mFirstTime = END_OF_TRACE;
+            mLastOffset = 0;
+            onOpen(mReader);
+        }
+        fix.clear();
+        final long time = readFix(mReader, fix);
+        if (time == END_OF_TRACE) {
+            return false;
+        }
+        if (mFirstTime == END_OF_TRACE) {
+            mFirstTime = time;
+        }
+        // never go back in time, even if the recording does
+        mLastOffset = Math.max(mLastOffset, time - mFirstTime);
+        fix.offsetMillis = mLastOffset;
+        return true;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mReader != null) {
+            try {
+                mReader.close();
+            } finally {
+                mReader = null;
+            }
+        }
+    }
+
+    /**
+     * Called once each time the file is opened, before the first fix is read.
+     */
+    protected void onOpen(BufferedReader reader) throws IOException {
+    }
+
+    /**
+     * Reads the next fix into {@code fix}, leaving its offset alone.
+     *
+     * @return the recorded time of the fix in milliseconds, or {@link #END_OF_TRACE}
+     */
+    protected abstract long readFix(BufferedReader reader, MockFix fix) throws IOException;
+
+    protected static double parseDouble(String value, double fallback) {
+        if (value == null || value.length() == 0) {
+            return fallback;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses an ISO 8601 timestamp such as {@code 2015-03-03T17:04:05.250Z}. A missing zone is
+     * taken to be UTC.
+     *
+     * @return milliseconds since the epoch, or {@link #END_OF_TRACE} if it can't be parsed
+     */
+    protected static long parseIso8601(String value) {
+        if (value == null) {
+            return END_OF_TRACE;
+        }
+        final String s = value.trim();
+        try {
+            final int year = Integer.parseInt(s.substring(0, 4));
+            final int month = Integer.parseInt(s.substring(5, 7));
+            final int day = Integer.parseInt(s.substring(8, 10));
+            final int hour = Integer.parseInt(s.substring(11, 13));
+            final int minute = Integer.parseInt(s.substring(14, 16));
+            final int second = Integer.parseInt(s.substring(17, 19));
+            int i = 19;
+            int millis = 0;
+            if (i < s.length() && s.charAt(i) == '.') {
+                int scale = 100;
+                i++;
+                while (i < s.length() && Character.isDigit(s.charAt(i))) {
+                    millis += (s.charAt(i) - '0') * scale;
+                    scale /= 10;
+                    i++;
+                }
+            }
+            int offsetMinutes = 0;
+            if (i < s.length() && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                final int sign = s.charAt(i) == '-' ? -1 : 1;
+                final String zone = s.substring(i + 1).replace(":", "");
+                offsetMinutes = sign * (Integer.parseInt(zone.substring(0, 2)) * 60
+                        + (zone.length() >= 4 ? Integer.parseInt(zone.substring(2, 4)) : 0));
+            }
+            return toEpochMillis(year, month, day, hour, minute, second, millis) - offsetMinutes * 60000l;
+        } catch (RuntimeException e) {
+            return END_OF_TRACE;
+        }
+    }
+
+    protected static long toEpochMillis(int year, int month, int day, int hour, int minute,
+            int second, int millis) {
+        // days from civil, see http://howardhinnant.github.io/date_algorithms.html
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        final long days = era * 146097l + dayOfEra - 719468;
+        return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+    }
+}
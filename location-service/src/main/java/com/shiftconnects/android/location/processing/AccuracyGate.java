@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.processing;
+
+/**
+ * Drops fixes whose accuracy radius is larger than a limit, and optionally fixes that report no
+ * accuracy at all.
+ */
+public class AccuracyGate implements LocationStage {
+
+    private final float mMaxAccuracy;
+    private final boolean mRequireAccuracy;
+
+    /**
+     * @param maxAccuracy largest accepted accuracy radius in meters
+     */
+    public AccuracyGate(float maxAccuracy) {
+        this(maxAccuracy, true);
+    }
+
+    public AccuracyGate(float maxAccuracy, boolean requireAccuracy) {
+        mMaxAccuracy = maxAccuracy;
+        mRequireAccuracy = requireAccuracy;
+    }
+
+    @Override
+    public boolean process(LocationFix fix) {
+        if (!fix.hasAccuracy) {
+            return !mRequireAccuracy;
+        }
+        return fix.accuracy <= mMaxAccuracy;
+    }
+
+    @Override
+    public void reset() {
+    }
+}
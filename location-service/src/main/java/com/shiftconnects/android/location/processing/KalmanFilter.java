@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.processing;
+
+import com.shiftconnects.android.location.util.GeoUtils;
+
+/**
+ * Smooths positions with a constant velocity Kalman filter, run independently on the north and
+ * east axes in meters around a local origin. Each fix's accuracy is used as its measurement noise,
+ * so precise fixes pull the estimate harder than imprecise ones.
+ *
+ * The filter starts over when fixes are more than {@code maxGapMillis} apart or arrive out of
+ * order, and moves its origin once the estimate drifts far enough from it for the flat earth
+ * approximation to matter.
+ */
+public class KalmanFilter implements LocationStage {
+
+    public static final float DEFAULT_ACCELERATION_NOISE = 1f;
+    public static final long DEFAULT_MAX_GAP_MILLIS = 60 * 1000l;
+
+    private static final double REORIGIN_DISTANCE = 10000;
+    private static final double INITIAL_VELOCITY_VARIANCE = 100;
+    private static final float MIN_ACCURACY = 1f;
+    private static final float UNKNOWN_ACCURACY = 10f;
+
+    private final double mAccelerationVariance;
+    private final long mMaxGapMillis;
+
+    private boolean mInitialized;
+    private long mTime;
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mMetersPerDegreeLongitude;
+
+    private final Axis mNorth = new Axis();
+    private final Axis mEast = new Axis();
+
+    public KalmanFilter() {
+        this(DEFAULT_ACCELERATION_NOISE, DEFAULT_MAX_GAP_MILLIS);
+    }
+
+    /**
+     * @param accelerationNoise standard deviation of unmodelled acceleration in meters per second
+     *                          squared; larger values follow turns more closely but smooth less
+     */
+    public KalmanFilter(float accelerationNoise, long maxGapMillis) {
+        mAccelerationVariance = accelerationNoise * accelerationNoise;
+        mMaxGapMillis = maxGapMillis;
+    }
+
+    @Override
+    public boolean process(LocationFix fix) {
+        final float accuracy = fix.hasAccuracy ? Math.max(MIN_ACCURACY, fix.accuracy) : UNKNOWN_ACCURACY;
+        final double variance = accuracy * accuracy;
+        final long elapsed = fix.time - mTime;
+        if (!mInitialized || elapsed < 0 || elapsed > mMaxGapMillis) {
+            mInitialized = true;
+            mTime = fix.time;
+            setOrigin(fix.latitude, fix.longitude);
+            mNorth.init(variance);
+            mEast.init(variance);
+            return true;
+        }
+
+        final double dt = elapsed / 1000.0;
+        mTime = fix.time;
+        mNorth.predict(dt, mAccelerationVariance);
+        mEast.predict(dt, mAccelerationVariance);
+        mNorth.update((fix.latitude - mOriginLatitude) * GeoUtils.METERS_PER_DEGREE_LATITUDE, variance);
+        mEast.update((fix.longitude - mOriginLongitude) * mMetersPerDegreeLongitude, variance);
+
+        final double latitude = mOriginLatitude + mNorth.position / GeoUtils.METERS_PER_DEGREE_LATITUDE;
+        final double longitude = mOriginLongitude + mEast.position / mMetersPerDegreeLongitude;
+        fix.setPosition(latitude, longitude);
+        fix.setAccuracy((float) Math.sqrt(Math.max(mNorth.p00, mEast.p00)));
+
+        if (Math.abs(mNorth.position) > REORIGIN_DISTANCE || Math.abs(mEast.position) > REORIGIN_DISTANCE) {
+            setOrigin(latitude, longitude);
+            mNorth.position = 0;
+            mEast.position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        mInitialized = false;
+    }
+
+    private void setOrigin(double latitude, double longitude) {
+        mOriginLatitude = latitude;
+        mOriginLongitude = longitude;
+        mMetersPerDegreeLongitude = GeoUtils.metersPerDegreeLongitude(latitude);
+    }
+
+    /**
+     * Position, velocity and their covariance along one axis.
+     */
+    private static final class Axis {
+        double position;
+        double velocity;
+        double p00;
+        double p01;
+        double p11;
+
+        void init(double variance) {
+            position = 0;
+            velocity = 0;
+            p00 = variance;
+            p01 = 0;
+            p11 = INITIAL_VELOCITY_VARIANCE;
+        }
+
+        void predict(double dt, double accelerationVariance) {
+            final double dt2 = dt * dt;
+            position += velocity * dt;
+            p00 += 2 * dt * p01 + dt2 * p11 + accelerationVariance * dt2 * dt2 / 4;
+            p01 += dt * p11 + accelerationVariance * dt2 * dt / 2;
+            p11 += accelerationVariance * dt2;
+        }
+
+        void update(double measurement, double variance) {
+            final double s = p00 + variance;
+            final double k0 = p00 / s;
+            final double k1 = p01 / s;
+            final double residual = measurement - position;
+            position += k0 * residual;
+            velocity += k1 * residual;
+            p11 -= k1 * p01;
+            p01 -= k0 * p01;
+            p00 -= k0 * p00;
+        }
+    }
+}
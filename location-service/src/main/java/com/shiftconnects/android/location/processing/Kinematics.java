@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shiftconnects.android.location.processing;
+
+import android.location.Location;
+
+/**
+ * Motion derived from a fix and the one before it, computed once by a {@link KinematicsTracker}
+ * and shared by every listener.
+ *
+ * Immutable on purpose: listeners registered with an executor, or isolated for going over their
+ * time budget, may still be reading one while the next fix is processed, so a single reused
+ * instance would change under them. It costs one small allocation per fix.
+ */
+public final class Kinematics {
+
+    private final Location mLocation;
+    private final long mTimeDelta;
+    private final double mDistance;
+    private final double mOdometer;
+    private final float mSpeed;
+    private final float mHeading;
+    private final float mAcceleration;
+
+    Kinematics(Location location, long timeDelta, double distance, double odometer, float speed,
+            float heading, float acceleration) {
+        mLocation = location;
+        mTimeDelta = timeDelta;
+        mDistance = distance;
+        mOdometer = odometer;
+        mSpeed = speed;
+        mHeading = heading;
+        mAcceleration = acceleration;
+    }
+
+    /**
+     * @return the fix these values were derived from
+     */
+    public Location getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * @return milliseconds since the previous fix, or 0 for the first fix and for fixes that are
+     * stale or not newer than the previous one
+     */
+    public long getTimeDelta() {
+        return mTimeDelta;
+    }
+
+    /**
+     * @return meters moved since the previous fix
+     */
+    public double getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * @return meters moved since the tracker was created or last reset
+     */
+    public double getOdometer() {
+        return mOdometer;
+    }
+
+    /**
+     * @return exponentially smoothed speed in meters per second
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return direction of travel in degrees clockwise from north in the range [0, 360), or NaN
+     * until the device has moved far enough to tell
+     */
+    public float getHeading() {
+        return mHeading;
+    }
+
+    public boolean hasHeading() {
+        return !Float.isNaN(mHeading);
+    }
+
+    /**
+     * @return change in smoothed speed in meters per second squared
+     */
+    public float getAcceleration() {
+        return mAcceleration;
+    }
+
+    @Override public String toString() {
+        return "Kinematics{dt=" + mTimeDelta + "ms, distance=" + mDistance + "m, odometer=" + mOdometer
+                + "m, speed=" + mSpeed + "m/s, heading=" + mHeading + ", acceleration=" + mAcceleration + "m/s2}";
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shiftconnects.android.location.processing;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import com.shiftconnects.android.location.cache.LastLocationCache;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives {@link Kinematics} from consecutive fixes: the time and distance since the previous fix,
+ * a running odometer, a smoothed speed, a heading and an acceleration.
+ *
+ * Speed is taken from the fix when it has one, otherwise from the distance covered, and smoothed
+ * exponentially with the given time constant so that position jitter doesn't show up as bursts of
+ * speed. Heading is only updated once the device has moved {@link #MIN_HEADING_DISTANCE} from
+ * where it was last measured, so it doesn't spin while standing still. Fixes that are not newer
+ * than the previous one are reported with no time or distance and leave the odometer, speed and
+ * heading alone. So are stale fixes, those read from {@link LastLocationCache} or older than
+ * {@link #MAX_FIX_AGE}, so that a replayed last known location never becomes the fix the next
+ * live one is measured from.
+ */
+public class KinematicsTracker {
+
+    public static final long DEFAULT_SPEED_TIME_CONSTANT = 5 * DateUtils.SECOND_IN_MILLIS;
+
+    // meters
+    public static final double MIN_HEADING_DISTANCE = 5;
+
+    public static final long MAX_FIX_AGE = 30 * DateUtils.SECOND_IN_MILLIS;
+
+    private final long mSpeedTimeConstant;
+
+    private boolean mHasPrevious;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+    private long mPreviousTime;
+    private double mHeadingLatitude;
+    private double mHeadingLongitude;
+
+    private double mOdometer;
+    private float mSpeed;
+    private float mHeading = Float.NaN;
+
+    private volatile Kinematics mLast;
+
+    public KinematicsTracker() {
+        this(DEFAULT_SPEED_TIME_CONSTANT);
+    }
+
+    /**
+     * @param speedTimeConstant milliseconds over which older speeds lose about two thirds of their
+     *                          weight, or 0 to not smooth speed at all
+     */
+    public KinematicsTracker(long speedTimeConstant) {
+        mSpeedTimeConstant = speedTimeConstant;
+    }
+
+    public synchronized Kinematics update(Location location) {
+        final double latitude = location.getLatitude();
+        final double longitude = location.getLongitude();
+        final long time = location.getTime();
+
+        if (isStale(location)) {
+            return mLast = new Kinematics(location, 0l, 0, mOdometer, mSpeed, mHeading, 0f);
+        }
+        if (!mHasPrevious) {
+            mHasPrevious = true;
+            mPreviousLatitude = mHeadingLatitude = latitude;
+            mPreviousLongitude = mHeadingLongitude = longitude;
+            mPreviousTime = time;
+            mSpeed = location.hasSpeed() ? location.getSpeed() : 0f;
+            return mLast = new Kinematics(location, 0l, 0, mOdometer, mSpeed, mHeading, 0f);
+        }
+
+        final long timeDelta = time - mPreviousTime;
+        double distance = 0;
+        float acceleration = 0f;
+        if (timeDelta > 0) {
+            distance = GeoUtils.distanceBetween(mPreviousLatitude, mPreviousLongitude, latitude, longitude);
+            mOdometer += distance;
+            mPreviousLatitude = latitude;
+            mPreviousLongitude = longitude;
+            mPreviousTime = time;
+            final float sample = location.hasSpeed()
+                    ? location.getSpeed() : (float) (distance * 1000 / timeDelta);
+            final float previousSpeed = mSpeed;
+            if (mSpeedTimeConstant > 0) {
+                final double alpha = 1 - Math.exp(-(double) timeDelta / mSpeedTimeConstant);
+                mSpeed = (float) (previousSpeed + alpha * (sample - previousSpeed));
+            } else {
+                mSpeed = sample;
+            }
+            acceleration = (mSpeed - previousSpeed) * 1000 / timeDelta;
+
+            if (GeoUtils.distanceBetween(mHeadingLatitude, mHeadingLongitude, latitude, longitude)
+                    >= MIN_HEADING_DISTANCE) {
+                final double heading = GeoUtils.computeHeading(mHeadingLatitude, mHeadingLongitude,
+                        latitude, longitude);
+                mHeading = (float) (heading < 0 ? heading + 360 : heading);
+                mHeadingLatitude = latitude;
+                mHeadingLongitude = longitude;
+            }
+        }
+        return mLast = new Kinematics(location, Math.max(0l, timeDelta), distance, mOdometer, mSpeed,
+                mHeading, acceleration);
+    }
+
+    /**
+     * Ages go by elapsed realtime, as location times from different providers don't agree, so a
+     * fix without one is never stale unless it came from the cache.
+     */
+    private static boolean isStale(Location location) {
+        if (LastLocationCache.isCached(location)) {
+            return true;
+        }
+        final long elapsedRealtimeNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                ? location.getElapsedRealtimeNanos() : 0l;
+        return elapsedRealtimeNanos > 0
+                && SystemClock.elapsedRealtimeNanos() - elapsedRealtimeNanos > TimeUnit.MILLISECONDS.toNanos(MAX_FIX_AGE);
+    }
+
+    /**
+     * @return the kinematics of the most recent fix, or null if there hasn't been one
+     */
+    public Kinematics getLast() {
+        return mLast;
+    }
+
+    /**
+     * Forgets the previous fix and zeroes the odometer.
+     */
+    public synchronized void reset() {
+        mHasPrevious = false;
+        mOdometer = 0;
+        mSpeed = 0f;
+        mHeading = Float.NaN;
+        mLast = null;
+    }
+}
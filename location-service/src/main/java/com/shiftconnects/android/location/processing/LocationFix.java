@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.processing;
+
+import android.location.Location;
+import android.os.Build;
+
+/**
+ * A mutable, primitive view of a location fix that is passed through the stages of a
+ * {@link LocationPipeline}. The pipeline reuses a single instance, so stages must not hold on to
+ * it between calls.
+ */
+public final class LocationFix {
+
+    public double latitude;
+    public double longitude;
+    public long time;
+    public long elapsedRealtimeNanos;
+
+    public boolean hasAccuracy;
+    public float accuracy;
+    public boolean hasSpeed;
+    public float speed;
+    public boolean hasBearing;
+    public float bearing;
+
+    boolean mPositionChanged;
+    boolean mMotionChanged;
+
+    /**
+     * Moves the fix, for example to a smoothed position.
+     */
+    public void setPosition(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        mPositionChanged = true;
+    }
+
+    public void setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        hasAccuracy = true;
+        mPositionChanged = true;
+    }
+
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        hasSpeed = true;
+        mMotionChanged = true;
+    }
+
+    public void setBearing(float bearing) {
+        this.bearing = bearing;
+        hasBearing = true;
+        mMotionChanged = true;
+    }
+
+    void readFrom(Location location) {
+        latitude = location.getLatitude();
+        longitude = location.getLongitude();
+        time = location.getTime();
+        elapsedRealtimeNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                ? location.getElapsedRealtimeNanos() : 0l;
+        hasAccuracy = location.hasAccuracy();
+        accuracy = location.getAccuracy();
+        hasSpeed = location.hasSpeed();
+        speed = location.getSpeed();
+        hasBearing = location.hasBearing();
+        bearing = location.getBearing();
+        mPositionChanged = false;
+        mMotionChanged = false;
+    }
+
+    /**
+     * Copies any changes made by the stages back into the location.
+     */
+    void writeTo(Location location) {
+        if (mPositionChanged) {
+            location.setLatitude(latitude);
+            location.setLongitude(longitude);
+            if (hasAccuracy) {
+                location.setAccuracy(accuracy);
+            }
+        }
+        if (mMotionChanged) {
+            if (hasSpeed) {
+                location.setSpeed(speed);
+            }
+            if (hasBearing) {
+                location.setBearing(bearing);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.processing;
+
+import android.location.Location;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs each location through a chain of {@link LocationStage}s before it is handed to listeners.
+ *
+ * Changes made by the stages are written back into the {@link Location} itself, so every listener
+ * sees the same cleaned fix and no new objects are created per fix. The stages can be replaced at
+ * any time; {@link #process(Location)} is expected to be called from a single thread.
+ */
+public class LocationPipeline {
+
+    private static final LocationStage[] EMPTY = new LocationStage[0];
+
+    private final LocationFix mFix = new LocationFix();
+
+    private volatile LocationStage[] mStages = EMPTY;
+
+    public LocationPipeline(LocationStage... stages) {
+        setStages(stages);
+    }
+
+    public void setStages(LocationStage... stages) {
+        mStages = stages == null || stages.length == 0 ? EMPTY : stages.clone();
+    }
+
+    public List<LocationStage> getStages() {
+        return Collections.unmodifiableList(Arrays.asList(mStages));
+    }
+
+    public boolean isEmpty() {
+        return mStages.length == 0;
+    }
+
+    /**
+     * @return true if the location passed every stage, false if it should be dropped
+     */
+    public boolean process(Location location) {
+        final LocationStage[] stages = mStages;
+        if (stages.length == 0) {
+            return true;
+        }
+        final LocationFix fix = mFix;
+        fix.readFrom(location);
+        for (LocationStage stage : stages) {
+            if (!stage.process(fix)) {
+                return false;
+            }
+        }
+        fix.writeTo(location);
+        return true;
+    }
+
+    public void reset() {
+        for (LocationStage stage : mStages) {
+            stage.reset();
+        }
+    }
+}
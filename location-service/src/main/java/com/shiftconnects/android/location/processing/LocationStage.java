@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.processing;
+
+/**
+ * A single step of a {@link LocationPipeline}. Stages are called on the thread locations are
+ * delivered on, once per fix, and should keep any state they need in primitive fields so that the
+ * per-fix path does not allocate.
+ */
+public interface LocationStage {
+
+    /**
+     * Inspects and optionally modifies the fix.
+     *
+     * @return false to drop the fix, in which case no later stage or listener sees it
+     */
+    boolean process(LocationFix fix);
+
+    /**
+     * Forgets any state carried over from previous fixes.
+     */
+    void reset();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.processing;
+
+import com.shiftconnects.android.location.util.GeoUtils;
+
+/**
+ * Drops fixes that would require the device to have moved faster than is plausible since the last
+ * accepted fix, as well as fixes that are older than it.
+ *
+ * After {@code maxConsecutiveRejections} fixes in a row have been rejected the next one is
+ * accepted regardless, so that a genuine jump, such as coming out of a tunnel, does not lock the
+ * filter out forever.
+ */
+public class OutlierRejector implements LocationStage {
+
+    public static final int DEFAULT_MAX_CONSECUTIVE_REJECTIONS = 5;
+
+    private final float mMaxSpeed;
+    private final int mMaxConsecutiveRejections;
+
+    private boolean mHasPrevious;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+    private long mPreviousTime;
+    private float mPreviousAccuracy;
+    private int mRejections;
+
+    /**
+     * @param maxSpeed fastest plausible speed in meters per second
+     */
+    public OutlierRejector(float maxSpeed) {
+        this(maxSpeed, DEFAULT_MAX_CONSECUTIVE_REJECTIONS);
+    }
+
+    public OutlierRejector(float maxSpeed, int maxConsecutiveRejections) {
+        mMaxSpeed = maxSpeed;
+        mMaxConsecutiveRejections = maxConsecutiveRejections;
+    }
+
+    @Override
+    public boolean process(LocationFix fix) {
+        if (mHasPrevious && mRejections < mMaxConsecutiveRejections) {
+            final long elapsed = fix.time - mPreviousTime;
+            if (elapsed <= 0) {
+                mRejections++;
+                return false;
+            }
+            // allow for the uncertainty of both fixes before judging the distance covered
+            final double distance = GeoUtils.distanceBetween(mPreviousLatitude, mPreviousLongitude,
+                    fix.latitude, fix.longitude)
+                    - (fix.hasAccuracy ? fix.accuracy : 0f) - mPreviousAccuracy;
+            if (distance > mMaxSpeed * elapsed / 1000.0) {
+                mRejections++;
+                return false;
+            }
+        }
+        mHasPrevious = true;
+        mPreviousLatitude = fix.latitude;
+        mPreviousLongitude = fix.longitude;
+        mPreviousTime = fix.time;
+        mPreviousAccuracy = fix.hasAccuracy ? fix.accuracy : 0f;
+        mRejections = 0;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        mHasPrevious = false;
+        mRejections = 0;
+    }
+}
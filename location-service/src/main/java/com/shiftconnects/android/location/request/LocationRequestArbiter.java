@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.request;
+
+import android.location.Location;
+
+import com.google.android.gms.location.LocationRequest;
+import com.shiftconnects.android.location.BackgroundLocationService;
+import com.shiftconnects.android.location.dispatch.CallbackRegistry;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Lets any number of clients each ask for their own {@link LocationRequest} while only one request
+ * is made of Play Services. The merged request uses the smallest interval, fastest interval and
+ * displacement and the most accurate priority of all the clients, and is only re-issued when it
+ * changes.
+ *
+ * Each client's locations are then thinned back down to what it asked for: a location is only
+ * delivered to a client once roughly its interval has passed and it has moved at least its
+ * smallest displacement since the last location it was given. Locations are delivered through
+ * {@link #getCallbackRegistry()}, so metrics and time budgets set on it cover every client.
+ */
+public class LocationRequestArbiter {
+
+    public interface Backend {
+        void requestLocationUpdates(LocationRequest request);
+        void removeLocationUpdates();
+    }
+
+    // fixes arrive with some jitter, so accept them slightly early rather than skip every other one
+    private static final double INTERVAL_TOLERANCE = 0.1;
+
+    private static final Handle[] EMPTY = new Handle[0];
+
+    private final Backend mBackend;
+    private final CallbackRegistry<BackgroundLocationService.LocationCallbacks> mCallbacks = new CallbackRegistry<>();
+
+    private volatile Handle[] mHandles = EMPTY;
+    private LocationRequest mApplied;
+
+    public LocationRequestArbiter(Backend backend) {
+        mBackend = backend;
+    }
+
+    /**
+     * Adds a client's request.
+     *
+     * @param callbacks notified with this client's share of the locations, or null if the client
+     *                  only wants to keep locations coming
+     * @param executor to notify callbacks on, or null to notify them inline. Callbacks registered
+     *                 with several requests keep the executor they were first registered with.
+     */
+    public Handle register(LocationRequest request, BackgroundLocationService.LocationCallbacks callbacks,
+            Executor executor) {
+        final Handle handle = new Handle(request, callbacks);
+        synchronized (this) {
+            if (callbacks != null) {
+                mCallbacks.add(callbacks, executor);
+            }
+            final Handle[] next = new Handle[mHandles.length + 1];
+            System.arraycopy(mHandles, 0, next, 0, mHandles.length);
+            next[mHandles.length] = handle;
+            mHandles = next;
+            apply();
+        }
+        return handle;
+    }
+
+    /**
+     * Issues the merged request again, for example after reconnecting to Play Services.
+     */
+    public synchronized void reapply() {
+        mApplied = null;
+        apply();
+    }
+
+    /**
+     * @return the request currently made of Play Services, or null if there are no clients. While
+     * disconnected this is the request that {@link #reapply()} will make once connected.
+     */
+    public synchronized LocationRequest getMergedRequest() {
+        return mApplied;
+    }
+
+    public int getClientCount() {
+        return mHandles.length;
+    }
+
+    /**
+     * @return the registry every client's callbacks are notified through
+     */
+    public CallbackRegistry<BackgroundLocationService.LocationCallbacks> getCallbackRegistry() {
+        return mCallbacks;
+    }
+
+    /**
+     * Delivers a location to every client that is due one. Callbacks registered with several
+     * requests get the location once if any of their requests is due.
+     */
+    public void onLocationChanged(Location location) {
+        final Handle[] handles = mHandles;
+        final BackgroundLocationService.LocationCallbacks[] due =
+                new BackgroundLocationService.LocationCallbacks[handles.length];
+        int count = 0;
+        for (Handle handle : handles) {
+            if (handle.take(location) && !contains(due, count, handle.mCallbacks)) {
+                due[count++] = handle.mCallbacks;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            mCallbacks.dispatchTo(due[i], LOCATION_CHANGED, location);
+        }
+    }
+
+    private static boolean contains(Object[] array, int length, Object value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void unregister(Handle handle) {
+        final Handle[] current = mHandles;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == handle) {
+                final Handle[] next = new Handle[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                mHandles = next;
+                if (handle.mCallbacks != null && !isRegistered(next, handle.mCallbacks)) {
+                    mCallbacks.remove(handle.mCallbacks);
+                }
+                apply();
+                return;
+            }
+        }
+    }
+
+    private static boolean isRegistered(Handle[] handles, BackgroundLocationService.LocationCallbacks callbacks) {
+        for (Handle handle : handles) {
+            if (handle.mCallbacks == callbacks) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void apply() {
+        final LocationRequest merged = merge(mHandles);
+        if (merged == null) {
+            if (mApplied != null) {
+                mApplied = null;
+                mBackend.removeLocationUpdates();
+            }
+        } else if (!equivalent(merged, mApplied)) {
+            mApplied = merged;
+            mBackend.requestLocationUpdates(merged);
+        }
+    }
+
+    private static LocationRequest merge(Handle[] handles) {
+        if (handles.length == 0) {
+            return null;
+        }
+        int priority = Integer.MAX_VALUE;
+        long interval = Long.MAX_VALUE;
+        long fastestInterval = Long.MAX_VALUE;
+        float smallestDisplacement = Float.MAX_VALUE;
+        for (Handle handle : handles) {
+            final LocationRequest request = handle.mRequest;
+            // priority constants run from most to least accurate
+            priority = Math.min(priority, request.getPriority());
+            interval = Math.min(interval, request.getInterval());
+            fastestInterval = Math.min(fastestInterval, request.getFastestInterval());
+            smallestDisplacement = Math.min(smallestDisplacement, request.getSmallestDisplacement());
+        }
+        return LocationRequest.create()
+                .setPriority(priority)
+                .setInterval(interval)
+                .setFastestInterval(Math.min(fastestInterval, interval))
+                .setSmallestDisplacement(smallestDisplacement);
+    }
+
+    private static boolean equivalent(LocationRequest a, LocationRequest b) {
+        return b != null
+                && a.getPriority() == b.getPriority()
+                && a.getInterval() == b.getInterval()
+                && a.getFastestInterval() == b.getFastestInterval()
+                && a.getSmallestDisplacement() == b.getSmallestDisplacement();
+    }
+
+    private static final CallbackRegistry.Event<BackgroundLocationService.LocationCallbacks, Location> LOCATION_CHANGED =
+            new CallbackRegistry.Event<BackgroundLocationService.LocationCallbacks, Location>() {
+                @Override public void deliver(BackgroundLocationService.LocationCallbacks callbacks, Location location) {
+                    callbacks.onLocationChanged(location);
+                }
+            };
+
+    /**
+     * One client's request. Release it once the client no longer needs locations.
+     */
+    public final class Handle {
+
+        private volatile LocationRequest mRequest;
+        private final BackgroundLocationService.LocationCallbacks mCallbacks;
+        private volatile boolean mReleased;
+
+        // last location delivered to this client
+        private boolean mHasLast;
+        private long mLastTime;
+        private double mLastLatitude;
+        private double mLastLongitude;
+
+        Handle(LocationRequest request, BackgroundLocationService.LocationCallbacks callbacks) {
+            mRequest = request;
+            mCallbacks = callbacks;
+        }
+
+        public LocationRequest getRequest() {
+            return mRequest;
+        }
+
+        public boolean isReleased() {
+            return mReleased;
+        }
+
+        /**
+         * Replaces this client's request.
+         */
+        public void update(LocationRequest request) {
+            synchronized (LocationRequestArbiter.this) {
+                if (mReleased) {
+                    throw new IllegalStateException("Handle has been released");
+                }
+                mRequest = request;
+                apply();
+            }
+        }
+
+        public void release() {
+            synchronized (LocationRequestArbiter.this) {
+                if (!mReleased) {
+                    mReleased = true;
+                    unregister(this);
+                }
+            }
+        }
+
+        /**
+         * Delivers a location to this client right away, without downsampling, for example to
+         * give it the last known location when it registers.
+         */
+        public void deliver(Location location) {
+            if (mCallbacks == null || mReleased) {
+                return;
+            }
+            remember(location);
+            LocationRequestArbiter.this.mCallbacks.dispatchTo(mCallbacks, LOCATION_CHANGED, location);
+        }
+
+        /**
+         * Records the location as delivered to this client if it is due one, leaving the delivery
+         * to the caller.
+         *
+         * @return true if the location should be delivered to this client's callbacks
+         */
+        boolean take(Location location) {
+            if (mCallbacks == null || mReleased) {
+                return false;
+            }
+            synchronized (this) {
+                if (!isDue(location)) {
+                    return false;
+                }
+                remember(location);
+                return true;
+            }
+        }
+
+        private synchronized void remember(Location location) {
+            mHasLast = true;
+            mLastTime = location.getTime();
+            mLastLatitude = location.getLatitude();
+            mLastLongitude = location.getLongitude();
+        }
+
+        private synchronized boolean isDue(Location location) {
+            if (!mHasLast) {
+                return true;
+            }
+            final LocationRequest request = mRequest;
+            final long elapsed = location.getTime() - mLastTime;
+            if (elapsed < request.getInterval() * (1 - INTERVAL_TOLERANCE)) {
+                return false;
+            }
+            return request.getSmallestDisplacement() <= 0 || GeoUtils.distanceBetween(mLastLatitude,
+                    mLastLongitude, location.getLatitude(), location.getLongitude()) >= request.getSmallestDisplacement();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shiftconnects.android.location.source;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gets locations from the framework {@link LocationManager}, for devices without Play Services.
+ * The request's priority picks the providers: high accuracy uses GPS and the network provider,
+ * balanced and low power use the network provider, and no power uses the passive provider. The
+ * request's interval and smallest displacement become each provider's minimum time and distance.
+ *
+ * Providers the device doesn't have are skipped, so a high accuracy request on a device without
+ * GPS still gets network locations. While GPS is delivering, network locations that are no newer
+ * or less accurate than its latest fix are dropped rather than let the position jump back. The source is available while GPS or the network provider is
+ * enabled; call
+ * {@link com.shiftconnects.android.location.BackgroundLocationService#onLocationSourceAvailable()}
+ * when the user turns one on.
+ */
+public class FrameworkLocationSource implements LocationSource {
+
+    // a GPS fix holds back network fixes for this many request intervals after it arrived
+    private static final int GPS_FRESH_INTERVALS = 2;
+    private static final long MIN_GPS_FRESH_MILLIS = 10 * 1000l;
+
+    private final LocationManager mLocationManager;
+    private final Looper mLooper;
+    private final Map<Listener, Adapter> mListeners = new HashMap<>();
+
+    /**
+     * @param looper to deliver locations on
+     */
+    public FrameworkLocationSource(LocationManager locationManager, Looper looper) {
+        mLocationManager = locationManager;
+        mLooper = looper;
+    }
+
+    /**
+     * @return true if any of {@link #getAvailabilityProviders()} is present and enabled, false
+     * without the location permission
+     */
+    @Override public boolean isAvailable() {
+        try {
+            for (String provider : getAvailabilityProviders()) {
+                if (mLocationManager.getProvider(provider) != null
+                        && mLocationManager.isProviderEnabled(provider)) {
+                    return true;
+                }
+            }
+        } catch (SecurityException e) {
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * @return false without the location permission, in which case no provider is left requested
+     */
+    @Override public synchronized boolean requestLocationUpdates(LocationRequest request, Listener listener) {
+        final Adapter adapter = adapt(listener);
+        final List<String> providers = getProviders(request);
+        adapter.setGpsFreshMillis(providers.contains(LocationManager.GPS_PROVIDER)
+                && providers.contains(LocationManager.NETWORK_PROVIDER)
+                ? Math.max(MIN_GPS_FRESH_MILLIS, GPS_FRESH_INTERVALS * getMinTime(request)) : 0);
+        try {
+            // the framework keeps one registration per listener and provider, drop the old providers
+            mLocationManager.removeUpdates(adapter);
+            final List<String> available = mLocationManager.getAllProviders();
+            for (String provider : providers) {
+                if (available != null && available.contains(provider)) {
+                    mLocationManager.requestLocationUpdates(provider, getMinTime(request),
+                            request.getSmallestDisplacement(), adapter, mLooper);
+                }
+            }
+            return true;
+        } catch (SecurityException e) {
+            mListeners.remove(listener);
+            try {
+                mLocationManager.removeUpdates(adapter);
+            } catch (SecurityException ignored) {
+                // nothing was registered then
+            }
+            return false;
+        }
+    }
+
+    @Override public synchronized void removeLocationUpdates(Listener listener) {
+        final Adapter adapter = mListeners.remove(listener);
+        if (adapter != null) {
+            mLocationManager.removeUpdates(adapter);
+        }
+    }
+
+    /**
+     * @return the newest last known location of any provider
+     */
+    @Override public Location getLastLocation() {
+        final List<String> providers = mLocationManager.getAllProviders();
+        if (providers == null) {
+            return null;
+        }
+        Location newest = null;
+        for (String provider : providers) {
+            final Location location = mLocationManager.getLastKnownLocation(provider);
+            if (location != null && (newest == null || location.getTime() > newest.getTime())) {
+                newest = location;
+            }
+        }
+        return newest;
+    }
+
+    protected List<String> getProviders(LocationRequest request) {
+        switch (request.getPriority()) {
+            case LocationRequest.PRIORITY_HIGH_ACCURACY:
+                final List<String> providers = new ArrayList<>(2);
+                providers.add(LocationManager.GPS_PROVIDER);
+                providers.add(LocationManager.NETWORK_PROVIDER);
+                return providers;
+            case LocationRequest.PRIORITY_NO_POWER:
+                return Collections.singletonList(LocationManager.PASSIVE_PROVIDER);
+            default:
+                return Collections.singletonList(LocationManager.NETWORK_PROVIDER);
+        }
+    }
+
+    /**
+     * @return the providers whose state decides whether this source is available
+     */
+    protected List<String> getAvailabilityProviders() {
+        return Arrays.asList(LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER);
+    }
+
+    protected long getMinTime(LocationRequest request) {
+        return request.getInterval();
+    }
+
+    private Adapter adapt(Listener listener) {
+        Adapter adapter = mListeners.get(listener);
+        if (adapter == null) {
+            adapter = new Adapter(listener);
+            mListeners.put(listener, adapter);
+        }
+        return adapter;
+    }
+
+    /**
+     * Passes framework locations on to a listener, holding back network locations while a recent
+     * GPS fix is better.
+     */
+    static class Adapter implements LocationListener {
+        private final Listener mListener;
+        private volatile long mGpsFreshMillis;
+        // only touched on the looper locations are delivered on
+        private Location mLastGps;
+        private long mLastGpsArrival;
+
+        Adapter(Listener listener) {
+            mListener = listener;
+        }
+
+        /**
+         * @param gpsFreshMillis how long a GPS fix holds back network fixes, 0 to pass every fix
+         */
+        void setGpsFreshMillis(long gpsFreshMillis) {
+            mGpsFreshMillis = gpsFreshMillis;
+        }
+
+        @Override public void onLocationChanged(Location location) {
+            if (LocationManager.GPS_PROVIDER.equals(location.getProvider())) {
+                mLastGps = location;
+                mLastGpsArrival = SystemClock.elapsedRealtime();
+            } else if (LocationManager.NETWORK_PROVIDER.equals(location.getProvider()) && isBehindGps(location)) {
+                return;
+            }
+            mListener.onLocationChanged(location);
+        }
+
+        private boolean isBehindGps(Location location) {
+            final long freshMillis = mGpsFreshMillis;
+            final Location gps = mLastGps;
+            if (freshMillis <= 0 || gps == null || SystemClock.elapsedRealtime() - mLastGpsArrival > freshMillis) {
+                return false;
+            }
+            return location.getTime() <= gps.getTime()
+                    || (gps.hasAccuracy() && (!location.hasAccuracy() || location.getAccuracy() > gps.getAccuracy()));
+        }
+
+        @Override public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override public void onProviderEnabled(String provider) {
+        }
+
+        @Override public void onProviderDisabled(String provider) {
+        }
+    }
+}
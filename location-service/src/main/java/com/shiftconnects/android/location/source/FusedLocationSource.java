@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shiftconnects.android.location.source;
+
+import android.location.Location;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gets locations from the Play Services fused location provider. Available while the given
+ * {@link GoogleApiClient} is connected.
+ */
+public class FusedLocationSource implements LocationSource {
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Map<Listener, LocationListener> mListeners = new HashMap<>();
+
+    public FusedLocationSource(GoogleApiClient googleApiClient) {
+        mGoogleApiClient = googleApiClient;
+    }
+
+    @Override public boolean isAvailable() {
+        return mGoogleApiClient.isConnected();
+    }
+
+    @Override public synchronized boolean requestLocationUpdates(LocationRequest request, Listener listener) {
+        try {
+            LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, request, adapt(listener));
+            return true;
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    @Override public synchronized void removeLocationUpdates(Listener listener) {
+        final LocationListener adapter = mListeners.remove(listener);
+        if (adapter != null && mGoogleApiClient.isConnected()) {
+            LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, adapter);
+        }
+    }
+
+    @Override public Location getLastLocation() {
+        if (!mGoogleApiClient.isConnected()) {
+            return null;
+        }
+        return LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
+    }
+
+    public GoogleApiClient getGoogleApiClient() {
+        return mGoogleApiClient;
+    }
+
+    private LocationListener adapt(final Listener listener) {
+        LocationListener adapter = mListeners.get(listener);
+        if (adapter == null) {
+            adapter = new LocationListener() {
+                @Override public void onLocationChanged(Location location) {
+                    listener.onLocationChanged(location);
+                }
+            };
+            mListeners.put(listener, adapter);
+        }
+        return adapter;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shiftconnects.android.location.source;
+
+import android.location.Location;
+
+import com.google.android.gms.location.LocationRequest;
+
+/**
+ * Where {@link com.shiftconnects.android.location.BackgroundLocationService} gets its locations
+ * from. Requests are always expressed as a Play Services {@link LocationRequest}, so the request
+ * utilities work the same whichever source is in use; sources that aren't backed by Play Services
+ * translate them as best they can.
+ *
+ * A source only ever has one request at a time: requesting updates again replaces the previous
+ * request for that listener.
+ */
+public interface LocationSource {
+
+    interface Listener {
+        void onLocationChanged(Location location);
+    }
+
+    /**
+     * @return true if the source can take requests right now. The service reapplies its request
+     * when it learns that a source has become available, see
+     * {@link com.shiftconnects.android.location.BackgroundLocationService#onLocationSourceAvailable()}.
+     */
+    boolean isAvailable();
+
+    /**
+     * @return false if the source refused the request, for example for lack of the location
+     * permission. The service then keeps the request pending until
+     * {@link com.shiftconnects.android.location.BackgroundLocationService#onLocationSourceAvailable()}.
+     */
+    boolean requestLocationUpdates(LocationRequest request, Listener listener);
+
+    /**
+     * Must be safe to call while unavailable, and for a listener that isn't registered.
+     */
+    void removeLocationUpdates(Listener listener);
+
+    /**
+     * @return the most recent location the source knows of, or null
+     */
+    Location getLastLocation();
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shiftconnects.android.location.source;
+
+import android.location.LocationManager;
+import android.os.Looper;
+
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Only receives locations that other apps have already asked for, through the framework passive
+ * provider, so it costs no extra power. The request's priority is ignored, and its fastest
+ * interval limits how often locations are delivered.
+ */
+public class PassiveLocationSource extends FrameworkLocationSource {
+
+    public PassiveLocationSource(LocationManager locationManager, Looper looper) {
+        super(locationManager, looper);
+    }
+
+    @Override protected List<String> getProviders(LocationRequest request) {
+        return Collections.singletonList(LocationManager.PASSIVE_PROVIDER);
+    }
+
+    @Override protected List<String> getAvailabilityProviders() {
+        return Collections.singletonList(LocationManager.PASSIVE_PROVIDER);
+    }
+
+    @Override protected long getMinTime(LocationRequest request) {
+        return request.getFastestInterval();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.stream;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds items for one subscriber until it asks for them. Items beyond the subscriber's demand
+ * wait in a bounded queue that drops its oldest item when full, so a capacity of one keeps only
+ * the latest. Items are delivered serially, on whichever thread offers an item or requests more.
+ */
+class DemandSubscription<T> implements Subscription {
+
+    private final Subscriber<? super T> mSubscriber;
+    private final int mCapacity;
+    private final Runnable mOnCancel;
+
+    private final AtomicInteger mWip = new AtomicInteger();
+    private final ArrayDeque<T> mQueue = new ArrayDeque<>();
+    private long mRequested;
+    private final AtomicBoolean mCancelled = new AtomicBoolean();
+
+    DemandSubscription(Subscriber<? super T> subscriber, int capacity, Runnable onCancel) {
+        mSubscriber = subscriber;
+        mCapacity = capacity;
+        mOnCancel = onCancel;
+    }
+
+    boolean isCancelled() {
+        return mCancelled.get();
+    }
+
+    void offer(T item) {
+        if (mCancelled.get()) {
+            return;
+        }
+        synchronized (this) {
+            if (mQueue.size() >= mCapacity) {
+                mQueue.pollFirst();
+            }
+            mQueue.addLast(item);
+        }
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            cancel();
+            mSubscriber.onError(new IllegalArgumentException("request must be positive, was " + n));
+            return;
+        }
+        synchronized (this) {
+            mRequested = mRequested + n < 0 ? Long.MAX_VALUE : mRequested + n;
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        // only the first of several racing cancels clears the queue and runs the cancel action
+        if (mCancelled.compareAndSet(false, true)) {
+            synchronized (this) {
+                mQueue.clear();
+            }
+            mOnCancel.run();
+        }
+    }
+
+    private void drain() {
+        if (mWip.getAndIncrement() != 0) {
+            // whoever is draining will pick this up
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            while (true) {
+                final T next;
+                synchronized (this) {
+                    if (mCancelled.get() || mRequested == 0 || mQueue.isEmpty()) {
+                        break;
+                    }
+                    next = mQueue.pollFirst();
+                    if (mRequested != Long.MAX_VALUE) {
+                        mRequested--;
+                    }
+                }
+                mSubscriber.onNext(next);
+            }
+            missed = mWip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+}
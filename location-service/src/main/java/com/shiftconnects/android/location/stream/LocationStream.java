@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.stream;
+
+import android.location.Location;
+import android.os.Handler;
+
+import com.shiftconnects.android.location.BackgroundLocationService;
+import com.shiftconnects.android.location.dispatch.LocationBatcher;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The locations delivered by a {@link BackgroundLocationService} as a {@link Publisher}.
+ *
+ * Streams are immutable: each operator returns a new stream, and every subscription gets its own
+ * copy of the operators, which run on the delivering thread before anything is queued for the
+ * subscriber. All subscribers share the service's single location request, so a map that wants a
+ * fix every five seconds and a recorder that wants every fix can subscribe side by side:
+ *
+ * <pre>
+ * service.getLocationStream().sample(5000).latest().subscribe(mapSubscriber);
+ * service.getLocationStream().buffer(20, 60000).subscribe(recorderSubscriber);
+ * </pre>
+ *
+ * Items beyond a subscriber's demand are held in a queue of {@link #DEFAULT_CAPACITY}, dropping
+ * the oldest when full, or only the latest with {@link #latest()}.
+ */
+public class LocationStream implements Publisher<Location> {
+
+    public static final int DEFAULT_CAPACITY = 128;
+
+    private interface Operator {
+        Filter newFilter();
+    }
+
+    private interface Filter {
+        boolean accept(Location location);
+    }
+
+    private static final Operator[] NO_OPERATORS = new Operator[0];
+
+    private final BackgroundLocationService mService;
+    private final Handler mHandler;
+    private final Operator[] mOperators;
+    private final int mCapacity;
+
+    public LocationStream(BackgroundLocationService service, Handler handler) {
+        this(service, handler, NO_OPERATORS, DEFAULT_CAPACITY);
+    }
+
+    private LocationStream(BackgroundLocationService service, Handler handler, Operator[] operators, int capacity) {
+        mService = service;
+        mHandler = handler;
+        mOperators = operators;
+        mCapacity = capacity;
+    }
+
+    /**
+     * Passes on at most one location per interval: the first to arrive at least
+     * {@code intervalMillis} after the last one passed on, going by location time.
+     */
+    public LocationStream sample(final long intervalMillis) {
+        return with(new Operator() {
+            @Override public Filter newFilter() {
+                return new Filter() {
+                    private long mLastTime = Long.MIN_VALUE;
+
+                    @Override public boolean accept(Location location) {
+                        if (mLastTime != Long.MIN_VALUE && location.getTime() - mLastTime < intervalMillis) {
+                            return false;
+                        }
+                        mLastTime = location.getTime();
+                        return true;
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Passes on only locations at least {@code meters} from the last one passed on.
+     */
+    public LocationStream distinct(final float meters) {
+        return with(new Operator() {
+            @Override public Filter newFilter() {
+                return new Filter() {
+                    private boolean mHasLast;
+                    private double mLastLatitude;
+                    private double mLastLongitude;
+
+                    @Override public boolean accept(Location location) {
+                        if (mHasLast && GeoUtils.distanceBetween(mLastLatitude, mLastLongitude,
+                                location.getLatitude(), location.getLongitude()) < meters) {
+                            return false;
+                        }
+                        mHasLast = true;
+                        mLastLatitude = location.getLatitude();
+                        mLastLongitude = location.getLongitude();
+                        return true;
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Keeps only the newest location for a subscriber that has not asked for more, rather than
+     * queueing them.
+     */
+    public LocationStream latest() {
+        return new LocationStream(mService, mHandler, mOperators, 1);
+    }
+
+    /**
+     * Groups locations into lists of up to {@code maxCount}, delivered once full or
+     * {@code maxLatencyMillis} after their first location arrived. Each list counts as one item of
+     * demand.
+     */
+    public Publisher<List<Location>> buffer(final int maxCount, final long maxLatencyMillis) {
+        if (maxCount < 1) {
+            throw new IllegalArgumentException("maxCount must be at least 1");
+        }
+        return new Publisher<List<Location>>() {
+            @Override public void subscribe(Subscriber<? super List<Location>> subscriber) {
+                final Filter[] filters = newFilters();
+                final LocationBatcher[] batcher = new LocationBatcher[1];
+                final BackgroundLocationService.LocationCallbacks callbacks = new BackgroundLocationService.LocationCallbacks() {
+                    @Override public void onLocationChanged(Location location) {
+                        if (accept(filters, location)) {
+                            batcher[0].add(location);
+                        }
+                    }
+                };
+                final DemandSubscription<List<Location>> subscription = new DemandSubscription<>(
+                        subscriber, mCapacity, new Runnable() {
+                            @Override public void run() {
+                                mService.removeLocationCallbacks(callbacks);
+                                batcher[0].clear();
+                            }
+                        });
+                batcher[0] = new LocationBatcher(mHandler, new LocationBatcher.Sink() {
+                    @Override public void onBatch(List<Location> locations) {
+                        subscription.offer(locations);
+                    }
+                }, maxCount, maxLatencyMillis);
+                start(subscriber, subscription, callbacks);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void subscribe(Subscriber<? super Location> subscriber) {
+        final Filter[] filters = newFilters();
+        final DemandSubscription<Location>[] subscription = new DemandSubscription[1];
+        final BackgroundLocationService.LocationCallbacks callbacks = new BackgroundLocationService.LocationCallbacks() {
+            @Override public void onLocationChanged(Location location) {
+                if (accept(filters, location)) {
+                    subscription[0].offer(location);
+                }
+            }
+        };
+        subscription[0] = new DemandSubscription<>(subscriber, mCapacity, new Runnable() {
+            @Override public void run() {
+                mService.removeLocationCallbacks(callbacks);
+            }
+        });
+        start(subscriber, subscription[0], callbacks);
+    }
+
+    private <T> void start(Subscriber<? super T> subscriber, DemandSubscription<T> subscription,
+            BackgroundLocationService.LocationCallbacks callbacks) {
+        subscriber.onSubscribe(subscription);
+        if (!subscription.isCancelled()) {
+            mService.addLocationCallbacks(callbacks);
+        }
+    }
+
+    private LocationStream with(Operator operator) {
+        final Operator[] operators = Arrays.copyOf(mOperators, mOperators.length + 1);
+        operators[mOperators.length] = operator;
+        return new LocationStream(mService, mHandler, operators, mCapacity);
+    }
+
+    private Filter[] newFilters() {
+        final Filter[] filters = new Filter[mOperators.length];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = mOperators[i].newFilter();
+        }
+        return filters;
+    }
+
+    private static boolean accept(Filter[] filters, Location location) {
+        for (Filter filter : filters) {
+            if (!filter.accept(location)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.stream;
+
+/**
+ * A source of items for any number of {@link Subscriber}s, each of which says how many items it
+ * is ready for. Mirrors {@code org.reactivestreams.Publisher} so it can be adapted to any reactive
+ * library without adding a dependency.
+ */
+public interface Publisher<T> {
+    void subscribe(Subscriber<? super T> subscriber);
+}
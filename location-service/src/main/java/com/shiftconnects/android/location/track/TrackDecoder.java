@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.track;
+
+import android.location.Location;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a track written by {@link TrackEncoder} directly out of a {@link ByteBuffer}, which may be
+ * a memory mapped file, without copying it or allocating per fix.
+ *
+ * Call {@link #next()} to advance to each fix and read it through the getters. Not thread-safe.
+ */
+public class TrackDecoder {
+
+    private final ByteBuffer mBuffer;
+    private final int mChannels;
+
+    private long mLatitude;
+    private long mLongitude;
+    private long mTime;
+    private float mAccuracy = Float.NaN;
+    private float mSpeed = Float.NaN;
+    private float mBearing = Float.NaN;
+
+    /**
+     * Starts decoding at the buffer's current position.
+     *
+     * @throws IllegalArgumentException if the buffer does not start with a track header
+     */
+    public TrackDecoder(ByteBuffer buffer) {
+        mBuffer = buffer;
+        if (buffer.remaining() < TrackFormat.HEADER_SIZE) {
+            throw new IllegalArgumentException("Not a track");
+        }
+        for (byte b : TrackFormat.MAGIC) {
+            if (buffer.get() != b) {
+                throw new IllegalArgumentException("Not a track");
+            }
+        }
+        final int version = buffer.get() & 0xff;
+        if (version != TrackFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported track version " + version);
+        }
+        mChannels = buffer.get() & 0xff;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * @return true if another fix was read, false at the end of the buffer
+     * @throws IllegalArgumentException if the buffer ends in the middle of a fix
+     */
+    public boolean next() {
+        if (!mBuffer.hasRemaining()) {
+            return false;
+        }
+        mLatitude += getSigned();
+        mLongitude += getSigned();
+        mTime += getSigned();
+        if ((mChannels & TrackEncoder.CHANNEL_ACCURACY) != 0) {
+            mAccuracy = getChannel(TrackFormat.ACCURACY_SCALE);
+        }
+        if ((mChannels & TrackEncoder.CHANNEL_SPEED) != 0) {
+            mSpeed = getChannel(TrackFormat.SPEED_SCALE);
+        }
+        if ((mChannels & TrackEncoder.CHANNEL_BEARING) != 0) {
+            mBearing = getChannel(TrackFormat.BEARING_SCALE);
+        }
+        return true;
+    }
+
+    public double getLatitude() {
+        return mLatitude / TrackFormat.COORDINATE_SCALE;
+    }
+
+    public double getLongitude() {
+        return mLongitude / TrackFormat.COORDINATE_SCALE;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @return the accuracy in meters, or NaN if the fix has none or the channel is not encoded
+     */
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    public float getBearing() {
+        return mBearing;
+    }
+
+    /**
+     * Copies the current fix into {@code out}, for callers that need a {@link Location}.
+     */
+    public Location getLocation(Location out) {
+        out.setLatitude(getLatitude());
+        out.setLongitude(getLongitude());
+        out.setTime(mTime);
+        if (Float.isNaN(mAccuracy)) {
+            out.removeAccuracy();
+        } else {
+            out.setAccuracy(mAccuracy);
+        }
+        if (Float.isNaN(mSpeed)) {
+            out.removeSpeed();
+        } else {
+            out.setSpeed(mSpeed);
+        }
+        if (Float.isNaN(mBearing)) {
+            out.removeBearing();
+        } else {
+            out.setBearing(mBearing);
+        }
+        return out;
+    }
+
+    private float getChannel(float scale) {
+        final long value = getUnsigned();
+        return value == 0 ? Float.NaN : (value - 1) / scale;
+    }
+
+    private long getSigned() {
+        final long value = getUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long getUnsigned() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!mBuffer.hasRemaining()) {
+                throw new IllegalArgumentException("Truncated track");
+            }
+            final byte b = mBuffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.track;
+
+import android.location.Location;
+
+import com.shiftconnects.android.location.BackgroundLocationService;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes fixes in the compact delta encoded track format, either to an {@link OutputStream} or
+ * into a {@link ByteBuffer}. Encoding a fix does not allocate.
+ *
+ * Can be registered directly with
+ * {@link BackgroundLocationService#addLocationCallbacks(BackgroundLocationService.LocationCallbacks)},
+ * in which case the first write error, or the buffer filling up, stops the encoder and is rethrown
+ * by {@link #checkError()}.
+ * Not thread-safe.
+ */
+public class TrackEncoder implements BackgroundLocationService.LocationCallbacks, Flushable {
+
+    public static final int CHANNEL_ACCURACY = 1;
+    public static final int CHANNEL_SPEED = 1 << 1;
+    public static final int CHANNEL_BEARING = 1 << 2;
+    public static final int ALL_CHANNELS = CHANNEL_ACCURACY | CHANNEL_SPEED | CHANNEL_BEARING;
+
+    private final OutputStream mOutput;
+    private final ByteBuffer mBuffer;
+    private final int mChannels;
+
+    private final byte[] mScratch = new byte[TrackFormat.MAX_RECORD_SIZE];
+    private int mLength;
+
+    private long mLatitude;
+    private long mLongitude;
+    private long mTime;
+    private int mCount;
+    private IOException mError;
+    private BufferOverflowException mOverflow;
+
+    public TrackEncoder(OutputStream output, int channels) throws IOException {
+        mOutput = output;
+        mBuffer = null;
+        mChannels = channels;
+        writeHeader();
+    }
+
+    /**
+     * Encodes into the buffer from its current position. A {@link java.nio.BufferOverflowException}
+     * is thrown once it is full.
+     */
+    public TrackEncoder(ByteBuffer buffer, int channels) {
+        mOutput = null;
+        mBuffer = buffer;
+        mChannels = channels;
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        if (mError != null || mOverflow != null) {
+            return;
+        }
+        try {
+            write(location);
+        } catch (IOException e) {
+            mError = e;
+        } catch (BufferOverflowException e) {
+            // thrown to the service otherwise, in the middle of a dispatch
+            mOverflow = e;
+        }
+    }
+
+    /**
+     * Rethrows the error that stopped encoding from {@link #onLocationChanged(Location)}, if any.
+     *
+     * @throws BufferOverflowException if encoding into a buffer stopped because it was full
+     */
+    public void checkError() throws IOException {
+        if (mError != null) {
+            throw mError;
+        }
+        if (mOverflow != null) {
+            throw mOverflow;
+        }
+    }
+
+    public void write(Location location) throws IOException {
+        write(location.getLatitude(), location.getLongitude(), location.getTime(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasBearing() ? location.getBearing() : Float.NaN);
+    }
+
+    /**
+     * Writes a fix. Channels not enabled for this encoder are ignored, and NaN marks a value the
+     * fix does not have.
+     */
+    public void write(double latitude, double longitude, long time, float accuracy, float speed,
+            float bearing) throws IOException {
+        final long lat = Math.round(latitude * TrackFormat.COORDINATE_SCALE);
+        final long lon = Math.round(longitude * TrackFormat.COORDINATE_SCALE);
+        mLength = 0;
+        putSigned(lat - mLatitude);
+        putSigned(lon - mLongitude);
+        putSigned(time - mTime);
+        if ((mChannels & CHANNEL_ACCURACY) != 0) {
+            putChannel(accuracy, TrackFormat.ACCURACY_SCALE);
+        }
+        if ((mChannels & CHANNEL_SPEED) != 0) {
+            putChannel(speed, TrackFormat.SPEED_SCALE);
+        }
+        if ((mChannels & CHANNEL_BEARING) != 0) {
+            putChannel(bearing, TrackFormat.BEARING_SCALE);
+        }
+        emit();
+        mLatitude = lat;
+        mLongitude = lon;
+        mTime = time;
+        mCount++;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (mOutput != null) {
+            mOutput.flush();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        mLength = 0;
+        for (byte b : TrackFormat.MAGIC) {
+            mScratch[mLength++] = b;
+        }
+        mScratch[mLength++] = (byte) TrackFormat.VERSION;
+        mScratch[mLength++] = (byte) mChannels;
+        emit();
+    }
+
+    private void emit() throws IOException {
+        if (mOutput != null) {
+            mOutput.write(mScratch, 0, mLength);
+        } else {
+            mBuffer.put(mScratch, 0, mLength);
+        }
+    }
+
+    private void putChannel(float value, float scale) {
+        if (Float.isNaN(value) || value < 0f) {
+            putUnsigned(0);
+        } else {
+            putUnsigned(Math.round(value * scale) + 1l);
+        }
+    }
+
+    private void putSigned(long value) {
+        putUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    private void putUnsigned(long value) {
+        while ((value & ~0x7fL) != 0) {
+            mScratch[mLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mScratch[mLength++] = (byte) value;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.track;
+
+/**
+ * Constants shared by {@link TrackEncoder} and {@link TrackDecoder}.
+ *
+ * A track starts with the magic bytes {@code LTRK}, a version byte and a byte of channel flags.
+ * Each fix follows as zig-zag varint deltas from the previous fix of its latitude and longitude in
+ * units of 1e-7 degrees and its time in milliseconds, then one unsigned varint per enabled channel
+ * holding the value plus one, or zero when the fix has no such value. Accuracy is stored in
+ * decimeters, speed in centimeters per second and bearing in tenths of a degree.
+ */
+final class TrackFormat {
+
+    static final byte[] MAGIC = { 'L', 'T', 'R', 'K' };
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 2;
+
+    static final double COORDINATE_SCALE = 1e7;
+    static final float ACCURACY_SCALE = 10f;
+    static final float SPEED_SCALE = 100f;
+    static final float BEARING_SCALE = 10f;
+
+    // the most bytes a single fix can take: three 64 bit varints and three 32 bit varints
+    static final int MAX_RECORD_SIZE = 3 * 10 + 3 * 5;
+
+    private TrackFormat() {
+    }
+}
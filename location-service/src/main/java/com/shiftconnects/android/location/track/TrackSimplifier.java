@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 P100 OG, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shiftconnects.android.location.track;
+
+import android.location.Location;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+import com.shiftconnects.android.location.BackgroundLocationService;
+import com.shiftconnects.android.location.util.GeoUtils;
+
+/**
+ * Simplifies a track as it is recorded, emitting only the vertices needed to keep every dropped
+ * fix within a tolerance of the simplified line.
+ *
+ * This is the sliding window variant of Douglas-Peucker: fixes after the last emitted vertex are
+ * held in a window, and as long as all of them stay within the tolerance of the line from that
+ * vertex to the newest fix nothing is emitted. Once a fix breaks the tolerance, the fix before it
+ * becomes the next vertex. The window has a fixed capacity, and when it fills up its newest fix is
+ * emitted as well, so memory use is bounded regardless of how straight the track is.
+ *
+ * Can be registered directly with
+ * {@link BackgroundLocationService#addLocationCallbacks(BackgroundLocationService.LocationCallbacks)}.
+ * Not thread-safe.
+ */
+public class TrackSimplifier implements BackgroundLocationService.LocationCallbacks {
+
+    public interface Listener {
+        void onVertex(Location location);
+    }
+
+    public static final int DEFAULT_WINDOW_SIZE = 64;
+
+    private final Listener mListener;
+    private final double mTolerance;
+
+    private final Location[] mLocations;
+    private final LatLng[] mPoints;
+    private int mCount;
+
+    private LatLng mAnchor;
+
+    /**
+     * @param tolerance largest distance in meters any dropped fix may be from the simplified track
+     */
+    public TrackSimplifier(double tolerance, Listener listener) {
+        this(tolerance, DEFAULT_WINDOW_SIZE, listener);
+    }
+
+    public TrackSimplifier(double tolerance, int windowSize, Listener listener) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1");
+        }
+        mTolerance = tolerance;
+        mListener = listener;
+        mLocations = new Location[windowSize];
+        mPoints = new LatLng[windowSize];
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        add(location);
+    }
+
+    public void add(Location location) {
+        final LatLng point = new LatLng(location.getLatitude(), location.getLongitude());
+        if (mAnchor == null) {
+            emit(location, point);
+            return;
+        }
+        if (!fitsWindow(point)) {
+            // the previous fix is the furthest the current line can reach
+            emitNewest();
+        } else if (mCount == mLocations.length) {
+            emitNewest();
+        }
+        mLocations[mCount] = location;
+        mPoints[mCount] = point;
+        mCount++;
+    }
+
+    /**
+     * Emits the newest fix, if it has not been emitted already, so that the simplified track ends
+     * where the recorded one does. Call when recording stops.
+     */
+    public void flush() {
+        if (mCount > 0) {
+            emitNewest();
+        }
+    }
+
+    /**
+     * Forgets the track so far without emitting anything.
+     */
+    public void reset() {
+        clearWindow();
+        mAnchor = null;
+    }
+
+    private boolean fitsWindow(LatLng end) {
+        for (int i = 0; i < mCount; i++) {
+            if (distanceToSegment(mPoints[i], mAnchor, end) > mTolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void emitNewest() {
+        final int newest = mCount - 1;
+        final Location location = mLocations[newest];
+        final LatLng point = mPoints[newest];
+        clearWindow();
+        emit(location, point);
+    }
+
+    private void emit(Location location, LatLng point) {
+        mAnchor = point;
+        mListener.onVertex(location);
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < mCount; i++) {
+            mLocations[i] = null;
+            mPoints[i] = null;
+        }
+        mCount = 0;
+    }
+
+    /**
+     * @return the distance in meters from {@code p} to the great circle segment from {@code a} to
+     * {@code b}
+     */
+    static double distanceToSegment(LatLng p, LatLng a, LatLng b) {
+        final double ab = SphericalUtil.computeDistanceBetween(a, b);
+        final double ap = SphericalUtil.computeDistanceBetween(a, p);
+        if (ab == 0) {
+            return ap;
+        }
+        final double angle = Math.toRadians(SphericalUtil.computeHeading(a, p) - SphericalUtil.computeHeading(a, b));
+        final double along = ap * Math.cos(angle);
+        if (along <= 0) {
+            return ap;
+        }
+        if (along >= ab) {
+            return SphericalUtil.computeDistanceBetween(b, p);
+        }
+        return Math.abs(Math.asin(Math.sin(ap / GeoUtils.EARTH_RADIUS) * Math.sin(angle))) * GeoUtils.EARTH_RADIUS;
+    }
+}
@@ -0,0 +1,261 @@
+package com.shiftconnects.android.location.util;
+
+import android.location.Location;
+import android.text.format.DateUtils;
+
+import com.google.android.gms.location.LocationRequest;
+import com.shiftconnects.android.location.BackgroundLocationService;
+
+/**
+ * Watches the locations delivered by a {@link BackgroundLocationService} and re-issues its
+ * {@link LocationRequest} as the device moves between being stationary, walking and driving.
+ *
+ * Speed is taken from each fix when it has one, otherwise it is derived from the previous fix.
+ * Fixes less accurate than {@link #setMaxAccuracy(float)} are ignored. To avoid flapping near a
+ * threshold, a move to a faster state needs the speed to exceed that state's enter speed, a move to
+ * a slower state needs it to fall below that state's exit speed, and either way the new state has
+ * to be observed on {@link #setConfirmationCount(int)} consecutive fixes before the request is
+ * changed.
+ */
+public class AdaptiveLocationRequestScheduler implements BackgroundLocationService.LocationCallbacks {
+
+    public enum MotionState {
+        STATIONARY,
+        WALKING,
+        DRIVING
+    }
+
+    // meters per second
+    public static final float DEFAULT_WALKING_ENTER_SPEED = 0.8f;
+    public static final float DEFAULT_WALKING_EXIT_SPEED = 0.4f;
+    public static final float DEFAULT_DRIVING_ENTER_SPEED = 10 * LocationRequestUtils.MILES_PER_HOUR_TO_METERS_PER_SECOND;
+    public static final float DEFAULT_DRIVING_EXIT_SPEED = 6 * LocationRequestUtils.MILES_PER_HOUR_TO_METERS_PER_SECOND;
+
+    public static final float DEFAULT_MAX_ACCURACY = 50f;
+    public static final int DEFAULT_CONFIRMATION_COUNT = 3;
+
+    private final BackgroundLocationService mService;
+
+    private LocationRequest mStationaryRequest = LocationRequestUtils.byPriority(
+            LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, 25f, 60 * DateUtils.SECOND_IN_MILLIS);
+    private LocationRequest mWalkingRequest = LocationRequestUtils.byPriority(
+            LocationRequest.PRIORITY_HIGH_ACCURACY, 5f, 10 * DateUtils.SECOND_IN_MILLIS);
+    private LocationRequest mDrivingRequest = LocationRequestUtils.byPriority(
+            LocationRequest.PRIORITY_HIGH_ACCURACY, 10f, 2 * DateUtils.SECOND_IN_MILLIS);
+
+    private float mWalkingEnterSpeed = DEFAULT_WALKING_ENTER_SPEED;
+    private float mWalkingExitSpeed = DEFAULT_WALKING_EXIT_SPEED;
+    private float mDrivingEnterSpeed = DEFAULT_DRIVING_ENTER_SPEED;
+    private float mDrivingExitSpeed = DEFAULT_DRIVING_EXIT_SPEED;
+    private float mMaxAccuracy = DEFAULT_MAX_ACCURACY;
+    private int mConfirmationCount = DEFAULT_CONFIRMATION_COUNT;
+
+    private boolean mStarted;
+    private MotionState mState = MotionState.STATIONARY;
+    private MotionState mCandidateState;
+    private int mCandidateCount;
+
+    private boolean mHasPrevious;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+    private long mPreviousTime;
+    private final float[] mDistance = new float[1];
+
+    public AdaptiveLocationRequestScheduler(BackgroundLocationService service) {
+        mService = service;
+    }
+
+    /**
+     * Starts listening for locations and requests updates for the given initial state. The
+     * service must be connected to location services.
+     */
+    public void start(MotionState initialState) {
+        final LocationRequest request;
+        synchronized (this) {
+            if (mStarted) {
+                return;
+            }
+            mStarted = true;
+            mState = initialState;
+            mCandidateState = null;
+            mCandidateCount = 0;
+            mHasPrevious = false;
+            request = getRequest(mState);
+        }
+        // outside the lock, as both calls may deliver a location straight back to this scheduler
+        mService.addLocationCallbacks(this);
+        mService.requestUpdates(request);
+    }
+
+    /**
+     * Stops listening for locations. Location updates are left in whatever state they were last
+     * requested in.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (!mStarted) {
+                return;
+            }
+            mStarted = false;
+        }
+        mService.removeLocationCallbacks(this);
+    }
+
+    public synchronized MotionState getState() {
+        return mState;
+    }
+
+    public void setRequest(MotionState state, LocationRequest request) {
+        synchronized (this) {
+            switch (state) {
+                case STATIONARY:
+                    mStationaryRequest = request;
+                    break;
+                case WALKING:
+                    mWalkingRequest = request;
+                    break;
+                case DRIVING:
+                    mDrivingRequest = request;
+                    break;
+            }
+            if (!mStarted || state != mState) {
+                return;
+            }
+        }
+        mService.requestUpdates(request);
+    }
+
+    public synchronized LocationRequest getRequest(MotionState state) {
+        switch (state) {
+            case WALKING:
+                return mWalkingRequest;
+            case DRIVING:
+                return mDrivingRequest;
+            default:
+                return mStationaryRequest;
+        }
+    }
+
+    /**
+     * Sets the speeds, in meters per second, at which the walking state is entered from
+     * stationary and left back to stationary.
+     */
+    public synchronized void setWalkingSpeeds(float enterSpeed, float exitSpeed) {
+        if (exitSpeed > enterSpeed) {
+            throw new IllegalArgumentException("exitSpeed must not exceed enterSpeed");
+        }
+        mWalkingEnterSpeed = enterSpeed;
+        mWalkingExitSpeed = exitSpeed;
+    }
+
+    /**
+     * Sets the speeds, in meters per second, at which the driving state is entered and left back
+     * to walking.
+     */
+    public synchronized void setDrivingSpeeds(float enterSpeed, float exitSpeed) {
+        if (exitSpeed > enterSpeed) {
+            throw new IllegalArgumentException("exitSpeed must not exceed enterSpeed");
+        }
+        mDrivingEnterSpeed = enterSpeed;
+        mDrivingExitSpeed = exitSpeed;
+    }
+
+    public synchronized void setMaxAccuracy(float maxAccuracy) {
+        mMaxAccuracy = maxAccuracy;
+    }
+
+    public synchronized void setConfirmationCount(int confirmationCount) {
+        if (confirmationCount < 1) {
+            throw new IllegalArgumentException("confirmationCount must be at least 1");
+        }
+        mConfirmationCount = confirmationCount;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        final LocationRequest request;
+        synchronized (this) {
+            request = onLocation(location);
+        }
+        // changing the request happens in the middle of a dispatch, so don't hold the lock for it
+        if (request != null) {
+            mService.requestUpdates(request);
+        }
+    }
+
+    /**
+     * @return the request for a newly confirmed state, or null if the state hasn't changed
+     */
+    private LocationRequest onLocation(Location location) {
+        if (!mStarted) {
+            return null;
+        }
+        final long time = location.getTime();
+        if (mHasPrevious && time <= mPreviousTime) {
+            // a replay of a fix we have already seen
+            return null;
+        }
+        if (location.hasAccuracy() && location.getAccuracy() > mMaxAccuracy) {
+            return null;
+        }
+
+        final float speed;
+        if (location.hasSpeed()) {
+            speed = location.getSpeed();
+        } else if (mHasPrevious) {
+            Location.distanceBetween(mPreviousLatitude, mPreviousLongitude,
+                    location.getLatitude(), location.getLongitude(), mDistance);
+            speed = mDistance[0] * DateUtils.SECOND_IN_MILLIS / (time - mPreviousTime);
+        } else {
+            speed = -1f;
+        }
+        mHasPrevious = true;
+        mPreviousLatitude = location.getLatitude();
+        mPreviousLongitude = location.getLongitude();
+        mPreviousTime = time;
+
+        return speed >= 0f ? onSpeed(speed) : null;
+    }
+
+    private LocationRequest onSpeed(float speed) {
+        final MotionState observed = classify(speed);
+        if (observed == mState) {
+            mCandidateState = null;
+            mCandidateCount = 0;
+            return null;
+        }
+        if (observed == mCandidateState) {
+            mCandidateCount++;
+        } else {
+            mCandidateState = observed;
+            mCandidateCount = 1;
+        }
+        if (mCandidateCount >= mConfirmationCount) {
+            mState = observed;
+            mCandidateState = null;
+            mCandidateCount = 0;
+            return getRequest(mState);
+        }
+        return null;
+    }
+
+    private MotionState classify(float speed) {
+        switch (mState) {
+            case STATIONARY:
+                if (speed >= mDrivingEnterSpeed) {
+                    return MotionState.DRIVING;
+                }
+                return speed >= mWalkingEnterSpeed ? MotionState.WALKING : MotionState.STATIONARY;
+            case WALKING:
+                if (speed >= mDrivingEnterSpeed) {
+                    return MotionState.DRIVING;
+                }
+                return speed < mWalkingExitSpeed ? MotionState.STATIONARY : MotionState.WALKING;
+            default:
+                if (speed >= mDrivingExitSpeed) {
+                    return MotionState.DRIVING;
+                }
+                return speed < mWalkingExitSpeed ? MotionState.STATIONARY : MotionState.WALKING;
+        }
+    }
+}
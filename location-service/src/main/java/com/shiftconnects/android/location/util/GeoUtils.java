@@ -0,0 +1,50 @@
+package com.shiftconnects.android.location.util;
+
+/**
+ * Allocation free spherical math on raw latitudes and longitudes, for hot paths where creating a
+ * {@link com.google.android.gms.maps.model.LatLng} per call to
+ * {@link com.google.maps.android.SphericalUtil} would be wasteful. Results agree with
+ * {@code SphericalUtil}, which uses the same earth radius.
+ */
+public class GeoUtils {
+
+    public static final double EARTH_RADIUS = 6371009;
+
+    public static final double METERS_PER_DEGREE_LATITUDE = Math.PI * EARTH_RADIUS / 180;
+
+    /**
+     * @return the great circle distance between two points in meters
+     */
+    public static double distanceBetween(double fromLatitude, double fromLongitude,
+            double toLatitude, double toLongitude) {
+        final double lat1 = Math.toRadians(fromLatitude);
+        final double lat2 = Math.toRadians(toLatitude);
+        final double sinDLat = Math.sin((lat2 - lat1) / 2);
+        final double sinDLon = Math.sin(Math.toRadians(toLongitude - fromLongitude) / 2);
+        final double h = sinDLat * sinDLat + Math.cos(lat1) * Math.cos(lat2) * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    /**
+     * @return the initial heading from one point to another in degrees clockwise from north, in
+     * the range [-180, 180)
+     */
+    public static double computeHeading(double fromLatitude, double fromLongitude,
+            double toLatitude, double toLongitude) {
+        final double lat1 = Math.toRadians(fromLatitude);
+        final double lat2 = Math.toRadians(toLatitude);
+        final double dLon = Math.toRadians(toLongitude - fromLongitude);
+        final double heading = Math.toDegrees(Math.atan2(
+                Math.sin(dLon) * Math.cos(lat2),
+                Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * Math.cos(lat2) * Math.cos(dLon)));
+        return heading >= 180 ? heading - 360 : heading;
+    }
+
+    /**
+     * @return the number of meters spanned by one degree of longitude at the given latitude, never
+     * less than one meter so that it is safe to divide by near the poles
+     */
+    public static double metersPerDegreeLongitude(double latitude) {
+        return Math.max(1, METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(latitude)));
+    }
+}
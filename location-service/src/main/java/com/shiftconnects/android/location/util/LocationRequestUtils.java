@@ -31,8 +31,12 @@ public class LocationRequestUtils {
     }
 
     public static LocationRequest byDisplacement(float smallestDisplacement, long intervalMillis) {
+        return byPriority(LocationRequest.PRIORITY_HIGH_ACCURACY, smallestDisplacement, intervalMillis);
+    }
+
+    public static LocationRequest byPriority(int priority, float smallestDisplacement, long intervalMillis) {
         return LocationRequest.create()
-                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
+                .setPriority(priority)
                 .setInterval(intervalMillis)
                 .setFastestInterval(intervalMillis)
                 .setSmallestDisplacement(smallestDisplacement);